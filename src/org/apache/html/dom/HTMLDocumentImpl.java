@@ -18,8 +18,6 @@
 package org.apache.html.dom;
 
 import java.io.StringWriter;
-import java.lang.reflect.Constructor;
-import java.util.Hashtable;
 import java.util.Locale;
 
 import org.apache.xerces.dom.DocumentImpl;
@@ -110,25 +108,160 @@ public class HTMLDocumentImpl
 
 
     /**
-     * Holds names and classes of HTML element types. When an element with a
-     * particular tag name is created, the matching {@link java.lang.Class}
-     * is used to create the element object. For example, &lt;A&gt; matches
-     * {@link HTMLAnchorElementImpl}. This static table is shared across all
-     * HTML documents.
+     * Holds the names of the HTML element types which have their own element
+     * class, in upper case, in an open addressing hash table. Names are hashed
+     * and compared ignoring case, so that {@link #createElement} finds the
+     * element type of a tag name without first converting it to upper case.
+     * This static table is shared across all HTML documents.
      *
      * @see #createElement
      */
-    private static Hashtable        _elementTypesHTML;
+    private static final String[]   _elementNamesHTML;
 
 
     /**
-     * Signature used to locate constructor of HTML element classes. This
-     * static array is shared across all HTML documents.
+     * Holds the element type of each name in {@link #_elementNamesHTML}. The
+     * element type selects the class of the element object created by {@link
+     * #createElement}. For example, &lt;A&gt; matches {@link
+     * HTMLAnchorElementImpl}. This static table is shared across all HTML
+     * documents.
      *
      * @see #createElement
      */
-    private static final Class[]    _elemClassSigHTML =
-                new Class[] { HTMLDocumentImpl.class, String.class };
+    private static final int[]      _elementTypesHTML;
+
+
+    /**
+     * Size of the element name table, a power of two at least twice the
+     * number of names.
+     */
+    private static final int        ELEMENT_TABLE_SIZE = 128;
+
+
+    // Element types, one for each HTML element class.
+
+    private static final int TYPE_ANCHOR = 0;
+    private static final int TYPE_APPLET = 1;
+    private static final int TYPE_AREA = 2;
+    private static final int TYPE_BASE = 3;
+    private static final int TYPE_BASE_FONT = 4;
+    private static final int TYPE_QUOTE = 5;
+    private static final int TYPE_BODY = 6;
+    private static final int TYPE_BR = 7;
+    private static final int TYPE_BUTTON = 8;
+    private static final int TYPE_MOD = 9;
+    private static final int TYPE_DIRECTORY = 10;
+    private static final int TYPE_DIV = 11;
+    private static final int TYPE_DLIST = 12;
+    private static final int TYPE_FIELD_SET = 13;
+    private static final int TYPE_FONT = 14;
+    private static final int TYPE_FORM = 15;
+    private static final int TYPE_FRAME = 16;
+    private static final int TYPE_FRAME_SET = 17;
+    private static final int TYPE_HEAD = 18;
+    private static final int TYPE_HEADING = 19;
+    private static final int TYPE_HR = 20;
+    private static final int TYPE_HTML = 21;
+    private static final int TYPE_IFRAME = 22;
+    private static final int TYPE_IMAGE = 23;
+    private static final int TYPE_INPUT = 24;
+    private static final int TYPE_IS_INDEX = 25;
+    private static final int TYPE_LABEL = 26;
+    private static final int TYPE_LEGEND = 27;
+    private static final int TYPE_LI = 28;
+    private static final int TYPE_LINK = 29;
+    private static final int TYPE_MAP = 30;
+    private static final int TYPE_MENU = 31;
+    private static final int TYPE_META = 32;
+    private static final int TYPE_OBJECT = 33;
+    private static final int TYPE_OLIST = 34;
+    private static final int TYPE_OPT_GROUP = 35;
+    private static final int TYPE_OPTION = 36;
+    private static final int TYPE_PARAGRAPH = 37;
+    private static final int TYPE_PARAM = 38;
+    private static final int TYPE_PRE = 39;
+    private static final int TYPE_SCRIPT = 40;
+    private static final int TYPE_SELECT = 41;
+    private static final int TYPE_STYLE = 42;
+    private static final int TYPE_TABLE = 43;
+    private static final int TYPE_TABLE_CAPTION = 44;
+    private static final int TYPE_TABLE_CELL = 45;
+    private static final int TYPE_TABLE_COL = 46;
+    private static final int TYPE_TABLE_ROW = 47;
+    private static final int TYPE_TABLE_SECTION = 48;
+    private static final int TYPE_TEXT_AREA = 49;
+    private static final int TYPE_TITLE = 50;
+    private static final int TYPE_ULIST = 51;
+
+
+    static
+    {
+        _elementNamesHTML = new String[ ELEMENT_TABLE_SIZE ];
+        _elementTypesHTML = new int[ ELEMENT_TABLE_SIZE ];
+        populateElementType( "A", TYPE_ANCHOR );
+        populateElementType( "APPLET", TYPE_APPLET );
+        populateElementType( "AREA", TYPE_AREA );
+        populateElementType( "BASE", TYPE_BASE );
+        populateElementType( "BASEFONT", TYPE_BASE_FONT );
+        populateElementType( "BLOCKQUOTE", TYPE_QUOTE );
+        populateElementType( "BODY", TYPE_BODY );
+        populateElementType( "BR", TYPE_BR );
+        populateElementType( "BUTTON", TYPE_BUTTON );
+        populateElementType( "DEL", TYPE_MOD );
+        populateElementType( "DIR", TYPE_DIRECTORY );
+        populateElementType( "DIV", TYPE_DIV );
+        populateElementType( "DL", TYPE_DLIST );
+        populateElementType( "FIELDSET", TYPE_FIELD_SET );
+        populateElementType( "FONT", TYPE_FONT );
+        populateElementType( "FORM", TYPE_FORM );
+        populateElementType( "FRAME", TYPE_FRAME );
+        populateElementType( "FRAMESET", TYPE_FRAME_SET );
+        populateElementType( "HEAD", TYPE_HEAD );
+        populateElementType( "H1", TYPE_HEADING );
+        populateElementType( "H2", TYPE_HEADING );
+        populateElementType( "H3", TYPE_HEADING );
+        populateElementType( "H4", TYPE_HEADING );
+        populateElementType( "H5", TYPE_HEADING );
+        populateElementType( "H6", TYPE_HEADING );
+        populateElementType( "HR", TYPE_HR );
+        populateElementType( "HTML", TYPE_HTML );
+        populateElementType( "IFRAME", TYPE_IFRAME );
+        populateElementType( "IMG", TYPE_IMAGE );
+        populateElementType( "INPUT", TYPE_INPUT );
+        populateElementType( "INS", TYPE_MOD );
+        populateElementType( "ISINDEX", TYPE_IS_INDEX );
+        populateElementType( "LABEL", TYPE_LABEL );
+        populateElementType( "LEGEND", TYPE_LEGEND );
+        populateElementType( "LI", TYPE_LI );
+        populateElementType( "LINK", TYPE_LINK );
+        populateElementType( "MAP", TYPE_MAP );
+        populateElementType( "MENU", TYPE_MENU );
+        populateElementType( "META", TYPE_META );
+        populateElementType( "OBJECT", TYPE_OBJECT );
+        populateElementType( "OL", TYPE_OLIST );
+        populateElementType( "OPTGROUP", TYPE_OPT_GROUP );
+        populateElementType( "OPTION", TYPE_OPTION );
+        populateElementType( "P", TYPE_PARAGRAPH );
+        populateElementType( "PARAM", TYPE_PARAM );
+        populateElementType( "PRE", TYPE_PRE );
+        populateElementType( "Q", TYPE_QUOTE );
+        populateElementType( "SCRIPT", TYPE_SCRIPT );
+        populateElementType( "SELECT", TYPE_SELECT );
+        populateElementType( "STYLE", TYPE_STYLE );
+        populateElementType( "TABLE", TYPE_TABLE );
+        populateElementType( "CAPTION", TYPE_TABLE_CAPTION );
+        populateElementType( "TD", TYPE_TABLE_CELL );
+        populateElementType( "TH", TYPE_TABLE_CELL );
+        populateElementType( "COL", TYPE_TABLE_COL );
+        populateElementType( "COLGROUP", TYPE_TABLE_COL );
+        populateElementType( "TR", TYPE_TABLE_ROW );
+        populateElementType( "TBODY", TYPE_TABLE_SECTION );
+        populateElementType( "THEAD", TYPE_TABLE_SECTION );
+        populateElementType( "TFOOT", TYPE_TABLE_SECTION );
+        populateElementType( "TEXTAREA", TYPE_TEXT_AREA );
+        populateElementType( "TITLE", TYPE_TITLE );
+        populateElementType( "UL", TYPE_ULIST );
+    }
 
 
     /**
@@ -136,7 +269,6 @@ public class HTMLDocumentImpl
     public HTMLDocumentImpl()
     {
         super();
-        populateElementTypes();
     }
 
 
@@ -462,40 +594,125 @@ public class HTMLDocumentImpl
     public Element createElement( String tagName )
         throws DOMException
     {
-        Class        elemClass;
-        Constructor    cnst;
-
-        // First, make sure tag name is all upper case, next get the associated
-        // element class. If no class is found, generate a generic HTML element.
-        // Do so also if an unexpected exception occurs.
-        tagName = tagName.toUpperCase(Locale.ENGLISH);
-        elemClass = (Class) _elementTypesHTML.get( tagName );
-        if ( elemClass != null )
+        int    index;
+
+        // Look up the tag name ignoring case. If the element type has its own
+        // element class, create an element of that class with the upper case
+        // name held in the table. Otherwise, generate a generic HTML element
+        // with the tag name converted to upper case.
+        index = getElementTypeIndex( tagName );
+        if ( index == -1 )
+            return new HTMLElementImpl( this, tagName.toUpperCase(Locale.ENGLISH) );
+        tagName = _elementNamesHTML[ index ];
+        switch ( _elementTypesHTML[ index ] )
         {
-            // Get the constructor for the element. The signature specifies an
-            // owner document and a tag name. Use the constructor to instantiate
-            // a new object and return it.
-            try
-            {
-                cnst = elemClass.getConstructor( _elemClassSigHTML );
-                return (Element) cnst.newInstance( new Object[] { this, tagName } );
-            }
-            catch ( Exception except )
-            {
-                /*
-                Throwable thrw;
-
-                if ( except instanceof java.lang.reflect.InvocationTargetException )
-                    thrw = ( (java.lang.reflect.InvocationTargetException) except ).getTargetException();
-                else
-                    thrw = except;
-                System.out.println( "Exception " + thrw.getClass().getName() );
-                System.out.println( thrw.getMessage() );
-                */
-                throw new IllegalStateException( "HTM15 Tag '" + tagName + "' associated with an Element class that failed to construct.\n" + tagName);
-            }
+        case TYPE_ANCHOR:
+            return new HTMLAnchorElementImpl( this, tagName );
+        case TYPE_APPLET:
+            return new HTMLAppletElementImpl( this, tagName );
+        case TYPE_AREA:
+            return new HTMLAreaElementImpl( this, tagName );
+        case TYPE_BASE:
+            return new HTMLBaseElementImpl( this, tagName );
+        case TYPE_BASE_FONT:
+            return new HTMLBaseFontElementImpl( this, tagName );
+        case TYPE_QUOTE:
+            return new HTMLQuoteElementImpl( this, tagName );
+        case TYPE_BODY:
+            return new HTMLBodyElementImpl( this, tagName );
+        case TYPE_BR:
+            return new HTMLBRElementImpl( this, tagName );
+        case TYPE_BUTTON:
+            return new HTMLButtonElementImpl( this, tagName );
+        case TYPE_MOD:
+            return new HTMLModElementImpl( this, tagName );
+        case TYPE_DIRECTORY:
+            return new HTMLDirectoryElementImpl( this, tagName );
+        case TYPE_DIV:
+            return new HTMLDivElementImpl( this, tagName );
+        case TYPE_DLIST:
+            return new HTMLDListElementImpl( this, tagName );
+        case TYPE_FIELD_SET:
+            return new HTMLFieldSetElementImpl( this, tagName );
+        case TYPE_FONT:
+            return new HTMLFontElementImpl( this, tagName );
+        case TYPE_FORM:
+            return new HTMLFormElementImpl( this, tagName );
+        case TYPE_FRAME:
+            return new HTMLFrameElementImpl( this, tagName );
+        case TYPE_FRAME_SET:
+            return new HTMLFrameSetElementImpl( this, tagName );
+        case TYPE_HEAD:
+            return new HTMLHeadElementImpl( this, tagName );
+        case TYPE_HEADING:
+            return new HTMLHeadingElementImpl( this, tagName );
+        case TYPE_HR:
+            return new HTMLHRElementImpl( this, tagName );
+        case TYPE_HTML:
+            return new HTMLHtmlElementImpl( this, tagName );
+        case TYPE_IFRAME:
+            return new HTMLIFrameElementImpl( this, tagName );
+        case TYPE_IMAGE:
+            return new HTMLImageElementImpl( this, tagName );
+        case TYPE_INPUT:
+            return new HTMLInputElementImpl( this, tagName );
+        case TYPE_IS_INDEX:
+            return new HTMLIsIndexElementImpl( this, tagName );
+        case TYPE_LABEL:
+            return new HTMLLabelElementImpl( this, tagName );
+        case TYPE_LEGEND:
+            return new HTMLLegendElementImpl( this, tagName );
+        case TYPE_LI:
+            return new HTMLLIElementImpl( this, tagName );
+        case TYPE_LINK:
+            return new HTMLLinkElementImpl( this, tagName );
+        case TYPE_MAP:
+            return new HTMLMapElementImpl( this, tagName );
+        case TYPE_MENU:
+            return new HTMLMenuElementImpl( this, tagName );
+        case TYPE_META:
+            return new HTMLMetaElementImpl( this, tagName );
+        case TYPE_OBJECT:
+            return new HTMLObjectElementImpl( this, tagName );
+        case TYPE_OLIST:
+            return new HTMLOListElementImpl( this, tagName );
+        case TYPE_OPT_GROUP:
+            return new HTMLOptGroupElementImpl( this, tagName );
+        case TYPE_OPTION:
+            return new HTMLOptionElementImpl( this, tagName );
+        case TYPE_PARAGRAPH:
+            return new HTMLParagraphElementImpl( this, tagName );
+        case TYPE_PARAM:
+            return new HTMLParamElementImpl( this, tagName );
+        case TYPE_PRE:
+            return new HTMLPreElementImpl( this, tagName );
+        case TYPE_SCRIPT:
+            return new HTMLScriptElementImpl( this, tagName );
+        case TYPE_SELECT:
+            return new HTMLSelectElementImpl( this, tagName );
+        case TYPE_STYLE:
+            return new HTMLStyleElementImpl( this, tagName );
+        case TYPE_TABLE:
+            return new HTMLTableElementImpl( this, tagName );
+        case TYPE_TABLE_CAPTION:
+            return new HTMLTableCaptionElementImpl( this, tagName );
+        case TYPE_TABLE_CELL:
+            return new HTMLTableCellElementImpl( this, tagName );
+        case TYPE_TABLE_COL:
+            return new HTMLTableColElementImpl( this, tagName );
+        case TYPE_TABLE_ROW:
+            return new HTMLTableRowElementImpl( this, tagName );
+        case TYPE_TABLE_SECTION:
+            return new HTMLTableSectionElementImpl( this, tagName );
+        case TYPE_TEXT_AREA:
+            return new HTMLTextAreaElementImpl( this, tagName );
+        case TYPE_TITLE:
+            return new HTMLTitleElementImpl( this, tagName );
+        case TYPE_ULIST:
+            return new HTMLUListElementImpl( this, tagName );
+        default:
+            throw new IllegalStateException( "HTM15 Tag '" + tagName + "' associated with an Element class that failed to construct.\n" + tagName);
         }
-        return new HTMLElementImpl( this, tagName );
     }
 
 
@@ -650,9 +867,7 @@ public class HTMLDocumentImpl
         }
         
         // check whether a class change is required
-        Class newClass = (Class) _elementTypesHTML.get(newNodeName.toUpperCase(Locale.ENGLISH));
-        Class oldClass = (Class) _elementTypesHTML.get(el.getTagName());
-        return newClass == oldClass;
+        return getElementType(newNodeName) == getElementType(el.getTagName());
     }
 
     
@@ -686,101 +901,84 @@ public class HTMLDocumentImpl
 
 
     /**
-     * Called by the constructor to populate the element types list (see {@link
-     * #_elementTypesHTML}). Will be called multiple times but populate the list
-     * only the first time. Replacement for static constructor.
+     * Adds an element name and its element type to the element name table
+     * (see {@link #_elementNamesHTML}). Called by the static initializer.
      */
-    private synchronized static void populateElementTypes()
-    {
-        // This class looks like it is due to some strange
-        // (read: inconsistent) JVM bugs.
-        // Initially all this code was placed in the static constructor,
-        // but that caused some early JVMs (1.1) to go mad, and if a
-        // class could not be found (as happened during development),
-        // the JVM would die.
-        // Bertrand Delacretaz <bdelacretaz@worldcom.ch> pointed out
-        // several configurations where HTMLAnchorElementImpl.class
-        // failed, forcing me to revert back to Class.forName().
-
-        if ( _elementTypesHTML != null )
-            return;
-        _elementTypesHTML = new Hashtable( 63 );
-        populateElementType( "A", "HTMLAnchorElementImpl" );
-        populateElementType( "APPLET", "HTMLAppletElementImpl" );
-        populateElementType( "AREA", "HTMLAreaElementImpl" );
-        populateElementType( "BASE",  "HTMLBaseElementImpl" );
-        populateElementType( "BASEFONT", "HTMLBaseFontElementImpl" );
-        populateElementType( "BLOCKQUOTE", "HTMLQuoteElementImpl" );
-        populateElementType( "BODY", "HTMLBodyElementImpl" );
-        populateElementType( "BR", "HTMLBRElementImpl" );
-        populateElementType( "BUTTON", "HTMLButtonElementImpl" );
-        populateElementType( "DEL", "HTMLModElementImpl" );
-        populateElementType( "DIR", "HTMLDirectoryElementImpl" );
-        populateElementType( "DIV",  "HTMLDivElementImpl" );
-        populateElementType( "DL", "HTMLDListElementImpl" );
-        populateElementType( "FIELDSET", "HTMLFieldSetElementImpl" );
-        populateElementType( "FONT", "HTMLFontElementImpl" );
-        populateElementType( "FORM", "HTMLFormElementImpl" );
-        populateElementType( "FRAME","HTMLFrameElementImpl" );
-        populateElementType( "FRAMESET", "HTMLFrameSetElementImpl" );
-        populateElementType( "HEAD", "HTMLHeadElementImpl" );
-        populateElementType( "H1", "HTMLHeadingElementImpl" );
-        populateElementType( "H2", "HTMLHeadingElementImpl" );
-        populateElementType( "H3", "HTMLHeadingElementImpl" );
-        populateElementType( "H4", "HTMLHeadingElementImpl" );
-        populateElementType( "H5", "HTMLHeadingElementImpl" );
-        populateElementType( "H6", "HTMLHeadingElementImpl" );
-        populateElementType( "HR", "HTMLHRElementImpl" );
-        populateElementType( "HTML", "HTMLHtmlElementImpl" );
-        populateElementType( "IFRAME", "HTMLIFrameElementImpl" );
-        populateElementType( "IMG", "HTMLImageElementImpl" );
-        populateElementType( "INPUT", "HTMLInputElementImpl" );
-        populateElementType( "INS", "HTMLModElementImpl" );
-        populateElementType( "ISINDEX", "HTMLIsIndexElementImpl" );
-        populateElementType( "LABEL", "HTMLLabelElementImpl" );
-        populateElementType( "LEGEND", "HTMLLegendElementImpl" );
-        populateElementType( "LI", "HTMLLIElementImpl" );
-        populateElementType( "LINK", "HTMLLinkElementImpl" );
-        populateElementType( "MAP", "HTMLMapElementImpl" );
-        populateElementType( "MENU", "HTMLMenuElementImpl" );
-        populateElementType( "META", "HTMLMetaElementImpl" );
-        populateElementType( "OBJECT", "HTMLObjectElementImpl" );
-        populateElementType( "OL", "HTMLOListElementImpl" );
-        populateElementType( "OPTGROUP", "HTMLOptGroupElementImpl" );
-        populateElementType( "OPTION", "HTMLOptionElementImpl" );
-        populateElementType( "P", "HTMLParagraphElementImpl" );
-        populateElementType( "PARAM", "HTMLParamElementImpl" );
-        populateElementType( "PRE", "HTMLPreElementImpl" );
-        populateElementType( "Q", "HTMLQuoteElementImpl" );
-        populateElementType( "SCRIPT", "HTMLScriptElementImpl" );
-        populateElementType( "SELECT", "HTMLSelectElementImpl" );
-        populateElementType( "STYLE", "HTMLStyleElementImpl" );
-        populateElementType( "TABLE", "HTMLTableElementImpl" );
-        populateElementType( "CAPTION", "HTMLTableCaptionElementImpl" );
-        populateElementType( "TD", "HTMLTableCellElementImpl" );
-        populateElementType( "TH", "HTMLTableCellElementImpl" );
-        populateElementType( "COL", "HTMLTableColElementImpl" );
-        populateElementType( "COLGROUP", "HTMLTableColElementImpl" );
-        populateElementType( "TR", "HTMLTableRowElementImpl" );
-        populateElementType( "TBODY", "HTMLTableSectionElementImpl" );
-        populateElementType( "THEAD", "HTMLTableSectionElementImpl" );
-        populateElementType( "TFOOT", "HTMLTableSectionElementImpl" );
-        populateElementType( "TEXTAREA", "HTMLTextAreaElementImpl" );
-        populateElementType( "TITLE", "HTMLTitleElementImpl" );
-        populateElementType( "UL", "HTMLUListElementImpl" );
-    }
-
-
-    private static void populateElementType( String tagName, String className )
-    {
-        try {
-            _elementTypesHTML.put( tagName,
-                ObjectFactory.findProviderClass("org.apache.html.dom." + className,
-                    HTMLDocumentImpl.class.getClassLoader(), true) );
-        } catch ( Exception except ) {
-            throw new RuntimeException( "HTM019 OpenXML Error: Could not find or execute class " + className + " implementing HTML element " + tagName
-                                  + "\n" + className + "\t" + tagName);
+    private static void populateElementType( String tagName, int type )
+    {
+        int index;
+
+        index = hashElementName( tagName ) & ( ELEMENT_TABLE_SIZE - 1 );
+        while ( _elementNamesHTML[ index ] != null )
+            index = ( index + 1 ) & ( ELEMENT_TABLE_SIZE - 1 );
+        _elementNamesHTML[ index ] = tagName;
+        _elementTypesHTML[ index ] = type;
+    }
+
+
+    /**
+     * Returns the index of a tag name in the element name table, comparing
+     * names ignoring case, or -1 if the element type has no element class of
+     * its own.
+     */
+    private static int getElementTypeIndex( String tagName )
+    {
+        int    index;
+        int    length;
+        String name;
+
+        length = tagName.length();
+        index = hashElementName( tagName ) & ( ELEMENT_TABLE_SIZE - 1 );
+        while ( ( name = _elementNamesHTML[ index ] ) != null )
+        {
+            if ( name == tagName )
+                return index;
+            if ( name.length() == length )
+            {
+                int i = 0;
+                while ( i < length && name.charAt( i ) == toUpperCase( tagName.charAt( i ) ) )
+                    ++i;
+                if ( i == length )
+                    return index;
+            }
+            index = ( index + 1 ) & ( ELEMENT_TABLE_SIZE - 1 );
         }
+        return -1;
+    }
+
+
+    /**
+     * Returns the element type of a tag name, or -1 if the element type has
+     * no element class of its own.
+     */
+    private static int getElementType( String tagName )
+    {
+        int index = getElementTypeIndex( tagName );
+        return ( index == -1 ) ? -1 : _elementTypesHTML[ index ];
+    }
+
+
+    /**
+     * Returns the hash code of the upper case form of an element name.
+     */
+    private static int hashElementName( String tagName )
+    {
+        int hash = 0;
+        for ( int i = 0 ; i < tagName.length() ; ++i )
+            hash = hash * 31 + toUpperCase( tagName.charAt( i ) );
+        return hash;
+    }
+
+
+    /**
+     * Converts a character of an element name to upper case, as {@link
+     * String#toUpperCase(Locale)} does for the English locale.
+     */
+    private static char toUpperCase( char ch )
+    {
+        if ( ch < 0x80 )
+            return ( ch >= 'a' && ch <= 'z' ) ? (char) ( ch - ( 'a' - 'A' ) ) : ch;
+        return Character.toUpperCase( ch );
     }
 
 
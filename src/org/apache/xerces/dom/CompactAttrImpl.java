@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.TypeInfo;
+
+/**
+ * A view of an attribute of a {@link CompactDocumentImpl}. Its index is the
+ * row of the attribute in the attribute arrays of the document. The value
+ * of the attribute is not represented as a child text node: an attribute
+ * has no children.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactAttrImpl
+    extends CompactNodeImpl
+    implements Attr, TypeInfo {
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of an attribute. */
+    CompactAttrImpl(CompactDocumentImpl document, int index) {
+        super(document, index);
+    } // <init>(CompactDocumentImpl,int)
+
+    //
+    // Node methods
+    //
+
+    public String getNodeName() {
+        return fDocument.fNameQName[fDocument.fAttrName[fIndex]];
+    }
+
+    public String getNodeValue() throws DOMException {
+        return fDocument.getAttrValue(fIndex);
+    }
+
+    public void setNodeValue(String nodeValue) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public short getNodeType() {
+        return Node.ATTRIBUTE_NODE;
+    }
+
+    public Node getParentNode() {
+        return null;
+    }
+
+    public Node getFirstChild() {
+        return null;
+    }
+
+    public Node getLastChild() {
+        return null;
+    }
+
+    public Node getPreviousSibling() {
+        return null;
+    }
+
+    public Node getNextSibling() {
+        return null;
+    }
+
+    public boolean hasChildNodes() {
+        return false;
+    }
+
+    public Node item(int index) {
+        return null;
+    }
+
+    public int getLength() {
+        return 0;
+    }
+
+    public String getNamespaceURI() {
+        return fDocument.fNameURI[fDocument.fAttrName[fIndex]];
+    }
+
+    public String getPrefix() {
+        return fDocument.fNamePrefix[fDocument.fAttrName[fIndex]];
+    }
+
+    public String getLocalName() {
+        return fDocument.fNameLocal[fDocument.fAttrName[fIndex]];
+    }
+
+    //
+    // Attr methods
+    //
+
+    public String getName() {
+        return getNodeName();
+    }
+
+    public boolean getSpecified() {
+        return (fDocument.fAttrFlags[fIndex] & CompactDocumentImpl.ATTR_SPECIFIED) != 0;
+    }
+
+    public String getValue() {
+        return fDocument.getAttrValue(fIndex);
+    }
+
+    public void setValue(String value) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public Element getOwnerElement() {
+        return (Element) fDocument.getNode(fDocument.fAttrOwner[fIndex]);
+    }
+
+    public TypeInfo getSchemaTypeInfo() {
+        return this;
+    }
+
+    public boolean isId() {
+        return (fDocument.fAttrFlags[fIndex] & CompactDocumentImpl.ATTR_ID) != 0;
+    }
+
+    //
+    // TypeInfo methods
+    //
+
+    /** The type of attributes is not kept. */
+    public String getTypeName() {
+        return null;
+    }
+
+    public String getTypeNamespace() {
+        return null;
+    }
+
+    public boolean isDerivedFrom(String typeNamespaceArg, String typeNameArg,
+            int derivationMethod) {
+        return false;
+    }
+
+    //
+    // Package visible methods
+    //
+
+    int getElementAncestor() {
+        return fDocument.fAttrOwner[fIndex];
+    }
+
+    int getTreeIndex() {
+        return fDocument.fAttrOwner[fIndex];
+    }
+
+    int getAttrIndex() {
+        return fIndex;
+    }
+
+} // class CompactAttrImpl
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * The attributes of an element of a {@link CompactDocumentImpl}, in the
+ * order of their names as in {@link AttributeMap}.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class CompactAttributeMap
+    implements NamedNodeMap {
+
+    //
+    // Data
+    //
+
+    /** The document. */
+    private final CompactDocumentImpl fDocument;
+
+    /** The element. */
+    private final int fElement;
+
+    /** The first attribute of the element. */
+    private final int fFirst;
+
+    /** The index after the last attribute of the element. */
+    private final int fEnd;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs the attribute map of an element. */
+    CompactAttributeMap(CompactDocumentImpl document, int element) {
+        fDocument = document;
+        fElement = element;
+        fFirst = document.fNodeAttributes[element];
+        fEnd = document.getAttributesEnd(element);
+    } // <init>(CompactDocumentImpl,int)
+
+    //
+    // NamedNodeMap methods
+    //
+
+    public Node getNamedItem(String name) {
+        return getAttr(fDocument.getAttribute(fElement, name));
+    }
+
+    public Node setNamedItem(Node arg) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public Node removeNamedItem(String name) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public Node item(int index) {
+        return (index >= 0 && index < fEnd - fFirst) ? getAttr(fFirst + index) : null;
+    }
+
+    public int getLength() {
+        return fEnd - fFirst;
+    }
+
+    public Node getNamedItemNS(String namespaceURI, String localName)
+        throws DOMException {
+        return getAttr(fDocument.getAttributeNS(fElement, namespaceURI, localName));
+    }
+
+    public Node setNamedItemNS(Node arg) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public Node removeNamedItemNS(String namespaceURI, String localName)
+        throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Returns a view of an attribute, or null for -1. */
+    private Node getAttr(int attr) {
+        return attr != -1 ? new CompactAttrImpl(fDocument, attr) : null;
+    }
+
+} // class CompactAttributeMap
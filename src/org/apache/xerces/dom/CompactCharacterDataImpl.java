@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The base class of the views of text nodes, CDATA sections and comments
+ * of a {@link CompactDocumentImpl}.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public abstract class CompactCharacterDataImpl
+    extends CompactNodeImpl
+    implements CharacterData {
+
+    //
+    // Constants
+    //
+
+    /** The children of character data. */
+    private static final NodeList EMPTY_LIST = new NodeList() {
+        public Node item(int index) {
+            return null;
+        }
+        public int getLength() {
+            return 0;
+        }
+    };
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of a character data node. */
+    CompactCharacterDataImpl(CompactDocumentImpl document, int index) {
+        super(document, index);
+    } // <init>(CompactDocumentImpl,int)
+
+    //
+    // Node methods
+    //
+
+    public String getNodeValue() throws DOMException {
+        return fDocument.getData(fIndex);
+    }
+
+    public void setNodeValue(String nodeValue) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    /**
+     * Returns an empty list: the node cannot be its own list of children,
+     * since getLength() is the length of its data.
+     */
+    public NodeList getChildNodes() {
+        return EMPTY_LIST;
+    }
+
+    //
+    // CharacterData methods
+    //
+
+    public int getLength() {
+        return fDocument.fNodeLength[fIndex];
+    }
+
+    public String getData() throws DOMException {
+        return fDocument.getData(fIndex);
+    }
+
+    public void setData(String data) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public String substringData(int offset, int count) throws DOMException {
+        final int length = fDocument.fNodeLength[fIndex];
+        if (count < 0 || offset < 0 || offset > length) {
+            String msg = DOMMessageFormatter.formatMessage(DOMMessageFormatter.DOM_DOMAIN, "INDEX_SIZE_ERR", null);
+            throw new DOMException(DOMException.INDEX_SIZE_ERR, msg);
+        }
+        final String data = fDocument.getData(fIndex);
+        return data.substring(offset, Math.min(offset + count, length));
+    }
+
+    public void appendData(String arg) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public void insertData(int offset, String arg) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public void deleteData(int offset, int count) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public void replaceData(int offset, int count, String arg) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+} // class CompactCharacterDataImpl
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.Comment;
+import org.w3c.dom.Node;
+
+/**
+ * A view of a comment of a {@link CompactDocumentImpl}.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactCommentImpl
+    extends CompactCharacterDataImpl
+    implements Comment {
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of a comment. */
+    CompactCommentImpl(CompactDocumentImpl document, int index) {
+        super(document, index);
+    } // <init>(CompactDocumentImpl,int)
+
+    //
+    // Node methods
+    //
+
+    public String getNodeName() {
+        return "#comment";
+    }
+
+    public short getNodeType() {
+        return Node.COMMENT_NODE;
+    }
+
+} // class CompactCommentImpl
@@ -0,0 +1,473 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLString;
+import org.w3c.dom.Node;
+
+/**
+ * Builds a {@link CompactDocumentImpl} from the events of a document, in
+ * document order. The arrays grow as nodes are added and are trimmed to
+ * their final size when the document is made.
+ * <p>
+ * Adjacent character data is merged into one text node, as the DOM parser
+ * does, except that element content whitespace is kept apart from other
+ * text since it is stored in a separate buffer.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactDocumentBuilder {
+
+    //
+    // Constants
+    //
+
+    /** Initial number of nodes and attributes. */
+    private static final int INITIAL_NODES = 256;
+
+    /** Initial number of characters. */
+    private static final int INITIAL_CHARS = 4096;
+
+    /** Initial size of the name hash table; a power of two. */
+    private static final int INITIAL_NAMES = 64;
+
+    //
+    // Data
+    //
+
+    // nodes
+
+    int fNodeCount;
+    byte[] fNodeType = new byte[INITIAL_NODES];
+    int[] fNodeParent = new int[INITIAL_NODES];
+    int[] fNodeFirstChild = new int[INITIAL_NODES];
+    int[] fNodeNextSibling = new int[INITIAL_NODES];
+    int[] fNodePrevSibling = new int[INITIAL_NODES];
+    int[] fNodeName = new int[INITIAL_NODES];
+    int[] fNodeOffset = new int[INITIAL_NODES];
+    int[] fNodeLength = new int[INITIAL_NODES];
+    int[] fNodeAttributes = new int[INITIAL_NODES];
+
+    // attributes
+
+    int fAttrCount;
+    int[] fAttrOwner = new int[INITIAL_NODES];
+    int[] fAttrName = new int[INITIAL_NODES];
+    int[] fAttrOffset = new int[INITIAL_NODES];
+    int[] fAttrLength = new int[INITIAL_NODES];
+    byte[] fAttrFlags = new byte[INITIAL_NODES];
+
+    // names
+
+    private int fNameCount;
+    String[] fNameQName = new String[INITIAL_NAMES];
+    String[] fNameURI = new String[INITIAL_NAMES];
+    String[] fNameLocal = new String[INITIAL_NAMES];
+    String[] fNamePrefix = new String[INITIAL_NAMES];
+
+    /** Open addressing hash table of the names, holding their index + 1. */
+    private int[] fNameTable = new int[INITIAL_NAMES * 2];
+
+    // characters
+
+    private int fTextLength;
+    char[] fText = new char[INITIAL_CHARS];
+    private int fDataLength;
+    char[] fData = new char[INITIAL_CHARS];
+
+    // document information
+
+    int fDocumentElement = -1;
+    String fDocumentURI;
+    String fInputEncoding;
+    String fXmlEncoding;
+    String fXmlVersion;
+    boolean fXmlStandalone;
+
+    // state
+
+    /** Whether names are namespace aware. */
+    private final boolean fNamespaceAware;
+
+    /** The node to which children are added. */
+    private int fCurrentNode;
+
+    /** The text node to which character data may be added, or -1. */
+    private int fLastText = -1;
+
+    /** Whether character data is added to a CDATA section. */
+    private boolean fInCDATA;
+
+    /** Whether no character data has been added to the CDATA section yet. */
+    private boolean fCDATAStart;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a builder.
+     *
+     * @param namespaceAware Whether the nodes have namespaces and local
+     *                       names, or are DOM Level 1 nodes.
+     */
+    public CompactDocumentBuilder(boolean namespaceAware) {
+        fNamespaceAware = namespaceAware;
+        fNodeCount = 1;
+        fNodeType[0] = Node.DOCUMENT_NODE;
+        fNodeParent[0] = -1;
+        fNodeFirstChild[0] = -1;
+        fNodeNextSibling[0] = -1;
+        fNodePrevSibling[0] = -1;
+    } // <init>(boolean)
+
+    //
+    // Public methods
+    //
+
+    /** Sets the document URI and the encoding the document was read in. */
+    public void setDocumentInfo(String documentURI, String inputEncoding) {
+        fDocumentURI = documentURI;
+        fInputEncoding = inputEncoding;
+    } // setDocumentInfo(String,String)
+
+    /** Sets the information of the XML declaration. */
+    public void setXMLDecl(String version, String encoding, String standalone) {
+        fXmlVersion = version;
+        fXmlEncoding = encoding;
+        fXmlStandalone = "yes".equals(standalone);
+    } // setXMLDecl(String,String,String)
+
+    /**
+     * Starts an element. Its attributes are added next with {@link
+     * #addAttribute}.
+     */
+    public void startElement(QName element) {
+        final int node = addNode(Node.ELEMENT_NODE);
+        fNodeName[node] = addName(element);
+        fNodeOffset[node] = fTextLength;
+        fNodeAttributes[node] = fAttrCount;
+        if (fCurrentNode == 0) {
+            fDocumentElement = node;
+        }
+        fCurrentNode = node;
+    } // startElement(QName)
+
+    /**
+     * Adds an attribute to the element started last. The attributes of an
+     * element are kept in the order of their names, as in the DOM parser.
+     */
+    public void addAttribute(QName name, String value, boolean specified,
+            boolean id) {
+        final int attr = fAttrCount;
+        if (attr == fAttrOwner.length) {
+            final int size = attr * 2;
+            fAttrOwner = resize(fAttrOwner, size);
+            fAttrName = resize(fAttrName, size);
+            fAttrOffset = resize(fAttrOffset, size);
+            fAttrLength = resize(fAttrLength, size);
+            fAttrFlags = resize(fAttrFlags, size);
+        }
+        final int nameIndex = addName(name);
+        // keep the attributes sorted by name, as AttributeMap does
+        final String qname = fNameQName[nameIndex];
+        final int first = fNodeAttributes[fCurrentNode];
+        int index = attr;
+        while (index > first && qname.compareTo(fNameQName[fAttrName[index - 1]]) < 0) {
+            --index;
+        }
+        if (index < attr) {
+            final int count = attr - index;
+            System.arraycopy(fAttrName, index, fAttrName, index + 1, count);
+            System.arraycopy(fAttrOffset, index, fAttrOffset, index + 1, count);
+            System.arraycopy(fAttrLength, index, fAttrLength, index + 1, count);
+            System.arraycopy(fAttrFlags, index, fAttrFlags, index + 1, count);
+        }
+        fAttrOwner[attr] = fCurrentNode;
+        fAttrName[index] = nameIndex;
+        fAttrOffset[index] = fDataLength;
+        fAttrLength[index] = value.length();
+        fAttrFlags[index] = (byte) ((specified ? CompactDocumentImpl.ATTR_SPECIFIED : 0)
+                | (id ? CompactDocumentImpl.ATTR_ID : 0));
+        ensureData(value.length());
+        value.getChars(0, value.length(), fData, fDataLength);
+        fDataLength += value.length();
+        fAttrCount = attr + 1;
+    } // addAttribute(QName,String,boolean,boolean)
+
+    /** Ends the current element. */
+    public void endElement() {
+        final int node = fCurrentNode;
+        fNodeLength[node] = fTextLength - fNodeOffset[node];
+        fCurrentNode = fNodeParent[node];
+        fLastText = -1;
+    } // endElement()
+
+    /** Adds character data. */
+    public void characters(XMLString text) {
+        if (text.length == 0) {
+            return;
+        }
+        final int type = fInCDATA ? Node.CDATA_SECTION_NODE : Node.TEXT_NODE;
+        if (fLastText == -1 || fNodeType[fLastText] != type || fCDATAStart) {
+            fCDATAStart = false;
+            fLastText = addNode(type);
+            fNodeOffset[fLastText] = fTextLength;
+            fNodeLength[fLastText] = 0;
+        }
+        ensureText(text.length);
+        System.arraycopy(text.ch, text.offset, fText, fTextLength, text.length);
+        fTextLength += text.length;
+        fNodeLength[fLastText] += text.length;
+    } // characters(XMLString)
+
+    /** Adds element content whitespace. */
+    public void ignorableWhitespace(XMLString text) {
+        final int type = Node.TEXT_NODE | CompactDocumentImpl.WHITESPACE;
+        if (fLastText == -1 || fNodeType[fLastText] != type) {
+            fLastText = addNode(type);
+            fNodeOffset[fLastText] = fDataLength;
+            fNodeLength[fLastText] = 0;
+        }
+        fNodeLength[fLastText] += addData(text);
+    } // ignorableWhitespace(XMLString)
+
+    /**
+     * Starts a CDATA section, which receives the following characters. As
+     * in the DOM parser, an empty CDATA section makes no node.
+     */
+    public void startCDATA() {
+        fInCDATA = true;
+        fCDATAStart = true;
+    } // startCDATA()
+
+    /** Ends a CDATA section. */
+    public void endCDATA() {
+        fInCDATA = false;
+        if (!fCDATAStart) {
+            fLastText = -1;
+        }
+        fCDATAStart = false;
+    } // endCDATA()
+
+    /** Adds a comment. */
+    public void comment(XMLString text) {
+        final int node = addNode(Node.COMMENT_NODE);
+        fNodeOffset[node] = fDataLength;
+        fNodeLength[node] = addData(text);
+    } // comment(XMLString)
+
+    /** Adds a processing instruction. */
+    public void processingInstruction(String target, XMLString data) {
+        final int node = addNode(Node.PROCESSING_INSTRUCTION_NODE);
+        fNodeName[node] = addName(target, null, null, null);
+        fNodeOffset[node] = fDataLength;
+        fNodeLength[node] = addData(data);
+    } // processingInstruction(String,XMLString)
+
+    /**
+     * Returns the document built. The arrays are trimmed to their size and
+     * handed to the document, so the builder cannot be used any more.
+     */
+    public CompactDocumentImpl getDocument() {
+        final int nodes = fNodeCount;
+        fNodeType = resize(fNodeType, nodes);
+        fNodeParent = resize(fNodeParent, nodes);
+        fNodeFirstChild = resize(fNodeFirstChild, nodes);
+        fNodeNextSibling = resize(fNodeNextSibling, nodes);
+        fNodePrevSibling = resize(fNodePrevSibling, nodes);
+        fNodeName = resize(fNodeName, nodes);
+        fNodeOffset = resize(fNodeOffset, nodes);
+        fNodeLength = resize(fNodeLength, nodes);
+        fNodeAttributes = resize(fNodeAttributes, nodes);
+        final int attrs = fAttrCount;
+        fAttrOwner = resize(fAttrOwner, attrs);
+        fAttrName = resize(fAttrName, attrs);
+        fAttrOffset = resize(fAttrOffset, attrs);
+        fAttrLength = resize(fAttrLength, attrs);
+        fAttrFlags = resize(fAttrFlags, attrs);
+        final int names = fNameCount;
+        fNameQName = resize(fNameQName, names);
+        fNameURI = resize(fNameURI, names);
+        fNameLocal = resize(fNameLocal, names);
+        fNamePrefix = resize(fNamePrefix, names);
+        fNameTable = null;
+        char[] text = new char[fTextLength];
+        System.arraycopy(fText, 0, text, 0, fTextLength);
+        fText = text;
+        char[] data = new char[fDataLength];
+        System.arraycopy(fData, 0, data, 0, fDataLength);
+        fData = data;
+        return new CompactDocumentImpl(this);
+    } // getDocument():CompactDocumentImpl
+
+    //
+    // Private methods
+    //
+
+    /** Appends a node to the children of the current node. */
+    private int addNode(int type) {
+        final int node = fNodeCount;
+        if (node == fNodeType.length) {
+            final int size = node * 2;
+            fNodeType = resize(fNodeType, size);
+            fNodeParent = resize(fNodeParent, size);
+            fNodeFirstChild = resize(fNodeFirstChild, size);
+            fNodeNextSibling = resize(fNodeNextSibling, size);
+            fNodePrevSibling = resize(fNodePrevSibling, size);
+            fNodeName = resize(fNodeName, size);
+            fNodeOffset = resize(fNodeOffset, size);
+            fNodeLength = resize(fNodeLength, size);
+            fNodeAttributes = resize(fNodeAttributes, size);
+        }
+        final int parent = fCurrentNode;
+        fNodeType[node] = (byte) type;
+        fNodeParent[node] = parent;
+        fNodeFirstChild[node] = -1;
+        fNodeNextSibling[node] = -1;
+        fNodeName[node] = -1;
+        fNodeAttributes[node] = -1;
+        // as in ChildNode, the previous sibling of the first child is the
+        // last child
+        final int first = fNodeFirstChild[parent];
+        if (first == -1) {
+            fNodeFirstChild[parent] = node;
+            fNodePrevSibling[node] = node;
+        }
+        else {
+            final int last = fNodePrevSibling[first];
+            fNodeNextSibling[last] = node;
+            fNodePrevSibling[node] = last;
+            fNodePrevSibling[first] = node;
+        }
+        fNodeCount = node + 1;
+        fLastText = -1;
+        return node;
+    } // addNode(int):int
+
+    /** Returns the index of a name, adding it to the name table. */
+    private int addName(QName name) {
+        if (fNamespaceAware) {
+            // the scanner reports the prefix of xmlns as the empty string
+            final String prefix = (name.prefix != null && name.prefix.length() == 0)
+                ? null : name.prefix;
+            return addName(name.rawname, name.uri, name.localpart, prefix);
+        }
+        return addName(name.rawname, null, null, null);
+    } // addName(QName):int
+
+    /** Returns the index of a name, adding it to the name table. */
+    private int addName(String qname, String uri, String localName, String prefix) {
+        int mask = fNameTable.length - 1;
+        int hash = qname.hashCode() * 31 + (uri != null ? uri.hashCode() : 0);
+        int slot = hash & mask;
+        int entry;
+        while ((entry = fNameTable[slot]) != 0) {
+            final int name = entry - 1;
+            if ((fNameQName[name] == qname || fNameQName[name].equals(qname))
+                    && (fNameURI[name] == uri || (uri != null && uri.equals(fNameURI[name])))
+                    && (fNameLocal[name] == null) == (localName == null)) {
+                return name;
+            }
+            slot = (slot + 1) & mask;
+        }
+        final int name = fNameCount++;
+        if (name == fNameQName.length) {
+            final int size = name * 2;
+            fNameQName = resize(fNameQName, size);
+            fNameURI = resize(fNameURI, size);
+            fNameLocal = resize(fNameLocal, size);
+            fNamePrefix = resize(fNamePrefix, size);
+            rehashNames(size * 2);
+            mask = fNameTable.length - 1;
+            slot = hash & mask;
+            while (fNameTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        fNameQName[name] = qname;
+        fNameURI[name] = uri;
+        fNameLocal[name] = localName;
+        fNamePrefix[name] = prefix;
+        fNameTable[slot] = name + 1;
+        return name;
+    } // addName(String,String,String,String):int
+
+    /** Rebuilds the name hash table with the given size. */
+    private void rehashNames(int size) {
+        final int mask = size - 1;
+        fNameTable = new int[size];
+        for (int name = 0; name < fNameCount - 1; ++name) {
+            final String uri = fNameURI[name];
+            int slot = (fNameQName[name].hashCode() * 31
+                    + (uri != null ? uri.hashCode() : 0)) & mask;
+            while (fNameTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            fNameTable[slot] = name + 1;
+        }
+    } // rehashNames(int)
+
+    /** Appends characters to the data buffer and returns their length. */
+    private int addData(XMLString text) {
+        ensureData(text.length);
+        System.arraycopy(text.ch, text.offset, fData, fDataLength, text.length);
+        fDataLength += text.length;
+        return text.length;
+    } // addData(XMLString):int
+
+    /** Makes room for the given number of characters of text. */
+    private void ensureText(int length) {
+        if (fTextLength + length > fText.length) {
+            char[] text = new char[Math.max(fText.length * 2, fTextLength + length)];
+            System.arraycopy(fText, 0, text, 0, fTextLength);
+            fText = text;
+        }
+    } // ensureText(int)
+
+    /** Makes room for the given number of characters of data. */
+    private void ensureData(int length) {
+        if (fDataLength + length > fData.length) {
+            char[] data = new char[Math.max(fData.length * 2, fDataLength + length)];
+            System.arraycopy(fData, 0, data, 0, fDataLength);
+            fData = data;
+        }
+    } // ensureData(int)
+
+    private static byte[] resize(byte[] array, int size) {
+        byte[] newArray = new byte[size];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, size));
+        return newArray;
+    } // resize(byte[],int):byte[]
+
+    private static int[] resize(int[] array, int size) {
+        int[] newArray = new int[size];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, size));
+        return newArray;
+    } // resize(int[],int):int[]
+
+    private static String[] resize(String[] array, int size) {
+        String[] newArray = new String[size];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, size));
+        return newArray;
+    } // resize(String[],int):String[]
+
+} // class CompactDocumentBuilder
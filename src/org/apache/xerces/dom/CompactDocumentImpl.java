@@ -0,0 +1,678 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import java.util.Hashtable;
+
+import org.apache.xerces.util.URI;
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Comment;
+import org.w3c.dom.DOMConfiguration;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.EntityReference;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.Text;
+
+/**
+ * An immutable DOM document which keeps the whole tree in primitive arrays.
+ * <p>
+ * Every node of the tree is a row of a set of parallel arrays: its type,
+ * parent, first child, next and previous sibling, name and the offset and
+ * length of its characters. The characters of text and CDATA sections are
+ * stored, in document order, in one shared character buffer; those of
+ * attribute values, comments and processing instructions are kept in a
+ * second one. Attributes are rows of another set of arrays, stored after
+ * one another for each element. Names are kept once in a name table.
+ * <p>
+ * The objects returned by the DOM methods are lightweight views made when
+ * they are asked for, holding only the document and the row of the node.
+ * A view is not kept by the document, so the same node may be returned as
+ * different objects: nodes must be compared with <code>isSameNode</code> or
+ * <code>equals</code> rather than with <code>==</code>. Navigation, reading
+ * names and values, <code>getTextContent</code> and
+ * <code>getElementsByTagName</code> work on the arrays and never build the
+ * tree as objects.
+ * <p>
+ * The document is read only: methods which would modify it throw a
+ * <code>DOMException</code> with the code
+ * <code>NO_MODIFICATION_ALLOWED_ERR</code>, and the factory methods throw
+ * <code>NOT_SUPPORTED_ERR</code>. Since it never changes, a document may
+ * be read by several threads at once. The document type declaration and
+ * entity references are not represented; the replacement text of entities
+ * appears in their place.
+ * <p>
+ * Documents are built by {@link CompactDocumentBuilder}, for instance with
+ * {@link org.apache.xerces.parsers.CompactDOMParser}.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactDocumentImpl
+    extends CompactNodeImpl
+    implements Document {
+
+    //
+    // Constants
+    //
+
+    /** Flag of a text node holding element content whitespace. */
+    static final byte WHITESPACE = 0x40;
+
+    /** Mask of the node type in the node type array. */
+    static final byte TYPE_MASK = 0x1F;
+
+    /** Attribute flag: the attribute was specified in the document. */
+    static final byte ATTR_SPECIFIED = 0x01;
+
+    /** Attribute flag: the attribute is of type ID. */
+    static final byte ATTR_ID = 0x02;
+
+    /** The XML namespace. */
+    static final String XML_URI = "http://www.w3.org/XML/1998/namespace";
+
+    /** The namespace of namespace declarations. */
+    static final String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+
+    //
+    // Data
+    //
+
+    // nodes; the document itself is node 0
+
+    /** Number of nodes. */
+    final int fNodeCount;
+
+    /** Node types, possibly with the {@link #WHITESPACE} flag. */
+    final byte[] fNodeType;
+
+    /** Parent of each node, or -1. */
+    final int[] fNodeParent;
+
+    /** First child of each node, or -1. */
+    final int[] fNodeFirstChild;
+
+    /** Next sibling of each node, or -1. */
+    final int[] fNodeNextSibling;
+
+    /**
+     * Previous sibling of each node. As in {@link ChildNode}, the previous
+     * sibling of a first child is the last child of its parent.
+     */
+    final int[] fNodePrevSibling;
+
+    /** Name of each element and target of each processing instruction. */
+    final int[] fNodeName;
+
+    /**
+     * Offset of the characters of each node. For text nodes and CDATA
+     * sections it is an offset in {@link #fText}; for element content
+     * whitespace, comments and processing instructions, in {@link #fData};
+     * for elements, the offset in {@link #fText} of their text content.
+     */
+    final int[] fNodeOffset;
+
+    /** Length of the characters of each node. */
+    final int[] fNodeLength;
+
+    /** First attribute of each element. */
+    final int[] fNodeAttributes;
+
+    // attributes
+
+    /** Number of attributes. */
+    final int fAttrCount;
+
+    /** Element of each attribute. */
+    final int[] fAttrOwner;
+
+    /** Name of each attribute. */
+    final int[] fAttrName;
+
+    /** Offset of the value of each attribute in {@link #fData}. */
+    final int[] fAttrOffset;
+
+    /** Length of the value of each attribute. */
+    final int[] fAttrLength;
+
+    /** Flags of each attribute. */
+    final byte[] fAttrFlags;
+
+    // names
+
+    /** Qualified names. */
+    final String[] fNameQName;
+
+    /** Namespace names. */
+    final String[] fNameURI;
+
+    /** Local names, null in documents built without namespaces. */
+    final String[] fNameLocal;
+
+    /** Prefixes. */
+    final String[] fNamePrefix;
+
+    // characters
+
+    /** Characters of text nodes and CDATA sections, in document order. */
+    final char[] fText;
+
+    /** Characters of attribute values, comments and processing instructions. */
+    final char[] fData;
+
+    // document information
+
+    /** Index of the document element, or -1. */
+    final int fDocumentElement;
+
+    /** Document URI. */
+    final String fDocumentURI;
+
+    /** Input encoding. */
+    final String fInputEncoding;
+
+    /** Encoding in the XML declaration. */
+    final String fXmlEncoding;
+
+    /** Version in the XML declaration. */
+    final String fXmlVersion;
+
+    /** Standalone in the XML declaration. */
+    final boolean fXmlStandalone;
+
+    /** Elements by ID, built on first use. */
+    private Hashtable fIdentifiers;
+
+    /** User data of the nodes, by node. */
+    private Hashtable fUserData;
+
+    /** Whether error checking is strict. Nothing depends on it. */
+    private boolean fErrorChecking = true;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a document from the arrays filled by a builder. */
+    CompactDocumentImpl(CompactDocumentBuilder builder) {
+        super(null, 0);
+        fNodeCount = builder.fNodeCount;
+        fNodeType = builder.fNodeType;
+        fNodeParent = builder.fNodeParent;
+        fNodeFirstChild = builder.fNodeFirstChild;
+        fNodeNextSibling = builder.fNodeNextSibling;
+        fNodePrevSibling = builder.fNodePrevSibling;
+        fNodeName = builder.fNodeName;
+        fNodeOffset = builder.fNodeOffset;
+        fNodeLength = builder.fNodeLength;
+        fNodeAttributes = builder.fNodeAttributes;
+        fAttrCount = builder.fAttrCount;
+        fAttrOwner = builder.fAttrOwner;
+        fAttrName = builder.fAttrName;
+        fAttrOffset = builder.fAttrOffset;
+        fAttrLength = builder.fAttrLength;
+        fAttrFlags = builder.fAttrFlags;
+        fNameQName = builder.fNameQName;
+        fNameURI = builder.fNameURI;
+        fNameLocal = builder.fNameLocal;
+        fNamePrefix = builder.fNamePrefix;
+        fText = builder.fText;
+        fData = builder.fData;
+        fDocumentElement = builder.fDocumentElement;
+        fDocumentURI = builder.fDocumentURI;
+        fInputEncoding = builder.fInputEncoding;
+        fXmlEncoding = builder.fXmlEncoding;
+        fXmlVersion = builder.fXmlVersion;
+        fXmlStandalone = builder.fXmlStandalone;
+    } // <init>(CompactDocumentBuilder)
+
+    //
+    // Public methods
+    //
+
+    /** Returns the number of nodes of the document, not counting attributes. */
+    public int getNodeCount() {
+        return fNodeCount;
+    } // getNodeCount():int
+
+    /** Returns the number of attributes in the document. */
+    public int getAttributeCount() {
+        return fAttrCount;
+    } // getAttributeCount():int
+
+    //
+    // Node methods
+    //
+
+    public String getNodeName() {
+        return "#document";
+    }
+
+    public short getNodeType() {
+        return Node.DOCUMENT_NODE;
+    }
+
+    public Document getOwnerDocument() {
+        return null;
+    }
+
+    public String getTextContent() throws DOMException {
+        return null;
+    }
+
+    public String getBaseURI() {
+        return fDocumentURI;
+    }
+
+    //
+    // Document methods
+    //
+
+    public DocumentType getDoctype() {
+        return null;
+    }
+
+    public DOMImplementation getImplementation() {
+        return CoreDOMImplementationImpl.getDOMImplementation();
+    }
+
+    public Element getDocumentElement() {
+        return (Element) getNode(fDocumentElement);
+    }
+
+    public NodeList getElementsByTagName(String tagname) {
+        return new CompactElementList(this, 0, tagname);
+    }
+
+    public NodeList getElementsByTagNameNS(String namespaceURI, String localName) {
+        return new CompactElementList(this, 0, namespaceURI, localName);
+    }
+
+    public Element getElementById(String elementId) {
+        Integer element = (Integer) getIdentifiers().get(elementId);
+        return element != null ? (Element) getNode(element.intValue()) : null;
+    }
+
+    public Element createElement(String tagName) throws DOMException {
+        throw notSupported();
+    }
+
+    public DocumentFragment createDocumentFragment() {
+        throw notSupported();
+    }
+
+    public Text createTextNode(String data) {
+        throw notSupported();
+    }
+
+    public Comment createComment(String data) {
+        throw notSupported();
+    }
+
+    public CDATASection createCDATASection(String data) throws DOMException {
+        throw notSupported();
+    }
+
+    public ProcessingInstruction createProcessingInstruction(String target,
+            String data) throws DOMException {
+        throw notSupported();
+    }
+
+    public Attr createAttribute(String name) throws DOMException {
+        throw notSupported();
+    }
+
+    public EntityReference createEntityReference(String name) throws DOMException {
+        throw notSupported();
+    }
+
+    public Node importNode(Node importedNode, boolean deep) throws DOMException {
+        throw notSupported();
+    }
+
+    public Element createElementNS(String namespaceURI, String qualifiedName)
+        throws DOMException {
+        throw notSupported();
+    }
+
+    public Attr createAttributeNS(String namespaceURI, String qualifiedName)
+        throws DOMException {
+        throw notSupported();
+    }
+
+    public String getInputEncoding() {
+        return fInputEncoding;
+    }
+
+    public String getXmlEncoding() {
+        return fXmlEncoding;
+    }
+
+    public boolean getXmlStandalone() {
+        return fXmlStandalone;
+    }
+
+    public void setXmlStandalone(boolean xmlStandalone) throws DOMException {
+        throw noModification();
+    }
+
+    public String getXmlVersion() {
+        return fXmlVersion != null ? fXmlVersion : "1.0";
+    }
+
+    public void setXmlVersion(String xmlVersion) throws DOMException {
+        throw noModification();
+    }
+
+    public boolean getStrictErrorChecking() {
+        return fErrorChecking;
+    }
+
+    public void setStrictErrorChecking(boolean strictErrorChecking) {
+        fErrorChecking = strictErrorChecking;
+    }
+
+    public String getDocumentURI() {
+        return fDocumentURI;
+    }
+
+    public void setDocumentURI(String documentURI) {
+        throw noModification();
+    }
+
+    public Node adoptNode(Node source) throws DOMException {
+        throw noModification();
+    }
+
+    /** The document has no configuration, since it is never normalized. */
+    public DOMConfiguration getDomConfig() {
+        return null;
+    }
+
+    /** Does nothing: the document is normalized when it is built. */
+    public void normalizeDocument() {
+    }
+
+    public Node renameNode(Node n, String namespaceURI, String qualifiedName)
+        throws DOMException {
+        throw noModification();
+    }
+
+    //
+    // Package visible methods
+    //
+
+    /** Returns a view of a node, or null for -1. */
+    CompactNodeImpl getNode(int node) {
+        if (node == -1) {
+            return null;
+        }
+        switch (fNodeType[node] & TYPE_MASK) {
+            case Node.ELEMENT_NODE:
+                return new CompactElementImpl(this, node);
+            case Node.TEXT_NODE:
+                return new CompactTextImpl(this, node);
+            case Node.CDATA_SECTION_NODE:
+                return new CompactCDATASectionImpl(this, node);
+            case Node.COMMENT_NODE:
+                return new CompactCommentImpl(this, node);
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                return new CompactProcessingInstructionImpl(this, node);
+            default:
+                return this;
+        }
+    } // getNode(int):CompactNodeImpl
+
+    /** Returns the index after the last descendant of a node. */
+    int getSubtreeEnd(int node) {
+        for (int n = node; n > 0; n = fNodeParent[n]) {
+            if (fNodeNextSibling[n] != -1) {
+                return fNodeNextSibling[n];
+            }
+        }
+        return fNodeCount;
+    } // getSubtreeEnd(int):int
+
+    /** Returns the index after the last attribute of an element. */
+    int getAttributesEnd(int element) {
+        int attr = fNodeAttributes[element];
+        while (attr < fAttrCount && fAttrOwner[attr] == element) {
+            ++attr;
+        }
+        return attr;
+    } // getAttributesEnd(int):int
+
+    /**
+     * Returns the attribute of an element with the given qualified name, or
+     * -1.
+     */
+    int getAttribute(int element, String name) {
+        final int end = getAttributesEnd(element);
+        for (int attr = fNodeAttributes[element]; attr < end; ++attr) {
+            if (fNameQName[fAttrName[attr]].equals(name)) {
+                return attr;
+            }
+        }
+        return -1;
+    } // getAttribute(int,String):int
+
+    /**
+     * Returns the attribute of an element with the given namespace and
+     * local name, or -1.
+     */
+    int getAttributeNS(int element, String namespaceURI, String localName) {
+        if (namespaceURI != null && namespaceURI.length() == 0) {
+            namespaceURI = null;
+        }
+        final int end = getAttributesEnd(element);
+        for (int attr = fNodeAttributes[element]; attr < end; ++attr) {
+            final int name = fAttrName[attr];
+            final String uri = fNameURI[name];
+            if (namespaceURI == null ? uri != null : !namespaceURI.equals(uri)) {
+                continue;
+            }
+            final String local = fNameLocal[name];
+            if (local != null ? local.equals(localName)
+                    : fNameQName[name].equals(localName)) {
+                return attr;
+            }
+        }
+        return -1;
+    } // getAttributeNS(int,String,String):int
+
+    /** Returns the value of an attribute. */
+    String getAttrValue(int attr) {
+        return new String(fData, fAttrOffset[attr], fAttrLength[attr]);
+    } // getAttrValue(int):String
+
+    /** Returns the characters of a text, comment or processing instruction. */
+    String getData(int node) {
+        final char[] chars = (fNodeType[node] == Node.TEXT_NODE
+                || fNodeType[node] == Node.CDATA_SECTION_NODE) ? fText : fData;
+        return new String(chars, fNodeOffset[node], fNodeLength[node]);
+    } // getData(int):String
+
+    /** Returns the text content of an element. */
+    String getElementText(int element) {
+        return new String(fText, fNodeOffset[element], fNodeLength[element]);
+    } // getElementText(int):String
+
+    /**
+     * Returns the nearest element which is the node or contains it, or -1.
+     */
+    int getElementAncestor(int node) {
+        if (node == 0) {
+            return fDocumentElement;
+        }
+        while (node > 0 && (fNodeType[node] & TYPE_MASK) != Node.ELEMENT_NODE) {
+            node = fNodeParent[node];
+        }
+        return node > 0 ? node : -1;
+    } // getElementAncestor(int):int
+
+    /** Returns the parent element of a node, or -1. */
+    int getParentElement(int node) {
+        final int parent = fNodeParent[node];
+        return parent > 0 ? parent : -1;
+    } // getParentElement(int):int
+
+    /**
+     * Looks up the namespace bound to a prefix in the scope of an element,
+     * as {@link NodeImpl#lookupNamespaceURI(String)} does.
+     */
+    String lookupNamespaceURI(int element, String prefix) {
+        for (; element != -1; element = getParentElement(element)) {
+            final int name = fNodeName[element];
+            final String namespace = fNameURI[name];
+            if (namespace != null) {
+                final String elementPrefix = fNamePrefix[name];
+                if (prefix == null ? elementPrefix == null : prefix.equals(elementPrefix)) {
+                    return namespace;
+                }
+            }
+            final int end = getAttributesEnd(element);
+            for (int attr = fNodeAttributes[element]; attr < end; ++attr) {
+                final int attrName = fAttrName[attr];
+                if (!XMLNS_URI.equals(fNameURI[attrName])) {
+                    continue;
+                }
+                if (prefix == null ? fNameQName[attrName].equals("xmlns")
+                        : ("xmlns".equals(fNamePrefix[attrName])
+                        && prefix.equals(fNameLocal[attrName]))) {
+                    return fAttrLength[attr] > 0 ? getAttrValue(attr) : null;
+                }
+            }
+        }
+        return null;
+    } // lookupNamespaceURI(int,String):String
+
+    /**
+     * Looks up a prefix bound to a namespace in the scope of an element, as
+     * {@link NodeImpl#lookupPrefix(String)} does.
+     */
+    String lookupPrefix(int element, String namespaceURI) {
+        final int scope = element;
+        for (; element != -1; element = getParentElement(element)) {
+            final int name = fNodeName[element];
+            final String prefix = fNamePrefix[name];
+            if (prefix != null && namespaceURI.equals(fNameURI[name])
+                    && namespaceURI.equals(lookupNamespaceURI(scope, prefix))) {
+                return prefix;
+            }
+            final int end = getAttributesEnd(element);
+            for (int attr = fNodeAttributes[element]; attr < end; ++attr) {
+                final int attrName = fAttrName[attr];
+                if (XMLNS_URI.equals(fNameURI[attrName])
+                        && "xmlns".equals(fNamePrefix[attrName])
+                        && namespaceURI.equals(getAttrValue(attr))) {
+                    final String local = fNameLocal[attrName];
+                    if (namespaceURI.equals(lookupNamespaceURI(scope, local))) {
+                        return local;
+                    }
+                }
+            }
+        }
+        return null;
+    } // lookupPrefix(int,String):String
+
+    /**
+     * Returns the base URI of an element, resolving its xml:base attribute
+     * as {@link ElementImpl#getBaseURI()} does.
+     */
+    String getBaseURI(int element) {
+        if (element == -1) {
+            return fDocumentURI;
+        }
+        final int attr = getAttributeNS(element, XML_URI, "base");
+        if (attr != -1 && fAttrLength[attr] != 0) {
+            try {
+                URI uri = new URI(getAttrValue(attr), true);
+                if (uri.isAbsoluteURI()) {
+                    return uri.toString();
+                }
+                String parentBaseURI = getBaseURI(getParentElement(element));
+                if (parentBaseURI != null) {
+                    uri.absolutize(new URI(parentBaseURI));
+                    return uri.toString();
+                }
+                return null;
+            }
+            catch (URI.MalformedURIException e) {
+                return null;
+            }
+        }
+        return getBaseURI(getParentElement(element));
+    } // getBaseURI(int):String
+
+    /** Returns the user data of a node, creating it if asked. */
+    synchronized Hashtable getUserData(CompactNodeImpl node, boolean create) {
+        if (fUserData == null) {
+            if (!create) {
+                return null;
+            }
+            fUserData = new Hashtable();
+        }
+        Hashtable userData = (Hashtable) fUserData.get(node);
+        if (userData == null && create) {
+            userData = new Hashtable();
+            fUserData.put(node, userData);
+        }
+        return userData;
+    } // getUserData(CompactNodeImpl,boolean):Hashtable
+
+    /** Returns a DOMException for an operation which modifies the document. */
+    static DOMException noModification() {
+        String msg = DOMMessageFormatter.formatMessage(DOMMessageFormatter.DOM_DOMAIN, "NO_MODIFICATION_ALLOWED_ERR", null);
+        return new DOMException(DOMException.NO_MODIFICATION_ALLOWED_ERR, msg);
+    } // noModification():DOMException
+
+    /** Returns a DOMException for an operation which is not supported. */
+    static DOMException notSupported() {
+        String msg = DOMMessageFormatter.formatMessage(DOMMessageFormatter.DOM_DOMAIN, "NOT_SUPPORTED_ERR", null);
+        return new DOMException(DOMException.NOT_SUPPORTED_ERR, msg);
+    } // notSupported():DOMException
+
+    //
+    // Private methods
+    //
+
+    /** Returns the elements by ID, finding them on first use. */
+    private synchronized Hashtable getIdentifiers() {
+        if (fIdentifiers == null) {
+            fIdentifiers = new Hashtable();
+            for (int attr = 0; attr < fAttrCount; ++attr) {
+                if ((fAttrFlags[attr] & ATTR_ID) != 0) {
+                    String id = getAttrValue(attr);
+                    if (!fIdentifiers.containsKey(id)) {
+                        fIdentifiers.put(id, new Integer(fAttrOwner[attr]));
+                    }
+                }
+            }
+        }
+        return fIdentifiers;
+    } // getIdentifiers():Hashtable
+
+} // class CompactDocumentImpl
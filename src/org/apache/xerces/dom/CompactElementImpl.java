@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.TypeInfo;
+
+/**
+ * A view of an element of a {@link CompactDocumentImpl}. The text content
+ * of an element is read from the text buffer of the document in one piece,
+ * since the text of its descendants is stored there in document order.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactElementImpl
+    extends CompactNodeImpl
+    implements Element, TypeInfo {
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of an element. */
+    CompactElementImpl(CompactDocumentImpl document, int index) {
+        super(document, index);
+    } // <init>(CompactDocumentImpl,int)
+
+    //
+    // Node methods
+    //
+
+    public String getNodeName() {
+        return fDocument.fNameQName[fDocument.fNodeName[fIndex]];
+    }
+
+    public short getNodeType() {
+        return Node.ELEMENT_NODE;
+    }
+
+    public NamedNodeMap getAttributes() {
+        return new CompactAttributeMap(fDocument, fIndex);
+    }
+
+    public boolean hasAttributes() {
+        final int attr = fDocument.fNodeAttributes[fIndex];
+        return attr < fDocument.fAttrCount && fDocument.fAttrOwner[attr] == fIndex;
+    }
+
+    public String getNamespaceURI() {
+        return fDocument.fNameURI[fDocument.fNodeName[fIndex]];
+    }
+
+    public String getPrefix() {
+        return fDocument.fNamePrefix[fDocument.fNodeName[fIndex]];
+    }
+
+    public String getLocalName() {
+        return fDocument.fNameLocal[fDocument.fNodeName[fIndex]];
+    }
+
+    public String getTextContent() throws DOMException {
+        return fDocument.getElementText(fIndex);
+    }
+
+    public String getBaseURI() {
+        return fDocument.getBaseURI(fIndex);
+    }
+
+    //
+    // Element methods
+    //
+
+    public String getTagName() {
+        return getNodeName();
+    }
+
+    public String getAttribute(String name) {
+        final int attr = fDocument.getAttribute(fIndex, name);
+        return attr != -1 ? fDocument.getAttrValue(attr) : "";
+    }
+
+    public void setAttribute(String name, String value) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public void removeAttribute(String name) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public Attr getAttributeNode(String name) {
+        final int attr = fDocument.getAttribute(fIndex, name);
+        return attr != -1 ? new CompactAttrImpl(fDocument, attr) : null;
+    }
+
+    public Attr setAttributeNode(Attr newAttr) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public Attr removeAttributeNode(Attr oldAttr) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public NodeList getElementsByTagName(String name) {
+        return new CompactElementList(fDocument, fIndex, name);
+    }
+
+    public String getAttributeNS(String namespaceURI, String localName)
+        throws DOMException {
+        final int attr = fDocument.getAttributeNS(fIndex, namespaceURI, localName);
+        return attr != -1 ? fDocument.getAttrValue(attr) : "";
+    }
+
+    public void setAttributeNS(String namespaceURI, String qualifiedName,
+            String value) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public void removeAttributeNS(String namespaceURI, String localName)
+        throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public Attr getAttributeNodeNS(String namespaceURI, String localName)
+        throws DOMException {
+        final int attr = fDocument.getAttributeNS(fIndex, namespaceURI, localName);
+        return attr != -1 ? new CompactAttrImpl(fDocument, attr) : null;
+    }
+
+    public Attr setAttributeNodeNS(Attr newAttr) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public NodeList getElementsByTagNameNS(String namespaceURI, String localName)
+        throws DOMException {
+        return new CompactElementList(fDocument, fIndex, namespaceURI, localName);
+    }
+
+    public boolean hasAttribute(String name) {
+        return fDocument.getAttribute(fIndex, name) != -1;
+    }
+
+    public boolean hasAttributeNS(String namespaceURI, String localName)
+        throws DOMException {
+        return fDocument.getAttributeNS(fIndex, namespaceURI, localName) != -1;
+    }
+
+    public TypeInfo getSchemaTypeInfo() {
+        return this;
+    }
+
+    public void setIdAttribute(String name, boolean isId) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public void setIdAttributeNS(String namespaceURI, String localName,
+            boolean isId) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public void setIdAttributeNode(Attr idAttr, boolean isId) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    //
+    // TypeInfo methods
+    //
+
+    /** The type of elements is not kept. */
+    public String getTypeName() {
+        return null;
+    }
+
+    public String getTypeNamespace() {
+        return null;
+    }
+
+    public boolean isDerivedFrom(String typeNamespaceArg, String typeNameArg,
+            int derivationMethod) {
+        return false;
+    }
+
+} // class CompactElementImpl
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The elements of a subtree of a {@link CompactDocumentImpl} with a given
+ * name, in document order, as returned by <code>getElementsByTagName</code>
+ * and <code>getElementsByTagNameNS</code>.
+ * <p>
+ * Since the descendants of a node are the nodes stored after it up to the
+ * end of its subtree, the list is found by scanning that range of the node
+ * arrays. The names of the document which match are decided once, so that
+ * each node is checked by looking up its name. As in {@link
+ * DeepNodeListImpl}, the range is only scanned as far as the items asked
+ * for.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class CompactElementList
+    implements NodeList {
+
+    //
+    // Data
+    //
+
+    /** The document. */
+    private final CompactDocumentImpl fDocument;
+
+    /** Whether each name of the document matches. */
+    private final boolean[] fMatches;
+
+    /** The index after the last node to scan. */
+    private final int fEnd;
+
+    /** The next node to scan. */
+    private int fNext;
+
+    /** The elements found so far. */
+    private int[] fElements = new int[8];
+
+    /** Number of elements found so far. */
+    private int fLength = 0;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs the list of descendants of a node with a tag name. */
+    CompactElementList(CompactDocumentImpl document, int root, String tagName) {
+        this(document, root);
+        final boolean all = "*".equals(tagName);
+        for (int i = 0; i < fMatches.length; ++i) {
+            fMatches[i] = all || document.fNameQName[i].equals(tagName);
+        }
+    } // <init>(CompactDocumentImpl,int,String)
+
+    /**
+     * Constructs the list of descendants of a node with a namespace and a
+     * local name.
+     */
+    CompactElementList(CompactDocumentImpl document, int root,
+            String namespaceURI, String localName) {
+        this(document, root);
+        if (namespaceURI != null && namespaceURI.length() == 0) {
+            namespaceURI = null;
+        }
+        final boolean anyNamespace = "*".equals(namespaceURI);
+        final boolean anyName = "*".equals(localName);
+        for (int i = 0; i < fMatches.length; ++i) {
+            final String uri = document.fNameURI[i];
+            final String local = document.fNameLocal[i];
+            fMatches[i] = (anyNamespace || (namespaceURI == null ? uri == null
+                    : namespaceURI.equals(uri)))
+                && (anyName || (local != null && local.equals(localName)));
+        }
+    } // <init>(CompactDocumentImpl,int,String,String)
+
+    /** Constructs a list of descendants of a node. */
+    private CompactElementList(CompactDocumentImpl document, int root) {
+        fDocument = document;
+        fMatches = new boolean[document.fNameQName.length];
+        fNext = root + 1;
+        fEnd = document.getSubtreeEnd(root);
+    } // <init>(CompactDocumentImpl,int)
+
+    //
+    // NodeList methods
+    //
+
+    public Node item(int index) {
+        if (index < 0) {
+            return null;
+        }
+        scan(index + 1);
+        return index < fLength ? fDocument.getNode(fElements[index]) : null;
+    }
+
+    public int getLength() {
+        scan(Integer.MAX_VALUE);
+        return fLength;
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Scans the subtree until the given number of elements is found. */
+    private void scan(int length) {
+        final CompactDocumentImpl document = fDocument;
+        final byte[] types = document.fNodeType;
+        final int[] names = document.fNodeName;
+        int node = fNext;
+        while (fLength < length && node < fEnd) {
+            if (types[node] == Node.ELEMENT_NODE && fMatches[names[node]]) {
+                if (fLength == fElements.length) {
+                    int[] elements = new int[fLength * 2];
+                    System.arraycopy(fElements, 0, elements, 0, fLength);
+                    fElements = elements;
+                }
+                fElements[fLength++] = node;
+            }
+            ++node;
+        }
+        fNext = node;
+    } // scan(int)
+
+} // class CompactElementList
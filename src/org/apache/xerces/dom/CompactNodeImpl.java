@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import java.util.Hashtable;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.UserDataHandler;
+
+/**
+ * The base class of the views of the nodes of a {@link CompactDocumentImpl}.
+ * A view holds the document and the index of the node; everything else is
+ * read from the arrays of the document. A node is its own list of children,
+ * as {@link ParentNode} is.
+ * <p>
+ * Two views of the same node are equal, so nodes may be used as keys of
+ * hash tables, but they are not necessarily the same object.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public abstract class CompactNodeImpl
+    implements Node, NodeList {
+
+    //
+    // Data
+    //
+
+    /** The document of the node. */
+    final CompactDocumentImpl fDocument;
+
+    /** The index of the node in the arrays of the document. */
+    final int fIndex;
+
+    /** Position of the child last returned by {@link #item(int)}, or -1. */
+    private int fChildIndex = -1;
+
+    /** The child last returned by {@link #item(int)}. */
+    private int fChild = -1;
+
+    /** Number of children, or -1 if not counted yet. */
+    private int fChildCount = -1;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of a node; the document passes null. */
+    CompactNodeImpl(CompactDocumentImpl document, int index) {
+        fDocument = document != null ? document : (CompactDocumentImpl) this;
+        fIndex = index;
+    } // <init>(CompactDocumentImpl,int)
+
+    //
+    // Node methods
+    //
+
+    public String getNodeValue() throws DOMException {
+        return null;
+    }
+
+    /** Does nothing, as the value of this type of node is null. */
+    public void setNodeValue(String nodeValue) throws DOMException {
+    }
+
+    public Node getParentNode() {
+        return fDocument.getNode(fDocument.fNodeParent[fIndex]);
+    }
+
+    public NodeList getChildNodes() {
+        return this;
+    }
+
+    public Node getFirstChild() {
+        return fDocument.getNode(fDocument.fNodeFirstChild[fIndex]);
+    }
+
+    public Node getLastChild() {
+        final int first = fDocument.fNodeFirstChild[fIndex];
+        return first != -1 ? fDocument.getNode(fDocument.fNodePrevSibling[first]) : null;
+    }
+
+    public Node getPreviousSibling() {
+        final int parent = fDocument.fNodeParent[fIndex];
+        if (parent == -1 || fDocument.fNodeFirstChild[parent] == fIndex) {
+            return null;
+        }
+        return fDocument.getNode(fDocument.fNodePrevSibling[fIndex]);
+    }
+
+    public Node getNextSibling() {
+        return fDocument.getNode(fDocument.fNodeNextSibling[fIndex]);
+    }
+
+    public NamedNodeMap getAttributes() {
+        return null;
+    }
+
+    public Document getOwnerDocument() {
+        return fDocument;
+    }
+
+    public Node insertBefore(Node newChild, Node refChild) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public Node replaceChild(Node newChild, Node oldChild) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public Node removeChild(Node oldChild) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public Node appendChild(Node newChild) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public boolean hasChildNodes() {
+        return fDocument.fNodeFirstChild[fIndex] != -1;
+    }
+
+    /** Nodes of a compact document cannot be cloned. */
+    public Node cloneNode(boolean deep) {
+        throw CompactDocumentImpl.notSupported();
+    }
+
+    /** Does nothing: the document is normalized when it is built. */
+    public void normalize() {
+    }
+
+    public boolean isSupported(String feature, String version) {
+        return CoreDOMImplementationImpl.getDOMImplementation().hasFeature(feature, version);
+    }
+
+    public String getNamespaceURI() {
+        return null;
+    }
+
+    public String getPrefix() {
+        return null;
+    }
+
+    public void setPrefix(String prefix) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public String getLocalName() {
+        return null;
+    }
+
+    public boolean hasAttributes() {
+        return false;
+    }
+
+    /** Only elements, processing instructions and documents have one. */
+    public String getBaseURI() {
+        return null;
+    }
+
+    public short compareDocumentPosition(Node other) throws DOMException {
+        if (isSameNode(other)) {
+            return 0;
+        }
+        if (!(other instanceof CompactNodeImpl)
+                || ((CompactNodeImpl) other).fDocument != fDocument) {
+            // as in NodeImpl, order disconnected nodes arbitrarily but
+            // consistently
+            return (short) (Node.DOCUMENT_POSITION_DISCONNECTED
+                    | Node.DOCUMENT_POSITION_IMPLEMENTATION_SPECIFIC
+                    | (System.identityHashCode(fDocument)
+                        > System.identityHashCode(other.getOwnerDocument())
+                        ? Node.DOCUMENT_POSITION_PRECEDING
+                        : Node.DOCUMENT_POSITION_FOLLOWING));
+        }
+        // nodes are stored in document order, attributes right after their
+        // element
+        final CompactNodeImpl node = (CompactNodeImpl) other;
+        final int thisNode = getTreeIndex();
+        final int otherNode = node.getTreeIndex();
+        final int thisAttr = getAttrIndex();
+        final int otherAttr = node.getAttrIndex();
+        if (thisNode == otherNode) {
+            if (thisAttr == -1) {
+                return Node.DOCUMENT_POSITION_CONTAINED_BY | Node.DOCUMENT_POSITION_FOLLOWING;
+            }
+            if (otherAttr == -1) {
+                return Node.DOCUMENT_POSITION_CONTAINS | Node.DOCUMENT_POSITION_PRECEDING;
+            }
+            return (short) (Node.DOCUMENT_POSITION_IMPLEMENTATION_SPECIFIC
+                    | (otherAttr < thisAttr ? Node.DOCUMENT_POSITION_PRECEDING
+                    : Node.DOCUMENT_POSITION_FOLLOWING));
+        }
+        if (otherNode < thisNode) {
+            if (otherAttr == -1 && thisNode < fDocument.getSubtreeEnd(otherNode)) {
+                return Node.DOCUMENT_POSITION_CONTAINS | Node.DOCUMENT_POSITION_PRECEDING;
+            }
+            return Node.DOCUMENT_POSITION_PRECEDING;
+        }
+        if (thisAttr == -1 && otherNode < fDocument.getSubtreeEnd(thisNode)) {
+            return Node.DOCUMENT_POSITION_CONTAINED_BY | Node.DOCUMENT_POSITION_FOLLOWING;
+        }
+        return Node.DOCUMENT_POSITION_FOLLOWING;
+    }
+
+    public String getTextContent() throws DOMException {
+        return getNodeValue();
+    }
+
+    public void setTextContent(String textContent) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public boolean isSameNode(Node other) {
+        return equals(other);
+    }
+
+    public String lookupPrefix(String namespaceURI) {
+        if (namespaceURI == null) {
+            return null;
+        }
+        final int element = getElementAncestor();
+        return element != -1 ? fDocument.lookupPrefix(element, namespaceURI) : null;
+    }
+
+    public boolean isDefaultNamespace(String namespaceURI) {
+        final String namespace = lookupNamespaceURI(null);
+        return namespaceURI == null ? namespace == null : namespaceURI.equals(namespace);
+    }
+
+    public String lookupNamespaceURI(String prefix) {
+        final int element = getElementAncestor();
+        return element != -1 ? fDocument.lookupNamespaceURI(element, prefix) : null;
+    }
+
+    public boolean isEqualNode(Node arg) {
+        if (isSameNode(arg)) {
+            return true;
+        }
+        if (arg == null || arg.getNodeType() != getNodeType()
+                || !equals(getNodeName(), arg.getNodeName())
+                || !equals(getLocalName(), arg.getLocalName())
+                || !equals(getNamespaceURI(), arg.getNamespaceURI())
+                || !equals(getPrefix(), arg.getPrefix())
+                || !equals(getNodeValue(), arg.getNodeValue())) {
+            return false;
+        }
+        final NamedNodeMap attributes = getAttributes();
+        if (attributes != null) {
+            final NamedNodeMap argAttributes = arg.getAttributes();
+            final int length = attributes.getLength();
+            if (argAttributes == null || argAttributes.getLength() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; ++i) {
+                final Node attr = attributes.item(i);
+                final Node argAttr = attr.getLocalName() == null
+                    ? argAttributes.getNamedItem(attr.getNodeName())
+                    : argAttributes.getNamedItemNS(attr.getNamespaceURI(), attr.getLocalName());
+                if (argAttr == null || !attr.isEqualNode(argAttr)) {
+                    return false;
+                }
+            }
+        }
+        // the value of an attribute has been compared already
+        if (getNodeType() != Node.ATTRIBUTE_NODE) {
+            Node child = getFirstChild();
+            Node argChild = arg.getFirstChild();
+            while (child != null && argChild != null) {
+                if (!child.isEqualNode(argChild)) {
+                    return false;
+                }
+                child = child.getNextSibling();
+                argChild = argChild.getNextSibling();
+            }
+            return child == argChild;
+        }
+        return true;
+    }
+
+    public Object getFeature(String feature, String version) {
+        return isSupported(feature, version) ? this : null;
+    }
+
+    /**
+     * Associates an object to a key on this node. The handler is never
+     * called, since the nodes of a compact document are never cloned,
+     * imported or renamed.
+     */
+    public Object setUserData(String key, Object data, UserDataHandler handler) {
+        if (data == null) {
+            Hashtable userData = fDocument.getUserData(this, false);
+            return userData != null ? userData.remove(key) : null;
+        }
+        return fDocument.getUserData(this, true).put(key, data);
+    }
+
+    public Object getUserData(String key) {
+        Hashtable userData = fDocument.getUserData(this, false);
+        return userData != null ? userData.get(key) : null;
+    }
+
+    //
+    // NodeList methods
+    //
+
+    public Node item(int index) {
+        if (index < 0) {
+            return null;
+        }
+        int child;
+        int i;
+        if (fChildIndex != -1 && fChildIndex <= index) {
+            // continue from the child last returned, which is never set for
+            // the document since it may be shared by several threads
+            child = fChild;
+            i = fChildIndex;
+        }
+        else {
+            child = fDocument.fNodeFirstChild[fIndex];
+            i = 0;
+        }
+        for (; child != -1 && i < index; ++i) {
+            child = fDocument.fNodeNextSibling[child];
+        }
+        if (child == -1) {
+            return null;
+        }
+        if (fIndex != 0) {
+            fChildIndex = i;
+            fChild = child;
+        }
+        return fDocument.getNode(child);
+    }
+
+    public int getLength() {
+        if (fChildCount == -1) {
+            int count = 0;
+            for (int child = fDocument.fNodeFirstChild[fIndex]; child != -1;
+                    child = fDocument.fNodeNextSibling[child]) {
+                ++count;
+            }
+            fChildCount = count;
+        }
+        return fChildCount;
+    }
+
+    //
+    // Object methods
+    //
+
+    /** Two views are equal if they are views of the same node. */
+    public boolean equals(Object object) {
+        if (object == this) {
+            return true;
+        }
+        if (object == null || object.getClass() != getClass()) {
+            return false;
+        }
+        final CompactNodeImpl node = (CompactNodeImpl) object;
+        return node.fIndex == fIndex && node.fDocument == fDocument;
+    }
+
+    public int hashCode() {
+        return System.identityHashCode(fDocument) * 31 + fIndex;
+    }
+
+    public String toString() {
+        return "[" + getNodeName() + ": " + getNodeValue() + "]";
+    }
+
+    //
+    // Package visible methods
+    //
+
+    /**
+     * Returns the element which is this node or is the nearest ancestor of
+     * this node, or -1. For the document it is the document element, for an
+     * attribute its element.
+     */
+    int getElementAncestor() {
+        return fDocument.getElementAncestor(fIndex);
+    }
+
+    /** Returns the node of the tree holding this node, for ordering. */
+    int getTreeIndex() {
+        return fIndex;
+    }
+
+    /** Returns the attribute this node is, or -1. */
+    int getAttrIndex() {
+        return -1;
+    }
+
+    /** Compares two strings which may be null. */
+    static boolean equals(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
+
+} // class CompactNodeImpl
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+/**
+ * A view of a processing instruction of a {@link CompactDocumentImpl}.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactProcessingInstructionImpl
+    extends CompactNodeImpl
+    implements ProcessingInstruction {
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of a processing instruction. */
+    CompactProcessingInstructionImpl(CompactDocumentImpl document, int index) {
+        super(document, index);
+    } // <init>(CompactDocumentImpl,int)
+
+    //
+    // Node methods
+    //
+
+    public String getNodeName() {
+        return getTarget();
+    }
+
+    public short getNodeType() {
+        return Node.PROCESSING_INSTRUCTION_NODE;
+    }
+
+    public String getNodeValue() throws DOMException {
+        return fDocument.getData(fIndex);
+    }
+
+    public void setNodeValue(String nodeValue) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    /** The base URI of a processing instruction is that of its parent. */
+    public String getBaseURI() {
+        return fDocument.getBaseURI(getElementAncestor());
+    }
+
+    //
+    // ProcessingInstruction methods
+    //
+
+    public String getTarget() {
+        return fDocument.fNameQName[fDocument.fNodeName[fIndex]];
+    }
+
+    public String getData() {
+        return fDocument.getData(fIndex);
+    }
+
+    public void setData(String data) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+} // class CompactProcessingInstructionImpl
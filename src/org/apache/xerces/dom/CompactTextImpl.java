@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+/**
+ * A view of a text node of a {@link CompactDocumentImpl}.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactTextImpl
+    extends CompactCharacterDataImpl
+    implements Text {
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of a text node. */
+    CompactTextImpl(CompactDocumentImpl document, int index) {
+        super(document, index);
+    } // <init>(CompactDocumentImpl,int)
+
+    //
+    // Node methods
+    //
+
+    public String getNodeName() {
+        return "#text";
+    }
+
+    public short getNodeType() {
+        return Node.TEXT_NODE;
+    }
+
+    //
+    // Text methods
+    //
+
+    public Text splitText(int offset) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    public boolean isElementContentWhitespace() {
+        return (fDocument.fNodeType[fIndex] & CompactDocumentImpl.WHITESPACE) != 0;
+    }
+
+    public String getWholeText() {
+        final CompactDocumentImpl document = fDocument;
+        final int parent = document.fNodeParent[fIndex];
+        int first = fIndex;
+        while (first != document.fNodeFirstChild[parent]
+                && isText(document.fNodePrevSibling[first])) {
+            first = document.fNodePrevSibling[first];
+        }
+        StringBuffer buffer = new StringBuffer();
+        for (int node = first; node != -1 && isText(node);
+                node = document.fNodeNextSibling[node]) {
+            buffer.append(document.getData(node));
+        }
+        return buffer.toString();
+    }
+
+    public Text replaceWholeText(String content) throws DOMException {
+        throw CompactDocumentImpl.noModification();
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Returns true if a node is a text node or a CDATA section. */
+    private boolean isText(int node) {
+        final int type = fDocument.fNodeType[node] & CompactDocumentImpl.TYPE_MASK;
+        return type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE;
+    }
+
+} // class CompactTextImpl
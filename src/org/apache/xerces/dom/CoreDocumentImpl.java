@@ -1087,7 +1087,7 @@ extends ParentNode implements Document  {
     private ElementImpl replaceRenameElement(ElementImpl el, String namespaceURI, String name) {
         
         // we need to create a new object
-        ElementNSImpl nel = (ElementNSImpl)createElementNS(namespaceURI, name);
+        ElementImpl nel = (ElementImpl)createElementNS(namespaceURI, name);
         
         // register event listeners on new node
         copyEventListeners(el, nel);
@@ -21,12 +21,11 @@ import java.io.Serializable;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Vector;
 
 import org.apache.xerces.dom.events.EventImpl;
 import org.apache.xerces.dom.events.MouseEventImpl;
@@ -118,6 +117,15 @@ public class DocumentImpl
     /** Bypass mutation events firing. */
     protected boolean mutationEvents = false;
 
+    /** Table for the number of listeners registered for each event type. */
+    private HashMap listenerCounts;
+
+    /** Ancestors of the targets of the events being dispatched. */
+    private transient NodeImpl[] eventPath;
+
+    /** The top of the event path stack. */
+    private transient int eventPathSize;
+
     //
     // Constructors
     //
@@ -569,18 +577,20 @@ public class DocumentImpl
      * node here won't be GC'ed as long as some listener is registered on it,
      * since the eventsListeners table will have a reference to the node.
      */
-    protected void setEventListeners(NodeImpl n, Vector listeners) {
+    protected void setEventListeners(NodeImpl n, LTypeList listeners) {
         if (eventListeners == null) {
             eventListeners = new Hashtable();
         }
         if (listeners == null) {
             eventListeners.remove(n);
+            n.hasEventListeners(false);
             if (eventListeners.isEmpty()) {
                 // stop firing events when there isn't any listener
                 mutationEvents = false;
             }
         } else {
             eventListeners.put(n, listeners);
+            n.hasEventListeners(true);
             // turn mutation events on
             mutationEvents = true;
         }
@@ -589,11 +599,42 @@ public class DocumentImpl
     /**
      * Retreive event listener registered on a given node
      */
-    protected Vector getEventListeners(NodeImpl n) {
-        if (eventListeners == null) {
+    protected LTypeList getEventListeners(NodeImpl n) {
+        // the flag is only a hint: it is copied along with the node
+        // when it is serialized or adopted by another document
+        if (eventListeners == null || !n.hasEventListeners()) {
             return null;
         }
-        return (Vector) eventListeners.get(n);
+        return (LTypeList) eventListeners.get(n);
+    }
+
+    /**
+     * Returns the listeners registered on a given node for an event
+     * type, or null if there are none.
+     */
+    private LTypeList getEventListeners(NodeImpl n, String type) {
+        for (LTypeList l = getEventListeners(n); l != null; l = l.next) {
+            if (l.type.equals(type)) {
+                return l;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of listeners registered in this document
+     * for an event type.
+     */
+    private LCount lookupListenerCount(String type) {
+        if (listenerCounts == null) {
+            listenerCounts = new HashMap();
+        }
+        LCount lc = (LCount) listenerCounts.get(type);
+        if (lc == null) {
+            lc = new LCount();
+            listenerCounts.put(type, lc);
+        }
+        return lc;
     }
 
     //
@@ -604,15 +645,13 @@ public class DocumentImpl
     // Constants
     //
 
+    /** NON-DOM INTERNAL: An empty list of listener entries. */
+    static final LEntry[] NO_LISTENERS = new LEntry[0];
+
     /*
      * NON-DOM INTERNAL: Class LEntry is just a struct used to represent
      * event listeners registered with this node. Copies of this object
-     * are hung from the nodeListeners Vector.
-     * <p>
-     * I considered using two vectors -- one for capture,
-     * one for bubble -- but decided that since the list of listeners 
-     * is probably short in most cases, it might not be worth spending
-     * the space. ***** REVISIT WHEN WE HAVE MORE EXPERIENCE.
+     * are hung from the LTypeList of their event type.
      */
     class LEntry implements Serializable {
 
@@ -635,6 +674,44 @@ public class DocumentImpl
         }
 
     } // LEntry
+
+    /*
+     * NON-DOM INTERNAL: Class LTypeList holds the listeners registered
+     * with a node for one event type, capturing and non-capturing apart,
+     * each in the order in which they got registered. The lists of a
+     * node are chained and hung from the eventListeners table.
+     * <p>
+     * The arrays are never modified but replaced, so that dispatch can
+     * go through the listeners which were registered when it reached
+     * the node while removals still take effect immediately.
+     */
+    class LTypeList implements Serializable {
+
+        private static final long serialVersionUID = 2709851239870213449L;
+        String type;
+        LEntry[] captures = NO_LISTENERS;
+        LEntry[] bubbles = NO_LISTENERS;
+        LTypeList next;
+
+        /** NON-DOM INTERNAL: Constructor for an empty list. */
+        LTypeList(String type, LTypeList next)
+        {
+            this.type = type;
+            this.next = next;
+        }
+
+        /** Returns true if the entry is still registered. */
+        boolean contains(LEntry le) {
+            LEntry[] entries = le.useCapture ? captures : bubbles;
+            for (int i = 0; i < entries.length; ++i) {
+                if (entries[i] == le) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    } // LTypeList
 	
     /**
      * Introduced in DOM Level 2. <p> Register an event listener with this
@@ -659,15 +736,21 @@ public class DocumentImpl
         // Simplest way to code that is to zap the previous entry, if any.
         removeEventListener(node, type, listener, useCapture);
 	    
-        Vector nodeListeners = getEventListeners(node);
-        if(nodeListeners == null) {
-            nodeListeners = new Vector();
+        LTypeList nodeListeners = getEventListeners(node, type);
+        if (nodeListeners == null) {
+            nodeListeners = new LTypeList(type, getEventListeners(node));
             setEventListeners(node, nodeListeners);
         }
-        nodeListeners.addElement(new LEntry(type, listener, useCapture));
+        LEntry le = new LEntry(type, listener, useCapture);
+        if (useCapture) {
+            nodeListeners.captures = append(nodeListeners.captures, le);
+        }
+        else {
+            nodeListeners.bubbles = append(nodeListeners.bubbles, le);
+        }
 	    
         // Record active listener
-        LCount lc = LCount.lookup(type);
+        LCount lc = lookupListenerCount(type);
         if (useCapture) {
             ++lc.captures;
             ++lc.total;
@@ -697,24 +780,29 @@ public class DocumentImpl
         // If this couldn't be a valid listener registration, ignore request
         if (type == null || type.length() == 0 || listener == null)
             return;
-        Vector nodeListeners = getEventListeners(node);
+        LTypeList nodeListeners = getEventListeners(node, type);
         if (nodeListeners == null)
             return;
 
         // Note that addListener has previously ensured that 
         // each listener may be registered only once per type per phase.
-        // count-down is OK for deletions!
-        for (int i = nodeListeners.size() - 1; i >= 0; --i) {
-            LEntry le = (LEntry) nodeListeners.elementAt(i);
-            if (le.useCapture == useCapture && le.listener == listener && 
-                le.type.equals(type)) {
-                nodeListeners.removeElementAt(i);
+        LEntry[] entries = useCapture ? nodeListeners.captures : nodeListeners.bubbles;
+        for (int i = entries.length - 1; i >= 0; --i) {
+            if (entries[i].listener == listener) {
+                if (useCapture) {
+                    nodeListeners.captures = remove(entries, i);
+                }
+                else {
+                    nodeListeners.bubbles = remove(entries, i);
+                }
                 // Storage management: Discard empty listener lists
-                if (nodeListeners.size() == 0)
-                    setEventListeners(node, null);
+                if (nodeListeners.captures.length == 0 &&
+                    nodeListeners.bubbles.length == 0) {
+                    removeTypeList(node, nodeListeners);
+                }
 
                 // Remove active listener
-                LCount lc = LCount.lookup(type);
+                LCount lc = lookupListenerCount(type);
                 if (useCapture) {
                     --lc.captures;
                     --lc.total;
@@ -730,11 +818,49 @@ public class DocumentImpl
     } // removeEventListener(NodeImpl,String,EventListener,boolean) :void
 
     protected void copyEventListeners(NodeImpl src, NodeImpl tgt) {
-        Vector nodeListeners = getEventListeners(src);
-        if (nodeListeners == null) {
-            return;
+        for (LTypeList l = getEventListeners(src); l != null; l = l.next) {
+            for (int i = 0; i < l.captures.length; ++i) {
+                addEventListener(tgt, l.type, l.captures[i].listener, true);
+            }
+            for (int i = 0; i < l.bubbles.length; ++i) {
+                addEventListener(tgt, l.type, l.bubbles[i].listener, false);
+            }
+        }
+    }
+
+    /** Unlinks the listeners of one event type from a node. */
+    private void removeTypeList(NodeImpl node, LTypeList list) {
+        LTypeList first = getEventListeners(node);
+        if (first == list) {
+            setEventListeners(node, list.next);
+        }
+        else {
+            LTypeList l = first;
+            while (l.next != list) {
+                l = l.next;
+            }
+            l.next = list.next;
+        }
+    }
+
+    /** Returns a copy of the entries with another one at the end. */
+    private static LEntry[] append(LEntry[] entries, LEntry le) {
+        LEntry[] newentries = new LEntry[entries.length + 1];
+        System.arraycopy(entries, 0, newentries, 0, entries.length);
+        newentries[entries.length] = le;
+        return newentries;
+    }
+
+    /** Returns a copy of the entries without the one at the given index. */
+    private static LEntry[] remove(LEntry[] entries, int index) {
+        if (entries.length == 1) {
+            return NO_LISTENERS;
         }
-        setEventListeners(tgt, (Vector) nodeListeners.clone());
+        LEntry[] newentries = new LEntry[entries.length - 1];
+        System.arraycopy(entries, 0, newentries, 0, index);
+        System.arraycopy(entries, index + 1, newentries, index,
+                         entries.length - index - 1);
+        return newentries;
     }
 
     /**
@@ -802,7 +928,7 @@ public class DocumentImpl
         }
         
         // If nobody is listening for this event, discard immediately
-        LCount lc = LCount.lookup(evt.getType());
+        LCount lc = lookupListenerCount(evt.getType());
         if (lc.total == 0)
             return evt.preventDefault;
 
@@ -823,44 +949,64 @@ public class DocumentImpl
         // is issued to the Element rather than the Attr
         // and causes a _second_ DOMSubtreeModified in the Element's
         // tree.
-        ArrayList pv = new ArrayList(10);
-        Node p = node;
-        Node n = p.getParentNode();
-        while (n != null) {
-            pv.add(n);
-            p = n;
-            n = n.getParentNode();
+        // The chain is kept on a stack shared by nested dispatches and
+        // is not walked at all when no node listens to this event in a
+        // phase which needs the ancestors.
+        final int pvbase = eventPathSize;
+        if (lc.captures > 0 || (lc.bubbles > 0 && evt.bubbles)) {
+            if (eventPath == null) {
+                eventPath = new NodeImpl[16];
+            }
+            for (NodeImpl n = node.parentNode(); n != null; n = n.parentNode()) {
+                if (eventPathSize == eventPath.length) {
+                    NodeImpl[] newpath = new NodeImpl[eventPathSize * 2];
+                    System.arraycopy(eventPath, 0, newpath, 0, eventPathSize);
+                    eventPath = newpath;
+                }
+                eventPath[eventPathSize++] = n;
+            }
         }
-        
+        try {
+            dispatchEvent(node, evt, lc, pvbase);
+        }
+        finally {
+            // release the chain
+            while (eventPathSize > pvbase) {
+                eventPath[--eventPathSize] = null;
+            }
+        }
+
+        return evt.preventDefault;        
+    } // dispatchEvent(NodeImpl,Event) :boolean
+
+    /**
+     * NON-DOM INTERNAL: Runs the phases of an event once its ancestors
+     * are on the event path stack.
+     * @param node node to dispatch to
+     * @param evt the event being dispatched
+     * @param lc the number of listeners of the event type
+     * @param pvbase the position of the parent of node on the stack
+     */
+    private void dispatchEvent(NodeImpl node, EventImpl evt, LCount lc,
+                               int pvbase) {
+        final int pvsize = eventPathSize - pvbase;
+
         // CAPTURING_PHASE:
         if (lc.captures > 0) {
             evt.eventPhase = Event.CAPTURING_PHASE;
             // Ancestors are scanned, root to target, for 
             // Capturing listeners.
-            for (int j = pv.size() - 1; j >= 0; --j) {
+            for (int j = pvsize - 1; j >= 0; --j) {
                 if (evt.stopPropagation)
                     break;  // Someone set the flag. Phase ends.
 
                 // Handle all capturing listeners on this node
-                NodeImpl nn = (NodeImpl) pv.get(j);
+                NodeImpl nn = eventPath[pvbase + j];
                 evt.currentTarget = nn;
-                Vector nodeListeners = getEventListeners(nn);
+                LTypeList nodeListeners = getEventListeners(nn, evt.type);
                 if (nodeListeners != null) {
-                    Vector nl = (Vector) nodeListeners.clone();
                     // call listeners in the order in which they got registered
-                    int nlsize = nl.size();
-                    for (int i = 0; i < nlsize; i++) {
-                        LEntry le = (LEntry) nl.elementAt(i);
-                        if (le.useCapture && le.type.equals(evt.type) &&
-                            nodeListeners.contains(le)) {
-                            try {
-                                le.listener.handleEvent(evt);
-                            }
-                            catch (Exception e) {
-                                // All exceptions are ignored.
-                            }
-                        }
-                    }
+                    invokeListeners(nodeListeners, nodeListeners.captures, evt);
                 }
             }
         }
@@ -873,23 +1019,10 @@ public class DocumentImpl
             // node are _not_ invoked, even during the capture phase.
             evt.eventPhase = Event.AT_TARGET;
             evt.currentTarget = node;
-            Vector nodeListeners = getEventListeners(node);
+            LTypeList nodeListeners = getEventListeners(node, evt.type);
             if (!evt.stopPropagation && nodeListeners != null) {
-                Vector nl = (Vector) nodeListeners.clone();
                 // call listeners in the order in which they got registered
-                int nlsize = nl.size();
-                for (int i = 0; i < nlsize; i++) {
-                    LEntry le = (LEntry) nl.elementAt(i);
-                    if (!le.useCapture && le.type.equals(evt.type) &&
-                        nodeListeners.contains(le)) {
-                        try {
-                            le.listener.handleEvent(evt);
-                        }
-                        catch (Exception e) {
-                            // All exceptions are ignored.
-                        }
-                    }
-                }
+                invokeListeners(nodeListeners, nodeListeners.bubbles, evt);
             }
             // BUBBLING_PHASE: Ancestors are scanned, target to root, for
             // non-capturing listeners. If the event's preventBubbling flag
@@ -898,32 +1031,18 @@ public class DocumentImpl
             // Note that not all events bubble.
             if (evt.bubbles) {
                 evt.eventPhase = Event.BUBBLING_PHASE;
-                int pvsize = pv.size();
                 for (int j = 0; j < pvsize; j++) {
                     if (evt.stopPropagation)
                         break;  // Someone set the flag. Phase ends.
 
                     // Handle all bubbling listeners on this node
-                    NodeImpl nn = (NodeImpl) pv.get(j);
+                    NodeImpl nn = eventPath[pvbase + j];
                     evt.currentTarget = nn;
-                    nodeListeners = getEventListeners(nn);
+                    nodeListeners = getEventListeners(nn, evt.type);
                     if (nodeListeners != null) {
-                        Vector nl = (Vector) nodeListeners.clone();
                         // call listeners in the order in which they got
                         // registered
-                        int nlsize = nl.size();
-                        for (int i = 0; i < nlsize; i++) {
-                            LEntry le = (LEntry) nl.elementAt(i);
-                            if (!le.useCapture && le.type.equals(evt.type) &&
-                                nodeListeners.contains(le)) {
-                                try {
-                                    le.listener.handleEvent(evt);
-                                }
-                                catch (Exception e) {
-                                    // All exceptions are ignored.
-                                }
-                            }
-                        }
+                        invokeListeners(nodeListeners, nodeListeners.bubbles, evt);
                     }
                 }
             }
@@ -939,9 +1058,29 @@ public class DocumentImpl
             // evt.currentTarget = node;
             // DO_DEFAULT_OPERATION
         }
+    } // dispatchEvent(NodeImpl,EventImpl,LCount,int) :void
 
-        return evt.preventDefault;        
-    } // dispatchEvent(NodeImpl,Event) :boolean
+    /**
+     * NON-DOM INTERNAL: Invokes the listeners of one phase registered on
+     * the current target, skipping those removed in the meantime.
+     * @param nodeListeners the listeners of the node for the event type
+     * @param entries the entries of the phase when the node was reached
+     * @param evt the event being dispatched
+     */
+    private void invokeListeners(LTypeList nodeListeners, LEntry[] entries,
+                                 EventImpl evt) {
+        for (int i = 0; i < entries.length; i++) {
+            LEntry le = entries[i];
+            if (nodeListeners.contains(le)) {
+                try {
+                    le.listener.handleEvent(evt);
+                }
+                catch (Exception e) {
+                    // All exceptions are ignored.
+                }
+            }
+        }
+    } // invokeListeners(LTypeList,LEntry[],EventImpl) :void
 
     /**
      * NON-DOM INTERNAL: DOMNodeInsertedIntoDocument and ...RemovedFrom...
@@ -951,22 +1090,16 @@ public class DocumentImpl
      * Similar to code in dispatchingEventToSubtree however this method
      * is only used on the target node and does not start a dispatching chain
      * on the sibling of the target node as this is not part of the subtree 
-     * ***** At the moment I'm being sloppy and using the normal
-     * capture dispatcher on every node. This could be optimized hugely
-     * by writing a capture engine that tracks our position in the tree to
-     * update the capture chain without repeated chases up to root.
+     * <p>
+     * Unless some node of the document captures the event, it is only
+     * dispatched to the nodes of the subtree which listen to it.
      * @param n target node (that was directly inserted or removed)
      * @param e event to be sent to that node and its subtree
      */
     protected void dispatchEventToSubtree(Node n, Event e) {
         
         ((NodeImpl) n).dispatchEvent(e);
-        if (n.getNodeType() == Node.ELEMENT_NODE) {
-            NamedNodeMap a = n.getAttributes();
-            for (int i = a.getLength() - 1; i >= 0; --i)
-                dispatchingEventToSubtree(a.item(i), e);
-        }
-        dispatchingEventToSubtree(n.getFirstChild(), e);
+        dispatchingEventToSubtree(n, e, lookupListenerCount(e.getType()));
         
     } // dispatchEventToSubtree(NodeImpl,Node,Event) :void
 
@@ -978,20 +1111,43 @@ public class DocumentImpl
      * @param e event to be sent to that node and its subtree
      */
     protected void dispatchingEventToSubtree(Node n, Event e) {
-    	if (n==null) 
-    		return;
-    	
-    	// ***** Recursive implementation. This is excessively expensive,
-        // and should be replaced in conjunction with optimization
-        // mentioned above.
-    	((NodeImpl) n).dispatchEvent(e);
+        if (n == null)
+            return;
+
+        ((NodeImpl) n).dispatchEvent(e);
+        dispatchingEventToSubtree(n, e, lookupListenerCount(e.getType()));
+        dispatchingEventToSubtree(n.getNextSibling(), e);
+    }
+
+    /**
+     * Dispatches event to the attributes and descendants of a node.
+     * Without capturing listeners only the nodes which listen to the
+     * event themselves need to see it. The count of capturing listeners
+     * is read at each node, since listeners may add others.
+     * 
+     * @param n node whose subtree to dispatch to
+     * @param e event to be sent to the subtree
+     * @param lc the listener counts for the event type
+     */
+    private void dispatchingEventToSubtree(Node n, Event e, LCount lc) {
         if (n.getNodeType() == Node.ELEMENT_NODE) {
             NamedNodeMap a = n.getAttributes();
-            for (int i = a.getLength() - 1; i >= 0; --i)
-                dispatchingEventToSubtree(a.item(i), e);
+            for (int i = a.getLength() - 1; i >= 0; --i) {
+                NodeImpl attr = (NodeImpl) a.item(i);
+                if (lc.captures > 0 || attr.hasEventListeners()) {
+                    attr.dispatchEvent(e);
+                }
+                dispatchingEventToSubtree(attr, e, lc);
+            }
+        }
+        for (Node child = n.getFirstChild(); child != null;
+             child = child.getNextSibling()) {
+            NodeImpl node = (NodeImpl) child;
+            if (lc.captures > 0 || node.hasEventListeners()) {
+                node.dispatchEvent(e);
+            }
+            dispatchingEventToSubtree(child, e, lc);
         }
-        dispatchingEventToSubtree(n.getFirstChild(), e);   
-        dispatchingEventToSubtree(n.getNextSibling(), e);
     }
     
     /**
@@ -1053,7 +1209,7 @@ public class DocumentImpl
         // We have to send DOMAttrModified.
         NodeImpl owner = null;
         if (enclosingAttr != null) {
-            LCount lc = LCount.lookup(MutationEventImpl.DOM_ATTR_MODIFIED);
+            LCount lc = lookupListenerCount(MutationEventImpl.DOM_ATTR_MODIFIED);
             owner = (NodeImpl) enclosingAttr.getOwnerElement();
             if (lc.total > 0) {
                 if (owner != null) {
@@ -1072,7 +1228,7 @@ public class DocumentImpl
         // set of changes. 
         // "This event is dispatched after all other events caused by the
         // mutation have been fired."
-        LCount lc = LCount.lookup(MutationEventImpl.DOM_SUBTREE_MODIFIED);
+        LCount lc = lookupListenerCount(MutationEventImpl.DOM_SUBTREE_MODIFIED);
         if (lc.total > 0) {
             MutationEvent me =  new MutationEventImpl();
             me.initMutationEvent(MutationEventImpl.DOM_SUBTREE_MODIFIED,
@@ -1104,7 +1260,7 @@ public class DocumentImpl
         // If we're within the scope of an Attr and DOMAttrModified 
         // was requested, we need to preserve its previous value for
         // that event.
-        LCount lc = LCount.lookup(MutationEventImpl.DOM_ATTR_MODIFIED);
+        LCount lc = lookupListenerCount(MutationEventImpl.DOM_ATTR_MODIFIED);
         if (lc.total > 0) {
             NodeImpl eventAncestor = node;
             while (true) {
@@ -1153,7 +1309,7 @@ public class DocumentImpl
         if (!replace) {
             // MUTATION POST-EVENTS:
             LCount lc =
-                LCount.lookup(MutationEventImpl.DOM_CHARACTER_DATA_MODIFIED);
+                lookupListenerCount(MutationEventImpl.DOM_CHARACTER_DATA_MODIFIED);
             if (lc.total > 0) {
                 MutationEvent me = new MutationEventImpl();
                 me.initMutationEvent(
@@ -1209,7 +1365,7 @@ public class DocumentImpl
         // MUTATION POST-EVENTS:
         // "Local" events (non-aggregated)
         // New child is told it was inserted, and where
-        LCount lc = LCount.lookup(MutationEventImpl.DOM_NODE_INSERTED);
+        LCount lc = lookupListenerCount(MutationEventImpl.DOM_NODE_INSERTED);
         if (lc.total > 0) {
             MutationEventImpl me = new MutationEventImpl();
             me.initMutationEvent(MutationEventImpl.DOM_NODE_INSERTED,
@@ -1220,7 +1376,7 @@ public class DocumentImpl
 
         // If within the Document, tell the subtree it's been added
         // to the Doc.
-        lc = LCount.lookup(
+        lc = lookupListenerCount(
                         MutationEventImpl.DOM_NODE_INSERTED_INTO_DOCUMENT);
         if (lc.total > 0) {
             NodeImpl eventAncestor = node;
@@ -1332,7 +1488,7 @@ public class DocumentImpl
             saveEnclosingAttr(node);
         }
         // Child is told that it is about to be removed
-        LCount lc = LCount.lookup(MutationEventImpl.DOM_NODE_REMOVED);
+        LCount lc = lookupListenerCount(MutationEventImpl.DOM_NODE_REMOVED);
         if (lc.total > 0) {
             MutationEventImpl me= new MutationEventImpl();
             me.initMutationEvent(MutationEventImpl.DOM_NODE_REMOVED,
@@ -1343,7 +1499,7 @@ public class DocumentImpl
 
         // If within Document, child's subtree is informed that it's
         // losing that status
-        lc = LCount.lookup(
+        lc = lookupListenerCount(
                          MutationEventImpl.DOM_NODE_REMOVED_FROM_DOCUMENT);
         if (lc.total > 0) {
             NodeImpl eventAncestor = this;
@@ -1453,7 +1609,7 @@ public class DocumentImpl
     private void mutationEventsRemovedAttrNode(AttrImpl attr, NodeImpl oldOwner, String name) {
         // If we have to send DOMAttrModified (determined earlier),
         // do so.
-        LCount lc = LCount.lookup(MutationEventImpl.DOM_ATTR_MODIFIED);
+        LCount lc = lookupListenerCount(MutationEventImpl.DOM_ATTR_MODIFIED);
         if (lc.total > 0) {
             MutationEventImpl me= new MutationEventImpl();
             me.initMutationEvent(MutationEventImpl.DOM_ATTR_MODIFIED,
@@ -161,6 +161,7 @@ public abstract class NodeImpl
     protected final static short HASSTRING    = 0x1<<7;
     protected final static short NORMALIZED = 0x1<<8;
     protected final static short ID           = 0x1<<9;
+    protected final static short HASLISTENERS = 0x1<<10;
 
     //
     // Constructors
@@ -284,6 +285,9 @@ public abstract class NodeImpl
         // this is overriden in readonly subclasses
         newnode.isReadOnly(false);
 
+        // event listeners are not cloned
+        newnode.hasEventListeners(false);
+
         ownerDocument().callUserDataHandlers(this, newnode,
                                              UserDataHandler.NODE_CLONED);
 
@@ -2000,6 +2004,14 @@ public abstract class NodeImpl
         flags = (short) (value ? flags | ID : flags & ~ID);
     }
 
+    final boolean hasEventListeners() {
+        return (flags & HASLISTENERS) != 0;
+    }
+
+    final void hasEventListeners(boolean value) {
+        flags = (short) (value ? flags | HASLISTENERS : flags & ~HASLISTENERS);
+    }
+
     //
     // Object methods
     //
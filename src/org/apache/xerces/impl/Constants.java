@@ -271,6 +271,9 @@ public final class Constants {
     /** Standard URI conformant feature ("standard-uri-conformant"). */
     public static final String STANDARD_URI_CONFORMANT_FEATURE = "standard-uri-conformant";
     
+    /** Memory mapped input feature ("memory-mapped-input"). */
+    public static final String MEMORY_MAPPED_INPUT_FEATURE = "memory-mapped-input";
+    
     /** Generate synthetic annotations feature ("generate-synthetic-annotations"). */
     public static final String GENERATE_SYNTHETIC_ANNOTATIONS_FEATURE = "generate-synthetic-annotations";
     
@@ -377,12 +380,18 @@ public final class Constants {
     /** Input buffer size property ("input-buffer-size"). */
     public static final String BUFFER_SIZE_PROPERTY = "input-buffer-size";
     
+    /** Maximum input buffer size property ("input-buffer-max-size"). */
+    public static final String MAX_BUFFER_SIZE_PROPERTY = "input-buffer-max-size";
+    
     /** Security manager property ("security-manager"). */
     public static final String SECURITY_MANAGER_PROPERTY = "security-manager";
     
     /** Locale property ("locale"). */
     public static final String LOCALE_PROPERTY = "locale";
     
+    /** XInclude cache property ("xinclude-cache"). */
+    public static final String XINCLUDE_CACHE_PROPERTY = "xinclude-cache";
+    
     /** Entity resolver property ("internal/entity-resolver"). */
     public static final String ENTITY_RESOLVER_PROPERTY = "internal/entity-resolver";
     
@@ -434,6 +443,9 @@ public final class Constants {
     /** Schema element declaration for the root element in a document ("internal/validation/schema/dv-factory"). */
     public static final String SCHEMA_DV_FACTORY_PROPERTY = "internal/validation/schema/dv-factory";
     
+    /** Executor for loading schema documents in parallel ("validation/schema/loading-executor"). */
+    public static final String SCHEMA_LOADING_EXECUTOR_PROPERTY = "validation/schema/loading-executor";
+    
     // general constants
     
     /** Element PSVI is stored in augmentations using string "ELEMENT_PSVI" */
@@ -519,6 +531,7 @@ public final class Constants {
             NOTIFY_BUILTIN_REFS_FEATURE,
             DISALLOW_DOCTYPE_DECL_FEATURE,
             STANDARD_URI_CONFORMANT_FEATURE,
+            MEMORY_MAPPED_INPUT_FEATURE,
             GENERATE_SYNTHETIC_ANNOTATIONS_FEATURE,
             VALIDATE_ANNOTATIONS_FEATURE,
             HONOUR_ALL_SCHEMALOCATIONS_FEATURE,
@@ -552,11 +565,14 @@ public final class Constants {
             SCHEMA_NONS_LOCATION,
             VALIDATION_MANAGER_PROPERTY,
             BUFFER_SIZE_PROPERTY,
+            MAX_BUFFER_SIZE_PROPERTY,
             SECURITY_MANAGER_PROPERTY,
             LOCALE_PROPERTY,
+            XINCLUDE_CACHE_PROPERTY,
             ROOT_TYPE_DEFINITION_PROPERTY,
             ROOT_ELEMENT_DECLARATION_PROPERTY,
             SCHEMA_DV_FACTORY_PROPERTY,
+            SCHEMA_LOADING_EXECUTOR_PROPERTY,
     };
     
     /** Empty enumeration. */
@@ -26,8 +26,10 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Hashtable;
@@ -39,6 +41,8 @@ import java.util.StringTokenizer;
 
 import org.apache.xerces.impl.io.ASCIIReader;
 import org.apache.xerces.impl.io.Latin1Reader;
+import org.apache.xerces.impl.io.MappedFileInputStream;
+import org.apache.xerces.impl.io.MappedInput;
 import org.apache.xerces.impl.io.UCSReader;
 import org.apache.xerces.impl.io.UTF16Reader;
 import org.apache.xerces.impl.io.UTF8Reader;
@@ -103,6 +107,16 @@ public class XMLEntityManager
 
     /** Default internal entity buffer size (512). */
     public static final int DEFAULT_INTERNAL_BUFFER_SIZE = 512;
+    
+    /** 
+     * Number of buffers worth of characters an external entity must
+     * have delivered before its buffer is grown (when a maximum input 
+     * buffer size has been set).
+     */
+    static final int BUFFER_GROWTH_THRESHOLD = 4;
+    
+    /** Smallest file read through memory mapped regions (1MB). */
+    public static final int MAPPED_INPUT_THRESHOLD = 1 << 20;
 
     // feature identifiers
 
@@ -130,6 +144,10 @@ public class XMLEntityManager
     protected static final String STANDARD_URI_CONFORMANT =
     Constants.XERCES_FEATURE_PREFIX +Constants.STANDARD_URI_CONFORMANT_FEATURE;
     
+    /** Feature identifier: memory mapped input */
+    protected static final String MEMORY_MAPPED_INPUT =
+        Constants.XERCES_FEATURE_PREFIX + Constants.MEMORY_MAPPED_INPUT_FEATURE;
+    
 	protected static final String PARSER_SETTINGS = 
 		Constants.XERCES_FEATURE_PREFIX + Constants.PARSER_SETTINGS;	
 
@@ -155,6 +173,10 @@ public class XMLEntityManager
     protected static final String BUFFER_SIZE =
         Constants.XERCES_PROPERTY_PREFIX + Constants.BUFFER_SIZE_PROPERTY;
 
+    /** property identifier: maximum buffer size. */
+    protected static final String MAX_BUFFER_SIZE =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.MAX_BUFFER_SIZE_PROPERTY;
+
     /** property identifier: security manager. */
     protected static final String SECURITY_MANAGER =
         Constants.XERCES_PROPERTY_PREFIX + Constants.SECURITY_MANAGER_PROPERTY;
@@ -168,7 +190,8 @@ public class XMLEntityManager
         EXTERNAL_PARAMETER_ENTITIES,
         ALLOW_JAVA_ENCODINGS,
         WARN_ON_DUPLICATE_ENTITYDEF,
-        STANDARD_URI_CONFORMANT
+        STANDARD_URI_CONFORMANT,
+        MEMORY_MAPPED_INPUT
     };
 
     /** Feature defaults. */
@@ -178,6 +201,7 @@ public class XMLEntityManager
         Boolean.TRUE,
         Boolean.FALSE,
         Boolean.FALSE,
+        Boolean.FALSE,
         Boolean.FALSE
     };
 
@@ -188,6 +212,7 @@ public class XMLEntityManager
         ENTITY_RESOLVER,
         VALIDATION_MANAGER,
         BUFFER_SIZE,
+        MAX_BUFFER_SIZE,
         SECURITY_MANAGER,
     };
 
@@ -198,6 +223,7 @@ public class XMLEntityManager
         null,
         null,
         new Integer(DEFAULT_BUFFER_SIZE),
+        new Integer(0),
         null,
     };
 
@@ -262,6 +288,12 @@ public class XMLEntityManager
      * http://apache.org/xml/features/standard-uri-conformant
      */
     protected boolean fStrictURI;
+    
+    /**
+     * Read large local files through memory mapped regions.
+     * http://apache.org/xml/features/memory-mapped-input
+     */
+    protected boolean fMemoryMappedInput;
 
     // properties
 
@@ -297,6 +329,13 @@ public class XMLEntityManager
      * REVISIT: do we need a property for internal entity buffer size?
      */
     protected int fBufferSize = DEFAULT_BUFFER_SIZE;
+    
+    /**
+     * Maximum buffer size. If larger than the buffer size, the buffers of
+     * external entities which keep delivering data are doubled in size, up 
+     * to this limit. Zero (the default) disables adaptive buffering.
+     */
+    protected int fMaxBufferSize = 0;
 
     // stores defaults for entity expansion limit if it has
     // been set on the configuration.
@@ -1002,6 +1041,9 @@ public class XMLEntityManager
         }
         if (reader == null) {
             stream = xmlInputSource.getByteStream();
+            if (stream == null && fMemoryMappedInput) {
+                stream = openMappedStream(expandedSystemId);
+            }
             if (stream == null) {
                 URL location = new URL(expandedSystemId);
                 URLConnection connect = location.openConnection();
@@ -1356,6 +1398,13 @@ public class XMLEntityManager
         catch (XMLConfigurationException e) {
             fStrictURI = false;
         }
+        
+        try {
+            fMemoryMappedInput = componentManager.getFeature(MEMORY_MAPPED_INPUT);
+        }
+        catch (XMLConfigurationException e) {
+            fMemoryMappedInput = false;
+        }
 
         // xerces properties
         fSymbolTable = (SymbolTable)componentManager.getProperty(SYMBOL_TABLE);
@@ -1476,6 +1525,10 @@ public class XMLEntityManager
                 featureId.endsWith(Constants.ALLOW_JAVA_ENCODINGS_FEATURE)) {
                 fAllowJavaEncodings = state;
             }
+            else if (suffixLength == Constants.MEMORY_MAPPED_INPUT_FEATURE.length() && 
+                featureId.endsWith(Constants.MEMORY_MAPPED_INPUT_FEATURE)) {
+                fMemoryMappedInput = state;
+            }
         }
 
     } // setFeature(String,boolean)
@@ -1538,6 +1591,11 @@ public class XMLEntityManager
                     fCharacterBufferPool.setExternalBufferSize(fBufferSize);
                 }
             }
+            if (suffixLength == Constants.MAX_BUFFER_SIZE_PROPERTY.length() && 
+                propertyId.endsWith(Constants.MAX_BUFFER_SIZE_PROPERTY)) {
+                Integer maxBufferSize = (Integer)value;
+                fMaxBufferSize = (maxBufferSize != null) ? maxBufferSize.intValue() : 0;
+            }
             if (suffixLength == Constants.SECURITY_MANAGER_PROPERTY.length() && 
                 propertyId.endsWith(Constants.SECURITY_MANAGER_PROPERTY)) {
                 fSecurityManager = (SecurityManager)value; 
@@ -2006,9 +2064,10 @@ public class XMLEntityManager
             if (fCurrentEntity.fByteBuffer.length == fBufferSize) {
                 fSmallByteBufferPool.returnBuffer(fCurrentEntity.fByteBuffer);
             }
-            else {
+            else if (fCurrentEntity.fByteBuffer.length == fBufferSize << 1) {
                 fLargeByteBufferPool.returnBuffer(fCurrentEntity.fByteBuffer);
             }
+            // a buffer which has been grown is left to the garbage collector
         }
         
         // Pop entity stack.
@@ -2231,6 +2290,31 @@ public class XMLEntityManager
 
     } // createReader(InputStream,String, Boolean): Reader
     
+    /**
+     * Opens a memory mapped stream over the file identified by the given
+     * expanded system identifier if it is a <code>file:</code> URI naming a
+     * file of at least {@link #MAPPED_INPUT_THRESHOLD} bytes. Returns null 
+     * otherwise, in which case the entity is read through a URLConnection.
+     */
+    private InputStream openMappedStream(String expandedSystemId) {
+        if (expandedSystemId == null || 
+            !expandedSystemId.regionMatches(true, 0, "file:", 0, 5)) {
+            return null;
+        }
+        try {
+            File file = new File(new java.net.URI(expandedSystemId));
+            if (file.length() >= MAPPED_INPUT_THRESHOLD) {
+                return new MappedFileInputStream(file);
+            }
+        }
+        // not a plain file URI (for instance one with an authority 
+        // component) or the file can't be mapped; use the URL instead
+        catch (URISyntaxException e) {}
+        catch (IllegalArgumentException e) {}
+        catch (IOException e) {}
+        return null;
+    } // openMappedStream(String):InputStream
+    
     /** Create a new UTF-8 reader from the InputStream. **/
     private Reader createUTF8Reader(InputStream stream) {
         if (DEBUG_ENCODINGS) {
@@ -2731,6 +2815,9 @@ public class XMLEntityManager
         /** Byte buffer. */
         private byte [] fByteBuffer;
         
+        /** Characters read since the buffer was allocated or last grown. */
+        int charsRead;
+        
         //
         // Constructors
         //
@@ -2772,6 +2859,42 @@ public class XMLEntityManager
             reader = createReader(stream, encoding, isBigEndian);
             fByteBuffer = fTempByteBuffer;
         }
+        
+        /**
+         * Doubles the size of the character buffer, without exceeding 
+         * the given maximum, keeping the first <code>offset</code> 
+         * characters. If the reader decodes from one of the pooled byte
+         * buffers it is given a correspondingly larger one, so that 
+         * the underlying stream is also read in larger chunks.
+         */
+        void growBuffer(int offset, int maxSize) {
+            int newSize = ch.length << 1;
+            if (newSize > maxSize) {
+                newSize = maxSize;
+            }
+            char[] tmp = new char[newSize];
+            System.arraycopy(ch, 0, tmp, 0, offset);
+            ch = tmp;
+            charsRead = 0;
+            if (fByteBuffer != null) {
+                if (reader instanceof UTF8Reader) {
+                    fByteBuffer = new byte[newSize];
+                    ((UTF8Reader) reader).setBuffer(fByteBuffer);
+                }
+                else if (reader instanceof UTF16Reader) {
+                    fByteBuffer = new byte[newSize << 1];
+                    ((UTF16Reader) reader).setBuffer(fByteBuffer);
+                }
+                else if (reader instanceof ASCIIReader) {
+                    fByteBuffer = new byte[newSize];
+                    ((ASCIIReader) reader).setBuffer(fByteBuffer);
+                }
+                else if (reader instanceof Latin1Reader) {
+                    fByteBuffer = new byte[newSize];
+                    ((Latin1Reader) reader).setBuffer(fByteBuffer);
+                }
+            }
+        } // growBuffer(int,int)
 
         // return the expanded system ID of the 
         // first external entity on the stack, null
@@ -3137,7 +3260,7 @@ public class XMLEntityManager
      * @author Neil Graham, IBM
      * @author Glenn Marcy, IBM
      */
-    protected final class RewindableInputStream extends InputStream {
+    protected final class RewindableInputStream extends InputStream implements MappedInput {
 
         private InputStream fInputStream;
         private byte[] fData;
@@ -3227,6 +3350,16 @@ public class XMLEntityManager
             return len;
         }
 
+        public ByteBuffer getMappedBuffer() throws IOException {
+            // the bytes kept for rewinding come first, and until the
+            // reader may read chunks every byte read is kept
+            if (fOffset < fLength || fOffset == fEndOffset ||
+                !fCurrentEntity.mayReadChunks || !(fInputStream instanceof MappedInput)) {
+                return null;
+            }
+            return ((MappedInput) fInputStream).getMappedBuffer();
+        }
+
         public long skip(long n)
             throws IOException
         {
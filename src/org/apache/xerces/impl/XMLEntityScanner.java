@@ -1732,6 +1732,12 @@ public class XMLEntityScanner implements XMLLocator {
         }
 
         fCurrentEntity.baseCharOffset += (fCurrentEntity.position - fCurrentEntity.startPosition);
+        // grow the buffer of an external entity which has turned out to be large
+        if (fCurrentEntity.isExternal && fCurrentEntity.mayReadChunks &&
+            fEntityManager.fMaxBufferSize > fCurrentEntity.ch.length &&
+            fCurrentEntity.charsRead >= fCurrentEntity.ch.length * XMLEntityManager.BUFFER_GROWTH_THRESHOLD) {
+            fCurrentEntity.growBuffer(offset, fEntityManager.fMaxBufferSize);
+        }
         // read characters
         int length = fCurrentEntity.ch.length - offset;
         if (!fCurrentEntity.mayReadChunks && length > XMLEntityManager.DEFAULT_XMLDECL_BUFFER_SIZE) {
@@ -1748,6 +1754,11 @@ public class XMLEntityScanner implements XMLLocator {
                 fCurrentEntity.count = count + offset;
                 fCurrentEntity.position = offset;
                 fCurrentEntity.startPosition = offset;
+                // only reads which fill a good part of the buffer count towards 
+                // growing it; a larger buffer gains nothing on a slow stream
+                if (count >= (length >> 2)) {
+                    fCurrentEntity.charsRead += count;
+                }
             }
         }
 
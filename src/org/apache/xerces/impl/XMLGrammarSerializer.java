@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.xerces.xni.grammars.Grammar;
+
+/**
+ * <p>This interface is implemented by grammar loaders which can write
+ * the grammars they have built to a stream and read them back, so that
+ * an application can restore its grammars without loading them from
+ * their source documents again.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public interface XMLGrammarSerializer {
+
+    //
+    // XMLGrammarSerializer methods
+    //
+
+    /**
+     * Writes the given grammars to the given stream. The grammars the
+     * given grammars refer to, for instance the grammars they import,
+     * should be among them.
+     *
+     * @param grammars The grammars to write.
+     * @param out      The stream to write to; it is not closed.
+     *
+     * @throws IOException Thrown if writing fails or if one of the
+     *                     grammars cannot be written by this loader.
+     */
+    public void writeGrammars(Grammar[] grammars, OutputStream out)
+        throws IOException;
+
+    /**
+     * Reads grammars written by {@link #writeGrammars(Grammar[], OutputStream)}.
+     *
+     * @param in The stream to read from; it is not closed.
+     * @return The grammars read.
+     *
+     * @throws IOException Thrown if reading fails or if the stream does
+     *                     not contain grammars this loader can read.
+     */
+    public Grammar[] readGrammars(InputStream in)
+        throws IOException;
+
+} // interface XMLGrammarSerializer
@@ -27,6 +27,7 @@ import org.apache.xerces.impl.XMLDTDScannerImpl;
 import org.apache.xerces.impl.XMLEntityManager;
 import org.apache.xerces.impl.XMLErrorReporter;
 import org.apache.xerces.impl.msg.XMLMessageFormatter;
+import org.apache.xerces.util.BoundedXMLGrammarPool;
 import org.apache.xerces.util.DefaultErrorHandler;
 import org.apache.xerces.util.SymbolTable;
 import org.apache.xerces.xni.XNIException;
@@ -430,6 +431,8 @@ public class XMLDTDLoader
         // no reason to use grammar bucket's "put" method--we
         // know which grammar it is, and we don't know the root name anyway...
 
+        // report the time spent loading to a pool which keeps statistics
+        final long startTime = (fGrammarPool instanceof BoundedXMLGrammarPool) ? System.currentTimeMillis() : 0;
         // actually start the parsing!
         try {
             fDTDScanner.setInputSource(source);
@@ -440,6 +443,9 @@ public class XMLDTDLoader
         finally {
             // Close all streams opened by the parser.
             fEntityManager.closeReaders();
+            if (fGrammarPool instanceof BoundedXMLGrammarPool) {
+                ((BoundedXMLGrammarPool) fGrammarPool).recordLoad(System.currentTimeMillis() - startTime);
+            }
         }
         if(fDTDGrammar != null && fGrammarPool != null) {
             fGrammarPool.cacheGrammars(XMLDTDDescription.XML_DTD, new Grammar[] {fDTDGrammar});
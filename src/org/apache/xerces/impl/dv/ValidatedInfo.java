@@ -84,11 +84,24 @@ public class ValidatedInfo implements XSValue {
      */
     public ShortList itemValueTypes;
 
+    /**
+     * A copy of the characters of the normalized value, if it hasn't been
+     * created as a String yet. Reused for the next values.
+     */
+    private char[] fNormalizedChars;
+
+    /**
+     * The number of characters of the normalized value in fNormalizedChars,
+     * or -1 if they are not the normalized value.
+     */
+    private int fNormalizedLength = -1;
+
     /**
      * reset the state of this object
      */
     public void reset() {
         this.normalizedValue = null;
+        this.fNormalizedLength = -1;
         this.actualValue = null;
         this.actualValueType = XSConstants.UNAVAILABLE_DT;
         this.actualType = null;
@@ -103,13 +116,43 @@ public class ValidatedInfo implements XSValue {
      */
     public String stringValue() {
         if (actualValue == null) {
-            return normalizedValue;
+            return getNormalizedValue();
         }
         else {
             return actualValue.toString();
         }
     }
     
+    /**
+     * Sets the normalized value to the characters from start to end of
+     * the given sequence. Unless the sequence is a String, the characters
+     * are copied, and the String for the normalized value is only created
+     * when it is asked for through getNormalizedValue(). The sequence may
+     * be modified once this method returns.
+     */
+    public void setNormalizedValue(CharSequence value, int start, int end) {
+        if (value == null || value instanceof String) {
+            normalizedValue = (value != null) ? ((String) value).substring(start, end) : null;
+            fNormalizedLength = -1;
+        }
+        else {
+            normalizedValue = null;
+            final int length = end - start;
+            if (fNormalizedChars == null || fNormalizedChars.length < length) {
+                fNormalizedChars = new char[length];
+            }
+            if (value instanceof StringBuffer) {
+                ((StringBuffer) value).getChars(start, end, fNormalizedChars, 0);
+            }
+            else {
+                for (int i = 0; i < length; ++i) {
+                    fNormalizedChars[i] = value.charAt(start + i);
+                }
+            }
+            fNormalizedLength = length;
+        }
+    }
+
     /**
      * Returns true if the two ValidatedInfo objects can be compared in the same
      * value space.
@@ -188,6 +231,10 @@ public class ValidatedInfo implements XSValue {
     }
 
     public String getNormalizedValue() {
+        if (normalizedValue == null && fNormalizedLength >= 0) {
+            normalizedValue = new String(fNormalizedChars, 0, fNormalizedLength);
+            fNormalizedLength = -1;
+        }
         return normalizedValue;
     }
 
@@ -206,6 +253,19 @@ public class ValidatedInfo implements XSValue {
         else if (o instanceof ValidatedInfo) {
             ValidatedInfo other = (ValidatedInfo)o;
             normalizedValue = other.normalizedValue;
+            // copy the characters rather than creating the String now, as
+            // the normalized value is rarely asked for
+            if (normalizedValue == null && other.fNormalizedLength >= 0) {
+                final int length = other.fNormalizedLength;
+                if (fNormalizedChars == null || fNormalizedChars.length < length) {
+                    fNormalizedChars = new char[length];
+                }
+                System.arraycopy(other.fNormalizedChars, 0, fNormalizedChars, 0, length);
+                fNormalizedLength = length;
+            }
+            else {
+                fNormalizedLength = -1;
+            }
             actualValue = other.actualValue;
             actualValueType = other.actualValueType;
             actualType = other.actualType;
@@ -215,6 +275,7 @@ public class ValidatedInfo implements XSValue {
         }
         else {
             normalizedValue = o.getNormalizedValue();
+            fNormalizedLength = -1;
             actualValue = o.getActualValue();
             actualValueType = o.getActualValueType();
             actualType = (XSSimpleType)o.getTypeDefinition();
@@ -118,6 +118,8 @@ public interface XSSimpleType extends XSSimpleTypeDefinition {
      * validate a given string value, represented by content.toString().
      * note that if content is a StringBuffer, for performance reasons,
      * it's possible that the content of the string buffer is modified.
+     * the validated info keeps a copy of the characters it needs, so the
+     * buffer may be reused once this method returns.
      *
      * @param content       the string value that needs to be validated
      * @param context       the validation context
@@ -952,6 +952,30 @@ public abstract class AbstractDateTimeDV extends TypeValidator {
 				return false;
 			return type.compareDates(this, (DateTimeData)obj, true)==0;
 		}
+		public int hashCode() {
+			// equal durations always agree on their total number of months,
+			// even though the remaining fields may be distributed differently
+			if (type instanceof DurationDV) {
+				return year * 12 + month;
+			}
+			// values with a time zone are normalized to UTC and are never
+			// equal to values without one, so the normalized fields
+			// (restricted to the 'interesting' portion) are consistent
+			// with equals
+			int hash = 0;
+			if (position < 1) {
+				hash = year;
+			}
+			if (position < 2) {
+				hash = 31 * hash + month;
+			}
+			hash = 31 * hash + day;
+			hash = 31 * hash + hour;
+			hash = 31 * hash + minute;
+			long bits = Double.doubleToLongBits(second == 0 ? 0 : second);
+			hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+			return 31 * hash + utc;
+		}
 		public synchronized String toString() {
 			if (canonical == null) {
 				canonical = type.dateToString(this);
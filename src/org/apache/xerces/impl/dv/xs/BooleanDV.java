@@ -46,4 +46,34 @@ public class BooleanDV extends TypeValidator {
         throw new InvalidDatatypeValueException("cvc-datatype-valid.1.2.1", new Object[]{content, "boolean"});
     }
 
+    public Object getActualValue(CharSequence content, int start, int end, ValidationContext context) throws InvalidDatatypeValueException {
+        final int length = end - start;
+        if (length == 1) {
+            final char ch = content.charAt(start);
+            if (ch == '0') {
+                return Boolean.FALSE;
+            }
+            else if (ch == '1') {
+                return Boolean.TRUE;
+            }
+        }
+        else if (length == 5 && matches(content, start, "false")) {
+            return Boolean.FALSE;
+        }
+        else if (length == 4 && matches(content, start, "true")) {
+            return Boolean.TRUE;
+        }
+        throw new InvalidDatatypeValueException("cvc-datatype-valid.1.2.1", new Object[]{content.subSequence(start, end).toString(), "boolean"});
+    }
+
+    // whether the characters starting at the given offset are those of the given literal
+    private static boolean matches(CharSequence content, int start, String literal) {
+        for (int i = 0; i < literal.length(); ++i) {
+            if (content.charAt(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
 } // class BooleanDV
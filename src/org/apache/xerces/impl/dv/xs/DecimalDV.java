@@ -48,6 +48,14 @@ public class DecimalDV extends TypeValidator {
         }
     }
 
+    public Object getActualValue(CharSequence content, int start, int end, ValidationContext context) throws InvalidDatatypeValueException {
+        try {
+            return new XDecimal(content, start, end, false);
+        } catch (NumberFormatException nfe) {
+            throw new InvalidDatatypeValueException("cvc-datatype-valid.1.2.1", new Object[]{content.subSequence(start, end).toString(), "decimal"});
+        }
+    }
+
     public final int compare(Object value1, Object value2){
         return ((XDecimal)value1).compareTo((XDecimal)value2);
     }
@@ -62,6 +70,17 @@ public class DecimalDV extends TypeValidator {
     
     // Avoid using the heavy-weight java.math.BigDecimal
     static class XDecimal implements XSDecimal {
+        // the most digits which can always be held in a long
+        static final int MAX_COMPACT_DIGITS = 18;
+        // powers of ten up to 10^MAX_COMPACT_DIGITS
+        static final long[] POWERS_OF_TEN = new long[MAX_COMPACT_DIGITS + 1];
+        static {
+            POWERS_OF_TEN[0] = 1;
+            for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+                POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+            }
+        }
+
         // sign: 0 for vlaue 0; 1 for positive values; -1 for negative values
         int sign = 1;
         // total digits. >= 1
@@ -70,6 +89,10 @@ public class DecimalDV extends TypeValidator {
         int intDigits = 0;
         // fraction digits when sign != 0
         int fracDigits = 0;
+        // the digits of the integer and fraction parts when there are no
+        // more than MAX_COMPACT_DIGITS of them; the strings below are then
+        // only created when they are needed
+        long digits = 0;
         // the string representing the integer part
         String ivalue = "";
         // the string representing the fraction part
@@ -78,54 +101,56 @@ public class DecimalDV extends TypeValidator {
         boolean integer = false;
         
         XDecimal(String content) throws NumberFormatException {
-            initD(content);
+            initD(content, 0, content.length());
         }
         XDecimal(String content, boolean integer) throws NumberFormatException {
+            this(content, 0, content.length(), integer);
+        }
+        XDecimal(CharSequence content, int start, int end, boolean integer) throws NumberFormatException {
             if (integer)
-                initI(content);
+                initI(content, start, end);
             else
-                initD(content);
+                initD(content, start, end);
         }
-        void initD(String content) throws NumberFormatException {
-            int len = content.length();
-            if (len == 0)
+        void initD(CharSequence content, int start, int end) throws NumberFormatException {
+            if (end == start)
                 throw new NumberFormatException();
     
             // these 4 variables are used to indicate where the integre/fraction
             // parts start/end.
-            int intStart = 0, intEnd = 0, fracStart = 0, fracEnd = 0;
+            int intStart = start, intEnd = start, fracStart = start, fracEnd = start;
             
             // Deal with leading sign symbol if present
-            if (content.charAt(0) == '+') {
+            if (content.charAt(start) == '+') {
                 // skip '+', so intStart should be 1
-                intStart = 1;
+                intStart = start + 1;
             }
-            else if (content.charAt(0) == '-') {
+            else if (content.charAt(start) == '-') {
                 // keep '-', so intStart is stil 0
-                intStart = 1;
+                intStart = start + 1;
                 sign = -1;
             }
     
             // skip leading zeroes in integer part
             int actualIntStart = intStart;
-            while (actualIntStart < len && content.charAt(actualIntStart) == '0') {
+            while (actualIntStart < end && content.charAt(actualIntStart) == '0') {
                 actualIntStart++;
             }
     
             // Find the ending position of the integer part
             for (intEnd = actualIntStart;
-                 intEnd < len && TypeValidator.isDigit(content.charAt(intEnd));
+                 intEnd < end && TypeValidator.isDigit(content.charAt(intEnd));
                  intEnd++);
     
             // Not reached the end yet
-            if (intEnd < len) {
+            if (intEnd < end) {
                 // the remaining part is not ".DDD", error
                 if (content.charAt(intEnd) != '.')
                     throw new NumberFormatException();
     
                 // fraction part starts after '.', and ends at the end of the input
                 fracStart = intEnd + 1;
-                fracEnd = len;
+                fracEnd = end;
             }
     
             // no integer part, no fraction part, error.
@@ -147,53 +172,55 @@ public class DecimalDV extends TypeValidator {
             fracDigits = fracEnd - fracStart;
             totalDigits = intDigits + fracDigits;
     
-            if (intDigits > 0) {
-                ivalue = content.substring(actualIntStart, intEnd);
-                if (fracDigits > 0)
-                    fvalue = content.substring(fracStart, fracEnd);
-            }
-            else {
-                if (fracDigits > 0) {
-                    fvalue = content.substring(fracStart, fracEnd);
-                }
-                else {
+            if (totalDigits <= MAX_COMPACT_DIGITS) {
+                digits = parseDigits(content, actualIntStart, intEnd, 0);
+                digits = parseDigits(content, fracStart, fracEnd, digits);
+                ivalue = fvalue = null;
+                if (totalDigits == 0) {
                     // ".00", treat it as "0"
                     sign = 0;
                 }
             }
+            else if (intDigits > 0) {
+                ivalue = content.subSequence(actualIntStart, intEnd).toString();
+                if (fracDigits > 0)
+                    fvalue = content.subSequence(fracStart, fracEnd).toString();
+            }
+            else {
+                fvalue = content.subSequence(fracStart, fracEnd).toString();
+            }
         }
-        void initI(String content) throws NumberFormatException {
-            int len = content.length();
-            if (len == 0)
+        void initI(CharSequence content, int start, int end) throws NumberFormatException {
+            if (end == start)
                 throw new NumberFormatException();
     
             // these 2 variables are used to indicate where the integre start/end.
-            int intStart = 0, intEnd = 0;
+            int intStart = start, intEnd = start;
     
             // Deal with leading sign symbol if present
-            if (content.charAt(0) == '+') {
+            if (content.charAt(start) == '+') {
                 // skip '+', so intStart should be 1
-                intStart = 1;
+                intStart = start + 1;
             }
-            else if (content.charAt(0) == '-') {
+            else if (content.charAt(start) == '-') {
                 // keep '-', so intStart is stil 0
-                intStart = 1;
+                intStart = start + 1;
                 sign = -1;
             }
     
             // skip leading zeroes in integer part
             int actualIntStart = intStart;
-            while (actualIntStart < len && content.charAt(actualIntStart) == '0') {
+            while (actualIntStart < end && content.charAt(actualIntStart) == '0') {
                 actualIntStart++;
             }
     
             // Find the ending position of the integer part
             for (intEnd = actualIntStart;
-                 intEnd < len && TypeValidator.isDigit(content.charAt(intEnd));
+                 intEnd < end && TypeValidator.isDigit(content.charAt(intEnd));
                  intEnd++);
     
             // Not reached the end yet, error
-            if (intEnd < len)
+            if (intEnd < end)
                 throw new NumberFormatException();
     
             // no integer part, error.
@@ -204,16 +231,50 @@ public class DecimalDV extends TypeValidator {
             fracDigits = 0;
             totalDigits = intDigits;
     
-            if (intDigits > 0) {
-                ivalue = content.substring(actualIntStart, intEnd);
+            if (totalDigits <= MAX_COMPACT_DIGITS) {
+                digits = parseDigits(content, actualIntStart, intEnd, 0);
+                ivalue = fvalue = null;
+                if (totalDigits == 0) {
+                    // "00", treat it as "0"
+                    sign = 0;
+                }
             }
             else {
-                // "00", treat it as "0"
-                sign = 0;
+                ivalue = content.subSequence(actualIntStart, intEnd).toString();
             }
             
             integer = true;
         }
+        // appends the digits from start to end to the given value
+        private static long parseDigits(CharSequence content, int start, int end, long value) {
+            for (int i = start; i < end; i++) {
+                value = value * 10 + (content.charAt(i) - '0');
+            }
+            return value;
+        }
+        // whether the digits are held in a long rather than in strings
+        private boolean isCompact() {
+            return totalDigits <= MAX_COMPACT_DIGITS;
+        }
+        // the string representing the integer part
+        private String intString() {
+            if (ivalue == null) {
+                return intDigits == 0 ? "" : Long.toString(digits / POWERS_OF_TEN[fracDigits]);
+            }
+            return ivalue;
+        }
+        // the string representing the fraction part
+        private String fracString() {
+            if (fvalue == null) {
+                if (fracDigits == 0) {
+                    return "";
+                }
+                // the fraction part may start with zeroes
+                String value = Long.toString(POWERS_OF_TEN[fracDigits] + digits % POWERS_OF_TEN[fracDigits]);
+                return value.substring(1);
+            }
+            return fvalue;
+        }
         public boolean equals(Object val) {
             if (val == this)
                 return true;
@@ -227,8 +288,20 @@ public class DecimalDV extends TypeValidator {
             if (sign == 0)
                 return true;
             
-            return intDigits == oval.intDigits && fracDigits == oval.fracDigits &&
-                   ivalue.equals(oval.ivalue) && fvalue.equals(oval.fvalue);
+            if (intDigits != oval.intDigits || fracDigits != oval.fracDigits)
+                return false;
+            // both values have the same number of digits, so either both
+            // or neither of them are compact
+            if (isCompact())
+                return digits == oval.digits;
+            return ivalue.equals(oval.ivalue) && fvalue.equals(oval.fvalue);
+        }
+        public int hashCode() {
+            if (sign == 0)
+                return 0;
+            if (isCompact())
+                return (sign * 31 + (int)(digits ^ (digits >>> 32))) * 31 + fracDigits;
+            return (sign * 31 + ivalue.hashCode()) * 31 + fvalue.hashCode();
         }
         public int compareTo(XDecimal val) {
             if (sign != val.sign)
@@ -240,10 +313,22 @@ public class DecimalDV extends TypeValidator {
         private int intComp(XDecimal val) {
             if (intDigits != val.intDigits)
                 return intDigits > val.intDigits ? 1 : -1;
-            int ret = ivalue.compareTo(val.ivalue);
+            if (isCompact() && val.isCompact()) {
+                // compare the integer parts, then the fraction parts
+                // scaled to the same number of digits
+                long ipart = digits / POWERS_OF_TEN[fracDigits];
+                long oipart = val.digits / POWERS_OF_TEN[val.fracDigits];
+                if (ipart != oipart)
+                    return ipart > oipart ? 1 : -1;
+                int scale = Math.max(fracDigits, val.fracDigits);
+                long fpart = (digits % POWERS_OF_TEN[fracDigits]) * POWERS_OF_TEN[scale - fracDigits];
+                long ofpart = (val.digits % POWERS_OF_TEN[val.fracDigits]) * POWERS_OF_TEN[scale - val.fracDigits];
+                return fpart == ofpart ? 0 : (fpart > ofpart ? 1 : -1);
+            }
+            int ret = intString().compareTo(val.intString());
             if (ret != 0)
                 return ret > 0 ? 1 : -1;;
-            ret = fvalue.compareTo(val.fvalue);
+            ret = fracString().compareTo(val.fracString());
             return ret == 0 ? 0 : (ret > 0 ? 1 : -1);
         }
         private String canonical;
@@ -263,7 +348,7 @@ public class DecimalDV extends TypeValidator {
                 return;
             }
             if (integer && sign > 0) {
-                canonical = ivalue;
+                canonical = intString();
                 return;
             }
             // for -0.1, total digits is 1, so we need 3 extra spots
@@ -271,13 +356,13 @@ public class DecimalDV extends TypeValidator {
             if (sign == -1)
                 buffer.append('-');
             if (intDigits != 0)
-                buffer.append(ivalue);
+                buffer.append(intString());
             else
                 buffer.append('0');
             if (!integer) {
                 buffer.append('.');
                 if (fracDigits != 0) {
-                    buffer.append(fvalue);
+                    buffer.append(fracString());
                 }
                 else {
                     buffer.append('0');
@@ -300,6 +385,9 @@ public class DecimalDV extends TypeValidator {
             if (sign == 0) {
                 return BigInteger.ZERO;
             }
+            if (isCompact()) {
+                return BigInteger.valueOf(sign * digits);
+            }
             if (sign == 1) {
                 return new BigInteger(ivalue);
             }
@@ -313,6 +401,9 @@ public class DecimalDV extends TypeValidator {
             if (sign == 0) {
                 return 0L;
             }
+            if (isCompact()) {
+                return sign * digits;
+            }
             if (sign == 1) {
                 return Long.parseLong(ivalue);
             }
@@ -320,42 +411,27 @@ public class DecimalDV extends TypeValidator {
         }
         
         public int getInt() throws NumberFormatException {
-            if (fracDigits != 0) {
+            final long value = getLong();
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
                 throw new NumberFormatException();
             }
-            if (sign == 0) {
-                return 0;
-            }
-            if (sign == 1) {
-                return Integer.parseInt(ivalue);
-            }
-            return Integer.parseInt("-" + ivalue);
+            return (int) value;
         }
         
         public short getShort() throws NumberFormatException {
-            if (fracDigits != 0) {
+            final long value = getLong();
+            if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
                 throw new NumberFormatException();
             }
-            if (sign == 0) {
-                return 0;
-            }
-            if (sign == 1) {
-                return Short.parseShort(ivalue);
-            }
-            return Short.parseShort("-" + ivalue);
+            return (short) value;
         }
         
         public byte getByte() throws NumberFormatException {
-            if (fracDigits != 0) {
+            final long value = getLong();
+            if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
                 throw new NumberFormatException();
             }
-            if (sign == 0) {
-                return 0;
-            }
-            if (sign == 1) {
-                return Byte.parseByte(ivalue);
-            }
-            return Byte.parseByte("-" + ivalue);
+            return (byte) value;
         }
     }
 } // class DecimalDV
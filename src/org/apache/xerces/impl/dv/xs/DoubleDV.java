@@ -46,6 +46,14 @@ public class DoubleDV extends TypeValidator {
         }
     }//getActualValue()
 
+    public Object getActualValue(CharSequence content, int start, int end, ValidationContext context) throws InvalidDatatypeValueException {
+        final long decimal = parsePlainDecimal(content, start, end, MAX_EXACT_DIGITS, POWERS_OF_TEN.length - 1);
+        if (decimal != Long.MIN_VALUE) {
+            return new XDouble((decimal >> 5) / POWERS_OF_TEN[(int) decimal & 0x1F]);
+        }
+        return getActualValue(content.subSequence(start, end).toString(), context);
+    }//getActualValue()
+
     // Can't call Double#compareTo method, because it's introduced in jdk 1.2
     public int compare(Object value1, Object value2) {
         return ((XDouble)value1).compareTo((XDouble)value2);
@@ -60,6 +68,66 @@ public class DoubleDV extends TypeValidator {
         return false;
     }//isIdentical()
     
+    /** Largest number of digits of an integer which converts exactly to a double. */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /** Powers of ten which are exactly representable as doubles. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Parses a plain decimal numeral such as "-12.50", consisting of an
+     * optional sign, digits and an optional fraction. Returns the digits
+     * as a signed integer shifted left by five bits, with the number of
+     * fraction digits in the low five bits. Returns Long.MIN_VALUE if the
+     * characters are not such a numeral, if it has more than maxDigits
+     * digits or more than maxScale fraction digits, or if it is a negative
+     * zero. Dividing the digits by the power of ten is then exact up to
+     * the final rounding, which gives the same result as parsing the
+     * numeral as a String.
+     */
+    static long parsePlainDecimal(CharSequence content, int start, int end, int maxDigits, int maxScale) {
+        int i = start;
+        boolean negative = false;
+        if (i < end) {
+            final char ch = content.charAt(i);
+            if (ch == '-') {
+                negative = true;
+                ++i;
+            }
+            else if (ch == '+') {
+                ++i;
+            }
+        }
+        long digits = 0;
+        int count = 0;
+        int scale = -1;
+        for (; i < end; ++i) {
+            final char ch = content.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                if (++count > maxDigits) {
+                    return Long.MIN_VALUE;
+                }
+                digits = digits * 10 + (ch - '0');
+                if (scale >= 0) {
+                    ++scale;
+                }
+            }
+            else if (ch == '.' && scale < 0) {
+                scale = 0;
+            }
+            else {
+                return Long.MIN_VALUE;
+            }
+        }
+        if (count == 0 || scale > maxScale || negative && digits == 0) {
+            return Long.MIN_VALUE;
+        }
+        return ((negative ? -digits : digits) << 5) | (scale < 0 ? 0 : scale);
+    }
+
     /** 
      * Returns true if it's possible that the given
      * string represents a valid floating point value
@@ -79,6 +147,9 @@ public class DoubleDV extends TypeValidator {
 
     private static final class XDouble implements XSDouble {
         private final double value;
+        XDouble(double value) {
+            this.value = value;
+        }
         public XDouble(String s) throws NumberFormatException {
             if (isPossibleFP(s)) {
                 value = Double.parseDouble(s);
@@ -46,6 +46,14 @@ public class FloatDV extends TypeValidator {
         }
     }//getActualValue()
 
+    public Object getActualValue(CharSequence content, int start, int end, ValidationContext context) throws InvalidDatatypeValueException {
+        final long decimal = DoubleDV.parsePlainDecimal(content, start, end, MAX_EXACT_DIGITS, POWERS_OF_TEN.length - 1);
+        if (decimal != Long.MIN_VALUE) {
+            return new XFloat((decimal >> 5) / POWERS_OF_TEN[(int) decimal & 0x1F]);
+        }
+        return getActualValue(content.subSequence(start, end).toString(), context);
+    }//getActualValue()
+
     // Can't call Float#compareTo method, because it's introduced in jdk 1.2
     public int compare(Object value1, Object value2){
         return ((XFloat)value1).compareTo((XFloat)value2);
@@ -60,9 +68,20 @@ public class FloatDV extends TypeValidator {
         return false;
     }//isIdentical()
 
+    /** Largest number of digits of an integer which converts exactly to a float. */
+    private static final int MAX_EXACT_DIGITS = 7;
+
+    /** Powers of ten which are exactly representable as floats. */
+    private static final float[] POWERS_OF_TEN = {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
     private static final class XFloat implements XSFloat {
 
         private final float value;
+        XFloat(float value) {
+            this.value = value;
+        }
         public XFloat(String s) throws NumberFormatException {
             if (DoubleDV.isPossibleFP(s)) {
                 value = Float.parseFloat(s);
@@ -38,5 +38,13 @@ public class IntegerDV extends DecimalDV {
             throw new InvalidDatatypeValueException("cvc-datatype-valid.1.2.1", new Object[]{content, "integer"});
         }
     }
+
+    public Object getActualValue(CharSequence content, int start, int end, ValidationContext context) throws InvalidDatatypeValueException {
+        try {
+            return new XDecimal(content, start, end, true);
+        } catch (NumberFormatException nfe) {
+            throw new InvalidDatatypeValueException("cvc-datatype-valid.1.2.1", new Object[]{content.subSequence(start, end).toString(), "integer"});
+        }
+    }
     
 } // class EntityDV
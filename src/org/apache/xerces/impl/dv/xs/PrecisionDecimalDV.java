@@ -50,6 +50,12 @@ class PrecisionDecimalDV extends TypeValidator {
         
         int pvalue = 0;
         
+        // the significant digits, without leading or trailing zeroes;
+        // null for INF, -INF and NaN
+        String nvalue = null;
+        // the exponent of the value 0.nvalue, so that values which are
+        // equal have the same nvalue and nexponent
+        int nexponent = 0;
         
         XPrecisionDecimal(String content) throws NumberFormatException {
             if(content.equals("NaN")) {
@@ -141,6 +147,21 @@ class PrecisionDecimalDV extends TypeValidator {
                 }
             }
             totalDigits = intDigits + fracDigits;
+            normalize();
+        }
+        
+        private void normalize() {
+            final String digits = ivalue + fvalue;
+            int start = 0;
+            int end = digits.length();
+            while (start < end && digits.charAt(start) == '0') {
+                start++;
+            }
+            while (end > start && digits.charAt(end - 1) == '0') {
+                end--;
+            }
+            nvalue = digits.substring(start, end);
+            nexponent = (start < end) ? intDigits - start + pvalue : 0;
         }
         
         
@@ -155,32 +176,15 @@ class PrecisionDecimalDV extends TypeValidator {
             return this.compareTo(oval) == EQUAL;
         }
         
-        /**
-         * @return
-         */
-        private int compareFractionalPart(XPrecisionDecimal oval) {
-            if(fvalue.equals(oval.fvalue))
-                return EQUAL;
-            
-            StringBuffer temp1 = new StringBuffer(fvalue);
-            StringBuffer temp2 = new StringBuffer(oval.fvalue);
-            
-            truncateTrailingZeros(temp1, temp2);
-            return temp1.toString().compareTo(temp2.toString());
-        }
-        
-        private void truncateTrailingZeros(StringBuffer fValue, StringBuffer otherFValue) {
-            for(int i = fValue.length() - 1;i >= 0; i--)
-                if(fValue.charAt(i) == '0')
-                    fValue.deleteCharAt(i);
-                else
-                    break;
-            
-            for(int i = otherFValue.length() - 1;i >= 0; i--)
-                if(otherFValue.charAt(i) == '0')
-                    otherFValue.deleteCharAt(i);
-                else
-                    break;
+        public int hashCode() {
+            if (nvalue == null) {
+                return ivalue.hashCode();
+            }
+            // zeroes are equal whatever their sign
+            if (nvalue.length() == 0) {
+                return 0;
+            }
+            return sign * (31 * nvalue.hashCode() + nexponent);
         }
         
         public int compareTo(XPrecisionDecimal val) {
@@ -207,89 +211,23 @@ class PrecisionDecimalDV extends TypeValidator {
                 return GREATER_THAN;
             }
             
-            if (sign != val.sign)
-                return sign > val.sign ? GREATER_THAN : LESS_THAN;
-            
-            return sign * compare(val);
-        }
-        
-        // To enable comparison - the exponent part of the decimal will be limited
-        // to the max value of int.
-        private int compare(XPrecisionDecimal val) {     	
-            
-            if(pvalue != 0 || val.pvalue != 0) {
-                if(pvalue == val.pvalue)
-                    return intComp(val);
-                else {
-                    
-                    if(intDigits + pvalue != val.intDigits + val.pvalue)
-                        return intDigits + pvalue > val.intDigits + val.pvalue ? GREATER_THAN : LESS_THAN;
-                    
-                    //otherwise the 2 combined values are the same
-                    if(pvalue > val.pvalue) {
-                        int expDiff = pvalue - val.pvalue;
-                        StringBuffer buffer = new StringBuffer(ivalue);
-                        StringBuffer fbuffer = new StringBuffer(fvalue);
-                        for(int i = 0;i < expDiff; i++) {
-                            if(i < fracDigits) {
-                                buffer.append(fvalue.charAt(i));
-                                fbuffer.deleteCharAt(i);
-                            }
-                            else
-                                buffer.append('0');
-                        }       				
-                        return compareDecimal(buffer.toString(), val.ivalue, fbuffer.toString(), val.fvalue);
-                    }
-                    else {
-                        int expDiff = val.pvalue - pvalue;
-                        StringBuffer buffer = new StringBuffer(val.ivalue);
-                        StringBuffer fbuffer = new StringBuffer(val.fvalue);
-                        for(int i = 0;i < expDiff; i++) {
-                            if(i < val.fracDigits) {
-                                buffer.append(val.fvalue.charAt(i));
-                                fbuffer.deleteCharAt(i);
-                            }
-                            else
-                                buffer.append('0');
-                        }       				
-                        return compareDecimal(ivalue, buffer.toString(), fvalue, fbuffer.toString());
-                    }
-                }
-            }
-            else {
-                return intComp(val);
-            }
-        }
-        
-        /**
-         * @param val
-         * @return
-         */
-        private int intComp(XPrecisionDecimal val) {
-            if (intDigits != val.intDigits)
-                return intDigits > val.intDigits ? GREATER_THAN : LESS_THAN;
-            
-            return compareDecimal(ivalue, val.ivalue, fvalue, val.fvalue);
-        }
-        
-        /**
-         * @param val
-         * @return
-         */
-        private int compareDecimal(String iValue, String fValue, String otherIValue, String otherFValue) {
-            int ret = iValue.compareTo(otherIValue);
-            if (ret != 0)
-                return ret > 0 ? GREATER_THAN : LESS_THAN;
-            
-            if(fValue.equals(otherFValue))
+            final int sign1 = (nvalue.length() > 0) ? sign : 0;
+            final int sign2 = (val.nvalue.length() > 0) ? val.sign : 0;
+            if (sign1 != sign2)
+                return sign1 > sign2 ? GREATER_THAN : LESS_THAN;
+            if (sign1 == 0)
                 return EQUAL;
             
-            StringBuffer temp1=new StringBuffer(fValue);
-            StringBuffer temp2=new StringBuffer(otherFValue);
-            
-            truncateTrailingZeros(temp1, temp2);
-            ret = temp1.toString().compareTo(temp2.toString());
-            return ret == 0 ? EQUAL : (ret > 0 ? GREATER_THAN : LESS_THAN);
+            // the value with the larger exponent has the larger magnitude;
+            // with the same exponent the digits compare as fractions
+            int ret;
+            if (nexponent != val.nexponent)
+                ret = nexponent > val.nexponent ? 1 : -1;
+            else
+                ret = nvalue.compareTo(val.nvalue);
+            if (ret == 0)
+                return EQUAL;
+            return (ret > 0) == (sign1 > 0) ? GREATER_THAN : LESS_THAN;
         }
         
         private String canonical;
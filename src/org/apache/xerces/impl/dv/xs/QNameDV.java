@@ -96,6 +96,11 @@ public class QNameDV extends TypeValidator {
             return false;
         } // equals(Object):boolean
 
+        public int hashCode() {
+            return ((uri != null) ? uri.hashCode() : 0) +
+                ((localpart != null) ? localpart.hashCode() : 0);
+        } // hashCode():int
+
         public String toString() {
             return rawname;
         }
@@ -58,6 +58,16 @@ public abstract class TypeValidator {
     public abstract Object getActualValue(String content, ValidationContext context)
         throws InvalidDatatypeValueException;
 
+    // convert the characters from start to end of a sequence, which have
+    // already been normalized, to an actual value. types which can parse
+    // their values straight from the characters override this method, so
+    // that validating element content doesn't have to create a String.
+    // by default, a String is created and passed to the method above.
+    public Object getActualValue(CharSequence content, int start, int end, ValidationContext context)
+        throws InvalidDatatypeValueException {
+        return getActualValue(content.subSequence(start, end).toString(), context);
+    }
+
     // for ID/IDREF/ENTITY types, do some extra checking after the value is
     // checked to be valid with respect to both lexical representation and
     // facets
@@ -177,6 +177,9 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         "preserve", "replace", "collapse"
     };
 
+    // enumerations with more values than this are looked up through a hash index
+    static final int ENUMERATION_INDEX_THRESHOLD = 8;
+
     static final String URI_SCHEMAFORSCHEMA = "http://www.w3.org/2001/XMLSchema";
     static final String ANY_TYPE = "anyType";
 
@@ -269,6 +272,11 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
     private Vector fPatternStr;
     private ValidatedInfo[] fEnumeration;
     private int fEnumerationSize;
+    // hash index over the actual values of the enumeration: for each bucket,
+    // one plus the position of its first value, and for each value, one
+    // plus the position of the next value in the same bucket
+    private int[] fEnumerationBuckets;
+    private int[] fEnumerationNext;
     private ShortList fEnumerationTypeList;
     private ObjectList fEnumerationItemTypeList;
     private StringList fLexicalPattern;
@@ -387,6 +395,8 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         fPatternStr = fBase.fPatternStr;
         fEnumeration = fBase.fEnumeration;
         fEnumerationSize = fBase.fEnumerationSize;
+        fEnumerationBuckets = fBase.fEnumerationBuckets;
+        fEnumerationNext = fBase.fEnumerationNext;
         fWhiteSpace = fBase.fWhiteSpace;
         fMaxExclusive = fBase.fMaxExclusive;
         fMaxInclusive = fBase.fMaxInclusive;
@@ -507,6 +517,8 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         fPatternStr = fBase.fPatternStr;
         fEnumeration = fBase.fEnumeration;
         fEnumerationSize = fBase.fEnumerationSize;
+        fEnumerationBuckets = fBase.fEnumerationBuckets;
+        fEnumerationNext = fBase.fEnumerationNext;
         fWhiteSpace = fBase.fWhiteSpace;
         fMaxExclusive = fBase.fMaxExclusive;
         fMaxInclusive = fBase.fMaxInclusive;
@@ -888,6 +900,7 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
                         reportError("enumeration-valid-restriction", new Object[]{enumVals.elementAt(i), this.getBaseType().getName()});
                     }
                 }
+                buildEnumerationIndex();
                 fFacetsDefined |= FACET_ENUMERATION;
                 if ((fixedFacet & FACET_ENUMERATION) != 0)
                     fFixedFacet |= FACET_ENUMERATION;
@@ -1474,6 +1487,8 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
             fFacetsDefined |= FACET_ENUMERATION;
             fEnumeration = fBase.fEnumeration;
             fEnumerationSize = fBase.fEnumerationSize;
+            fEnumerationBuckets = fBase.fEnumerationBuckets;
+            fEnumerationNext = fBase.fEnumerationNext;
             enumerationAnnotations = fBase.enumerationAnnotations;
         }
         // inherit maxExclusive
@@ -1633,7 +1648,6 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
     private void checkFacets(ValidatedInfo validatedInfo) throws InvalidDatatypeValueException {
 
         Object ob = validatedInfo.actualValue;
-        String content = validatedInfo.normalizedValue;
         short type = validatedInfo.actualValueType;
         ShortList itemType = validatedInfo.itemValueTypes;
 
@@ -1645,7 +1659,7 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
             if ( (fFacetsDefined & FACET_MAXLENGTH) != 0 ) {
                 if ( length > fMaxLength ) {
                     throw new InvalidDatatypeValueException("cvc-maxLength-valid",
-                            new Object[]{content, Integer.toString(length), Integer.toString(fMaxLength), fTypeName});
+                            new Object[]{validatedInfo.getNormalizedValue(), Integer.toString(length), Integer.toString(fMaxLength), fTypeName});
                 }
             }
 
@@ -1653,7 +1667,7 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
             if ( (fFacetsDefined & FACET_MINLENGTH) != 0 ) {
                 if ( length < fMinLength ) {
                     throw new InvalidDatatypeValueException("cvc-minLength-valid",
-                            new Object[]{content, Integer.toString(length), Integer.toString(fMinLength), fTypeName});
+                            new Object[]{validatedInfo.getNormalizedValue(), Integer.toString(length), Integer.toString(fMinLength), fTypeName});
                 }
             }
 
@@ -1661,7 +1675,7 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
             if ( (fFacetsDefined & FACET_LENGTH) != 0 ) {
                 if ( length != fLength ) {
                     throw new InvalidDatatypeValueException("cvc-length-valid",
-                            new Object[]{content, Integer.toString(length), Integer.toString(fLength), fTypeName});
+                            new Object[]{validatedInfo.getNormalizedValue(), Integer.toString(length), Integer.toString(fLength), fTypeName});
                 }
             }
         }
@@ -1669,38 +1683,23 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         //enumeration
         if ( ((fFacetsDefined & FACET_ENUMERATION) != 0 ) ) {
             boolean present = false;
-            final int enumSize = fEnumerationSize;
             final short primitiveType1 = convertToPrimitiveKind(type);
-            for (int i = 0; i < enumSize; i++) {
-                final short primitiveType2 = convertToPrimitiveKind(fEnumeration[i].actualValueType);
-                if ((primitiveType1 == primitiveType2 ||
-                        primitiveType1 == XSConstants.ANYSIMPLETYPE_DT && primitiveType2 == XSConstants.STRING_DT ||
-                        primitiveType1 == XSConstants.STRING_DT && primitiveType2 == XSConstants.ANYSIMPLETYPE_DT)
-                        && fEnumeration[i].actualValue.equals(ob)) {
-                    if (primitiveType1 == XSConstants.LIST_DT || primitiveType1 == XSConstants.LISTOFUNION_DT) {
-                        ShortList enumItemType = fEnumeration[i].itemValueTypes;
-                        final int typeList1Length = itemType != null ? itemType.getLength() : 0;
-                        final int typeList2Length = enumItemType != null ? enumItemType.getLength() : 0;
-                        if (typeList1Length == typeList2Length) {
-                            int j;
-                            for (j = 0; j < typeList1Length; ++j) {
-                                final short primitiveItem1 = convertToPrimitiveKind(itemType.item(j));
-                                final short primitiveItem2 = convertToPrimitiveKind(enumItemType.item(j));
-                                if (primitiveItem1 != primitiveItem2) {
-                                    if (primitiveItem1 == XSConstants.ANYSIMPLETYPE_DT && primitiveItem2 == XSConstants.STRING_DT ||
-                                            primitiveItem1 == XSConstants.STRING_DT && primitiveItem2 == XSConstants.ANYSIMPLETYPE_DT) {
-                                        continue;
-                                    }
-                                    break;
-                                }
-                            }
-                            if (j == typeList1Length) {
-                                present = true;
-                                break;
-                            }
+            if (fEnumerationBuckets != null) {
+                // only the values with the same hash code can be equal
+                if (ob != null) {
+                    final int[] buckets = fEnumerationBuckets;
+                    for (int i = buckets[enumerationHash(ob) & (buckets.length - 1)]; i != 0; i = fEnumerationNext[i - 1]) {
+                        if (isEnumerationValue(fEnumeration[i - 1], ob, primitiveType1, itemType)) {
+                            present = true;
+                            break;
                         }
                     }
-                    else {
+                }
+            }
+            else {
+                final int enumSize = fEnumerationSize;
+                for (int i = 0; i < enumSize; i++) {
+                    if (isEnumerationValue(fEnumeration[i], ob, primitiveType1, itemType)) {
                         present = true;
                         break;
                     }
@@ -1710,7 +1709,7 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
                 StringBuffer sb = new StringBuffer();
                 appendEnumString(sb);
                 throw new InvalidDatatypeValueException("cvc-enumeration-valid",
-                        new Object [] {content, sb.toString()});
+                        new Object [] {validatedInfo.getNormalizedValue(), sb.toString()});
             }
         }
 
@@ -1719,7 +1718,7 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
             int scale = fDVs[fValidationDV].getFractionDigits(ob);
             if (scale > fFractionDigits) {
                 throw new InvalidDatatypeValueException("cvc-fractionDigits-valid",
-                        new Object[] {content, Integer.toString(scale), Integer.toString(fFractionDigits)});
+                        new Object[] {validatedInfo.getNormalizedValue(), Integer.toString(scale), Integer.toString(fFractionDigits)});
             }
         }
 
@@ -1728,7 +1727,7 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
             int totalDigits = fDVs[fValidationDV].getTotalDigits(ob);
             if (totalDigits > fTotalDigits) {
                 throw new InvalidDatatypeValueException("cvc-totalDigits-valid",
-                        new Object[] {content, Integer.toString(totalDigits), Integer.toString(fTotalDigits)});
+                        new Object[] {validatedInfo.getNormalizedValue(), Integer.toString(totalDigits), Integer.toString(fTotalDigits)});
             }
         }
 
@@ -1739,7 +1738,7 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
             compare = fDVs[fValidationDV].compare(ob, fMaxInclusive);
             if (compare != -1 && compare != 0) {
                 throw new InvalidDatatypeValueException("cvc-maxInclusive-valid",
-                        new Object[] {content, fMaxInclusive, fTypeName});
+                        new Object[] {validatedInfo.getNormalizedValue(), fMaxInclusive, fTypeName});
             }
         }
 
@@ -1748,7 +1747,7 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
             compare = fDVs[fValidationDV].compare(ob, fMaxExclusive );
             if (compare != -1) {
                 throw new InvalidDatatypeValueException("cvc-maxExclusive-valid",
-                        new Object[] {content, fMaxExclusive, fTypeName});
+                        new Object[] {validatedInfo.getNormalizedValue(), fMaxExclusive, fTypeName});
             }
         }
 
@@ -1757,7 +1756,7 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
             compare = fDVs[fValidationDV].compare(ob, fMinInclusive);
             if (compare != 1 && compare != 0) {
                 throw new InvalidDatatypeValueException("cvc-minInclusive-valid",
-                        new Object[] {content, fMinInclusive, fTypeName});
+                        new Object[] {validatedInfo.getNormalizedValue(), fMinInclusive, fTypeName});
             }
         }
 
@@ -1766,7 +1765,7 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
             compare = fDVs[fValidationDV].compare(ob, fMinExclusive);
             if (compare != 1) {
                 throw new InvalidDatatypeValueException("cvc-minExclusive-valid",
-                        new Object[] {content, fMinExclusive, fTypeName});
+                        new Object[] {validatedInfo.getNormalizedValue(), fMinExclusive, fTypeName});
             }
         }
 
@@ -1818,6 +1817,15 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
             ValidatedInfo validatedInfo, boolean needNormalize)
     throws InvalidDatatypeValueException{
 
+        // atomic values which aren't matched against patterns can be
+        // parsed straight from the characters of the content
+        if (fVariety == VARIETY_ATOMIC && fPatternType == SPECIAL_PATTERN_NONE &&
+                (fFacetsDefined & FACET_PATTERN) == 0 &&
+                fDVNormalizeType[fValidationDV] != NORMALIZE_FULL &&
+                content instanceof CharSequence && !(content instanceof String)) {
+            return getActualValueOfChars((CharSequence)content, context, validatedInfo, needNormalize);
+        }
+
         String nvalue;
         if (needNormalize) {
             nvalue = normalize(content, fWhiteSpace);
@@ -1954,6 +1962,34 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
 
     }//getActualValue()
 
+    // get the actual value of an atomic type without a pattern from the
+    // characters of the content, without creating a String for the value
+    // unless the type needs one or the normalized value is asked for
+    private Object getActualValueOfChars(CharSequence content, ValidationContext context,
+            ValidatedInfo validatedInfo, boolean needNormalize)
+    throws InvalidDatatypeValueException {
+
+        int start = 0;
+        int end = content.length();
+        if (needNormalize && fDVNormalizeType[fValidationDV] == NORMALIZE_TRIM) {
+            while (start < end && XMLChar.isSpace(content.charAt(start))) {
+                start++;
+            }
+            while (end > start && XMLChar.isSpace(content.charAt(end - 1))) {
+                end--;
+            }
+        }
+
+        validatedInfo.setNormalizedValue(content, start, end);
+        Object avalue = fDVs[fValidationDV].getActualValue(content, start, end, context);
+        validatedInfo.actualValue = avalue;
+        validatedInfo.actualValueType = fBuiltInKind;
+        validatedInfo.actualType = this;
+
+        return avalue;
+
+    }//getActualValueOfChars()
+
     public boolean isEqual(Object value1, Object value2) {
         if (value1 == null) {
             return false;
@@ -2361,6 +2397,114 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         return fLexicalPattern;
     }
 
+    /**
+     * Fills in the given facets with the facets specified on this type
+     * itself rather than inherited from its base type, so that applying
+     * them to the base type creates a type equivalent to this one. The
+     * enumeration values are given in their lexical form; the namespace
+     * contexts of QName values are not filled in.
+     *
+     * @param facets  the facets to fill in
+     * @return the facets present, a bit combination of FACET_XXX constants.
+     */
+    public short getOwnFacets(XSFacets facets) {
+        if (fBase == null || (fVariety != VARIETY_ATOMIC && fBase == fAnySimpleType)) {
+            // list and union types do not restrict their base type
+            return FACET_NONE;
+        }
+        short presentFacet = 0;
+        final short baseFacets = fBase.fFacetsDefined;
+        final short ownFixed = (short)(fFixedFacet & ~fBase.fFixedFacet);
+        if (isOwnFacet(FACET_LENGTH, baseFacets, ownFixed, fLength == fBase.fLength &&
+                lengthAnnotation == fBase.lengthAnnotation)) {
+            presentFacet |= FACET_LENGTH;
+            facets.length = fLength;
+            facets.lengthAnnotation = lengthAnnotation;
+        }
+        if (isOwnFacet(FACET_MINLENGTH, baseFacets, ownFixed, fMinLength == fBase.fMinLength &&
+                minLengthAnnotation == fBase.minLengthAnnotation)) {
+            presentFacet |= FACET_MINLENGTH;
+            facets.minLength = fMinLength;
+            facets.minLengthAnnotation = minLengthAnnotation;
+        }
+        if (isOwnFacet(FACET_MAXLENGTH, baseFacets, ownFixed, fMaxLength == fBase.fMaxLength &&
+                maxLengthAnnotation == fBase.maxLengthAnnotation)) {
+            presentFacet |= FACET_MAXLENGTH;
+            facets.maxLength = fMaxLength;
+            facets.maxLengthAnnotation = maxLengthAnnotation;
+        }
+        if (isOwnFacet(FACET_WHITESPACE, baseFacets, ownFixed, fWhiteSpace == fBase.fWhiteSpace &&
+                whiteSpaceAnnotation == fBase.whiteSpaceAnnotation)) {
+            presentFacet |= FACET_WHITESPACE;
+            facets.whiteSpace = fWhiteSpace;
+            facets.whiteSpaceAnnotation = whiteSpaceAnnotation;
+        }
+        if (isOwnFacet(FACET_TOTALDIGITS, baseFacets, ownFixed, fTotalDigits == fBase.fTotalDigits &&
+                totalDigitsAnnotation == fBase.totalDigitsAnnotation)) {
+            presentFacet |= FACET_TOTALDIGITS;
+            facets.totalDigits = fTotalDigits;
+            facets.totalDigitsAnnotation = totalDigitsAnnotation;
+        }
+        if (isOwnFacet(FACET_FRACTIONDIGITS, baseFacets, ownFixed, fFractionDigits == fBase.fFractionDigits &&
+                fractionDigitsAnnotation == fBase.fractionDigitsAnnotation)) {
+            presentFacet |= FACET_FRACTIONDIGITS;
+            facets.fractionDigits = fFractionDigits;
+            facets.fractionDigitsAnnotation = fractionDigitsAnnotation;
+        }
+        // the bounds of the base type are inherited as the same objects
+        if (isOwnFacet(FACET_MAXINCLUSIVE, baseFacets, ownFixed, fMaxInclusive == fBase.fMaxInclusive)) {
+            presentFacet |= FACET_MAXINCLUSIVE;
+            facets.maxInclusive = fMaxInclusive.toString();
+            facets.maxInclusiveAnnotation = maxInclusiveAnnotation;
+        }
+        if (isOwnFacet(FACET_MAXEXCLUSIVE, baseFacets, ownFixed, fMaxExclusive == fBase.fMaxExclusive)) {
+            presentFacet |= FACET_MAXEXCLUSIVE;
+            facets.maxExclusive = fMaxExclusive.toString();
+            facets.maxExclusiveAnnotation = maxExclusiveAnnotation;
+        }
+        if (isOwnFacet(FACET_MININCLUSIVE, baseFacets, ownFixed, fMinInclusive == fBase.fMinInclusive)) {
+            presentFacet |= FACET_MININCLUSIVE;
+            facets.minInclusive = fMinInclusive.toString();
+            facets.minInclusiveAnnotation = minInclusiveAnnotation;
+        }
+        if (isOwnFacet(FACET_MINEXCLUSIVE, baseFacets, ownFixed, fMinExclusive == fBase.fMinExclusive)) {
+            presentFacet |= FACET_MINEXCLUSIVE;
+            facets.minExclusive = fMinExclusive.toString();
+            facets.minExclusiveAnnotation = minExclusiveAnnotation;
+        }
+        // a pattern of this type is put in front of those of the base type
+        if ((fFacetsDefined & FACET_PATTERN) != 0 && fPatternStr != fBase.fPatternStr) {
+            presentFacet |= FACET_PATTERN;
+            facets.pattern = (String)fPatternStr.elementAt(0);
+            if (patternAnnotations != null && patternAnnotations != fBase.patternAnnotations) {
+                final int baseLength = (fBase.patternAnnotations != null) ?
+                        fBase.patternAnnotations.getLength() : 0;
+                facets.patternAnnotations = new XSObjectListImpl();
+                for (int i = 0; i < patternAnnotations.getLength() - baseLength; i++) {
+                    facets.patternAnnotations.addXSObject(patternAnnotations.item(i));
+                }
+            }
+        }
+        if ((fFacetsDefined & FACET_ENUMERATION) != 0 && fEnumeration != fBase.fEnumeration) {
+            presentFacet |= FACET_ENUMERATION;
+            facets.enumeration = new Vector(fEnumerationSize);
+            for (int i = 0; i < fEnumerationSize; i++) {
+                facets.enumeration.addElement(fEnumeration[i].normalizedValue);
+            }
+            facets.enumAnnotations = enumerationAnnotations;
+        }
+        return presentFacet;
+    }
+
+    /**
+     * Returns whether a facet of this type was specified on the type
+     * itself, given whether its value is the same as that of the base.
+     */
+    private boolean isOwnFacet(short facet, short baseFacets, short ownFixed, boolean sameAsBase) {
+        return (fFacetsDefined & facet) != 0 &&
+            ((baseFacets & facet) == 0 || (ownFixed & facet) != 0 || !sameAsBase);
+    }
+
     /**
      * [annotations]: a set of annotations for this simple type component if
      * it exists, otherwise an empty <code>XSObjectList</code>.
@@ -2983,6 +3127,8 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         fPattern = null;
         fPatternStr = null;
         fEnumeration = null;
+        fEnumerationBuckets = null;
+        fEnumerationNext = null;
         fLexicalPattern = null;
         fLexicalEnumeration = null;
         fActualEnumeration = null;
@@ -3473,6 +3619,82 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         return valueType;
     }
 
+    /**
+     * Returns whether the given enumeration value is the same as an actual
+     * value of the given primitive kind and, for lists, item types.
+     */
+    private boolean isEnumerationValue(ValidatedInfo enumValue, Object ob, short primitiveType1, ShortList itemType) {
+        final short primitiveType2 = convertToPrimitiveKind(enumValue.actualValueType);
+        if ((primitiveType1 == primitiveType2 ||
+                primitiveType1 == XSConstants.ANYSIMPLETYPE_DT && primitiveType2 == XSConstants.STRING_DT ||
+                primitiveType1 == XSConstants.STRING_DT && primitiveType2 == XSConstants.ANYSIMPLETYPE_DT)
+                && enumValue.actualValue.equals(ob)) {
+            if (primitiveType1 == XSConstants.LIST_DT || primitiveType1 == XSConstants.LISTOFUNION_DT) {
+                ShortList enumItemType = enumValue.itemValueTypes;
+                final int typeList1Length = itemType != null ? itemType.getLength() : 0;
+                final int typeList2Length = enumItemType != null ? enumItemType.getLength() : 0;
+                if (typeList1Length == typeList2Length) {
+                    int j;
+                    for (j = 0; j < typeList1Length; ++j) {
+                        final short primitiveItem1 = convertToPrimitiveKind(itemType.item(j));
+                        final short primitiveItem2 = convertToPrimitiveKind(enumItemType.item(j));
+                        if (primitiveItem1 != primitiveItem2) {
+                            if (primitiveItem1 == XSConstants.ANYSIMPLETYPE_DT && primitiveItem2 == XSConstants.STRING_DT ||
+                                    primitiveItem1 == XSConstants.STRING_DT && primitiveItem2 == XSConstants.ANYSIMPLETYPE_DT) {
+                                continue;
+                            }
+                            break;
+                        }
+                    }
+                    return j == typeList1Length;
+                }
+                return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Builds the hash index over the actual values of the enumeration,
+     * if it is large enough for the index to pay off. Equal actual values
+     * have the same hash code whatever their type, so the index only
+     * narrows down the values which are checked by isEnumerationValue().
+     */
+    private void buildEnumerationIndex() {
+        fEnumerationBuckets = null;
+        fEnumerationNext = null;
+        final int size = fEnumerationSize;
+        if (size <= ENUMERATION_INDEX_THRESHOLD) {
+            return;
+        }
+        int capacity = 1;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        final int[] buckets = new int[capacity];
+        final int[] next = new int[size];
+        // add the values in reverse, so that each bucket lists its values
+        // in the order of the enumeration
+        for (int i = size - 1; i >= 0; i--) {
+            final Object value = fEnumeration[i].actualValue;
+            if (value == null) {
+                return;
+            }
+            final int bucket = enumerationHash(value) & (capacity - 1);
+            next[i] = buckets[bucket];
+            buckets[bucket] = i + 1;
+        }
+        fEnumerationBuckets = buckets;
+        fEnumerationNext = next;
+    }
+
+    /** Returns the hash code of an actual value, spread for the enumeration index. */
+    private static int enumerationHash(Object value) {
+        final int hash = value.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
     private void appendEnumString(StringBuffer sb) {
         sb.append('[');
         for (int i = 0; i < fEnumerationSize; i++) {
@@ -20,6 +20,7 @@ package org.apache.xerces.impl.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.Locale;
 
 import org.apache.xerces.impl.msg.XMLMessageFormatter;
@@ -53,7 +54,10 @@ public final class ASCIIReader
     protected final InputStream fInputStream;
 
     /** Byte buffer. */
-    protected final byte[] fBuffer;
+    protected byte[] fBuffer;
+
+    /** The input stream if its bytes may be mapped, or null. */
+    private final MappedInput fMappedInput;
 
     // message formatter; used to produce localized
     // exception messages
@@ -105,10 +109,26 @@ public final class ASCIIReader
             MessageFormatter messageFormatter, Locale locale) {
         fInputStream = inputStream;
         fBuffer = buffer;
+        fMappedInput = (inputStream instanceof MappedInput) ? (MappedInput) inputStream : null;
         fFormatter = messageFormatter;
         fLocale = locale;
     } // <init>(InputStream, byte[], MessageFormatter, Locale)
 
+    //
+    // Public methods
+    //
+    
+    /**
+     * Replaces the byte buffer used for reading from the underlying
+     * input stream, typically with a larger one once the input has
+     * turned out to be large.
+     *
+     * @param buffer The new byte buffer.
+     */
+    public void setBuffer(byte[] buffer) {
+        fBuffer = buffer;
+    } // setBuffer(byte[])
+
     //
     // Reader methods
     //
@@ -151,6 +171,27 @@ public final class ASCIIReader
      * @exception  IOException  If an I/O error occurs
      */
     public int read(char ch[], int offset, int length) throws IOException {
+        // decode straight out of a mapped region of the file; a byte out
+        // of range is left to be reported by a read through the stream
+        if (fMappedInput != null) {
+            final ByteBuffer buffer = fMappedInput.getMappedBuffer();
+            if (buffer != null) {
+                final int position = buffer.position();
+                final int end = Math.min(length, buffer.remaining());
+                int i = 0;
+                for (; i < end; i++) {
+                    final int b0 = buffer.get(position + i);
+                    if (b0 < 0) {
+                        break;
+                    }
+                    ch[offset + i] = (char)b0;
+                }
+                if (i > 0) {
+                    buffer.position(position + i);
+                    return i;
+                }
+            }
+        }
         if (length > fBuffer.length) {
             length = fBuffer.length;
         }
@@ -20,6 +20,7 @@ package org.apache.xerces.impl.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 
 /**
  * <p>Reader for the ISO-8859-1 encoding.</p>
@@ -48,7 +49,10 @@ public final class Latin1Reader
     protected final InputStream fInputStream;
 
     /** Byte buffer. */
-    protected final byte[] fBuffer;
+    protected byte[] fBuffer;
+
+    /** The input stream if its bytes may be mapped, or null. */
+    private final MappedInput fMappedInput;
     
     //
     // Constructors
@@ -84,8 +88,24 @@ public final class Latin1Reader
     public Latin1Reader(InputStream inputStream, byte [] buffer) {
         fInputStream = inputStream;
         fBuffer = buffer;
+        fMappedInput = (inputStream instanceof MappedInput) ? (MappedInput) inputStream : null;
     } // <init>(InputStream, byte[])
     
+    //
+    // Public methods
+    //
+    
+    /**
+     * Replaces the byte buffer used for reading from the underlying
+     * input stream, typically with a larger one once the input has
+     * turned out to be large.
+     *
+     * @param buffer The new byte buffer.
+     */
+    public void setBuffer(byte[] buffer) {
+        fBuffer = buffer;
+    } // setBuffer(byte[])
+
     //
     // Reader methods
     //
@@ -122,6 +142,21 @@ public final class Latin1Reader
      * @exception  IOException  If an I/O error occurs
      */
     public int read(char ch[], int offset, int length) throws IOException {
+        // decode straight out of a mapped region of the file
+        if (fMappedInput != null) {
+            final ByteBuffer buffer = fMappedInput.getMappedBuffer();
+            if (buffer != null) {
+                final int position = buffer.position();
+                if (length > buffer.remaining()) {
+                    length = buffer.remaining();
+                }
+                for (int i = 0; i < length; ++i) {
+                    ch[offset + i] = (char) (buffer.get(position + i) & 0xff);
+                }
+                buffer.position(position + length);
+                return length;
+            }
+        }
         if (length > fBuffer.length) {
             length = fBuffer.length;
         }
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>An input stream over a local file which reads from memory mapped
+ * regions of the file instead of issuing a read system call for each
+ * chunk. The readers for UTF-8, US-ASCII and ISO-8859-1 decode straight
+ * out of the mapped region, leaving readahead to the operating system's
+ * page cache.</p>
+ *
+ * <p>Files are mapped in windows of at most {@link #MAX_WINDOW_SIZE} bytes,
+ * so files larger than 2GB can be read as well.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public final class MappedFileInputStream
+    extends InputStream implements MappedInput {
+
+    //
+    // Constants
+    //
+
+    /** Largest region of the file mapped at a time (64MB). */
+    public static final int MAX_WINDOW_SIZE = 1 << 26;
+
+    //
+    // Data
+    //
+
+    /** File channel. */
+    private final FileChannel fChannel;
+
+    /** Size of the file. */
+    private final long fSize;
+
+    /** Largest region of the file mapped at a time. */
+    private final int fWindowSize;
+
+    /** Position in the file of the current window. */
+    private long fWindowStart;
+
+    /** Current window. */
+    private MappedByteBuffer fWindow;
+
+    /** Marked position in the file, or -1. */
+    private long fMark = -1;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a mapped input stream over the specified file.
+     *
+     * @param file The file to read.
+     *
+     * @throws IOException Thrown if the file cannot be opened or mapped.
+     */
+    public MappedFileInputStream(File file) throws IOException {
+        this(file, MAX_WINDOW_SIZE);
+    } // <init>(File)
+
+    /**
+     * Constructs a mapped input stream over the specified file which
+     * maps regions of at most the given size. Primarily for testing.
+     *
+     * @param file       The file to read.
+     * @param windowSize The largest region mapped at a time.
+     *
+     * @throws IOException Thrown if the file cannot be opened or mapped.
+     */
+    public MappedFileInputStream(File file, int windowSize) throws IOException {
+        fWindowSize = windowSize;
+        FileInputStream stream = new FileInputStream(file);
+        fChannel = stream.getChannel();
+        try {
+            fSize = fChannel.size();
+            map(0);
+        }
+        catch (IOException e) {
+            fChannel.close();
+            throw e;
+        }
+    } // <init>(File,int)
+
+    //
+    // MappedInput methods
+    //
+
+    /** Returns the current window, or null at end of file. */
+    public ByteBuffer getMappedBuffer() throws IOException {
+        if (!fWindow.hasRemaining() && !nextWindow()) {
+            return null;
+        }
+        return fWindow;
+    } // getMappedBuffer():ByteBuffer
+
+    //
+    // InputStream methods
+    //
+
+    /** Reads a single byte. */
+    public int read() throws IOException {
+        if (!fWindow.hasRemaining() && !nextWindow()) {
+            return -1;
+        }
+        return fWindow.get() & 0xFF;
+    } // read():int
+
+    /** Reads bytes into the given array. */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len <= 0) {
+            return 0;
+        }
+        if (!fWindow.hasRemaining() && !nextWindow()) {
+            return -1;
+        }
+        final int remaining = fWindow.remaining();
+        if (len > remaining) {
+            len = remaining;
+        }
+        fWindow.get(b, off, len);
+        return len;
+    } // read(byte[],int,int):int
+
+    /** Skips bytes. */
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        final long position = fWindowStart + fWindow.position();
+        if (n > fSize - position) {
+            n = fSize - position;
+        }
+        seek(position + n);
+        return n;
+    } // skip(long):long
+
+    /** Returns the number of bytes left in the current window. */
+    public int available() throws IOException {
+        return fWindow.remaining();
+    } // available():int
+
+    /** Marks the current position. */
+    public void mark(int readlimit) {
+        fMark = fWindowStart + fWindow.position();
+    } // mark(int)
+
+    /** Returns to the marked position. */
+    public void reset() throws IOException {
+        if (fMark < 0) {
+            throw new IOException("mark() not called");
+        }
+        seek(fMark);
+    } // reset()
+
+    /** Marks are supported. */
+    public boolean markSupported() {
+        return true;
+    } // markSupported():boolean
+
+    /**
+     * Closes the channel. Mapped regions are released when they
+     * are no longer referenced.
+     */
+    public void close() throws IOException {
+        fChannel.close();
+    } // close()
+
+    //
+    // Private methods
+    //
+
+    /** Maps the window starting at the given position in the file. */
+    private void map(long position) throws IOException {
+        long length = fSize - position;
+        if (length > fWindowSize) {
+            length = fWindowSize;
+        }
+        fWindow = fChannel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        fWindowStart = position;
+    } // map(long)
+
+    /** Maps the window following the current one. Returns false at end of file. */
+    private boolean nextWindow() throws IOException {
+        final long next = fWindowStart + fWindow.limit();
+        if (next >= fSize) {
+            return false;
+        }
+        map(next);
+        return true;
+    } // nextWindow():boolean
+
+    /** Moves to the given position in the file. */
+    private void seek(long position) throws IOException {
+        if (position < fWindowStart || position > fWindowStart + fWindow.limit()) {
+            map(position);
+        }
+        else {
+            fWindow.position((int) (position - fWindowStart));
+        }
+    } // seek(long)
+
+} // class MappedFileInputStream
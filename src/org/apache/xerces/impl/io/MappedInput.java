@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.impl.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>An input stream whose next bytes may be read straight out of a
+ * memory mapped region of a file. The readers for UTF-8, US-ASCII and
+ * ISO-8859-1 decode such regions in place instead of copying their
+ * bytes into an array first.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public interface MappedInput {
+
+    /**
+     * Returns the mapped region holding the next bytes of the stream,
+     * positioned at the next byte, or null if the next bytes must be
+     * read through the stream. Bytes taken from the region by advancing
+     * its position are consumed from the stream.
+     *
+     * @throws IOException Thrown if the next region cannot be mapped.
+     */
+    public ByteBuffer getMappedBuffer() throws IOException;
+
+} // interface MappedInput
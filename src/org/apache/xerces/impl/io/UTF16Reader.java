@@ -52,7 +52,7 @@ public final class UTF16Reader
     protected final InputStream fInputStream;
 
     /** Byte buffer. */
-    protected final byte[] fBuffer;
+    protected byte[] fBuffer;
     
     /** Endianness. */
     protected final boolean fIsBigEndian;
@@ -125,6 +125,21 @@ public final class UTF16Reader
         fLocale = locale;
     } // <init>(InputStream, byte[], boolean, MessageFormatter, Locale)
     
+    //
+    // Public methods
+    //
+    
+    /**
+     * Replaces the byte buffer used for reading from the underlying
+     * input stream, typically with a larger one once the input has
+     * turned out to be large.
+     *
+     * @param buffer The new byte buffer.
+     */
+    public void setBuffer(byte[] buffer) {
+        fBuffer = buffer;
+    } // setBuffer(byte[])
+
     //
     // Reader methods
     //
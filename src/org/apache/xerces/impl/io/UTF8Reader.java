@@ -20,6 +20,7 @@ package org.apache.xerces.impl.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.Locale;
 
 import org.apache.xerces.impl.msg.XMLMessageFormatter;
@@ -57,7 +58,7 @@ public final class UTF8Reader
     protected final InputStream fInputStream;
 
     /** Byte buffer. */
-    protected final byte[] fBuffer;
+    protected byte[] fBuffer;
 
     /** Offset into buffer. */
     protected int fOffset;
@@ -65,6 +66,9 @@ public final class UTF8Reader
     /** Surrogate character. */
     private int fSurrogate = -1;
 
+    /** The input stream if its bytes may be mapped, or null. */
+    private final MappedInput fMappedInput;
+
     // message formatter; used to produce localized
     // exception messages
     private final MessageFormatter fFormatter;
@@ -126,10 +130,31 @@ public final class UTF8Reader
             MessageFormatter messageFormatter, Locale locale) {
         fInputStream = inputStream;
         fBuffer = buffer;
+        fMappedInput = (inputStream instanceof MappedInput) ? (MappedInput) inputStream : null;
         fFormatter = messageFormatter;
         fLocale = locale;
     } // <init>(InputStream, byte[], MessageFormatter, Locale)
 
+    //
+    // Public methods
+    //
+    
+    /**
+     * Replaces the byte buffer used for reading from the underlying
+     * input stream, typically with a larger one once the input has
+     * turned out to be large. Bytes of an incomplete character
+     * held over from the last read are carried over to the new buffer.
+     *
+     * @param buffer The new byte buffer.
+     */
+    public void setBuffer(byte[] buffer) {
+        // carry over the bytes of a character which hasn't been decoded yet
+        if (fOffset > 0) {
+            System.arraycopy(fBuffer, 0, buffer, 0, fOffset);
+        }
+        fBuffer = buffer;
+    } // setBuffer(byte[])
+
     //
     // Reader methods
     //
@@ -286,6 +311,17 @@ public final class UTF8Reader
      */
     public int read(char ch[], int offset, int length) throws IOException {
 
+        // decode straight out of a mapped region of the file
+        if (fMappedInput != null && fOffset == 0 && fSurrogate == -1) {
+            final ByteBuffer buffer = fMappedInput.getMappedBuffer();
+            if (buffer != null) {
+                final int count = readMapped(buffer, ch, offset, length);
+                if (count > 0) {
+                    return count;
+                }
+            }
+        }
+
         // read bytes
         int out = offset;
         int count = 0;
@@ -327,15 +363,8 @@ public final class UTF8Reader
         int in;
         byte byte1;
         final byte byte0 = 0;
-        for (in = 0; in < total; in++) {
-            byte1 = fBuffer[in];
-            if (byte1 >= byte0) {
-                ch[out++] = (char)byte1;
-            }
-            else   {
-                break;
-            }
-        }
+        in = readASCII(0, total, ch, out);
+        out += in;
         for ( ; in < total; in++) {
             byte1 = fBuffer[in];
 
@@ -343,6 +372,29 @@ public final class UTF8Reader
             // Unicode: [0000 0000] [0xxx xxxx]
             if (byte1 >= byte0) {
                 ch[out++] = (char)byte1;
+                // widen the following eight bytes at once if they are ASCII
+                if (in + 8 < total) {
+                    final int a0 = fBuffer[in + 1];
+                    final int a1 = fBuffer[in + 2];
+                    final int a2 = fBuffer[in + 3];
+                    final int a3 = fBuffer[in + 4];
+                    final int a4 = fBuffer[in + 5];
+                    final int a5 = fBuffer[in + 6];
+                    final int a6 = fBuffer[in + 7];
+                    final int a7 = fBuffer[in + 8];
+                    if ((a0 | a1 | a2 | a3 | a4 | a5 | a6 | a7) >= 0) {
+                        ch[out] = (char)a0;
+                        ch[out + 1] = (char)a1;
+                        ch[out + 2] = (char)a2;
+                        ch[out + 3] = (char)a3;
+                        ch[out + 4] = (char)a4;
+                        ch[out + 5] = (char)a5;
+                        ch[out + 6] = (char)a6;
+                        ch[out + 7] = (char)a7;
+                        in += 8;
+                        out += 8;
+                    }
+                }
                 continue;
             }
 
@@ -675,6 +727,148 @@ public final class UTF8Reader
     // Private methods
     //
 
+    /**
+     * Decodes the complete, well-formed characters at the start of a
+     * mapped region and consumes their bytes. Returns the number of
+     * characters decoded, which is zero if the first one is malformed or
+     * continues past the end of the region; the byte buffer then takes
+     * care of it, and reports the error if there is one.
+     */
+    private int readMapped(ByteBuffer buffer, char[] ch, int offset, int length) {
+        final int limit = buffer.limit();
+        final int end = offset + length;
+        int in = buffer.position();
+        int out = offset;
+        while (out < end && in < limit) {
+            final int b0 = buffer.get(in);
+
+            // UTF-8:   [0xxx xxxx]
+            // Unicode: [0000 0000] [0xxx xxxx]
+            if (b0 >= 0) {
+                ch[out++] = (char)b0;
+                in++;
+                continue;
+            }
+
+            // UTF-8:   [110y yyyy] [10xx xxxx]
+            // Unicode: [0000 0yyy] [yyxx xxxx]
+            final int c0 = b0 & 0x0FF;
+            if ((c0 & 0xE0) == 0xC0 && (c0 & 0x1E) != 0) {
+                if (in + 1 >= limit) {
+                    break;
+                }
+                final int b1 = buffer.get(in + 1) & 0x00FF;
+                if ((b1 & 0xC0) != 0x80) {
+                    break;
+                }
+                ch[out++] = (char)(((c0 << 6) & 0x07C0) | (b1 & 0x003F));
+                in += 2;
+                continue;
+            }
+
+            // UTF-8:   [1110 zzzz] [10yy yyyy] [10xx xxxx]
+            // Unicode: [zzzz yyyy] [yyxx xxxx]
+            if ((c0 & 0xF0) == 0xE0) {
+                if (in + 2 >= limit) {
+                    break;
+                }
+                final int b1 = buffer.get(in + 1) & 0x00FF;
+                final int b2 = buffer.get(in + 2) & 0x00FF;
+                if ((b1 & 0xC0) != 0x80
+                    || (c0 == 0xED && b1 >= 0xA0)
+                    || ((c0 & 0x0F) == 0 && (b1 & 0x20) == 0)
+                    || (b2 & 0xC0) != 0x80) {
+                    break;
+                }
+                ch[out++] = (char)(((c0 << 12) & 0xF000) | ((b1 << 6) & 0x0FC0) |
+                        (b2 & 0x003F));
+                in += 3;
+                continue;
+            }
+
+            // UTF-8:   [1111 0uuu] [10uu zzzz] [10yy yyyy] [10xx xxxx]*
+            // Unicode: [1101 10ww] [wwzz zzyy] (high surrogate)
+            //          [1101 11yy] [yyxx xxxx] (low surrogate)
+            //          * uuuuu = wwww + 1
+            if ((c0 & 0xF8) == 0xF0) {
+                // both surrogates must fit
+                if (in + 3 >= limit || out + 1 >= end) {
+                    break;
+                }
+                final int b1 = buffer.get(in + 1) & 0x00FF;
+                final int b2 = buffer.get(in + 2) & 0x00FF;
+                final int b3 = buffer.get(in + 3) & 0x00FF;
+                if ((b1 & 0xC0) != 0x80
+                    || ((b1 & 0x30) == 0 && (c0 & 0x07) == 0)
+                    || (b2 & 0xC0) != 0x80 || (b3 & 0xC0) != 0x80) {
+                    break;
+                }
+                final int uuuuu = ((c0 << 2) & 0x001C) | ((b1 >> 4) & 0x0003);
+                if (uuuuu > 0x10) {
+                    break;
+                }
+                final int wwww = uuuuu - 1;
+                final int zzzz = b1 & 0x000F;
+                final int yyyyyy = b2 & 0x003F;
+                final int xxxxxx = b3 & 0x003F;
+                ch[out++] = (char)(0xD800 | ((wwww << 6) & 0x03C0) | (zzzz << 2) | (yyyyyy >> 4));
+                ch[out++] = (char)(0xDC00 | ((yyyyyy << 6) & 0x03C0) | xxxxxx);
+                in += 4;
+                continue;
+            }
+
+            // error
+            break;
+        }
+        buffer.position(in);
+        return out - offset;
+    } // readMapped(ByteBuffer,char[],int,int):int
+
+    /**
+     * Widens the run of ASCII bytes in the byte buffer which starts at
+     * <code>in</code> into the character array starting at <code>out</code>.
+     * Blocks of eight bytes are tested with a single branch on the bitwise
+     * OR of the bytes, which is negative if any of them has its high bit set.
+     *
+     * @return the index of the first byte which is not ASCII, or
+     *         <code>end</code> if the run extends to the end
+     */
+    private int readASCII(int in, int end, char[] ch, int out) {
+        final byte[] buffer = fBuffer;
+        final int blockEnd = end - 7;
+        while (in < blockEnd) {
+            final int b0 = buffer[in];
+            final int b1 = buffer[in + 1];
+            final int b2 = buffer[in + 2];
+            final int b3 = buffer[in + 3];
+            final int b4 = buffer[in + 4];
+            final int b5 = buffer[in + 5];
+            final int b6 = buffer[in + 6];
+            final int b7 = buffer[in + 7];
+            if ((b0 | b1 | b2 | b3 | b4 | b5 | b6 | b7) < 0) {
+                break;
+            }
+            ch[out] = (char)b0;
+            ch[out + 1] = (char)b1;
+            ch[out + 2] = (char)b2;
+            ch[out + 3] = (char)b3;
+            ch[out + 4] = (char)b4;
+            ch[out + 5] = (char)b5;
+            ch[out + 6] = (char)b6;
+            ch[out + 7] = (char)b7;
+            in += 8;
+            out += 8;
+        }
+        for (; in < end; in++) {
+            final int b = buffer[in];
+            if (b < 0) {
+                break;
+            }
+            ch[out++] = (char)b;
+        }
+        return in;
+    } // readASCII(int,int,char[],int):int
+
     /** Throws an exception for expected byte. */
     private void expectedByte(int position, int count)
         throws MalformedByteSequenceException {
@@ -0,0 +1,615 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xpath.regex;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * Matches an XML Schema regular expression against a whole string with a
+ * deterministic automaton instead of the backtracking interpreter.
+ * <p>
+ * The automaton is derived from the token tree using the position
+ * (Glushkov) construction. Characters are grouped into classes which no
+ * pattern leaf can tell apart, and deterministic states are built lazily,
+ * one transition at a time, as input is seen. The number of cached states
+ * is bounded; once the cache is full, further states are computed on the
+ * fly without being remembered, so matching stays linear in the length of
+ * the input either way.
+ * <p>
+ * Instances are safe for use by multiple threads. Transitions are
+ * computed and read without locking; states and lazily computed tables
+ * are immutable, so they are published through plain array stores. Only
+ * adding a state to the cache is synchronized, and once the cache is full
+ * states are looked up in a read-only copy of it.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class DFAMatcher {
+
+    /** Largest number of positions for which an automaton is built. */
+    private static final int MAX_POSITIONS = 1024;
+
+    /** Upper bound on the number of cached transitions (states * classes). */
+    private static final int MAX_TRANSITIONS = 1 << 16;
+
+    /** Lower bound on the number of cached states. */
+    private static final int MIN_STATES = 16;
+
+    /** Characters below this value are classified by table lookup. */
+    private static final int ASCII_LIMIT = 128;
+
+    //
+    // Data
+    //
+
+    /** Number of positions (leaves) in the expression. */
+    private final int positionCount;
+
+    /** Code point matched by each position, or -1 for class positions. */
+    private final int[] positionChars;
+
+    /** DOT or range token matched by each class position. */
+    private final Token[] positionTokens;
+
+    /** Positions which may follow each position. */
+    private final BitSet[] follow;
+
+    /** Positions which may end a match. */
+    private final BitSet last;
+
+    /** Whether '.' matches line terminators. */
+    private final boolean singleLine;
+
+    /** Lower bounds of the character classes, in ascending order. */
+    private final int[] classBounds;
+
+    /** Character class of each ASCII character. */
+    private final int[] asciiClasses;
+
+    /** Positions matching each character class; filled in lazily. */
+    private final Positions[] classPositions;
+
+    /** Maximum number of states which get a transition table. */
+    private final int maxStates;
+
+    /** Cached states keyed by their position set; guarded by itself. */
+    private final HashMap states = new HashMap();
+
+    /** Read-only copy of the states, set once the cache is full. */
+    private volatile HashMap fullStates;
+
+    /** The start state. */
+    private final State initial;
+
+    //
+    // Constructors
+    //
+
+    private DFAMatcher(Builder builder, BitSet first, boolean nullable, boolean singleLine) {
+        this.positionCount = builder.positions.size();
+        this.positionChars = new int[this.positionCount];
+        this.positionTokens = new Token[this.positionCount];
+        this.follow = new BitSet[this.positionCount];
+        for (int i = 0; i < this.positionCount; i++) {
+            Object leaf = builder.positions.elementAt(i);
+            if (leaf instanceof Token) {
+                this.positionChars[i] = -1;
+                this.positionTokens[i] = (Token)leaf;
+            }
+            else {
+                this.positionChars[i] = ((Integer)leaf).intValue();
+            }
+            this.follow[i] = (BitSet)builder.follow.elementAt(i);
+        }
+        this.last = builder.last;
+        this.singleLine = singleLine;
+
+        this.classBounds = this.computeClassBounds();
+        this.asciiClasses = new int[ASCII_LIMIT];
+        for (int ch = 0; ch < ASCII_LIMIT; ch++) {
+            this.asciiClasses[ch] = this.classOf(ch);
+        }
+        this.classPositions = new Positions[this.classBounds.length];
+        this.maxStates = Math.max(MIN_STATES, MAX_TRANSITIONS / this.classBounds.length);
+
+        BitSet key = (BitSet)first.clone();
+        if (nullable) {
+            key.set(this.positionCount);
+        }
+        this.initial = new State(key, this.positionCount, this.classBounds.length);
+        this.states.put(key, this.initial);
+    }
+
+    /**
+     * Builds a matcher for the given token tree.
+     *
+     * @return the matcher, or <code>null</code> if the expression uses
+     *         constructs which cannot be expressed as a finite automaton
+     *         or would need too many positions.
+     */
+    static DFAMatcher compile(Token tokentree, int options) {
+        if (RegularExpression.isSet(options, RegularExpression.IGNORE_CASE)) {
+            return null;
+        }
+        if (countPositions(tokentree) > MAX_POSITIONS) {
+            return null;
+        }
+        Builder builder = new Builder();
+        Node root = builder.build(tokentree);
+        if (root == null) {
+            return null;
+        }
+        builder.last = root.last;
+        return new DFAMatcher(builder, root.first, root.nullable,
+                              RegularExpression.isSet(options, RegularExpression.SINGLE_LINE));
+    }
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Checks whether the whole range <var>start</var> to <var>limit</var>
+     * of the target matches the expression.
+     */
+    boolean matches(RegularExpression.ExpressionTarget target, int start, int limit) {
+        State state = this.initial;
+        for (int offset = start; offset < limit; offset++) {
+            int ch = target.charAt(offset);
+            if (REUtil.isHighSurrogate(ch) && offset+1 < limit) {
+                int ch2 = target.charAt(offset+1);
+                if (REUtil.isLowSurrogate(ch2)) {
+                    ch = REUtil.composeFromSurrogates(ch, ch2);
+                    offset++;
+                }
+            }
+            int cls = ch < ASCII_LIMIT ? this.asciiClasses[ch] : this.classOf(ch);
+            State[] next = state.next;
+            State s = next != null ? next[cls] : null;
+            if (s == null) {
+                s = this.step(state, cls);
+            }
+            if (s.dead) {
+                return false;
+            }
+            state = s;
+        }
+        return state.accepting;
+    }
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Computes the state reached from <var>state</var> on a character class
+     * and records the transition if both states are cached.
+     */
+    private State step(State state, int cls) {
+        Positions matching = this.classPositions[cls];
+        if (matching == null) {
+            // Another thread may compute the same set; either copy will do.
+            matching = new Positions(this.matchingPositions(this.classBounds[cls]));
+            this.classPositions[cls] = matching;
+        }
+        BitSet key = new BitSet(this.positionCount+1);
+        boolean accepting = false;
+        for (int p = state.key.nextSetBit(0); p >= 0 && p < this.positionCount;
+             p = state.key.nextSetBit(p+1)) {
+            if (matching.set.get(p)) {
+                key.or(this.follow[p]);
+                if (this.last.get(p)) {
+                    accepting = true;
+                }
+            }
+        }
+        if (accepting) {
+            key.set(this.positionCount);
+        }
+        State target;
+        HashMap full = this.fullStates;
+        if (full != null) {
+            target = (State)full.get(key);
+        }
+        else {
+            synchronized (this.states) {
+                target = (State)this.states.get(key);
+                if (target == null && this.states.size() < this.maxStates) {
+                    target = new State(key, this.positionCount, this.classBounds.length);
+                    this.states.put(key, target);
+                    if (this.states.size() == this.maxStates) {
+                        this.fullStates = new HashMap(this.states);
+                    }
+                }
+            }
+        }
+        if (target == null) {
+            // The cache is full: the state is used for this step only.
+            return new State(key, this.positionCount, 0);
+        }
+        if (state.next != null) {
+            state.next[cls] = target;
+        }
+        return target;
+    }
+
+    /** Returns the positions which match the given code point. */
+    private BitSet matchingPositions(int ch) {
+        BitSet set = new BitSet(this.positionCount);
+        for (int p = 0; p < this.positionCount; p++) {
+            boolean match;
+            if (this.positionChars[p] >= 0) {
+                match = this.positionChars[p] == ch;
+            }
+            else if (this.positionTokens[p].type == Token.DOT) {
+                match = this.singleLine || !isEOLChar(ch);
+            }
+            else {
+                match = this.positionTokens[p].match(ch);
+            }
+            if (match) {
+                set.set(p);
+            }
+        }
+        return set;
+    }
+
+    /** Returns the character class of a code point. */
+    private int classOf(int ch) {
+        int low = 0;
+        int high = this.classBounds.length-1;
+        while (low < high) {
+            int mid = (low+high+1) >>> 1;
+            if (this.classBounds[mid] <= ch) {
+                low = mid;
+            }
+            else {
+                high = mid-1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Collects every code point at which some position may start or stop
+     * matching. Code points between two consecutive bounds are matched by
+     * the same positions.
+     */
+    private int[] computeClassBounds() {
+        BitSet small = new BitSet(0x10000);
+        Vector large = new Vector();
+        small.set(0);
+        for (int p = 0; p < this.positionCount; p++) {
+            if (this.positionChars[p] >= 0) {
+                addBound(small, large, this.positionChars[p]);
+                addBound(small, large, this.positionChars[p]+1);
+            }
+            else if (this.positionTokens[p].type == Token.DOT) {
+                if (!this.singleLine) {
+                    addBound(small, large, RegularExpression.LINE_FEED);
+                    addBound(small, large, RegularExpression.LINE_FEED+1);
+                    addBound(small, large, RegularExpression.CARRIAGE_RETURN);
+                    addBound(small, large, RegularExpression.CARRIAGE_RETURN+1);
+                    addBound(small, large, RegularExpression.LINE_SEPARATOR);
+                    addBound(small, large, RegularExpression.PARAGRAPH_SEPARATOR+1);
+                }
+            }
+            else {
+                int[] ranges = ((RangeToken)this.positionTokens[p]).ranges;
+                if (ranges != null) {
+                    for (int i = 0; i < ranges.length; i += 2) {
+                        addBound(small, large, ranges[i]);
+                        addBound(small, large, ranges[i+1]+1);
+                    }
+                }
+            }
+        }
+        int count = 0;
+        for (int ch = 0; ch < 0x10000; ch++) {
+            if (small.get(ch)) {
+                count++;
+            }
+        }
+        int[] bounds = new int[count+large.size()];
+        int index = 0;
+        for (int ch = 0; ch < 0x10000; ch++) {
+            if (small.get(ch)) {
+                bounds[index++] = ch;
+            }
+        }
+        int first = index;
+        for (int i = 0; i < large.size(); i++) {
+            int value = ((Integer)large.elementAt(i)).intValue();
+            int j = index++;
+            while (j > first && bounds[j-1] > value) {
+                bounds[j] = bounds[j-1];
+                j--;
+            }
+            bounds[j] = value;
+        }
+        return bounds;
+    }
+
+    private static void addBound(BitSet small, Vector large, int bound) {
+        if (bound < 0x10000) {
+            small.set(bound);
+        }
+        else if (bound <= Token.UTF16_MAX) {
+            Integer value = new Integer(bound);
+            if (!large.contains(value)) {
+                large.addElement(value);
+            }
+        }
+    }
+
+    private static boolean isEOLChar(int ch) {
+        return ch == RegularExpression.LINE_FEED || ch == RegularExpression.CARRIAGE_RETURN
+        || ch == RegularExpression.LINE_SEPARATOR || ch == RegularExpression.PARAGRAPH_SEPARATOR;
+    }
+
+    /**
+     * Returns the number of positions the construction would create,
+     * counting every unrolled copy of a bounded repetition.
+     */
+    private static long countPositions(Token tok) {
+        switch (tok.type) {
+        case Token.CHAR:
+        case Token.DOT:
+        case Token.RANGE:
+        case Token.NRANGE:
+            return 1;
+        case Token.STRING:
+            return tok.getString() == null ? 0 : tok.getString().length();
+        case Token.CONCAT:
+        case Token.UNION:
+            long sum = 0;
+            for (int i = 0; i < tok.size(); i++) {
+                sum += countPositions(tok.getChild(i));
+                if (sum > MAX_POSITIONS) {
+                    return sum;
+                }
+            }
+            return sum;
+        case Token.CLOSURE:
+        case Token.NONGREEDYCLOSURE:
+            long count = countPositions(tok.getChild(0));
+            if (count > MAX_POSITIONS) {
+                return count;
+            }
+            return copies(tok) * count;
+        case Token.PAREN:
+            return countPositions(tok.getChild(0));
+        default:
+            return 0;
+        }
+    }
+
+    /** Returns the number of copies of the child a closure unrolls into. */
+    private static long copies(Token tok) {
+        int min = Math.max(tok.getMin(), 0);
+        int max = tok.getMax();
+        return max < 0 ? min+1 : Math.max(min, max);
+    }
+
+    //
+    // Classes
+    //
+
+    /**
+     * A deterministic state: the positions which may consume the next
+     * character, plus one extra bit telling whether input may end here.
+     */
+    static final class State {
+
+        final BitSet key;
+        final boolean accepting;
+        final boolean dead;
+        final State[] next;
+
+        State(BitSet key, int positionCount, int classCount) {
+            this.key = key;
+            this.accepting = key.get(positionCount);
+            this.dead = !this.accepting && key.isEmpty();
+            this.next = classCount > 0 ? new State[classCount] : null;
+        }
+    }
+
+    /** The positions matching a character class. */
+    static final class Positions {
+
+        final BitSet set;
+
+        Positions(BitSet set) {
+            this.set = set;
+        }
+    }
+
+    /** The first/last positions and nullability of a subexpression. */
+    static final class Node {
+
+        final BitSet first = new BitSet();
+        final BitSet last = new BitSet();
+        boolean nullable;
+    }
+
+    /** Performs the position construction over a token tree. */
+    static final class Builder {
+
+        final Vector positions = new Vector();
+        final Vector follow = new Vector();
+        BitSet last;
+
+        /**
+         * @return the node for <var>tok</var>, or <code>null</code> if the
+         *         token cannot be represented by the automaton.
+         */
+        Node build(Token tok) {
+            Node node;
+            switch (tok.type) {
+            case Token.CHAR:
+                if (isSurrogate(tok.getChar())) {
+                    return null;
+                }
+                return this.leaf(new Integer(tok.getChar()));
+
+            case Token.DOT:
+            case Token.RANGE:
+            case Token.NRANGE:
+                return this.leaf(tok);
+
+            case Token.STRING:
+                String str = tok.getString();
+                node = this.empty();
+                for (int i = 0; str != null && i < str.length(); i++) {
+                    int ch = str.charAt(i);
+                    if (REUtil.isHighSurrogate(ch) && i+1 < str.length()
+                        && REUtil.isLowSurrogate(str.charAt(i+1))) {
+                        ch = REUtil.composeFromSurrogates(ch, str.charAt(++i));
+                    }
+                    else if (isSurrogate(ch)) {
+                        return null;
+                    }
+                    node = this.concat(node, this.leaf(new Integer(ch)));
+                }
+                return node;
+
+            case Token.EMPTY:
+                return this.empty();
+
+            case Token.CONCAT:
+                node = this.empty();
+                for (int i = 0; i < tok.size(); i++) {
+                    Node child = this.build(tok.getChild(i));
+                    if (child == null) {
+                        return null;
+                    }
+                    node = this.concat(node, child);
+                }
+                return node;
+
+            case Token.UNION:
+                node = new Node();
+                for (int i = 0; i < tok.size(); i++) {
+                    Node child = this.build(tok.getChild(i));
+                    if (child == null) {
+                        return null;
+                    }
+                    node.first.or(child.first);
+                    node.last.or(child.last);
+                    node.nullable |= child.nullable;
+                }
+                return node;
+
+            case Token.CLOSURE:
+            case Token.NONGREEDYCLOSURE:
+                // X{n,m} is unrolled into n copies of X followed by
+                // m-n optional copies; X{n,} ends with X* instead.
+                Token child = tok.getChild(0);
+                int min = Math.max(tok.getMin(), 0);
+                int max = tok.getMax();
+                node = this.empty();
+                for (int i = 0; i < min; i++) {
+                    Node copy = this.build(child);
+                    if (copy == null) {
+                        return null;
+                    }
+                    node = this.concat(node, copy);
+                }
+                if (max < 0) {
+                    Node copy = this.build(child);
+                    if (copy == null) {
+                        return null;
+                    }
+                    node = this.concat(node, this.star(copy));
+                }
+                else {
+                    for (int i = min; i < max; i++) {
+                        Node copy = this.build(child);
+                        if (copy == null) {
+                            return null;
+                        }
+                        copy.nullable = true;
+                        node = this.concat(node, copy);
+                    }
+                }
+                return node;
+
+            case Token.PAREN:
+                return this.build(tok.getChild(0));
+
+            default:
+                // Anchors, back references, lookaround, independent
+                // groups, modifiers and conditions are not regular.
+                return null;
+            }
+        }
+
+        private Node leaf(Object data) {
+            int position = this.positions.size();
+            this.positions.addElement(data);
+            this.follow.addElement(new BitSet());
+            Node node = new Node();
+            node.first.set(position);
+            node.last.set(position);
+            return node;
+        }
+
+        private Node empty() {
+            Node node = new Node();
+            node.nullable = true;
+            return node;
+        }
+
+        private Node concat(Node left, Node right) {
+            this.addFollow(left.last, right.first);
+            Node node = new Node();
+            node.first.or(left.first);
+            if (left.nullable) {
+                node.first.or(right.first);
+            }
+            node.last.or(right.last);
+            if (right.nullable) {
+                node.last.or(left.last);
+            }
+            node.nullable = left.nullable && right.nullable;
+            return node;
+        }
+
+        private Node star(Node node) {
+            this.addFollow(node.last, node.first);
+            node.nullable = true;
+            return node;
+        }
+
+        private void addFollow(BitSet from, BitSet to) {
+            for (int p = 0; p < this.positions.size(); p++) {
+                if (from.get(p)) {
+                    ((BitSet)this.follow.elementAt(p)).or(to);
+                }
+            }
+        }
+
+        private static boolean isSurrogate(int ch) {
+            return ch >= 0xd800 && ch <= 0xdfff;
+        }
+    }
+}
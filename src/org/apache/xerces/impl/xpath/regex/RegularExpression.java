@@ -701,17 +701,21 @@ public class RegularExpression implements java.io.Serializable {
      * @return Offset of the start position in <VAR>target</VAR>; or -1 if not match.
      */
     public boolean matches(char[] target, int start, int end, Match match) {
-
-        synchronized (this) {
-            if (this.operations == null)
-                this.prepare();
-            if (this.context == null)
-                this.context = new Context();
+        Context con = this.getContext();
+        try {
+            return matchesInContext(con, target, start, end, match);
+        }
+        finally {
+            con.release();
         }
-        Context con = null;
-        synchronized (this.context) {
-            con = this.context.inuse ? new Context() : this.context;
-            con.reset(target, start, end, this.numberOfClosures);
+    }
+
+    private boolean matchesInContext(Context con, char[] target, int start, int end, Match match) {
+
+        con.reset(target, start, end, this.numberOfClosures);
+        if (match == null && this.dfa != null) {
+            boolean ret = this.dfa.matches(con.target, con.start, con.limit);
+            return ret;
         }
         if (match != null) {
             match.setNumberOfGroups(this.nofparen);
@@ -732,7 +736,6 @@ public class RegularExpression implements java.io.Serializable {
                     con.match.setBeginning(0, con.start);
                     con.match.setEnd(0, matchEnd);
                 }
-                con.setInUse(false);
                 return true;
             }
             return false;
@@ -750,10 +753,8 @@ public class RegularExpression implements java.io.Serializable {
                     con.match.setBeginning(0, o);
                     con.match.setEnd(0, o+this.fixedString.length());
                 }
-                con.setInUse(false);
                 return true;
             }
-            con.setInUse(false);
             return false;
         }
 
@@ -766,7 +767,6 @@ public class RegularExpression implements java.io.Serializable {
             int o = this.fixedStringTable.matches(target, con.start, con.limit);
             if (o < 0) {
                 //System.err.println("Non-match in fixed-string search.");
-                con.setInUse(false);
                 return false;
             }
         }
@@ -837,10 +837,8 @@ public class RegularExpression implements java.io.Serializable {
                 con.match.setBeginning(0, matchStart);
                 con.match.setEnd(0, matchEnd);
             }
-            con.setInUse(false);
             return true;
         } else {
-            con.setInUse(false);
             return false;
         }
     }
@@ -886,17 +884,21 @@ public class RegularExpression implements java.io.Serializable {
      * @return Offset of the start position in <VAR>target</VAR>; or -1 if not match.
      */
     public boolean matches(String  target, int start, int end, Match match) {
-
-        synchronized (this) {
-            if (this.operations == null)
-                this.prepare();
-            if (this.context == null)
-                this.context = new Context();
+        Context con = this.getContext();
+        try {
+            return matchesInContext(con, target, start, end, match);
         }
-        Context con = null;
-        synchronized (this.context) {
-            con = this.context.inuse ? new Context() : this.context;
-            con.reset(target, start, end, this.numberOfClosures);
+        finally {
+            con.release();
+        }
+    }
+
+    private boolean matchesInContext(Context con, String target, int start, int end, Match match) {
+
+        con.reset(target, start, end, this.numberOfClosures);
+        if (match == null && this.dfa != null) {
+            boolean ret = this.dfa.matches(con.target, con.start, con.limit);
+            return ret;
         }
         if (match != null) {
             match.setNumberOfGroups(this.nofparen);
@@ -923,7 +925,6 @@ public class RegularExpression implements java.io.Serializable {
                     con.match.setBeginning(0, con.start);
                     con.match.setEnd(0, matchEnd);
                 }
-                con.setInUse(false);
                 return true;
             }
             return false;
@@ -941,10 +942,8 @@ public class RegularExpression implements java.io.Serializable {
                     con.match.setBeginning(0, o);
                     con.match.setEnd(0, o+this.fixedString.length());
                 }
-                con.setInUse(false);
                 return true;
             }
-            con.setInUse(false);
             return false;
         }
 
@@ -957,7 +956,6 @@ public class RegularExpression implements java.io.Serializable {
             int o = this.fixedStringTable.matches(target, con.start, con.limit);
             if (o < 0) {
                 //System.err.println("Non-match in fixed-string search.");
-                con.setInUse(false);
                 return false;
             }
         }
@@ -1028,10 +1026,8 @@ public class RegularExpression implements java.io.Serializable {
                 con.match.setBeginning(0, matchStart);
                 con.match.setEnd(0, matchEnd);
             }
-            con.setInUse(false);
             return true;
         } else {
-            con.setInUse(false);
             return false;
         }
     }
@@ -1561,21 +1557,25 @@ public class RegularExpression implements java.io.Serializable {
      * @return Offset of the start position in <VAR>target</VAR>; or -1 if not match.
      */
     public boolean matches(CharacterIterator  target, Match match) {
+        Context con = this.getContext();
+        try {
+            return matchesInContext(con, target, match);
+        }
+        finally {
+            con.release();
+        }
+    }
+
+    private boolean matchesInContext(Context con, CharacterIterator  target, Match match) {
         int start = target.getBeginIndex();
         int end = target.getEndIndex();
 
 
 
-        synchronized (this) {
-            if (this.operations == null)
-                this.prepare();
-            if (this.context == null)
-                this.context = new Context();
-        }
-        Context con = null;
-        synchronized (this.context) {
-            con = this.context.inuse ? new Context() : this.context;
-            con.reset(target, start, end, this.numberOfClosures);
+        con.reset(target, start, end, this.numberOfClosures);
+        if (match == null && this.dfa != null) {
+            boolean ret = this.dfa.matches(con.target, con.start, con.limit);
+            return ret;
         }
         if (match != null) {
             match.setNumberOfGroups(this.nofparen);
@@ -1596,7 +1596,6 @@ public class RegularExpression implements java.io.Serializable {
                     con.match.setBeginning(0, con.start);
                     con.match.setEnd(0, matchEnd);
                 }
-                con.setInUse(false);
                 return true;
             }
             return false;
@@ -1614,10 +1613,8 @@ public class RegularExpression implements java.io.Serializable {
                     con.match.setBeginning(0, o);
                     con.match.setEnd(0, o+this.fixedString.length());
                 }
-                con.setInUse(false);
                 return true;
             }
-            con.setInUse(false);
             return false;
         }
 
@@ -1630,7 +1627,6 @@ public class RegularExpression implements java.io.Serializable {
             int o = this.fixedStringTable.matches(target, con.start, con.limit);
             if (o < 0) {
                 //System.err.println("Non-match in fixed-string search.");
-                con.setInUse(false);
                 return false;
             }
         }
@@ -1701,10 +1697,8 @@ public class RegularExpression implements java.io.Serializable {
                 con.match.setBeginning(0, matchStart);
                 con.match.setEnd(0, matchEnd);
             }
-            con.setInUse(false);
             return true;
         } else {
-            con.setInUse(false);
             return false;
         }
     }
@@ -1737,13 +1731,15 @@ public class RegularExpression implements java.io.Serializable {
     transient int minlength;
     transient Op operations = null;
     transient int numberOfClosures;
-    transient Context context = null;
+    transient ThreadLocal context = null;
+    transient volatile boolean prepared = false;
     transient RangeToken firstChar = null;
 
     transient String fixedString = null;
     transient int fixedStringOptions;
     transient BMPattern fixedStringTable = null;
     transient boolean fixedStringOnly = false;
+    transient DFAMatcher dfa = null;
 
     static abstract class ExpressionTarget {
         abstract char charAt(int index);
@@ -2079,9 +2075,28 @@ public class RegularExpression implements java.io.Serializable {
             this.limit = limit;
             this.resetCommon(nofclosures);
         }
-        synchronized void setInUse(boolean inUse) {
+        void setInUse(boolean inUse) {
             this.inuse = inUse;
         }
+
+        /**
+         * Makes this context available to the next match on its thread,
+         * dropping the references to the text and the match result.
+         */
+        void release() {
+            if (stringTarget != null) {
+                stringTarget.resetTarget((String) null);
+            }
+            if (charArrayTarget != null) {
+                charArrayTarget.resetTarget((char[]) null);
+            }
+            if (characterIteratorTarget != null) {
+                characterIteratorTarget.resetTarget((CharacterIterator) null);
+            }
+            this.target = null;
+            this.match = null;
+            setInUse(false);
+        }
     }
 
     /**
@@ -2153,6 +2168,38 @@ public class RegularExpression implements java.io.Serializable {
                 }
             }
         }
+
+        // XML Schema expressions are always regular, so whole-string matches
+        // which need no captured groups run on a deterministic automaton.
+        this.dfa = null;
+        if (isSet(this.options, XMLSCHEMA_MODE)) {
+            this.dfa = DFAMatcher.compile(this.tokentree, this.options);
+        }
+
+        this.context = new ThreadLocal();
+        this.prepared = true;
+    }
+
+    /**
+     * Returns the matching context of the calling thread. The operation
+     * flow is compiled at most once; after that neither compilation nor
+     * context lookup takes a lock, and each thread reuses its own context.
+     */
+    private Context getContext() {
+        if (!this.prepared) {
+            synchronized (this) {
+                if (!this.prepared)
+                    this.prepare();
+            }
+        }
+        Context con = (Context)this.context.get();
+        if (con == null) {
+            con = new Context();
+            this.context.set(con);
+        }
+        // A context which is still in use belongs to a match in progress
+        // on this thread, so a fresh one is needed.
+        return con.inuse ? new Context() : con;
     }
 
     /**
@@ -2227,7 +2274,7 @@ public class RegularExpression implements java.io.Serializable {
     static final int SPECIAL_COMMA = 1<<10;
 
 
-    private static final boolean isSet(int options, int flag) {
+    static final boolean isSet(int options, int flag) {
         return (options & flag) == flag;
     }
 
@@ -2293,6 +2340,13 @@ public class RegularExpression implements java.io.Serializable {
 
         this.operations = null;
         this.context = null;
+        this.prepared = false;
+
+        // Patterns from XML Schema are compiled up front so that concurrent
+        // validation never needs to lock this instance.
+        if (RegularExpression.isSet(this.options, RegularExpression.XMLSCHEMA_MODE)) {
+            this.prepare();
+        }
     }
     /**
      *
@@ -0,0 +1,1552 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Hashtable;
+import java.util.Locale;
+import java.util.Vector;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.dv.InvalidDatatypeFacetException;
+import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
+import org.apache.xerces.impl.dv.SchemaDVFactory;
+import org.apache.xerces.impl.dv.ValidatedInfo;
+import org.apache.xerces.impl.dv.XSFacets;
+import org.apache.xerces.impl.dv.XSSimpleType;
+import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
+import org.apache.xerces.impl.validation.ValidationState;
+import org.apache.xerces.impl.xpath.XPath;
+import org.apache.xerces.impl.xpath.XPathException;
+import org.apache.xerces.impl.xs.identity.Field;
+import org.apache.xerces.impl.xs.identity.IdentityConstraint;
+import org.apache.xerces.impl.xs.identity.KeyRef;
+import org.apache.xerces.impl.xs.identity.Selector;
+import org.apache.xerces.impl.xs.identity.UniqueOrKey;
+import org.apache.xerces.impl.xs.models.XSDFACM;
+import org.apache.xerces.impl.xs.util.SimpleLocator;
+import org.apache.xerces.impl.xs.util.XSObjectListImpl;
+import org.apache.xerces.util.NamespaceSupport;
+import org.apache.xerces.util.SymbolHash;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xs.StringList;
+import org.apache.xerces.xs.XSAnnotation;
+import org.apache.xerces.xs.XSIDCDefinition;
+import org.apache.xerces.xs.XSObject;
+import org.apache.xerces.xs.XSObjectList;
+import org.apache.xerces.xs.XSSimpleTypeDefinition;
+import org.apache.xerces.xs.XSTerm;
+import org.apache.xerces.xs.XSTypeDefinition;
+import org.apache.xerces.xs.datatypes.ObjectList;
+
+/**
+ * <p>Writes fully built schema grammars to a compact binary form and
+ * reads them back, so that an application can restore its grammars
+ * without parsing and traversing the schema documents again.</p>
+ *
+ * <p>All components reachable from the grammars are written, each once;
+ * components shared between grammars remain shared when the grammars
+ * are read back. The DFAs of the content models which have been built
+ * are written as well. Simple types are restored by applying their own
+ * facets to their base type, and value constraints by validating their
+ * lexical value, so that the values and internal tables of datatypes
+ * need not be written. The DOM documents of the schemas are not kept.</p>
+ *
+ * <p>The grammars to write should be complete: grammars referenced from
+ * them, such as imported grammars, should be written with them.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class SchemaGrammarSerializer {
+
+    //
+    // Constants
+    //
+
+    /** Identifies the format: the characters "XSGR". */
+    private static final int MAGIC = 0x58534752;
+
+    /** The version of the format. */
+    private static final short VERSION = 1;
+
+    // object tags
+
+    private static final byte NULL = 0;
+    private static final byte REFERENCE = 1;
+    private static final byte BUILTIN_TYPE = 2;
+    private static final byte BUILTIN_ATTRIBUTE = 3;
+    private static final byte ELEMENT = 4;
+    private static final byte ATTRIBUTE = 5;
+    private static final byte ATTRIBUTE_USE = 6;
+    private static final byte ATTRIBUTE_GROUP = 7;
+    private static final byte COMPLEX_TYPE = 8;
+    private static final byte SIMPLE_TYPE = 9;
+    private static final byte PARTICLE = 10;
+    private static final byte MODEL_GROUP = 11;
+    private static final byte GROUP = 12;
+    private static final byte WILDCARD = 13;
+    private static final byte NOTATION = 14;
+    private static final byte ANNOTATION = 15;
+    private static final byte UNIQUE_OR_KEY = 16;
+    private static final byte KEYREF = 17;
+    private static final byte DFA = 18;
+
+    // how a simple type was derived
+
+    private static final byte DERIVATION_RESTRICTION = 0;
+    private static final byte DERIVATION_LIST = 1;
+    private static final byte DERIVATION_UNION = 2;
+
+    // what a pending value constraint belongs to
+
+    private static final byte VALUE_ELEMENT = 0;
+    private static final byte VALUE_ATTRIBUTE = 1;
+    private static final byte VALUE_ATTRIBUTE_USE = 2;
+
+    /** Longest run of characters written with a single writeUTF call. */
+    private static final int MAX_UTF_CHUNK = 16384;
+
+    //
+    // Data
+    //
+
+    /** Symbol table used to intern the names read. */
+    private final SymbolTable fSymbolTable;
+
+    // writing
+
+    private DataOutputStream fOut;
+    private IdentityTable fHandles;
+    private Hashtable fStringHandles;
+
+    // reading
+
+    private DataInputStream fIn;
+    private Object[] fObjects;
+    private int fObjectCount;
+    private String[] fStrings;
+    private int fStringCount;
+    private SchemaGrammar[] fGrammars;
+    private Vector fPendingValues;
+    private ValidationState fValidationState;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a serializer which interns names in a new symbol table. */
+    public SchemaGrammarSerializer() {
+        this(new SymbolTable());
+    } // <init>()
+
+    /** Constructs a serializer which interns names in the given symbol table. */
+    public SchemaGrammarSerializer(SymbolTable symbolTable) {
+        fSymbolTable = symbolTable;
+    } // <init>(SymbolTable)
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Writes the given grammars to the given stream. The stream is
+     * flushed but not closed.
+     *
+     * @param grammars The grammars to write.
+     * @param out      The stream to write to.
+     * @exception IOException Thrown if writing to the stream fails.
+     */
+    public void writeGrammars(SchemaGrammar[] grammars, OutputStream out) throws IOException {
+        fOut = new DataOutputStream(new BufferedOutputStream(out));
+        fHandles = new IdentityTable();
+        fStringHandles = new Hashtable();
+        try {
+            fOut.writeInt(MAGIC);
+            fOut.writeShort(VERSION);
+            writeCount(grammars.length);
+            for (int i = 0; i < grammars.length; i++) {
+                fHandles.put(grammars[i], i);
+                writeGrammarDescription(grammars[i]);
+            }
+            for (int i = 0; i < grammars.length; i++) {
+                writeGrammarContents(grammars[i]);
+            }
+            fOut.flush();
+        }
+        finally {
+            fOut = null;
+            fHandles = null;
+            fStringHandles = null;
+        }
+    } // writeGrammars(SchemaGrammar[],OutputStream)
+
+    /**
+     * Reads grammars written by {@link #writeGrammars(SchemaGrammar[], OutputStream)}
+     * from the given stream. The stream is not closed.
+     *
+     * @param in The stream to read from.
+     * @return The grammars read, in the order in which they were written.
+     * @exception IOException Thrown if reading from the stream fails or
+     *                        if the stream does not hold grammars in a
+     *                        format this serializer can read.
+     */
+    public SchemaGrammar[] readGrammars(InputStream in) throws IOException {
+        fIn = new DataInputStream(new BufferedInputStream(in));
+        fObjects = new Object[64];
+        fObjectCount = 0;
+        fStrings = new String[64];
+        fStringCount = 0;
+        fPendingValues = new Vector();
+        fValidationState = new ValidationState();
+        fValidationState.setExtraChecking(false);
+        fValidationState.setSymbolTable(fSymbolTable);
+        fValidationState.setLocale(Locale.getDefault());
+        try {
+            if (fIn.readInt() != MAGIC) {
+                throw new IOException("The stream does not contain serialized schema grammars.");
+            }
+            final short version = fIn.readShort();
+            if (version != VERSION) {
+                throw new IOException("Serialized schema grammars of version " + version + " are not supported.");
+            }
+            fGrammars = new SchemaGrammar[readCount()];
+            for (int i = 0; i < fGrammars.length; i++) {
+                fGrammars[i] = readGrammarDescription();
+                addObject(fGrammars[i]);
+            }
+            for (int i = 0; i < fGrammars.length; i++) {
+                readGrammarContents(fGrammars[i]);
+            }
+            restoreValueConstraints();
+            return fGrammars;
+        }
+        finally {
+            fIn = null;
+            fObjects = null;
+            fStrings = null;
+            fGrammars = null;
+            fPendingValues = null;
+            fValidationState = null;
+        }
+    } // readGrammars(InputStream):SchemaGrammar[]
+
+    //
+    // Writing grammars
+    //
+
+    private void writeGrammarDescription(SchemaGrammar grammar) throws IOException {
+        final XSDDescription desc = grammar.fGrammarDescription;
+        writeSymbol(grammar.fTargetNamespace);
+        fOut.writeShort(desc.fContextType);
+        writeText(desc.getPublicId());
+        writeText(desc.getLiteralSystemId());
+        writeText(desc.getBaseSystemId());
+        writeText(desc.getExpandedSystemId());
+        final String[] hints = desc.getLocationHints();
+        writeCount(hints != null ? hints.length + 1 : 0);
+        if (hints != null) {
+            for (int i = 0; i < hints.length; i++) {
+                writeText(hints[i]);
+            }
+        }
+    } // writeGrammarDescription(SchemaGrammar)
+
+    private void writeGrammarContents(SchemaGrammar grammar) throws IOException {
+        fOut.writeBoolean(grammar.isImmutable());
+        fOut.writeBoolean(grammar.fFullChecked);
+
+        writeTable(grammar.fGlobalAttrDecls);
+        writeTable(grammar.fGlobalAttrGrpDecls);
+        writeTable(grammar.fGlobalElemDecls);
+        writeTable(grammar.fGlobalGroupDecls);
+        writeTable(grammar.fGlobalNotationDecls);
+        writeTable(grammar.fGlobalIDConstraintDecls);
+        writeTable(grammar.fGlobalTypeDecls);
+        writeTable(grammar.fGlobalAttrDeclsExt);
+        writeTable(grammar.fGlobalAttrGrpDeclsExt);
+        writeTable(grammar.fGlobalElemDeclsExt);
+        writeTable(grammar.fGlobalGroupDeclsExt);
+        writeTable(grammar.fGlobalNotationDeclsExt);
+        writeTable(grammar.fGlobalIDConstraintDeclsExt);
+        writeTable(grammar.fGlobalTypeDeclsExt);
+
+        // substitution group members first, so that they are registered
+        // in the same order when the grammar is read
+        final XSElementDecl[] subGroups = grammar.getSubstitutionGroups();
+        final Object[] allElements = new Object[grammar.fAllGlobalElemDecls.getLength()];
+        grammar.fAllGlobalElemDecls.getValues(allElements, 0);
+        writeCount(subGroups.length + allElements.length);
+        for (int i = 0; i < subGroups.length; i++) {
+            writeObject(subGroups[i]);
+        }
+        for (int i = 0; i < allElements.length; i++) {
+            writeObject(allElements[i]);
+        }
+
+        writeCount(grammar.fNumAnnotations);
+        for (int i = 0; i < grammar.fNumAnnotations; i++) {
+            writeObject(grammar.fAnnotations[i]);
+        }
+
+        final Vector imported = grammar.getImportedGrammars();
+        final int importedCount = (imported != null) ? imported.size() : 0;
+        writeCount(importedCount);
+        for (int i = 0; i < importedCount; i++) {
+            writeObject(imported.elementAt(i));
+        }
+
+        final StringList locations = grammar.getDocumentLocations();
+        writeCount(locations.getLength());
+        for (int i = 0; i < locations.getLength(); i++) {
+            writeText(locations.item(i));
+        }
+
+        // components still to be checked against the constraints
+        // on schemas when the grammar is next used by a loader
+        final XSComplexTypeDecl[] types = grammar.getUncheckedComplexTypeDecls();
+        final SimpleLocator[] typeLocators = grammar.getUncheckedCTLocators();
+        writeCount(types.length);
+        for (int i = 0; i < types.length; i++) {
+            writeObject(types[i]);
+            writeLocator(typeLocators[i]);
+        }
+        final XSGroupDecl[] groups = grammar.getRedefinedGroupDecls();
+        final SimpleLocator[] groupLocators = grammar.getRGLocators();
+        writeCount(groups.length / 2);
+        for (int i = 0; i < groups.length / 2; i++) {
+            writeObject(groups[2 * i]);
+            writeObject(groups[2 * i + 1]);
+            writeLocator(groupLocators[i]);
+        }
+    } // writeGrammarContents(SchemaGrammar)
+
+    private void writeTable(SymbolHash table) throws IOException {
+        final Object[] entries = table.getEntries();
+        writeCount(entries.length / 2);
+        for (int i = 0; i < entries.length; i += 2) {
+            writeText((String) entries[i]);
+            writeObject(entries[i + 1]);
+        }
+    } // writeTable(SymbolHash)
+
+    private void writeLocator(SimpleLocator locator) throws IOException {
+        fOut.writeBoolean(locator != null);
+        if (locator != null) {
+            writeText(locator.getLiteralSystemId());
+            writeText(locator.getExpandedSystemId());
+            writeCount(locator.getLineNumber() + 1);
+            writeCount(locator.getColumnNumber() + 1);
+        }
+    } // writeLocator(SimpleLocator)
+
+    //
+    // Writing components
+    //
+
+    /**
+     * Writes a reference to the given object, followed by the object
+     * itself if it has not been written before.
+     */
+    private void writeObject(Object object) throws IOException {
+        if (object == null) {
+            fOut.writeByte(NULL);
+            return;
+        }
+        final int handle = fHandles.get(object);
+        if (handle != -1) {
+            fOut.writeByte(REFERENCE);
+            writeCount(handle);
+        }
+        else if (object instanceof SchemaGrammar) {
+            // a grammar which is not written; leave it out
+            fOut.writeByte(NULL);
+        }
+        else if (isBuiltinType(object, Constants.SCHEMA_VERSION_1_0)) {
+            fOut.writeByte(BUILTIN_TYPE);
+            fOut.writeBoolean(false);
+            writeSymbol(((XSTypeDefinition) object).getName());
+        }
+        else if (isBuiltinType(object, Constants.SCHEMA_VERSION_1_0_EXTENDED)) {
+            fOut.writeByte(BUILTIN_TYPE);
+            fOut.writeBoolean(true);
+            writeSymbol(((XSTypeDefinition) object).getName());
+        }
+        else if (object instanceof XSAttributeDecl &&
+                SchemaGrammar.SG_XSI.getGlobalAttributeDecl(((XSAttributeDecl) object).fName) == object) {
+            fOut.writeByte(BUILTIN_ATTRIBUTE);
+            writeSymbol(((XSAttributeDecl) object).fName);
+        }
+        else if (object instanceof XSDFACM) {
+            writeHandle(object, DFA);
+            writeDFA((XSDFACM) object);
+        }
+        else if (object instanceof XSElementDecl) {
+            writeHandle(object, ELEMENT);
+            writeElementDecl((XSElementDecl) object);
+        }
+        else if (object instanceof XSParticleDecl) {
+            writeHandle(object, PARTICLE);
+            writeParticle((XSParticleDecl) object);
+        }
+        else if (object instanceof XSModelGroupImpl) {
+            writeHandle(object, MODEL_GROUP);
+            writeModelGroup((XSModelGroupImpl) object);
+        }
+        else if (object instanceof XSComplexTypeDecl) {
+            writeHandle(object, COMPLEX_TYPE);
+            writeComplexTypeDecl((XSComplexTypeDecl) object);
+        }
+        else if (object instanceof XSSimpleTypeDecl) {
+            writeHandle(object, SIMPLE_TYPE);
+            writeSimpleTypeDecl((XSSimpleTypeDecl) object);
+        }
+        else if (object instanceof XSAttributeUseImpl) {
+            writeHandle(object, ATTRIBUTE_USE);
+            writeAttributeUse((XSAttributeUseImpl) object);
+        }
+        else if (object instanceof XSAttributeDecl) {
+            writeHandle(object, ATTRIBUTE);
+            writeAttributeDecl((XSAttributeDecl) object);
+        }
+        else if (object instanceof XSAttributeGroupDecl) {
+            writeHandle(object, ATTRIBUTE_GROUP);
+            writeAttributeGroupDecl((XSAttributeGroupDecl) object);
+        }
+        else if (object instanceof XSWildcardDecl) {
+            writeHandle(object, WILDCARD);
+            writeWildcardDecl((XSWildcardDecl) object);
+        }
+        else if (object instanceof XSGroupDecl) {
+            writeHandle(object, GROUP);
+            writeGroupDecl((XSGroupDecl) object);
+        }
+        else if (object instanceof XSNotationDecl) {
+            writeHandle(object, NOTATION);
+            writeNotationDecl((XSNotationDecl) object);
+        }
+        else if (object instanceof XSAnnotationImpl) {
+            writeHandle(object, ANNOTATION);
+            writeText(((XSAnnotationImpl) object).getAnnotationString());
+            writeObject(((XSAnnotationImpl) object).getGrammar());
+        }
+        else if (object instanceof KeyRef) {
+            writeHandle(object, KEYREF);
+            writeObject(((KeyRef) object).getKey());
+            writeIdentityConstraint((IdentityConstraint) object);
+        }
+        else if (object instanceof UniqueOrKey) {
+            writeHandle(object, UNIQUE_OR_KEY);
+            fOut.writeShort(((UniqueOrKey) object).getCategory());
+            writeIdentityConstraint((IdentityConstraint) object);
+        }
+        else {
+            throw new IOException("Cannot write schema components of class " + object.getClass().getName() + '.');
+        }
+    } // writeObject(Object)
+
+    /** Assigns the next handle to the given object and writes its tag. */
+    private void writeHandle(Object object, byte tag) throws IOException {
+        fHandles.put(object, fHandles.size());
+        fOut.writeByte(tag);
+    } // writeHandle(Object,byte)
+
+    private boolean isBuiltinType(Object object, short schemaVersion) {
+        if (object instanceof XSTypeDefinition) {
+            final XSTypeDefinition type = (XSTypeDefinition) object;
+            return type.getNamespace() == SchemaSymbols.URI_SCHEMAFORSCHEMA && type.getName() != null &&
+                SchemaGrammar.getS4SGrammar(schemaVersion).getGlobalTypeDecl(type.getName()) == type;
+        }
+        return false;
+    } // isBuiltinType(Object,short):boolean
+
+    private void writeElementDecl(XSElementDecl decl) throws IOException {
+        writeSymbol(decl.fName);
+        writeSymbol(decl.fTargetNamespace);
+        writeObject(decl.fType);
+        fOut.writeShort(decl.fMiscFlags);
+        fOut.writeShort(decl.fScope);
+        writeObject(decl.fEnclosingCT);
+        fOut.writeShort(decl.fBlock);
+        fOut.writeShort(decl.fFinal);
+        writeObjectList(decl.fAnnotations);
+        writeValue(decl.fDefault);
+        writeObject(decl.fSubGroup);
+        writeCount(decl.fIDCPos);
+        for (int i = 0; i < decl.fIDCPos; i++) {
+            writeObject(decl.fIDConstraints[i]);
+        }
+        writeObject(decl.getNamespaceItem());
+    } // writeElementDecl(XSElementDecl)
+
+    private void writeAttributeDecl(XSAttributeDecl decl) throws IOException {
+        writeSymbol(decl.fName);
+        writeSymbol(decl.fTargetNamespace);
+        writeObject(decl.fType);
+        fOut.writeShort(decl.fConstraintType);
+        fOut.writeShort(decl.fScope);
+        writeObject(decl.fEnclosingCT);
+        writeObjectList(decl.fAnnotations);
+        writeValue(decl.fDefault);
+        writeObject(decl.getNamespaceItem());
+    } // writeAttributeDecl(XSAttributeDecl)
+
+    private void writeAttributeUse(XSAttributeUseImpl use) throws IOException {
+        writeObject(use.fAttrDecl);
+        fOut.writeShort(use.fUse);
+        fOut.writeShort(use.fConstraintType);
+        writeValue(use.fDefault);
+        writeObjectList(use.fAnnotations);
+    } // writeAttributeUse(XSAttributeUseImpl)
+
+    private void writeAttributeGroupDecl(XSAttributeGroupDecl decl) throws IOException {
+        writeSymbol(decl.fName);
+        writeSymbol(decl.fTargetNamespace);
+        writeCount(decl.fAttrUseNum);
+        for (int i = 0; i < decl.fAttrUseNum; i++) {
+            writeObject(decl.fAttributeUses[i]);
+        }
+        writeObject(decl.fAttributeWC);
+        writeSymbol(decl.fIDAttrName);
+        writeObjectList(decl.fAnnotations);
+        writeObject(decl.getNamespaceItem());
+    } // writeAttributeGroupDecl(XSAttributeGroupDecl)
+
+    private void writeComplexTypeDecl(XSComplexTypeDecl type) throws IOException {
+        writeSymbol(type.fName);
+        writeSymbol(type.fTargetNamespace);
+        writeObject(type.fBaseType);
+        fOut.writeShort(type.fDerivedBy);
+        fOut.writeShort(type.fFinal);
+        fOut.writeShort(type.fBlock);
+        fOut.writeShort(type.fMiscFlags);
+        writeObject(type.fAttrGrp);
+        fOut.writeShort(type.fContentType);
+        writeObject(type.fXSSimpleType);
+        writeObject(type.fParticle);
+        // other content models are cheap to build again
+        writeObject((type.fCMValidator instanceof XSDFACM) ? type.fCMValidator : null);
+        writeObjectList(type.fAnnotations);
+        writeObject(type.getNamespaceItem());
+    } // writeComplexTypeDecl(XSComplexTypeDecl)
+
+    private void writeSimpleTypeDecl(XSSimpleTypeDecl type) throws IOException {
+        final XSTypeDefinition base = type.getBaseType();
+        if (type.getVariety() == XSSimpleTypeDefinition.VARIETY_LIST && base == SchemaGrammar.fAnySimpleType) {
+            fOut.writeByte(DERIVATION_LIST);
+            writeObject(type.getItemType());
+        }
+        else if (type.getVariety() == XSSimpleTypeDefinition.VARIETY_UNION && base == SchemaGrammar.fAnySimpleType) {
+            fOut.writeByte(DERIVATION_UNION);
+            final XSObjectList memberTypes = type.getMemberTypes();
+            writeCount(memberTypes.getLength());
+            for (int i = 0; i < memberTypes.getLength(); i++) {
+                writeObject(memberTypes.item(i));
+            }
+        }
+        else {
+            fOut.writeByte(DERIVATION_RESTRICTION);
+            writeObject(base);
+        }
+        writeSymbol(type.getTypeName());
+        writeSymbol(type.getNamespace());
+        fOut.writeShort(type.getFinal());
+        fOut.writeBoolean(type.getAnonymous());
+        writeObjectList(type.getAnnotations());
+
+        final XSFacets facets = new XSFacets();
+        final short presentFacet = type.getOwnFacets(facets);
+        fOut.writeShort(presentFacet);
+        fOut.writeShort(type.getFixedFacets() & presentFacet);
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_LENGTH) != 0) {
+            writeCount(facets.length);
+            writeObject(facets.lengthAnnotation);
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_MINLENGTH) != 0) {
+            writeCount(facets.minLength);
+            writeObject(facets.minLengthAnnotation);
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_MAXLENGTH) != 0) {
+            writeCount(facets.maxLength);
+            writeObject(facets.maxLengthAnnotation);
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_WHITESPACE) != 0) {
+            fOut.writeShort(facets.whiteSpace);
+            writeObject(facets.whiteSpaceAnnotation);
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_TOTALDIGITS) != 0) {
+            writeCount(facets.totalDigits);
+            writeObject(facets.totalDigitsAnnotation);
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_FRACTIONDIGITS) != 0) {
+            writeCount(facets.fractionDigits);
+            writeObject(facets.fractionDigitsAnnotation);
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_MAXINCLUSIVE) != 0) {
+            writeText(facets.maxInclusive);
+            writeObject(facets.maxInclusiveAnnotation);
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_MAXEXCLUSIVE) != 0) {
+            writeText(facets.maxExclusive);
+            writeObject(facets.maxExclusiveAnnotation);
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_MININCLUSIVE) != 0) {
+            writeText(facets.minInclusive);
+            writeObject(facets.minInclusiveAnnotation);
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_MINEXCLUSIVE) != 0) {
+            writeText(facets.minExclusive);
+            writeObject(facets.minExclusiveAnnotation);
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_PATTERN) != 0) {
+            writeText(facets.pattern);
+            writeObjectList(facets.patternAnnotations);
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_ENUMERATION) != 0) {
+            final ObjectList actualValues = type.getActualEnumeration();
+            writeCount(facets.enumeration.size());
+            for (int i = 0; i < facets.enumeration.size(); i++) {
+                writeText((String) facets.enumeration.elementAt(i));
+                writeBindings(actualValues.item(i));
+            }
+            writeObjectList(facets.enumAnnotations);
+        }
+        writeObject(type.getNamespaceItem());
+    } // writeSimpleTypeDecl(XSSimpleTypeDecl)
+
+    private void writeParticle(XSParticleDecl particle) throws IOException {
+        fOut.writeShort(particle.fType);
+        writeObject(particle.fValue);
+        writeCount(particle.fMinOccurs);
+        writeCount(particle.fMaxOccurs + 1);
+        writeObjectList(particle.fAnnotations);
+    } // writeParticle(XSParticleDecl)
+
+    private void writeModelGroup(XSModelGroupImpl group) throws IOException {
+        fOut.writeShort(group.fCompositor);
+        writeCount(group.fParticleCount);
+        for (int i = 0; i < group.fParticleCount; i++) {
+            writeObject(group.fParticles[i]);
+        }
+        writeObjectList(group.fAnnotations);
+    } // writeModelGroup(XSModelGroupImpl)
+
+    private void writeGroupDecl(XSGroupDecl decl) throws IOException {
+        writeSymbol(decl.fName);
+        writeSymbol(decl.fTargetNamespace);
+        writeObject(decl.fModelGroup);
+        writeObjectList(decl.fAnnotations);
+        writeObject(decl.getNamespaceItem());
+    } // writeGroupDecl(XSGroupDecl)
+
+    private void writeWildcardDecl(XSWildcardDecl wildcard) throws IOException {
+        fOut.writeShort(wildcard.fType);
+        fOut.writeShort(wildcard.fProcessContents);
+        final String[] namespaces = wildcard.fNamespaceList;
+        writeCount(namespaces != null ? namespaces.length + 1 : 0);
+        if (namespaces != null) {
+            for (int i = 0; i < namespaces.length; i++) {
+                writeSymbol(namespaces[i]);
+            }
+        }
+        writeObjectList(wildcard.fAnnotations);
+    } // writeWildcardDecl(XSWildcardDecl)
+
+    private void writeNotationDecl(XSNotationDecl decl) throws IOException {
+        writeSymbol(decl.fName);
+        writeSymbol(decl.fTargetNamespace);
+        writeText(decl.fPublicId);
+        writeText(decl.fSystemId);
+        writeObjectList(decl.fAnnotations);
+        writeObject(decl.getNamespaceItem());
+    } // writeNotationDecl(XSNotationDecl)
+
+    private void writeIdentityConstraint(IdentityConstraint idc) throws IOException {
+        writeSymbol(idc.getNamespace());
+        writeSymbol(idc.getIdentityConstraintName());
+        writeSymbol(idc.getElementName());
+        writeXPath(idc.getSelector().getXPath());
+        writeCount(idc.getFieldCount());
+        for (int i = 0; i < idc.getFieldCount(); i++) {
+            writeXPath(idc.getFieldAt(i).getXPath());
+        }
+        writeObjectList(idc.getAnnotations());
+    } // writeIdentityConstraint(IdentityConstraint)
+
+    /**
+     * Writes an XPath expression together with the namespace bindings
+     * of the prefixes it uses, so that it can be compiled again.
+     */
+    private void writeXPath(XPath xpath) throws IOException {
+        writeText(xpath.toString());
+        final Vector bindings = new Vector();
+        final XPath.LocationPath[] paths = xpath.getLocationPaths();
+        for (int i = 0; i < paths.length; i++) {
+            for (int j = 0; j < paths[i].steps.length; j++) {
+                final XPath.NodeTest nodeTest = paths[i].steps[j].nodeTest;
+                if (nodeTest.type == XPath.NodeTest.QNAME || nodeTest.type == XPath.NodeTest.NAMESPACE) {
+                    addBinding(bindings, nodeTest.name);
+                }
+            }
+        }
+        writeBindings(bindings);
+    } // writeXPath(XPath)
+
+    private void writeDFA(XSDFACM dfa) throws IOException {
+        final Object[] elemMap = dfa.getElemMap();
+        final int[] elemMapType = dfa.getElemMapTypes();
+        writeCount(elemMap.length);
+        for (int i = 0; i < elemMap.length; i++) {
+            writeObject(elemMap[i]);
+            writeCount(elemMapType[i]);
+        }
+        final boolean[] finalStateFlags = dfa.getFinalStateFlags();
+        final int[][] transTable = dfa.getTransTable();
+        writeCount(transTable.length);
+        for (int i = 0; i < transTable.length; i++) {
+            fOut.writeBoolean(finalStateFlags[i]);
+            for (int j = 0; j < elemMap.length; j++) {
+                writeCount(transTable[i][j] + 1);
+            }
+        }
+        final int[][] countingStates = dfa.getCountingStates();
+        fOut.writeBoolean(countingStates != null);
+        if (countingStates != null) {
+            for (int i = 0; i < transTable.length; i++) {
+                final int[] o = countingStates[i];
+                fOut.writeBoolean(o != null);
+                if (o != null) {
+                    writeCount(o[0]);
+                    writeCount(o[1] + 1);
+                    writeCount(o[2]);
+                }
+            }
+        }
+        fOut.writeBoolean(dfa.isCompactedForUPA());
+    } // writeDFA(XSDFACM)
+
+    private void writeObjectList(XSObjectList list) throws IOException {
+        if (list == null) {
+            writeCount(0);
+            return;
+        }
+        writeCount(list.getLength() + 1);
+        for (int i = 0; i < list.getLength(); i++) {
+            writeObject(list.item(i));
+        }
+    } // writeObjectList(XSObjectList)
+
+    /**
+     * Writes the lexical form of a value constraint along with the
+     * namespace bindings needed to validate it again.
+     */
+    private void writeValue(ValidatedInfo value) throws IOException {
+        fOut.writeBoolean(value != null);
+        if (value != null) {
+            writeText(value.normalizedValue);
+            writeBindings(value.actualValue);
+        }
+    } // writeValue(ValidatedInfo)
+
+    /** Writes the namespace bindings of the QNames in the given actual value. */
+    private void writeBindings(Object actualValue) throws IOException {
+        final Vector bindings = new Vector();
+        collectBindings(actualValue, bindings);
+        writeBindings(bindings);
+    } // writeBindings(Object)
+
+    private void writeBindings(Vector bindings) throws IOException {
+        writeCount(bindings.size() / 2);
+        for (int i = 0; i < bindings.size(); i++) {
+            writeSymbol((String) bindings.elementAt(i));
+        }
+    } // writeBindings(Vector)
+
+    private void collectBindings(Object actualValue, Vector bindings) {
+        if (actualValue instanceof QName) {
+            addBinding(bindings, (QName) actualValue);
+        }
+        else if (actualValue instanceof ObjectList) {
+            final ObjectList list = (ObjectList) actualValue;
+            for (int i = 0; i < list.getLength(); i++) {
+                collectBindings(list.item(i), bindings);
+            }
+        }
+    } // collectBindings(Object,Vector)
+
+    private void addBinding(Vector bindings, QName name) {
+        final String prefix = (name.prefix != null) ? name.prefix : "";
+        for (int i = 0; i < bindings.size(); i += 2) {
+            if (prefix.equals(bindings.elementAt(i))) {
+                return;
+            }
+        }
+        bindings.addElement(prefix);
+        bindings.addElement(name.uri);
+    } // addBinding(Vector,QName)
+
+    //
+    // Writing primitives
+    //
+
+    /** Writes a non-negative number in as few bytes as possible. */
+    private void writeCount(int count) throws IOException {
+        while ((count & ~0x7F) != 0) {
+            fOut.writeByte((count & 0x7F) | 0x80);
+            count >>>= 7;
+        }
+        fOut.writeByte(count);
+    } // writeCount(int)
+
+    /** Writes a name, which may be null. Each name is written once. */
+    private void writeSymbol(String symbol) throws IOException {
+        if (symbol == null) {
+            writeCount(0);
+            return;
+        }
+        final Integer handle = (Integer) fStringHandles.get(symbol);
+        if (handle != null) {
+            writeCount(handle.intValue() + 1);
+        }
+        else {
+            final int newHandle = fStringHandles.size();
+            fStringHandles.put(symbol, new Integer(newHandle));
+            writeCount(newHandle + 1);
+            writeChars(symbol);
+        }
+    } // writeSymbol(String)
+
+    /** Writes a string of any length, which may be null. */
+    private void writeText(String text) throws IOException {
+        fOut.writeBoolean(text != null);
+        if (text != null) {
+            writeChars(text);
+        }
+    } // writeText(String)
+
+    private void writeChars(String s) throws IOException {
+        final int length = s.length();
+        writeCount(length);
+        for (int start = 0; start < length; start += MAX_UTF_CHUNK) {
+            fOut.writeUTF(s.substring(start, Math.min(length, start + MAX_UTF_CHUNK)));
+        }
+    } // writeChars(String)
+
+    //
+    // Reading grammars
+    //
+
+    private SchemaGrammar readGrammarDescription() throws IOException {
+        final XSDDescription desc = new XSDDescription();
+        final String targetNamespace = readSymbol();
+        desc.setNamespace(targetNamespace);
+        desc.fContextType = fIn.readShort();
+        desc.setPublicId(readText());
+        desc.setLiteralSystemId(readText());
+        desc.setBaseSystemId(readText());
+        desc.setExpandedSystemId(readText());
+        final int hintCount = readCount();
+        if (hintCount > 0) {
+            final String[] hints = new String[hintCount - 1];
+            for (int i = 0; i < hints.length; i++) {
+                hints[i] = readText();
+            }
+            desc.setLocationHints(hints);
+        }
+        return new SchemaGrammar(targetNamespace, desc, fSymbolTable);
+    } // readGrammarDescription():SchemaGrammar
+
+    private void readGrammarContents(SchemaGrammar grammar) throws IOException {
+        final boolean immutable = fIn.readBoolean();
+        grammar.fFullChecked = fIn.readBoolean();
+
+        readTable(grammar.fGlobalAttrDecls);
+        readTable(grammar.fGlobalAttrGrpDecls);
+        readTable(grammar.fGlobalElemDecls);
+        readTable(grammar.fGlobalGroupDecls);
+        readTable(grammar.fGlobalNotationDecls);
+        readTable(grammar.fGlobalIDConstraintDecls);
+        readTable(grammar.fGlobalTypeDecls);
+        readTable(grammar.fGlobalAttrDeclsExt);
+        readTable(grammar.fGlobalAttrGrpDeclsExt);
+        readTable(grammar.fGlobalElemDeclsExt);
+        readTable(grammar.fGlobalGroupDeclsExt);
+        readTable(grammar.fGlobalNotationDeclsExt);
+        readTable(grammar.fGlobalIDConstraintDeclsExt);
+        readTable(grammar.fGlobalTypeDeclsExt);
+
+        int count = readCount();
+        for (int i = 0; i < count; i++) {
+            grammar.addGlobalElementDeclAll((XSElementDecl) readObject());
+        }
+
+        count = readCount();
+        for (int i = 0; i < count; i++) {
+            grammar.addAnnotation((XSAnnotationImpl) readObject());
+        }
+
+        count = readCount();
+        final Vector imported = new Vector(count);
+        for (int i = 0; i < count; i++) {
+            final Object importedGrammar = readObject();
+            if (importedGrammar != null) {
+                imported.addElement(importedGrammar);
+            }
+        }
+        grammar.setImportedGrammars(imported);
+
+        count = readCount();
+        for (int i = 0; i < count; i++) {
+            grammar.addDocument(null, readText());
+        }
+
+        count = readCount();
+        for (int i = 0; i < count; i++) {
+            final XSComplexTypeDecl type = (XSComplexTypeDecl) readObject();
+            grammar.addComplexTypeDecl(type, readLocator());
+        }
+        count = readCount();
+        for (int i = 0; i < count; i++) {
+            final XSGroupDecl derived = (XSGroupDecl) readObject();
+            final XSGroupDecl base = (XSGroupDecl) readObject();
+            grammar.addRedefinedGroupDecl(derived, base, readLocator());
+        }
+        grammar.setImmutable(immutable);
+    } // readGrammarContents(SchemaGrammar)
+
+    private void readTable(SymbolHash table) throws IOException {
+        final int count = readCount();
+        for (int i = 0; i < count; i++) {
+            final String key = readText();
+            table.put(key.indexOf(',') == -1 ? fSymbolTable.addSymbol(key) : key, readObject());
+        }
+    } // readTable(SymbolHash)
+
+    private SimpleLocator readLocator() throws IOException {
+        if (!fIn.readBoolean()) {
+            return null;
+        }
+        final String literalSystemId = readText();
+        final String expandedSystemId = readText();
+        final int line = readCount() - 1;
+        final int column = readCount() - 1;
+        return new SimpleLocator(literalSystemId, expandedSystemId, line, column);
+    } // readLocator():SimpleLocator
+
+    //
+    // Reading components
+    //
+
+    private Object readObject() throws IOException {
+        final byte tag = fIn.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case REFERENCE: {
+                final int handle = readCount();
+                if (handle >= fObjectCount) {
+                    throw new IOException("Invalid reference in serialized schema grammars.");
+                }
+                return fObjects[handle];
+            }
+            case BUILTIN_TYPE: {
+                final boolean extended = fIn.readBoolean();
+                final SchemaGrammar builtins = SchemaGrammar.getS4SGrammar(extended ?
+                        Constants.SCHEMA_VERSION_1_0_EXTENDED : Constants.SCHEMA_VERSION_1_0);
+                return builtins.getGlobalTypeDecl(readSymbol());
+            }
+            case BUILTIN_ATTRIBUTE:
+                return SchemaGrammar.SG_XSI.getGlobalAttributeDecl(readSymbol());
+            case ELEMENT:
+                return readElementDecl();
+            case ATTRIBUTE:
+                return readAttributeDecl();
+            case ATTRIBUTE_USE:
+                return readAttributeUse();
+            case ATTRIBUTE_GROUP:
+                return readAttributeGroupDecl();
+            case COMPLEX_TYPE:
+                return readComplexTypeDecl();
+            case SIMPLE_TYPE:
+                return readSimpleTypeDecl();
+            case PARTICLE:
+                return readParticle();
+            case MODEL_GROUP:
+                return readModelGroup();
+            case GROUP:
+                return readGroupDecl();
+            case WILDCARD:
+                return readWildcardDecl();
+            case NOTATION:
+                return readNotationDecl();
+            case ANNOTATION: {
+                final int handle = addObject(null);
+                final String contents = readText();
+                SchemaGrammar grammar = (SchemaGrammar) readObject();
+                if (grammar == null) {
+                    grammar = fGrammars[0];
+                }
+                fObjects[handle] = new XSAnnotationImpl(contents, grammar);
+                return fObjects[handle];
+            }
+            case UNIQUE_OR_KEY:
+            case KEYREF:
+                return readIdentityConstraint(tag);
+            case DFA:
+                return readDFA();
+        }
+        throw new IOException("Invalid tag " + tag + " in serialized schema grammars.");
+    } // readObject():Object
+
+    /** Assigns the next handle to the given object, which may be set later. */
+    private int addObject(Object object) {
+        if (fObjectCount == fObjects.length) {
+            final Object[] newObjects = new Object[fObjectCount * 2];
+            System.arraycopy(fObjects, 0, newObjects, 0, fObjectCount);
+            fObjects = newObjects;
+        }
+        fObjects[fObjectCount] = object;
+        return fObjectCount++;
+    } // addObject(Object):int
+
+    private XSElementDecl readElementDecl() throws IOException {
+        final XSElementDecl decl = new XSElementDecl();
+        addObject(decl);
+        decl.fName = readSymbol();
+        decl.fTargetNamespace = readSymbol();
+        decl.fType = (XSTypeDefinition) readObject();
+        decl.fMiscFlags = fIn.readShort();
+        decl.fScope = fIn.readShort();
+        decl.fEnclosingCT = (XSComplexTypeDecl) readObject();
+        decl.fBlock = fIn.readShort();
+        decl.fFinal = fIn.readShort();
+        decl.fAnnotations = readObjectList();
+        decl.fDefault = readValue(VALUE_ELEMENT, decl);
+        decl.fSubGroup = (XSElementDecl) readObject();
+        final int idcCount = readCount();
+        for (int i = 0; i < idcCount; i++) {
+            decl.addIDConstraint((IdentityConstraint) readObject());
+        }
+        decl.setNamespaceItem((SchemaGrammar) readObject());
+        return decl;
+    } // readElementDecl():XSElementDecl
+
+    private XSAttributeDecl readAttributeDecl() throws IOException {
+        final XSAttributeDecl decl = new XSAttributeDecl();
+        addObject(decl);
+        decl.fName = readSymbol();
+        decl.fTargetNamespace = readSymbol();
+        decl.fType = (XSSimpleType) readObject();
+        decl.fConstraintType = fIn.readShort();
+        decl.fScope = fIn.readShort();
+        decl.fEnclosingCT = (XSComplexTypeDecl) readObject();
+        decl.fAnnotations = readObjectList();
+        decl.fDefault = readValue(VALUE_ATTRIBUTE, decl);
+        decl.setNamespaceItem((SchemaGrammar) readObject());
+        return decl;
+    } // readAttributeDecl():XSAttributeDecl
+
+    private XSAttributeUseImpl readAttributeUse() throws IOException {
+        final XSAttributeUseImpl use = new XSAttributeUseImpl();
+        addObject(use);
+        use.fAttrDecl = (XSAttributeDecl) readObject();
+        use.fUse = fIn.readShort();
+        use.fConstraintType = fIn.readShort();
+        use.fDefault = readValue(VALUE_ATTRIBUTE_USE, use);
+        use.fAnnotations = readObjectList();
+        return use;
+    } // readAttributeUse():XSAttributeUseImpl
+
+    private XSAttributeGroupDecl readAttributeGroupDecl() throws IOException {
+        final XSAttributeGroupDecl decl = new XSAttributeGroupDecl();
+        addObject(decl);
+        decl.fName = readSymbol();
+        decl.fTargetNamespace = readSymbol();
+        final int useCount = readCount();
+        decl.fAttributeUses = new XSAttributeUseImpl[Math.max(useCount, 1)];
+        for (int i = 0; i < useCount; i++) {
+            decl.fAttributeUses[i] = (XSAttributeUseImpl) readObject();
+        }
+        decl.fAttrUseNum = useCount;
+        decl.fAttributeWC = (XSWildcardDecl) readObject();
+        decl.fIDAttrName = readSymbol();
+        decl.fAnnotations = readObjectList();
+        decl.setNamespaceItem((SchemaGrammar) readObject());
+        return decl;
+    } // readAttributeGroupDecl():XSAttributeGroupDecl
+
+    private XSComplexTypeDecl readComplexTypeDecl() throws IOException {
+        final XSComplexTypeDecl type = new XSComplexTypeDecl();
+        addObject(type);
+        type.fName = readSymbol();
+        type.fTargetNamespace = readSymbol();
+        type.fBaseType = (XSTypeDefinition) readObject();
+        type.fDerivedBy = fIn.readShort();
+        type.fFinal = fIn.readShort();
+        type.fBlock = fIn.readShort();
+        type.fMiscFlags = fIn.readShort();
+        type.fAttrGrp = (XSAttributeGroupDecl) readObject();
+        type.fContentType = fIn.readShort();
+        type.fXSSimpleType = (XSSimpleType) readObject();
+        type.fParticle = (XSParticleDecl) readObject();
+        type.fCMValidator = (XSDFACM) readObject();
+        type.fAnnotations = readObjectList();
+        type.setNamespaceItem((SchemaGrammar) readObject());
+        return type;
+    } // readComplexTypeDecl():XSComplexTypeDecl
+
+    private XSSimpleTypeDecl readSimpleTypeDecl() throws IOException {
+        // the type is created once the types it is derived from are read
+        final int handle = addObject(null);
+        final byte derivation = fIn.readByte();
+        XSSimpleType base = null;
+        XSSimpleType[] memberTypes = null;
+        if (derivation == DERIVATION_UNION) {
+            memberTypes = new XSSimpleType[readCount()];
+            for (int i = 0; i < memberTypes.length; i++) {
+                memberTypes[i] = (XSSimpleType) readObject();
+            }
+        }
+        else {
+            base = (XSSimpleType) readObject();
+        }
+        final String name = readSymbol();
+        final String namespace = readSymbol();
+        final short finalSet = fIn.readShort();
+        final boolean anonymous = fIn.readBoolean();
+        final XSObjectList annotations = readObjectList();
+
+        final SchemaDVFactory factory = SchemaDVFactory.getInstance();
+        final XSSimpleTypeDecl type;
+        if (derivation == DERIVATION_LIST) {
+            type = (XSSimpleTypeDecl) factory.createTypeList(name, namespace, finalSet, base, annotations);
+        }
+        else if (derivation == DERIVATION_UNION) {
+            type = (XSSimpleTypeDecl) factory.createTypeUnion(name, namespace, finalSet, memberTypes, annotations);
+        }
+        else {
+            type = (XSSimpleTypeDecl) factory.createTypeRestriction(name, namespace, finalSet, base, annotations);
+        }
+        fObjects[handle] = type;
+
+        final XSFacets facets = new XSFacets();
+        final short presentFacet = fIn.readShort();
+        final short fixedFacet = fIn.readShort();
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_LENGTH) != 0) {
+            facets.length = readCount();
+            facets.lengthAnnotation = (XSAnnotation) readObject();
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_MINLENGTH) != 0) {
+            facets.minLength = readCount();
+            facets.minLengthAnnotation = (XSAnnotation) readObject();
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_MAXLENGTH) != 0) {
+            facets.maxLength = readCount();
+            facets.maxLengthAnnotation = (XSAnnotation) readObject();
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_WHITESPACE) != 0) {
+            facets.whiteSpace = fIn.readShort();
+            facets.whiteSpaceAnnotation = (XSAnnotation) readObject();
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_TOTALDIGITS) != 0) {
+            facets.totalDigits = readCount();
+            facets.totalDigitsAnnotation = (XSAnnotation) readObject();
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_FRACTIONDIGITS) != 0) {
+            facets.fractionDigits = readCount();
+            facets.fractionDigitsAnnotation = (XSAnnotation) readObject();
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_MAXINCLUSIVE) != 0) {
+            facets.maxInclusive = readText();
+            facets.maxInclusiveAnnotation = (XSAnnotation) readObject();
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_MAXEXCLUSIVE) != 0) {
+            facets.maxExclusive = readText();
+            facets.maxExclusiveAnnotation = (XSAnnotation) readObject();
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_MININCLUSIVE) != 0) {
+            facets.minInclusive = readText();
+            facets.minInclusiveAnnotation = (XSAnnotation) readObject();
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_MINEXCLUSIVE) != 0) {
+            facets.minExclusive = readText();
+            facets.minExclusiveAnnotation = (XSAnnotation) readObject();
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_PATTERN) != 0) {
+            facets.pattern = readText();
+            facets.patternAnnotations = readObjectList();
+        }
+        if ((presentFacet & XSSimpleTypeDefinition.FACET_ENUMERATION) != 0) {
+            final int count = readCount();
+            facets.enumeration = new Vector(count);
+            facets.enumNSDecls = new Vector(count);
+            for (int i = 0; i < count; i++) {
+                facets.enumeration.addElement(readText());
+                facets.enumNSDecls.addElement(readBindings());
+            }
+            facets.enumAnnotations = readObjectList();
+        }
+        if (derivation == DERIVATION_RESTRICTION) {
+            fValidationState.setNamespaceSupport(null);
+            try {
+                type.applyFacets(facets, presentFacet, fixedFacet, fValidationState);
+            }
+            catch (InvalidDatatypeFacetException e) {
+                throw new IOException("Cannot restore the facets of simple type " +
+                        (name != null ? name : "(anonymous)") + ": " + e.getMessage());
+            }
+        }
+        type.setAnonymous(anonymous);
+        type.setNamespaceItem((SchemaGrammar) readObject());
+        return type;
+    } // readSimpleTypeDecl():XSSimpleTypeDecl
+
+    private XSParticleDecl readParticle() throws IOException {
+        final XSParticleDecl particle = new XSParticleDecl();
+        addObject(particle);
+        particle.fType = fIn.readShort();
+        particle.fValue = (XSTerm) readObject();
+        particle.fMinOccurs = readCount();
+        particle.fMaxOccurs = readCount() - 1;
+        particle.fAnnotations = readObjectList();
+        return particle;
+    } // readParticle():XSParticleDecl
+
+    private XSModelGroupImpl readModelGroup() throws IOException {
+        final XSModelGroupImpl group = new XSModelGroupImpl();
+        addObject(group);
+        group.fCompositor = fIn.readShort();
+        group.fParticleCount = readCount();
+        group.fParticles = new XSParticleDecl[group.fParticleCount];
+        for (int i = 0; i < group.fParticleCount; i++) {
+            group.fParticles[i] = (XSParticleDecl) readObject();
+        }
+        group.fAnnotations = readObjectList();
+        return group;
+    } // readModelGroup():XSModelGroupImpl
+
+    private XSGroupDecl readGroupDecl() throws IOException {
+        final XSGroupDecl decl = new XSGroupDecl();
+        addObject(decl);
+        decl.fName = readSymbol();
+        decl.fTargetNamespace = readSymbol();
+        decl.fModelGroup = (XSModelGroupImpl) readObject();
+        decl.fAnnotations = readObjectList();
+        decl.setNamespaceItem((SchemaGrammar) readObject());
+        return decl;
+    } // readGroupDecl():XSGroupDecl
+
+    private XSWildcardDecl readWildcardDecl() throws IOException {
+        final XSWildcardDecl wildcard = new XSWildcardDecl();
+        addObject(wildcard);
+        wildcard.fType = fIn.readShort();
+        wildcard.fProcessContents = fIn.readShort();
+        final int count = readCount();
+        if (count > 0) {
+            wildcard.fNamespaceList = new String[count - 1];
+            for (int i = 0; i < count - 1; i++) {
+                wildcard.fNamespaceList[i] = readSymbol();
+            }
+        }
+        wildcard.fAnnotations = readObjectList();
+        return wildcard;
+    } // readWildcardDecl():XSWildcardDecl
+
+    private XSNotationDecl readNotationDecl() throws IOException {
+        final XSNotationDecl decl = new XSNotationDecl();
+        addObject(decl);
+        decl.fName = readSymbol();
+        decl.fTargetNamespace = readSymbol();
+        decl.fPublicId = readText();
+        decl.fSystemId = readText();
+        decl.fAnnotations = readObjectList();
+        decl.setNamespaceItem((SchemaGrammar) readObject());
+        return decl;
+    } // readNotationDecl():XSNotationDecl
+
+    private IdentityConstraint readIdentityConstraint(byte tag) throws IOException {
+        final int handle = addObject(null);
+        UniqueOrKey key = null;
+        short category = XSIDCDefinition.IC_KEYREF;
+        if (tag == KEYREF) {
+            key = (UniqueOrKey) readObject();
+        }
+        else {
+            category = fIn.readShort();
+        }
+        final String namespace = readSymbol();
+        final String name = readSymbol();
+        final String elementName = readSymbol();
+        final IdentityConstraint idc = (tag == KEYREF) ?
+                (IdentityConstraint) new KeyRef(namespace, name, elementName, key) :
+                new UniqueOrKey(namespace, name, elementName, category);
+        fObjects[handle] = idc;
+        try {
+            String expression = readText();
+            idc.setSelector(new Selector(new Selector.XPath(expression, fSymbolTable, readBindings()), idc));
+            final int fieldCount = readCount();
+            for (int i = 0; i < fieldCount; i++) {
+                expression = readText();
+                idc.addField(new Field(new Field.XPath(expression, fSymbolTable, readBindings()), idc));
+            }
+        }
+        catch (XPathException e) {
+            throw new IOException("Cannot restore identity constraint " + name + ": " + e.getMessage());
+        }
+        final XSObjectList annotations = readObjectList();
+        if (annotations != null) {
+            for (int i = 0; i < annotations.getLength(); i++) {
+                idc.addAnnotation((XSAnnotationImpl) annotations.item(i));
+            }
+        }
+        return idc;
+    } // readIdentityConstraint(byte):IdentityConstraint
+
+    private XSDFACM readDFA() throws IOException {
+        final int handle = addObject(null);
+        final int elemMapSize = readCount();
+        final Object[] elemMap = new Object[elemMapSize];
+        final int[] elemMapType = new int[elemMapSize];
+        for (int i = 0; i < elemMapSize; i++) {
+            elemMap[i] = readObject();
+            elemMapType[i] = readCount();
+        }
+        final int stateCount = readCount();
+        final boolean[] finalStateFlags = new boolean[stateCount];
+        final int[][] transTable = new int[stateCount][];
+        for (int i = 0; i < stateCount; i++) {
+            finalStateFlags[i] = fIn.readBoolean();
+            transTable[i] = new int[elemMapSize];
+            for (int j = 0; j < elemMapSize; j++) {
+                transTable[i][j] = readCount() - 1;
+            }
+        }
+        int[][] countingStates = null;
+        if (fIn.readBoolean()) {
+            countingStates = new int[stateCount][];
+            for (int i = 0; i < stateCount; i++) {
+                if (fIn.readBoolean()) {
+                    countingStates[i] = new int[] {readCount(), readCount() - 1, readCount()};
+                }
+            }
+        }
+        final XSDFACM dfa = new XSDFACM(elemMap, elemMapType, finalStateFlags,
+                transTable, countingStates, fIn.readBoolean());
+        fObjects[handle] = dfa;
+        return dfa;
+    } // readDFA():XSDFACM
+
+    private XSObjectListImpl readObjectList() throws IOException {
+        final int count = readCount();
+        if (count == 0) {
+            return null;
+        }
+        if (count == 1) {
+            return XSObjectListImpl.EMPTY_LIST;
+        }
+        final XSObject[] items = new XSObject[count - 1];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = (XSObject) readObject();
+        }
+        return new XSObjectListImpl(items, items.length);
+    } // readObjectList():XSObjectListImpl
+
+    /**
+     * Reads a value constraint. Its actual value is computed once all
+     * the grammars have been read, since the type of its owner may not
+     * be complete yet.
+     */
+    private ValidatedInfo readValue(byte ownerKind, Object owner) throws IOException {
+        if (!fIn.readBoolean()) {
+            return null;
+        }
+        final ValidatedInfo value = new ValidatedInfo();
+        value.normalizedValue = readText();
+        fPendingValues.addElement(new Object[] {new Byte(ownerKind), owner, value, readBindings()});
+        return value;
+    } // readValue(byte,Object):ValidatedInfo
+
+    /** Computes the actual values of the value constraints read. */
+    private void restoreValueConstraints() throws IOException {
+        for (int i = 0; i < fPendingValues.size(); i++) {
+            final Object[] pending = (Object[]) fPendingValues.elementAt(i);
+            final byte ownerKind = ((Byte) pending[0]).byteValue();
+            final ValidatedInfo value = (ValidatedInfo) pending[2];
+            final String lexical = value.normalizedValue;
+            fValidationState.setNamespaceSupport((NamespaceContext) pending[3]);
+            try {
+                if (ownerKind == VALUE_ELEMENT) {
+                    XSElementDecl decl = (XSElementDecl) pending[1];
+                    if (XSConstraints.ElementDefaultValidImmediate(decl.fType, lexical, fValidationState, value) == null) {
+                        throw new InvalidDatatypeValueException("e-props-correct.2", new Object[] {decl.fName, lexical});
+                    }
+                }
+                else if (ownerKind == VALUE_ATTRIBUTE) {
+                    ((XSAttributeDecl) pending[1]).fType.validate(lexical, fValidationState, value);
+                }
+                else {
+                    ((XSAttributeUseImpl) pending[1]).fAttrDecl.fType.validate(lexical, fValidationState, value);
+                }
+            }
+            catch (InvalidDatatypeValueException e) {
+                throw new IOException("Cannot restore the value constraint '" + lexical + "': " + e.getMessage());
+            }
+        }
+    } // restoreValueConstraints()
+
+    /** Reads namespace bindings into a namespace context, or returns null if there are none. */
+    private NamespaceContext readBindings() throws IOException {
+        final int count = readCount();
+        if (count == 0) {
+            return null;
+        }
+        final NamespaceSupport namespaces = new NamespaceSupport();
+        namespaces.reset();
+        for (int i = 0; i < count; i++) {
+            namespaces.declarePrefix(readSymbol(), readSymbol());
+        }
+        return namespaces;
+    } // readBindings():NamespaceContext
+
+    //
+    // Reading primitives
+    //
+
+    private int readCount() throws IOException {
+        int count = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = fIn.readByte();
+            count |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return count;
+            }
+        }
+        throw new IOException("Invalid number in serialized schema grammars.");
+    } // readCount():int
+
+    private String readSymbol() throws IOException {
+        final int handle = readCount() - 1;
+        if (handle == -1) {
+            return null;
+        }
+        if (handle < fStringCount) {
+            return fStrings[handle];
+        }
+        if (handle != fStringCount) {
+            throw new IOException("Invalid name in serialized schema grammars.");
+        }
+        if (fStringCount == fStrings.length) {
+            final String[] newStrings = new String[fStringCount * 2];
+            System.arraycopy(fStrings, 0, newStrings, 0, fStringCount);
+            fStrings = newStrings;
+        }
+        fStrings[fStringCount] = fSymbolTable.addSymbol(readChars());
+        return fStrings[fStringCount++];
+    } // readSymbol():String
+
+    private String readText() throws IOException {
+        return fIn.readBoolean() ? readChars() : null;
+    } // readText():String
+
+    private String readChars() throws IOException {
+        final int length = readCount();
+        if (length == 0) {
+            return "";
+        }
+        if (length <= MAX_UTF_CHUNK) {
+            return fIn.readUTF();
+        }
+        final StringBuffer buffer = new StringBuffer(length);
+        while (buffer.length() < length) {
+            buffer.append(fIn.readUTF());
+        }
+        return buffer.toString();
+    } // readChars():String
+
+    //
+    // Classes
+    //
+
+    /**
+     * A map from objects to handles which compares objects by identity,
+     * since some schema components define equals in terms of their names.
+     */
+    private static final class IdentityTable {
+
+        private Object[] fKeys = new Object[256];
+        private int[] fValues = new int[256];
+        private int fSize = 0;
+
+        /** Returns the handle of the given object, or -1. */
+        int get(Object key) {
+            final int mask = fKeys.length - 1;
+            int slot = hash(key) & mask;
+            Object k;
+            while ((k = fKeys[slot]) != null) {
+                if (k == key) {
+                    return fValues[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        } // get(Object):int
+
+        void put(Object key, int value) {
+            if (fSize * 2 >= fKeys.length) {
+                final Object[] oldKeys = fKeys;
+                final int[] oldValues = fValues;
+                fKeys = new Object[oldKeys.length * 2];
+                fValues = new int[oldKeys.length * 2];
+                fSize = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != null) {
+                        put(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            final int mask = fKeys.length - 1;
+            int slot = hash(key) & mask;
+            while (fKeys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            fKeys[slot] = key;
+            fValues[slot] = value;
+            fSize++;
+        } // put(Object,int)
+
+        int size() {
+            return fSize;
+        } // size():int
+
+        private static int hash(Object key) {
+            final int h = System.identityHashCode(key);
+            return h ^ (h >>> 16);
+        } // hash(Object):int
+
+    } // class IdentityTable
+
+} // class SchemaGrammarSerializer
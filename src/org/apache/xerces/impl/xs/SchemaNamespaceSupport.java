@@ -92,6 +92,7 @@ public class SchemaNamespaceSupport
         System.arraycopy(namespaceDecls, 0, fNamespace, fNamespaceSize,
                          namespaceDecls.length);
         fNamespaceSize = newSize;
+        invalidatePrefixIndex();
     } // setEffectiveContext(String):void
 
     /** 
@@ -124,6 +125,7 @@ public class SchemaNamespaceSupport
         if (fCurrentContext >= 3) {
             fCurrentContext = 3;
             fNamespaceSize = fContext[3];
+            invalidatePrefixIndex();
         }
     } // makeGlobal
     
@@ -82,6 +82,11 @@ public class SubstitutionGroupHandler {
         return null;
     }
 
+    // return the global element declaration with the given qname, if any
+    public XSElementDecl getGlobalElementDecl(QName element) {
+        return fXSElementDeclHelper.getGlobalElementDecl(element);
+    }
+
     // 3.3.6 Substitution Group OK (Transitive)
     // check whether element can substitute exemplar
     protected boolean substitutionGroupOK(XSElementDecl element, XSElementDecl exemplar, short blockingConstraint) {
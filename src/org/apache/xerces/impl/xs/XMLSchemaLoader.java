@@ -23,6 +23,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
@@ -37,12 +38,14 @@ import org.apache.xerces.dom.DOMStringListImpl;
 import org.apache.xerces.impl.Constants;
 import org.apache.xerces.impl.XMLEntityManager;
 import org.apache.xerces.impl.XMLErrorReporter;
+import org.apache.xerces.impl.XMLGrammarSerializer;
 import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
 import org.apache.xerces.impl.dv.SchemaDVFactory;
 import org.apache.xerces.impl.dv.xs.SchemaDVFactoryImpl;
 import org.apache.xerces.impl.xs.models.CMBuilder;
 import org.apache.xerces.impl.xs.models.CMNodeFactory;
 import org.apache.xerces.impl.xs.traversers.XSDHandler;
+import org.apache.xerces.util.BoundedXMLGrammarPool;
 import org.apache.xerces.util.DOMEntityResolverWrapper;
 import org.apache.xerces.util.DOMErrorHandlerWrapper;
 import org.apache.xerces.util.DefaultErrorHandler;
@@ -96,7 +99,7 @@ import org.xml.sax.InputSource;
  */
 public class XMLSchemaLoader implements XMLGrammarLoader, XMLComponent, XSElementDeclHelper,
 // XML Component API 
-XSLoader, DOMConfiguration {
+XSLoader, DOMConfiguration, XMLGrammarSerializer {
     
     // Feature identifiers:
     
@@ -209,6 +212,10 @@ XSLoader, DOMConfiguration {
     protected static final String ENTITY_MANAGER =
         Constants.XERCES_PROPERTY_PREFIX + Constants.ENTITY_MANAGER_PROPERTY;   
     
+    /** Property identifier: executor for loading schema documents in parallel. */
+    protected static final String SCHEMA_LOADING_EXECUTOR =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_LOADING_EXECUTOR_PROPERTY;
+    
     // recognized properties
     private static final String [] RECOGNIZED_PROPERTIES = {
         ENTITY_MANAGER,
@@ -222,7 +229,8 @@ XSLoader, DOMConfiguration {
         JAXP_SCHEMA_SOURCE,
         SECURITY_MANAGER,
         LOCALE,
-        SCHEMA_DV_FACTORY
+        SCHEMA_DV_FACTORY,
+        SCHEMA_LOADING_EXECUTOR
     };
     
     // Data
@@ -556,6 +564,42 @@ XSLoader, DOMConfiguration {
         }
         return grammar;
     } // loadGrammar(XMLInputSource):  Grammar
+
+    /**
+     * Writes the given schema grammars to the given stream.
+     *
+     * @param grammars The grammars to write, together with the grammars they import.
+     * @param out      The stream to write to.
+     * @throws IOException When writing fails or one of the grammars is not a schema grammar.
+     */
+    public void writeGrammars(Grammar[] grammars, OutputStream out) throws IOException {
+        SchemaGrammar[] schemaGrammars = new SchemaGrammar[grammars.length];
+        for (int i = 0; i < grammars.length; i++) {
+            if (!(grammars[i] instanceof SchemaGrammar)) {
+                throw new IOException("Only XML Schema grammars can be written by this loader.");
+            }
+            schemaGrammars[i] = (SchemaGrammar) grammars[i];
+        }
+        new SchemaGrammarSerializer(getSymbolTable()).writeGrammars(schemaGrammars, out);
+    } // writeGrammars(Grammar[],OutputStream)
+    
+    /**
+     * Reads schema grammars written by {@link #writeGrammars(Grammar[], OutputStream)}.
+     * Unlike <code>loadGrammar</code>, this method does not add the grammars
+     * to the grammar pool.
+     *
+     * @param in The stream to read from.
+     * @return The grammars read.
+     * @throws IOException When reading fails or the stream does not contain schema grammars.
+     */
+    public Grammar[] readGrammars(InputStream in) throws IOException {
+        return new SchemaGrammarSerializer(getSymbolTable()).readGrammars(in);
+    } // readGrammars(InputStream):  Grammar[]
+    
+    private SymbolTable getSymbolTable() {
+        SymbolTable symbolTable = (SymbolTable) fLoaderConfig.getProperty(SYMBOL_TABLE);
+        return (symbolTable != null) ? symbolTable : new SymbolTable();
+    } // getSymbolTable():  SymbolTable
     
     /**
      * This method is called either from XMLGrammarLoader.loadGrammar or from XMLSchemaValidator.
@@ -577,7 +621,17 @@ XSLoader, DOMConfiguration {
         if(!fJAXPProcessed) {
             processJAXPSchemaSource(locationPairs);
         }
-        SchemaGrammar grammar = fSchemaHandler.parseSchema(source, desc, locationPairs);
+        // report the time spent loading to a pool which keeps statistics
+        final long startTime = (fGrammarPool instanceof BoundedXMLGrammarPool) ? System.currentTimeMillis() : 0;
+        SchemaGrammar grammar;
+        try {
+            grammar = fSchemaHandler.parseSchema(source, desc, locationPairs);
+        }
+        finally {
+            if (fGrammarPool instanceof BoundedXMLGrammarPool) {
+                ((BoundedXMLGrammarPool) fGrammarPool).recordLoad(System.currentTimeMillis() - startTime);
+            }
+        }
         
         return grammar;
     } // loadSchema(XSDDescription, XMLInputSource):  SchemaGrammar
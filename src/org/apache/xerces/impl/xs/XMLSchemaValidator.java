@@ -45,6 +45,7 @@ import org.apache.xerces.impl.xs.identity.FieldActivator;
 import org.apache.xerces.impl.xs.identity.IdentityConstraint;
 import org.apache.xerces.impl.xs.identity.KeyRef;
 import org.apache.xerces.impl.xs.identity.Selector;
+import org.apache.xerces.impl.xs.identity.SelectorAutomaton;
 import org.apache.xerces.impl.xs.identity.UniqueOrKey;
 import org.apache.xerces.impl.xs.identity.ValueStore;
 import org.apache.xerces.impl.xs.identity.XPathMatcher;
@@ -1315,6 +1316,12 @@ public class XMLSchemaValidator
     /** Cache of value stores for identity constraint fields. */
     protected ValueStoreCache fValueStoreCache = new ValueStoreCache();
 
+    /**
+     * The selector automata of the element declarations with identity
+     * constraints, keyed by their identity constraint arrays.
+     */
+    private final HashMap fSelectorAutomata = new HashMap();
+
     //
     // Constructors
     //
@@ -1370,6 +1377,7 @@ public class XMLSchemaValidator
         fInCDATA = false;
 
         fMatcherStack.clear();
+        fSelectorAutomata.clear();
 
         // get error reporter
         fXSIErrorReporter.reset((XMLErrorReporter) componentManager.getProperty(ERROR_REPORTER));
@@ -1638,12 +1646,18 @@ public class XMLSchemaValidator
     } // endValueScopeFor(IdentityConstraint)
 
     // a utility method for Identity constraints
-    private void activateSelectorFor(IdentityConstraint ic) {
-        Selector selector = ic.getSelector();
+    private void activateSelectorsFor(XSElementDecl eDecl) {
+        // the selectors of all identity constraints of the element are
+        // matched by one automaton, kept for later elements of this
+        // declaration
+        SelectorAutomaton automaton =
+            (SelectorAutomaton) fSelectorAutomata.get(eDecl.fIDConstraints);
+        if (automaton == null || automaton.getIDCCount() != eDecl.fIDCPos) {
+            automaton = new SelectorAutomaton(eDecl.fIDConstraints, eDecl.fIDCPos);
+            fSelectorAutomata.put(eDecl.fIDConstraints, automaton);
+        }
         FieldActivator activator = this;
-        if (selector == null)
-            return;
-        XPathMatcher matcher = selector.createMatcher(activator, fElementDepth);
+        XPathMatcher matcher = automaton.createMatcher(activator, fElementDepth);
         fMatcherStack.addMatcher(matcher);
         matcher.startDocumentFragment();
     }
@@ -2428,6 +2442,15 @@ public class XMLSchemaValidator
                         fValueStoreCache.transplant(id, selMatcher.getInitialDepth());
                     }
                 }
+                else if (matcher instanceof SelectorAutomaton.Matcher) {
+                    SelectorAutomaton.Matcher selMatcher = (SelectorAutomaton.Matcher) matcher;
+                    for (int j = selMatcher.getIdentityConstraintCount() - 1; j >= 0; j--) {
+                        IdentityConstraint id = selMatcher.getIdentityConstraintAt(j);
+                        if (id.getCategory() != IdentityConstraint.IC_KEYREF) {
+                            fValueStoreCache.transplant(id, selMatcher.getInitialDepth());
+                        }
+                    }
+                }
             }
             
             // now handle keyref's/...
@@ -2446,6 +2469,20 @@ public class XMLSchemaValidator
                             values.endDocumentFragment();
                     }
                 }
+                else if (matcher instanceof SelectorAutomaton.Matcher) {
+                    SelectorAutomaton.Matcher selMatcher = (SelectorAutomaton.Matcher) matcher;
+                    for (int j = selMatcher.getIdentityConstraintCount() - 1; j >= 0; j--) {
+                        IdentityConstraint id = selMatcher.getIdentityConstraintAt(j);
+                        if (id.getCategory() == IdentityConstraint.IC_KEYREF) {
+                            ValueStoreBase values =
+                                fValueStoreCache.getValueStoreFor(id, selMatcher.getInitialDepth());
+                            // nothing to do if nothing matched, or if not all
+                            // fields are present.
+                            if (values != null && values.fValuesCount == values.fFieldCount)
+                                values.endDocumentFragment();
+                        }
+                    }
+                }
             }
             fValueStoreCache.endElement();
         }
@@ -3096,7 +3133,7 @@ public class XMLSchemaValidator
             actualValue = attDV.validate(attrValue, fValidationState, fValidatedInfo);
             // store the normalized value
             if (fNormalizeData) {
-                attributes.setValue(index, fValidatedInfo.normalizedValue);
+                attributes.setValue(index, fValidatedInfo.getNormalizedValue());
             }
             // PSVI: element notation
             if (attDV.getVariety() == XSSimpleType.VARIETY_ATOMIC
@@ -3289,7 +3326,7 @@ public class XMLSchemaValidator
         }
         // fixed values are handled later, after xsi:type determined.
 
-        fValidatedInfo.normalizedValue = null;
+        fValidatedInfo.setNormalizedValue(null, 0, 0);
 
         // Element Locally Valid (Element)
         // 3.2.1 The element information item must have no character or element information item [children].
@@ -3393,7 +3430,7 @@ public class XMLSchemaValidator
         if (fDefaultValue == null && fNormalizeData && fDocumentHandler != null && fUnionType) {
             // for union types we need to send data because we delayed sending
             // this data when we received it in the characters() call.
-            String content = fValidatedInfo.normalizedValue;
+            String content = fValidatedInfo.getNormalizedValue();
             if (content == null)
                 content = fBuffer.toString();
 
@@ -3727,6 +3764,20 @@ public class XMLSchemaValidator
         private boolean fUseItemValueTypeVector = false;
         private int fItemValueTypesLength = 0;
         private ShortList fItemValueType = null;
+        
+        /** 
+         * Hash index over the stored tuples. Each tuple is identified by 
+         * its ordinal; its fields start at ordinal * fFieldCount in fValues.
+         */
+        private int fTupleCount = 0;
+        private int[] fTupleBuckets = null;
+        private int[] fTupleHashes = null;
+        private int[] fTupleNext = null;
+        
+        /** scratch tuple used for looking up another store's values */
+        private Object[] fTempValues = null;
+        private short[] fTempValueTypes = null;
+        private ShortList[] fTempItemValueTypes = null;
 
         /** buffer for error messages */
         final StringBuffer fTempBuffer = new StringBuffer();
@@ -3769,12 +3820,24 @@ public class XMLSchemaValidator
             if (fItemValueTypes != null) {
                 fItemValueTypes.setSize(0);
             }
+            fTupleCount = 0;
+            if (fTupleBuckets != null) {
+                for (int i = 0; i < fTupleBuckets.length; ++i) {
+                    fTupleBuckets[i] = -1;
+                }
+            }
         } // end clear():void
 
         // appends the contents of one ValueStore to those of us.
         public void append(ValueStoreBase newVal) {
-            for (int i = 0; i < newVal.fValues.size(); i++) {
+            final int size = newVal.fValues.size();
+            for (int i = 0; i < size; i++) {
                 fValues.addElement(newVal.fValues.elementAt(i));
+                addValueType(newVal.getValueTypeAt(i));
+                addItemValueType(newVal.getItemValueTypeAt(i));
+            }
+            for (int i = 0; i < newVal.fTupleCount; ++i) {
+                addTupleHash(newVal.fTupleHashes[i]);
             }
         } // append(ValueStoreBase)
 
@@ -3893,6 +3956,7 @@ public class XMLSchemaValidator
                     addValueType(fLocalValueTypes[i]);
                     addItemValueType(fLocalItemValueTypes[i]);
                 }
+                addTupleHash(tupleHash(fLocalValues, fLocalValueTypes));
             }
         } // addValue(String,Field)
 
@@ -3900,33 +3964,7 @@ public class XMLSchemaValidator
          * Returns true if this value store contains the locally scoped value stores
          */
         public boolean contains() {
-            // REVISIT: we can improve performance by using hash codes, instead of
-            // traversing global vector that could be quite large.
-            int next = 0;
-            final int size = fValues.size();
-            LOOP : for (int i = 0; i < size; i = next) {
-                next = i + fFieldCount;
-                for (int j = 0; j < fFieldCount; j++) {
-                    Object value1 = fLocalValues[j];
-                    Object value2 = fValues.elementAt(i);
-                    short valueType1 = fLocalValueTypes[j];
-                    short valueType2 = getValueTypeAt(i);
-                    if (value1 == null || value2 == null || valueType1 != valueType2 || !(value1.equals(value2))) {
-                        continue LOOP;
-                    }
-                    else if(valueType1 == XSConstants.LIST_DT || valueType1 == XSConstants.LISTOFUNION_DT) {
-                        ShortList list1 = fLocalItemValueTypes[j];
-                        ShortList list2 = getItemValueTypeAt(i);
-                        if(list1 == null || list2 == null || !list1.equals(list2))
-                            continue LOOP;
-                    }
-                    i++;
-                }
-                // found it
-                return true;
-            }
-            // didn't find it
-            return false;
+            return findTuple(fLocalValues, fLocalValueTypes, fLocalItemValueTypes, false) != -1;
         } // contains():boolean
 
         /**
@@ -3937,49 +3975,28 @@ public class XMLSchemaValidator
         public int contains(ValueStoreBase vsb) {
             
             final Vector values = vsb.fValues;         
-            final int size1 = values.size();
-            if (fFieldCount <= 1) {
-                for (int i = 0; i < size1; ++i) {
-                    short val = vsb.getValueTypeAt(i);
-                    if (!valueTypeContains(val) || !fValues.contains(values.elementAt(i))) {
-                        return i;
-                    }
-                    else if(val == XSConstants.LIST_DT || val == XSConstants.LISTOFUNION_DT) {
-                        ShortList list1 = vsb.getItemValueTypeAt(i);
-                        if (!itemValueTypeContains(list1)) {
-                            return i;
-                        }
-                    }
+            final int size = values.size();
+            if (fTempValues == null) {
+                fTempValues = new Object[fFieldCount];
+                fTempValueTypes = new short[fFieldCount];
+                fTempItemValueTypes = new ShortList[fFieldCount];
+            }
+            /** Iterate over each set of fields. **/
+            for (int i = 0; i < size; i += fFieldCount) {
+                for (int k = 0; k < fFieldCount; ++k) {
+                    fTempValues[k] = values.elementAt(i+k);
+                    fTempValueTypes[k] = vsb.getValueTypeAt(i+k);
+                    fTempItemValueTypes[k] = vsb.getItemValueTypeAt(i+k);
                 }
-            }
-            /** Handle n-tuples. **/
-            else {
-                final int size2 = fValues.size();
-                /** Iterate over each set of fields. **/
-                OUTER: for (int i = 0; i < size1; i += fFieldCount) {
-                    /** Check whether this set is contained in the value store. **/
-                    INNER: for (int j = 0; j < size2; j += fFieldCount) {
-                        for (int k = 0; k < fFieldCount; ++k) {
-                            final Object value1 = values.elementAt(i+k);
-                            final Object value2 = fValues.elementAt(j+k);
-                            final short valueType1 = vsb.getValueTypeAt(i+k);
-                            final short valueType2 = getValueTypeAt(j+k);
-                            if (value1 != value2 && (valueType1 != valueType2 || value1 == null || !value1.equals(value2))) {
-                                continue INNER;
-                            }
-                            else if(valueType1 == XSConstants.LIST_DT || valueType1 == XSConstants.LISTOFUNION_DT) {
-                                ShortList list1 = vsb.getItemValueTypeAt(i+k);
-                                ShortList list2 = getItemValueTypeAt(j+k);
-                                if (list1 == null || list2 == null || !list1.equals(list2)) {
-                                    continue INNER;
-                                }
-                            }
-                        }
-                        continue OUTER;
-                    }
+                /** Check whether this set is contained in the value store. **/
+                if (findTuple(fTempValues, fTempValueTypes, fTempItemValueTypes, true) == -1) {
                     return i;
                 }
             }
+            for (int k = 0; k < fFieldCount; ++k) {
+                fTempValues[k] = null;
+                fTempItemValueTypes[k] = null;
+            }
             return -1;
             
         } // contains(Vector):Object
@@ -4087,13 +4104,6 @@ public class XMLSchemaValidator
             return fValueType;
         }
         
-        private boolean valueTypeContains(short value) {
-            if (fUseValueTypeVector) {
-                return fValueTypes.contains(value);
-            }
-            return fValueType == value;
-        }
-        
         private void addItemValueType(ShortList itemValueType) {
             if (fUseItemValueTypeVector) {
                 fItemValueTypes.add(itemValueType);
@@ -4121,12 +4131,90 @@ public class XMLSchemaValidator
             return fItemValueType;
         }
         
-        private boolean itemValueTypeContains(ShortList value) {
-            if (fUseItemValueTypeVector) {
-                return fItemValueTypes.contains(value);
+        private int tupleHash(Object[] values, short[] valueTypes) {
+            int hash = 0;
+            for (int i = 0; i < fFieldCount; ++i) {
+                final Object value = values[i];
+                hash = 31 * hash + valueTypes[i];
+                hash = 31 * hash + ((value != null) ? value.hashCode() : 0);
             }
-            return fItemValueType == value || 
-                (fItemValueType != null && fItemValueType.equals(value));
+            return hash;
+        }
+        
+        private void addTupleHash(int hash) {
+            if (fTupleBuckets == null) {
+                fTupleBuckets = new int[16];
+                for (int i = 0; i < fTupleBuckets.length; ++i) {
+                    fTupleBuckets[i] = -1;
+                }
+                fTupleHashes = new int[16];
+                fTupleNext = new int[16];
+            }
+            else if (fTupleCount == fTupleHashes.length) {
+                int[] newHashes = new int[fTupleCount << 1];
+                System.arraycopy(fTupleHashes, 0, newHashes, 0, fTupleCount);
+                fTupleHashes = newHashes;
+                fTupleNext = new int[fTupleCount << 1];
+                // rehash into a table that keeps pace with the tuple arrays
+                fTupleBuckets = new int[fTupleCount << 1];
+                for (int i = 0; i < fTupleBuckets.length; ++i) {
+                    fTupleBuckets[i] = -1;
+                }
+                for (int i = 0; i < fTupleCount; ++i) {
+                    final int bucket = (fTupleHashes[i] & 0x7FFFFFFF) % fTupleBuckets.length;
+                    fTupleNext[i] = fTupleBuckets[bucket];
+                    fTupleBuckets[bucket] = i;
+                }
+            }
+            final int bucket = (hash & 0x7FFFFFFF) % fTupleBuckets.length;
+            fTupleHashes[fTupleCount] = hash;
+            fTupleNext[fTupleCount] = fTupleBuckets[bucket];
+            fTupleBuckets[bucket] = fTupleCount++;
+        }
+        
+        /**
+         * Returns the ordinal of a stored tuple equal to the given one, or -1.
+         * A null value only matches another null value if <code>matchNull</code>
+         * is true.
+         */
+        private int findTuple(Object[] values, short[] valueTypes, 
+                ShortList[] itemValueTypes, boolean matchNull) {
+            if (fTupleCount == 0) {
+                return -1;
+            }
+            final int hash = tupleHash(values, valueTypes);
+            LOOP: for (int t = fTupleBuckets[(hash & 0x7FFFFFFF) % fTupleBuckets.length]; 
+                t != -1; t = fTupleNext[t]) {
+                if (fTupleHashes[t] != hash) {
+                    continue;
+                }
+                final int offset = t * fFieldCount;
+                for (int k = 0; k < fFieldCount; ++k) {
+                    final Object value1 = values[k];
+                    final Object value2 = fValues.elementAt(offset+k);
+                    final short valueType1 = valueTypes[k];
+                    if (valueType1 != getValueTypeAt(offset+k)) {
+                        continue LOOP;
+                    }
+                    if (value1 == null || value2 == null) {
+                        if (!matchNull || value1 != value2) {
+                            continue LOOP;
+                        }
+                    }
+                    else if (!value1.equals(value2)) {
+                        continue LOOP;
+                    }
+                    if (valueType1 == XSConstants.LIST_DT || valueType1 == XSConstants.LISTOFUNION_DT) {
+                        ShortList list1 = itemValueTypes[k];
+                        ShortList list2 = getItemValueTypeAt(offset+k);
+                        if (list1 == null || list2 == null || !list1.equals(list2)) {
+                            continue LOOP;
+                        }
+                    }
+                }
+                return t;
+            }
+            return -1;
         }
 
     } // class ValueStoreBase
@@ -4407,7 +4495,6 @@ public class XMLSchemaValidator
                             uniqueValueStore.clear();
                         }
                         fValueStores.add(uniqueValueStore);
-                        activateSelectorFor(icArray[i]);
                         break;
                     case (IdentityConstraint.IC_KEY) :
                         // initialize value stores for key fields
@@ -4422,7 +4509,6 @@ public class XMLSchemaValidator
                             keyValueStore.clear();
                         }
                         fValueStores.add(keyValueStore);
-                        activateSelectorFor(icArray[i]);
                         break;
                     case (IdentityConstraint.IC_KEYREF) :
                         // initialize value stores for keyRef fields
@@ -4437,10 +4523,10 @@ public class XMLSchemaValidator
                             keyRefValueStore.clear();
                         }
                         fValueStores.add(keyRefValueStore);
-                        activateSelectorFor(icArray[i]);
                         break;
                 }
             }
+            activateSelectorsFor(eDecl);
         } // initValueStoresFor(XSElementDecl)
 
         /** Returns the value store associated to the specified IdentityConstraint. */
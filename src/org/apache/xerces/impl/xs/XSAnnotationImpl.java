@@ -125,6 +125,11 @@ public class XSAnnotationImpl implements XSAnnotation {
         return null;
     }
 
+    /** Returns the grammar which owns this annotation. */
+    SchemaGrammar getGrammar() {
+        return fGrammar;
+    }
+
     // private methods
     private synchronized void writeToSAX(ContentHandler handler) {
         // nothing must go wrong with this parse...
@@ -0,0 +1,659 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs.identity;
+
+import java.util.HashMap;
+
+import org.apache.xerces.impl.xpath.XPath;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xs.ShortList;
+import org.apache.xerces.xs.XSTypeDefinition;
+
+/**
+ * <p>The selectors of all identity constraints of an element declaration,
+ * combined into one automaton. Each state of the automaton holds the
+ * state which the {@link XPathMatcher} of every location path of every
+ * selector would be in, so a single transition per element replaces
+ * feeding each selector matcher in turn, and the selectors matched by
+ * an element are listed on the state it leads to.</p>
+ *
+ * <p>States and transitions are built lazily, as the elements of the
+ * documents are seen, and are kept for later elements. Past a fixed
+ * number of states, new states are computed for each element and not
+ * kept.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class SelectorAutomaton {
+
+    //
+    // Constants
+    //
+
+    /** The most states which are kept. */
+    private static final int MAX_STATES = 1024;
+
+    /** No selectors. */
+    private static final int[] NO_SELECTORS = new int[0];
+
+    //
+    // Data
+    //
+
+    /** The identity constraints which have a selector. */
+    private final IdentityConstraint[] fConstraints;
+
+    /** The steps of each location path. */
+    private final XPath.Step[][] fSteps;
+
+    /**
+     * The first location path of each selector. The location paths of
+     * selector <code>i</code> are those from <code>fFirstPath[i]</code>
+     * to <code>fFirstPath[i + 1]</code>.
+     */
+    private final int[] fFirstPath;
+
+    /** The count of identity constraints this automaton was built for. */
+    private final int fIDCCount;
+
+    /** The state before any element. */
+    private final State fInitialState;
+
+    /** The states which are kept, mapped to themselves. */
+    private final HashMap fStates = new HashMap();
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs the automaton of the selectors of the first
+     * <code>count</code> identity constraints.
+     */
+    public SelectorAutomaton(IdentityConstraint[] constraints, int count) {
+        int selectorCount = 0;
+        int pathCount = 0;
+        for (int i = 0; i < count; i++) {
+            Selector selector = constraints[i].getSelector();
+            if (selector != null) {
+                selectorCount++;
+                pathCount += selector.getXPath().getLocationPaths().length;
+            }
+        }
+        fConstraints = new IdentityConstraint[selectorCount];
+        fSteps = new XPath.Step[pathCount][];
+        fFirstPath = new int[selectorCount + 1];
+        selectorCount = 0;
+        pathCount = 0;
+        for (int i = 0; i < count; i++) {
+            Selector selector = constraints[i].getSelector();
+            if (selector != null) {
+                XPath.LocationPath[] paths = selector.getXPath().getLocationPaths();
+                fConstraints[selectorCount] = constraints[i];
+                fFirstPath[selectorCount++] = pathCount;
+                for (int j = 0; j < paths.length; j++) {
+                    fSteps[pathCount++] = paths[j].steps;
+                }
+            }
+        }
+        fFirstPath[selectorCount] = pathCount;
+        fIDCCount = count;
+        fInitialState = intern(new State(new int[pathCount],
+                new int[pathCount], new byte[pathCount]));
+    } // <init>(IdentityConstraint[],int)
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Returns the count of identity constraints this automaton was built
+     * for.
+     */
+    public int getIDCCount() {
+        return fIDCCount;
+    } // getIDCCount():int
+
+    /**
+     * Creates a matcher for the selectors.
+     *
+     * @param activator     The activator for the fields of the selectors.
+     * @param initialDepth  The depth in the document at which this matcher
+     *                          began its life.
+     */
+    public XPathMatcher createMatcher(FieldActivator activator, int initialDepth) {
+        return new SelectorAutomaton.Matcher(activator, initialDepth);
+    } // createMatcher(FieldActivator,int):XPathMatcher
+
+    //
+    // Private methods
+    //
+
+    /** Returns the state kept which equals the given one, keeping it if there is room. */
+    private State intern(State state) {
+        State kept = (State) fStates.get(state);
+        if (kept != null) {
+            return kept;
+        }
+        if (fStates.size() < MAX_STATES) {
+            state.fKept = true;
+            fStates.put(state, state);
+        }
+        state.fMatchedSelectors = getMatchedSelectors(state);
+        return state;
+    } // intern(State):State
+
+    /** Returns the state reached from the given state at the start of an element. */
+    private State startElement(State state, QName element) {
+        final String key1;
+        final String key2;
+        if (element.uri != null) {
+            key1 = element.uri;
+            key2 = element.localpart;
+        }
+        else {
+            key1 = null;
+            key2 = element.rawname;
+        }
+        State next = state.getStartTransition(key1, key2);
+        if (next == null) {
+            next = intern(computeStartElement(state, element));
+            if (state.fKept && next.fKept) {
+                state.addStartTransition(key1, key2, next);
+            }
+        }
+        return next;
+    } // startElement(State,QName):State
+
+    /**
+     * Returns the state reached from the given state at the end of an
+     * element. <code>below</code> is the state in which the element was
+     * started.
+     */
+    private State endElement(State state, State below) {
+        State next = state.getEndTransition(below);
+        if (next == null) {
+            next = intern(computeEndElement(state, below));
+            if (state.fKept && below.fKept && next.fKept) {
+                state.addEndTransition(below, next);
+            }
+        }
+        return next;
+    } // endElement(State,State):State
+
+    /**
+     * Computes the state reached at the start of an element, as
+     * {@link XPathMatcher#startElement} does for each location path.
+     */
+    private State computeStartElement(State state, QName element) {
+        final int pathCount = fSteps.length;
+        int[] step = new int[pathCount];
+        int[] matched = new int[pathCount];
+        byte[] noMatch = new byte[pathCount];
+        System.arraycopy(state.fStep, 0, step, 0, pathCount);
+        System.arraycopy(state.fMatched, 0, matched, 0, pathCount);
+        System.arraycopy(state.fNoMatch, 0, noMatch, 0, pathCount);
+        for (int i = 0; i < pathCount; i++) {
+            // the step of a path which does not match is restored from
+            // the state below at the end of the element, so it is
+            // cleared to share more states.
+            if ((matched[i] & XPathMatcher.MATCHED_DESCENDANT) == XPathMatcher.MATCHED
+                    || noMatch[i] != 0) {
+                noMatch[i] = 1;
+                step[i] = 0;
+                continue;
+            }
+            if ((matched[i] & XPathMatcher.MATCHED_DESCENDANT) == XPathMatcher.MATCHED_DESCENDANT) {
+                matched[i] = XPathMatcher.MATCHED_DESCENDANT_PREVIOUS;
+            }
+
+            // consume self::node() steps
+            final XPath.Step[] steps = fSteps[i];
+            final int startStep = step[i];
+            int current = startStep;
+            while (current < steps.length && steps[current].axis.type == XPath.Axis.SELF) {
+                current++;
+            }
+            if (current == steps.length) {
+                step[i] = current;
+                matched[i] = XPathMatcher.MATCHED;
+                continue;
+            }
+
+            // consume descendant steps
+            final int descendantStep = current;
+            while (current < steps.length && steps[current].axis.type == XPath.Axis.DESCENDANT) {
+                current++;
+            }
+            final boolean sawDescendant = current > descendantStep;
+            if (current == steps.length) {
+                noMatch[i] = 1;
+                step[i] = 0;
+                continue;
+            }
+
+            // match child::... step, if haven't consumed any self::node()
+            if ((current == startStep || current > descendantStep)
+                    && steps[current].axis.type == XPath.Axis.CHILD) {
+                if (!XPathMatcher.matches(steps[current].nodeTest, element)) {
+                    if (current > descendantStep) {
+                        step[i] = descendantStep;
+                    }
+                    else {
+                        noMatch[i] = 1;
+                        step[i] = 0;
+                    }
+                    continue;
+                }
+                current++;
+            }
+            if (current == steps.length) {
+                if (sawDescendant) {
+                    step[i] = descendantStep;
+                    matched[i] = XPathMatcher.MATCHED_DESCENDANT;
+                }
+                else {
+                    step[i] = current;
+                    matched[i] = XPathMatcher.MATCHED;
+                }
+                continue;
+            }
+            step[i] = current;
+        }
+        return new State(step, matched, noMatch);
+    } // computeStartElement(State,QName):State
+
+    /**
+     * Computes the state reached at the end of an element, as
+     * {@link XPathMatcher#endElement} does for each location path.
+     */
+    private State computeEndElement(State state, State below) {
+        final int pathCount = fSteps.length;
+        int[] step = new int[pathCount];
+        int[] matched = new int[pathCount];
+        byte[] noMatch = new byte[pathCount];
+        // the step and the no match depth go back to those before the
+        // element was started
+        System.arraycopy(below.fStep, 0, step, 0, pathCount);
+        System.arraycopy(below.fNoMatch, 0, noMatch, 0, pathCount);
+        System.arraycopy(state.fMatched, 0, matched, 0, pathCount);
+        for (int s = 0; s < fConstraints.length; s++) {
+            final int first = fFirstPath[s];
+            final int end = fFirstPath[s + 1];
+            for (int i = first; i < end; i++) {
+                if (state.fNoMatch[i] != 0) {
+                    continue;
+                }
+                int j = first;
+                for (; j < i && ((matched[j] & XPathMatcher.MATCHED) != XPathMatcher.MATCHED); j++);
+                if ((j < i) || (matched[j] == 0)) {
+                    continue;
+                }
+                matched[i] = 0;
+            }
+        }
+        return new State(step, matched, noMatch);
+    } // computeEndElement(State,State):State
+
+    /**
+     * Returns the selectors matched in the given state, as
+     * {@link XPathMatcher#isMatched} decides for their location paths.
+     */
+    private int[] getMatchedSelectors(State state) {
+        int[] selectors = null;
+        int count = 0;
+        for (int s = 0; s < fConstraints.length; s++) {
+            for (int i = fFirstPath[s]; i < fFirstPath[s + 1]; i++) {
+                final int matched = state.fMatched[i];
+                if (((matched & XPathMatcher.MATCHED) == XPathMatcher.MATCHED)
+                        && ((matched & XPathMatcher.MATCHED_DESCENDANT_PREVIOUS) != XPathMatcher.MATCHED_DESCENDANT_PREVIOUS)
+                        && ((state.fNoMatch[i] == 0)
+                        || ((matched & XPathMatcher.MATCHED_DESCENDANT) == XPathMatcher.MATCHED_DESCENDANT))) {
+                    if (selectors == null) {
+                        selectors = new int[fConstraints.length];
+                    }
+                    selectors[count++] = s;
+                    break;
+                }
+            }
+        }
+        if (selectors == null) {
+            return NO_SELECTORS;
+        }
+        if (count < selectors.length) {
+            int[] array = new int[count];
+            System.arraycopy(selectors, 0, array, 0, count);
+            selectors = array;
+        }
+        return selectors;
+    } // getMatchedSelectors(State):int[]
+
+    //
+    // Classes
+    //
+
+    /**
+     * A state of the automaton: the current step, the kind of match and
+     * whether there is no match, for each location path.
+     */
+    private static final class State {
+
+        //
+        // Data
+        //
+
+        /** The current step of each location path. */
+        final int[] fStep;
+
+        /** How each location path matched, if it did. */
+        final int[] fMatched;
+
+        /** Whether each location path cannot match. */
+        final byte[] fNoMatch;
+
+        /** The hash code. */
+        private final int fHashCode;
+
+        /** The selectors matched in this state. */
+        int[] fMatchedSelectors;
+
+        /** True if this state is kept by the automaton. */
+        boolean fKept;
+
+        /** The element names of the start transitions, in pairs. */
+        private String[] fStartNames;
+
+        /** The states reached by the start transitions. */
+        private State[] fStartStates;
+
+        /** The count of start transitions. */
+        private int fStartCount;
+
+        /** The states below of the end transitions. */
+        private State[] fEndBelow;
+
+        /** The states reached by the end transitions. */
+        private State[] fEndStates;
+
+        /** The count of end transitions. */
+        private int fEndCount;
+
+        //
+        // Constructors
+        //
+
+        State(int[] step, int[] matched, byte[] noMatch) {
+            fStep = step;
+            fMatched = matched;
+            fNoMatch = noMatch;
+            int code = 0;
+            for (int i = 0; i < step.length; i++) {
+                code = code * 31 + ((step[i] << 5) ^ (matched[i] << 1) ^ noMatch[i]);
+            }
+            fHashCode = code;
+        } // <init>(int[],int[],byte[])
+
+        //
+        // Methods
+        //
+
+        /** Returns the state reached at the start of the named element, or null. */
+        State getStartTransition(String key1, String key2) {
+            if (fStartCount == 0) {
+                return null;
+            }
+            final int mask = fStartStates.length - 1;
+            int index = hash(key1, key2) & mask;
+            State state;
+            while ((state = fStartStates[index]) != null) {
+                if (fStartNames[index << 1] == key1 && fStartNames[(index << 1) + 1] == key2) {
+                    return state;
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        } // getStartTransition(String,String):State
+
+        /** Adds the state reached at the start of the named element. */
+        void addStartTransition(String key1, String key2, State next) {
+            if (fStartStates == null) {
+                fStartNames = new String[16];
+                fStartStates = new State[8];
+            }
+            else if ((fStartCount + 1) * 4 > fStartStates.length * 3) {
+                String[] names = fStartNames;
+                State[] states = fStartStates;
+                fStartNames = new String[names.length * 2];
+                fStartStates = new State[states.length * 2];
+                fStartCount = 0;
+                for (int i = 0; i < states.length; i++) {
+                    if (states[i] != null) {
+                        addStartTransition(names[i << 1], names[(i << 1) + 1], states[i]);
+                    }
+                }
+            }
+            final int mask = fStartStates.length - 1;
+            int index = hash(key1, key2) & mask;
+            while (fStartStates[index] != null) {
+                index = (index + 1) & mask;
+            }
+            fStartNames[index << 1] = key1;
+            fStartNames[(index << 1) + 1] = key2;
+            fStartStates[index] = next;
+            fStartCount++;
+        } // addStartTransition(String,String,State)
+
+        /** Returns the state reached at the end of an element started in the given state, or null. */
+        State getEndTransition(State below) {
+            for (int i = 0; i < fEndCount; i++) {
+                if (fEndBelow[i] == below) {
+                    return fEndStates[i];
+                }
+            }
+            return null;
+        } // getEndTransition(State):State
+
+        /** Adds the state reached at the end of an element started in the given state. */
+        void addEndTransition(State below, State next) {
+            if (fEndBelow == null) {
+                fEndBelow = new State[2];
+                fEndStates = new State[2];
+            }
+            else if (fEndCount == fEndBelow.length) {
+                State[] array = new State[fEndCount * 2];
+                System.arraycopy(fEndBelow, 0, array, 0, fEndCount);
+                fEndBelow = array;
+                array = new State[fEndCount * 2];
+                System.arraycopy(fEndStates, 0, array, 0, fEndCount);
+                fEndStates = array;
+            }
+            fEndBelow[fEndCount] = below;
+            fEndStates[fEndCount++] = next;
+        } // addEndTransition(State,State)
+
+        //
+        // Object methods
+        //
+
+        public int hashCode() {
+            return fHashCode;
+        } // hashCode():int
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof State)) {
+                return false;
+            }
+            State state = (State) o;
+            if (fHashCode != state.fHashCode) {
+                return false;
+            }
+            for (int i = 0; i < fStep.length; i++) {
+                if (fStep[i] != state.fStep[i] || fMatched[i] != state.fMatched[i]
+                        || fNoMatch[i] != state.fNoMatch[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } // equals(Object):boolean
+
+        //
+        // Private methods
+        //
+
+        /** Returns the hash of an element name. */
+        private static int hash(String key1, String key2) {
+            int code = key2 != null ? key2.hashCode() : 0;
+            if (key1 != null) {
+                code = code * 31 + key1.hashCode();
+            }
+            return code ^ (code >>> 16);
+        } // hash(String,String):int
+
+    } // class State
+
+    /**
+     * The matcher of the selectors, which starts the value scopes and
+     * activates the fields of the identity constraints whose selector
+     * matches, as {@link Selector.Matcher} does for one selector.
+     */
+    public class Matcher
+        extends XPathMatcher {
+
+        //
+        // Data
+        //
+
+        /** Field activator. */
+        protected final FieldActivator fFieldActivator;
+
+        /** Initial depth in the document at which this matcher was created. */
+        protected final int fInitialDepth;
+
+        /** Element depth. */
+        protected int fElementDepth;
+
+        /** Depth at match of each selector. */
+        private final int[] fMatchedDepth;
+
+        /** The current state and the states below it. */
+        private State[] fStateStack = new State[8];
+
+        /** The selectors matched at the start of each open element. */
+        private int[][] fMatchedStack = new int[8][];
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a matcher of the selectors. */
+        public Matcher(FieldActivator activator, int initialDepth) {
+            fFieldActivator = activator;
+            fInitialDepth = initialDepth;
+            fMatchedDepth = new int[fConstraints.length];
+        } // <init>(FieldActivator,int)
+
+        //
+        // Public methods
+        //
+
+        /** Returns the count of identity constraints of the selectors. */
+        public int getIdentityConstraintCount() {
+            return fConstraints.length;
+        } // getIdentityConstraintCount():int
+
+        /** Returns the identity constraint of a selector. */
+        public IdentityConstraint getIdentityConstraintAt(int index) {
+            return fConstraints[index];
+        } // getIdentityConstraintAt(int):IdentityConstraint
+
+        /** Returns the initial depth at which the selectors matched. */
+        public int getInitialDepth() {
+            return fInitialDepth;
+        } // getInitialDepth():int
+
+        //
+        // XMLDocumentFragmentHandler methods
+        //
+
+        public void startDocumentFragment() {
+            super.startDocumentFragment();
+            fElementDepth = 0;
+            fStateStack[0] = fInitialState;
+            for (int i = 0; i < fMatchedDepth.length; i++) {
+                fMatchedDepth[i] = -1;
+            }
+        } // startDocumentFragment()
+
+        public void startElement(QName element, XMLAttributes attributes) {
+            final State state = SelectorAutomaton.this.startElement(fStateStack[fElementDepth], element);
+            fElementDepth++;
+            if (fElementDepth == fStateStack.length) {
+                State[] array = new State[fElementDepth * 2];
+                System.arraycopy(fStateStack, 0, array, 0, fElementDepth);
+                fStateStack = array;
+                int[][] matched = new int[fElementDepth * 2][];
+                System.arraycopy(fMatchedStack, 0, matched, 0, fElementDepth);
+                fMatchedStack = matched;
+            }
+            fStateStack[fElementDepth] = state;
+
+            // activate the fields of the matched selectors
+            final int[] selectors = state.fMatchedSelectors;
+            fMatchedStack[fElementDepth] = selectors;
+            for (int i = 0; i < selectors.length; i++) {
+                final int s = selectors[i];
+                final IdentityConstraint identityConstraint = fConstraints[s];
+                fMatchedDepth[s] = fElementDepth;
+                fFieldActivator.startValueScopeFor(identityConstraint, fInitialDepth);
+                int count = identityConstraint.getFieldCount();
+                for (int j = 0; j < count; j++) {
+                    Field field = identityConstraint.getFieldAt(j);
+                    XPathMatcher matcher = fFieldActivator.activateField(field, fInitialDepth);
+                    matcher.startElement(element, attributes);
+                }
+            }
+        } // startElement(QName,XMLAttributes)
+
+        public void endElement(QName element, XSTypeDefinition type, boolean nillable, Object actualValue, short valueType, ShortList itemValueType) {
+            final State state = fStateStack[fElementDepth];
+            fStateStack[fElementDepth - 1] =
+                SelectorAutomaton.this.endElement(state, fStateStack[fElementDepth - 1]);
+            fStateStack[fElementDepth] = null;
+
+            // end the value scopes of the selectors matched by this element
+            final int[] selectors = fMatchedStack[fElementDepth];
+            fMatchedStack[fElementDepth] = null;
+            for (int i = selectors.length - 1; i >= 0; i--) {
+                final int s = selectors[i];
+                if (fMatchedDepth[s] == fElementDepth) {
+                    fMatchedDepth[s] = -1;
+                    fFieldActivator.endValueScopeFor(fConstraints[s], fInitialDepth);
+                }
+            }
+            fElementDepth--;
+        } // endElement(QName,XSTypeDefinition,boolean,Object,short,ShortList)
+
+    } // class Matcher
+
+} // class SelectorAutomaton
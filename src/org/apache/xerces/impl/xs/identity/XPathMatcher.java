@@ -127,6 +127,18 @@ public class XPathMatcher {
         fMatched = new int[fLocationPaths.length];        
     } // <init>(XPath)
 
+    /**
+     * Constructs an XPath matcher with no location paths, for subclasses
+     * which do their own matching.
+     */
+    protected XPathMatcher() {
+        fLocationPaths = new XPath.LocationPath[0];
+        fStepIndexes = new IntStack[0];
+        fCurrentStep = new int[0];
+        fNoMatchDepth = new int[0];
+        fMatched = new int[0];
+    } // <init>()
+
     //
     // Public methods
     //
@@ -469,7 +481,7 @@ public class XPathMatcher {
     } // normalize(String):String
     
     /** Returns true if the given QName matches the node test. **/
-    private static boolean matches(XPath.NodeTest nodeTest, QName value) {
+    static boolean matches(XPath.NodeTest nodeTest, QName value) {
         if (nodeTest.type == XPath.NodeTest.QNAME) {
             return nodeTest.name.equals(value);
         }
@@ -125,8 +125,18 @@ public class CMBuilder {
     XSCMValidator createDFACM(XSParticleDecl particle, boolean forUPA) {
         fLeafCount = 0;
         fParticleCount = 0;
+        final boolean useRepeatingLeafNodes = useRepeatingLeafNodes(particle);
+        // occurrence values which would have to be expanded are counted
+        // instead, if the counters alone decide the transitions. the
+        // values are reduced anyway when checking UPA.
+        if (!forUPA && !useRepeatingLeafNodes && hasCountedOccurrences(particle)) {
+            XSCMValidator counterCM = XSCounterCM.create(particle);
+            if (counterCM != null) {
+                return counterCM;
+            }
+        }
         // convert particle tree to CM tree
-        CMNode node = useRepeatingLeafNodes(particle) ? buildCompactSyntaxTree(particle) : buildSyntaxTree(particle, forUPA);
+        CMNode node = useRepeatingLeafNodes ? buildCompactSyntaxTree(particle) : buildSyntaxTree(particle, forUPA);
         if (node == null)
             return null;
         // build DFA content model from the CM tree
@@ -418,6 +428,26 @@ public class CMBuilder {
         return nodeRet;
     }
     
+    // This method checks if this particle or any particle within it has
+    // occurrence values other than 0, 1 and unbounded, which buildSyntaxTree()
+    // would have to expand.
+    private boolean hasCountedOccurrences(XSParticleDecl particle) {
+        final int maxOccurs = particle.fMaxOccurs;
+        if (particle.fMinOccurs > 1 ||
+            (maxOccurs > 1 && maxOccurs != SchemaSymbols.OCCURRENCE_UNBOUNDED)) {
+            return maxOccurs != 0;
+        }
+        if (particle.fType == XSParticleDecl.PARTICLE_MODELGROUP && maxOccurs != 0) {
+            XSModelGroupImpl group = (XSModelGroupImpl) particle.fValue;
+            for (int i = 0; i < group.fParticleCount; ++i) {
+                if (hasCountedOccurrences(group.fParticles[i])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     // This method checks if this particle can be transformed into a compact syntax
     // tree containing compound leaf nodes which carry occurence information. Currently
     // it returns true if each model group has minOccurs/maxOccurs == 1 or 
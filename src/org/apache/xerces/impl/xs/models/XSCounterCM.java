@@ -0,0 +1,673 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs.models;
+
+import java.util.ArrayList;
+import java.util.Vector;
+
+import org.apache.xerces.impl.xs.SchemaSymbols;
+import org.apache.xerces.impl.xs.SubstitutionGroupHandler;
+import org.apache.xerces.impl.xs.XMLSchemaException;
+import org.apache.xerces.impl.xs.XSElementDecl;
+import org.apache.xerces.impl.xs.XSModelGroupImpl;
+import org.apache.xerces.impl.xs.XSParticleDecl;
+import org.apache.xerces.impl.xs.XSWildcardDecl;
+import org.apache.xerces.xni.QName;
+
+/**
+ * <p>XSCounterCM implements XSCMValidator with a position automaton whose
+ * repeated particles carry counters, so that occurrence values other than
+ * 0, 1 and unbounded are checked by counting instead of by copying the
+ * particle. Its size does not depend on the occurrence values.</p>
+ *
+ * <p>There is one state for each element or wildcard particle, plus the
+ * start state. A transition from one particle to the next may exit
+ * repeated particles, which needs their counters to have reached their
+ * minOccurs, iterate one repeated particle, which needs its counter to be
+ * below its maxOccurs, and enter repeated particles, whose counters are
+ * reset. The content model is only built when, from every state, at most
+ * one transition leads to each particle; otherwise the occurrence values
+ * are expanded into a DFA as usual. Transitions are tried in the order of
+ * the particles, as in the element map of a DFA, so the same particle is
+ * chosen as by the expanded DFA.</p>
+ *
+ * <p>The state array holds the current particle, the last valid particle
+ * after an error, whether the element in error matched that particle and
+ * the counters.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class XSCounterCM implements XSCMValidator {
+
+    //
+    // Constants
+    //
+
+    /** Node types. */
+    private static final int LEAF = 0;
+    private static final int SEQUENCE = 1;
+    private static final int CHOICE = 2;
+    private static final int REPEAT = 3;
+
+    /** Offset of the counters in the state array. */
+    private static final int COUNTERS = 3;
+
+    /** No counters. */
+    private static final int[] NO_COUNTERS = new int[0];
+
+    //
+    // Data
+    //
+
+    /** The particle of the content model. */
+    private final XSParticleDecl fParticle;
+
+    /** The element declarations and wildcards of the particles. */
+    private final Object[] fElemMap;
+
+    /** The particle type of each entry of the element map. */
+    private final int[] fElemMapType;
+
+    /** The count of particles; also the start state. */
+    private final int fElemMapSize;
+
+    /** The minOccurs of each counter. */
+    private final int[] fCounterMin;
+
+    /** The maxOccurs of each counter. */
+    private final int[] fCounterMax;
+
+    /**
+     * The counter of the repeated particle directly enclosing each
+     * particle, or -1.
+     */
+    private final int[] fLeafCounter;
+
+    /** The target particle of each transition of each state. */
+    private final int[][] fTransTarget;
+
+    /** The counters which must reach their minOccurs for each transition. */
+    private final int[][][] fTransExits;
+
+    /** The counter iterated by each transition, or -1. */
+    private final int[][] fTransIterate;
+
+    /** The counters reset by each transition. */
+    private final int[][][] fTransResets;
+
+    /**
+     * The counters which must reach their minOccurs to end the content in
+     * each state, or null if the content cannot end there.
+     */
+    private final int[][] fEndExits;
+
+    //
+    // Constructors
+    //
+
+    private XSCounterCM(XSParticleDecl particle, Builder builder) {
+        fParticle = particle;
+        final int size = builder.fLeaves.size();
+        fElemMapSize = size;
+        fElemMap = new Object[size];
+        fElemMapType = new int[size];
+        fLeafCounter = new int[size];
+        for (int i = 0; i < size; i++) {
+            Node leaf = (Node) builder.fLeaves.get(i);
+            fElemMap[i] = leaf.fLeaf;
+            fElemMapType[i] = leaf.fLeafType;
+            Node parent = leaf.fParent;
+            fLeafCounter[i] = (parent != null && parent.fType == REPEAT) ? parent.fCounter : -1;
+        }
+        final int counters = builder.fCounterMin.size();
+        fCounterMin = new int[counters];
+        fCounterMax = new int[counters];
+        for (int i = 0; i < counters; i++) {
+            fCounterMin[i] = ((Integer) builder.fCounterMin.get(i)).intValue();
+            fCounterMax[i] = ((Integer) builder.fCounterMax.get(i)).intValue();
+        }
+        fTransTarget = builder.fTransTarget;
+        fTransExits = builder.fTransExits;
+        fTransIterate = builder.fTransIterate;
+        fTransResets = builder.fTransResets;
+        fEndExits = builder.fEndExits;
+    } // <init>(Builder)
+
+    /**
+     * Creates a counter content model for a particle, or returns null if
+     * its transitions cannot be decided by the counters alone.
+     */
+    public static XSCounterCM create(XSParticleDecl particle) {
+        Builder builder = new Builder();
+        Node root = builder.buildTree(particle);
+        if (root == null) {
+            return null;
+        }
+        return builder.buildTransitions(root) ? new XSCounterCM(particle, builder) : null;
+    } // create(XSParticleDecl):XSCounterCM
+
+    //
+    // XSCMValidator methods
+    //
+
+    public int[] startContentModel() {
+        // [0] : the current particle, or the start state
+        // [1] : if [0] is an error state then the
+        //       last valid particle before the error
+        // [2] : if [0] is an error state then 1 if the
+        //       element in error matched the particle in [1]
+        // [3...] : the counters
+        int[] state = new int[COUNTERS + fCounterMin.length];
+        state[0] = fElemMapSize;
+        return state;
+    } // startContentModel():int[]
+
+    public Object oneTransition(QName curElem, int[] state, SubstitutionGroupHandler subGroupHandler) {
+        final int curState = state[0];
+
+        if (curState == XSCMValidator.FIRST_ERROR || curState == XSCMValidator.SUBSEQUENT_ERROR) {
+            // there was an error last time; so just go find correct Object in fElemmMap.
+            // ... after resetting state[0].
+            if (curState == XSCMValidator.FIRST_ERROR)
+                state[0] = XSCMValidator.SUBSEQUENT_ERROR;
+
+            return findMatchingDecl(curElem, subGroupHandler);
+        }
+
+        final int[] targets = fTransTarget[curState];
+        for (int i = 0; i < targets.length; i++) {
+            if (!allows(state, curState, i)) {
+                continue;
+            }
+            final int elemIndex = targets[i];
+            final Object matchingDecl = matchingDecl(curElem, elemIndex, subGroupHandler);
+            if (matchingDecl != null) {
+                final int iterate = fTransIterate[curState][i];
+                if (iterate != -1) {
+                    state[COUNTERS + iterate]++;
+                }
+                final int[] resets = fTransResets[curState][i];
+                for (int j = 0; j < resets.length; j++) {
+                    state[COUNTERS + resets[j]] = 1;
+                }
+                state[0] = elemIndex;
+                return matchingDecl;
+            }
+        }
+
+        // if we still can't find a match, set the state to first_error
+        // and return null
+        state[1] = state[0];
+        state[2] = (curState < fElemMapSize && matchingDecl(curElem, curState, subGroupHandler) != null) ? 1 : 0;
+        state[0] = XSCMValidator.FIRST_ERROR;
+        return findMatchingDecl(curElem, subGroupHandler);
+    } // oneTransition(QName,int[],SubstitutionGroupHandler):Object
+
+    public boolean endContentModel(int[] state) {
+        final int[] exits = fEndExits[state[0]];
+        return exits != null && reachesMin(state, exits);
+    } // endContentModel(int[]):boolean
+
+    /**
+     * The unique particle attribution constraint is checked on a DFA
+     * whose occurrence values are reduced, as for other content models.
+     */
+    public boolean checkUniqueParticleAttribution(SubstitutionGroupHandler subGroupHandler) throws XMLSchemaException {
+        XSCMValidator dfa = new CMBuilder(new CMNodeFactory()).createDFACM(fParticle, true);
+        return dfa != null && dfa.checkUniqueParticleAttribution(subGroupHandler);
+    } // checkUniqueParticleAttribution(SubstitutionGroupHandler):boolean
+
+    public Vector whatCanGoHere(int[] state) {
+        int curState = state[0];
+        if (curState < 0)
+            curState = state[1];
+
+        Vector ret = new Vector();
+        final int[] targets = fTransTarget[curState];
+        for (int i = 0; i < targets.length; i++) {
+            if (allows(state, curState, i) && !ret.contains(fElemMap[targets[i]])) {
+                ret.addElement(fElemMap[targets[i]]);
+            }
+        }
+        return ret;
+    } // whatCanGoHere(int[]):Vector
+
+    public int[] occurenceInfo(int[] state) {
+        int curState = state[0];
+        final boolean error = curState < 0;
+        if (error) {
+            curState = state[1];
+        }
+        if (curState < fElemMapSize) {
+            final int counter = fLeafCounter[curState];
+            // the counter explains an error if the element in error was
+            // one more of the counted particle, or if the counter is below
+            // its minOccurs, in which case only that particle may follow
+            if (counter != -1 && (!error || state[2] == 1 ||
+                    state[COUNTERS + counter] < fCounterMin[counter])) {
+                int[] occurenceInfo = new int[4];
+                occurenceInfo[0] = fCounterMin[counter];
+                occurenceInfo[1] = fCounterMax[counter];
+                occurenceInfo[2] = state[COUNTERS + counter];
+                occurenceInfo[3] = curState;
+                return occurenceInfo;
+            }
+        }
+        return null;
+    } // occurenceInfo(int[]):int[]
+
+    public String getTermName(int termId) {
+        Object term = fElemMap[termId];
+        return (term != null) ? term.toString() : null;
+    } // getTermName(int):String
+
+    public boolean isCompactedForUPA() {
+        return false;
+    } // isCompactedForUPA():boolean
+
+    //
+    // Private methods
+    //
+
+    /** Returns true if the counters allow a transition. */
+    private boolean allows(int[] state, int curState, int transition) {
+        if (!reachesMin(state, fTransExits[curState][transition])) {
+            return false;
+        }
+        final int iterate = fTransIterate[curState][transition];
+        return iterate == -1 || fCounterMax[iterate] == SchemaSymbols.OCCURRENCE_UNBOUNDED
+            || state[COUNTERS + iterate] < fCounterMax[iterate];
+    } // allows(int[],int,int):boolean
+
+    /** Returns true if the counters have reached their minOccurs. */
+    private boolean reachesMin(int[] state, int[] counters) {
+        for (int i = 0; i < counters.length; i++) {
+            if (state[COUNTERS + counters[i]] < fCounterMin[counters[i]]) {
+                return false;
+            }
+        }
+        return true;
+    } // reachesMin(int[],int[]):boolean
+
+    /** Returns the declaration of a particle which matches an element, or null. */
+    private Object matchingDecl(QName curElem, int elemIndex, SubstitutionGroupHandler subGroupHandler) {
+        if (fElemMapType[elemIndex] == XSParticleDecl.PARTICLE_ELEMENT) {
+            return subGroupHandler.getMatchingElemDecl(curElem, (XSElementDecl) fElemMap[elemIndex]);
+        }
+        if (((XSWildcardDecl) fElemMap[elemIndex]).allowNamespace(curElem.uri)) {
+            return fElemMap[elemIndex];
+        }
+        return null;
+    } // matchingDecl(QName,int,SubstitutionGroupHandler):Object
+
+    private Object findMatchingDecl(QName curElem, SubstitutionGroupHandler subGroupHandler) {
+        Object matchingDecl = null;
+
+        for (int elemIndex = 0; elemIndex < fElemMapSize; elemIndex++) {
+            int type = fElemMapType[elemIndex] ;
+            if (type == XSParticleDecl.PARTICLE_ELEMENT) {
+                matchingDecl = subGroupHandler.getMatchingElemDecl(curElem, (XSElementDecl)fElemMap[elemIndex]);
+                if (matchingDecl != null) {
+                    return matchingDecl;
+                }
+            }
+            else if (type == XSParticleDecl.PARTICLE_WILDCARD) {
+                if(((XSWildcardDecl)fElemMap[elemIndex]).allowNamespace(curElem.uri))
+                    return fElemMap[elemIndex];
+            }
+        }
+
+        return null;
+    } // findMatchingDecl(QName, SubstitutionGroupHandler): Object
+
+    //
+    // Classes
+    //
+
+    /** A node of the syntax tree. */
+    private static final class Node {
+
+        /** The node type. */
+        final int fType;
+
+        /** The children of a sequence or choice, or the particle repeated. */
+        Node[] fChildren;
+
+        /** The parent node. */
+        Node fParent;
+
+        /** The index of this node among the children of its parent. */
+        int fIndex;
+
+        /** The element declaration or wildcard of a leaf. */
+        Object fLeaf;
+
+        /** The particle type of a leaf. */
+        int fLeafType;
+
+        /** The position of a leaf. */
+        int fPosition;
+
+        /** The occurrence values of a repeated node. */
+        int fMinOccurs;
+        int fMaxOccurs;
+
+        /** The counter of a repeated node, or -1 if it needs none. */
+        int fCounter = -1;
+
+        /** Whether the node matches the empty sequence. */
+        boolean fNullable;
+
+        Node(int type) {
+            fType = type;
+        } // <init>(int)
+
+    } // class Node
+
+    /** Builds the syntax tree and the transitions. */
+    private static final class Builder {
+
+        //
+        // Data
+        //
+
+        /** The leaves, in the order of their positions. */
+        final ArrayList fLeaves = new ArrayList();
+
+        /** The occurrence values of the counters. */
+        final ArrayList fCounterMin = new ArrayList();
+        final ArrayList fCounterMax = new ArrayList();
+
+        // transitions, per state
+        int[][] fTransTarget;
+        int[][][] fTransExits;
+        int[][] fTransIterate;
+        int[][][] fTransResets;
+        int[][] fEndExits;
+
+        // transitions of the state being built
+        private final ArrayList fTargets = new ArrayList();
+        private final ArrayList fExits = new ArrayList();
+        private final ArrayList fIterates = new ArrayList();
+        private final ArrayList fResets = new ArrayList();
+
+        //
+        // Methods
+        //
+
+        /**
+         * Converts a particle to a syntax tree, treating model groups as
+         * {@link CMBuilder} does. Returns null if the particle is empty.
+         */
+        Node buildTree(XSParticleDecl particle) {
+            final int minOccurs = particle.fMinOccurs;
+            final int maxOccurs = particle.fMaxOccurs;
+            if (maxOccurs == 0) {
+                return null;
+            }
+            final short type = particle.fType;
+            Node node = null;
+            if (type == XSParticleDecl.PARTICLE_ELEMENT ||
+                type == XSParticleDecl.PARTICLE_WILDCARD) {
+                node = new Node(LEAF);
+                node.fLeaf = particle.fValue;
+                node.fLeafType = type;
+                node.fPosition = fLeaves.size();
+                fLeaves.add(node);
+            }
+            else if (type == XSParticleDecl.PARTICLE_MODELGROUP) {
+                XSModelGroupImpl group = (XSModelGroupImpl) particle.fValue;
+                ArrayList children = new ArrayList();
+                for (int i = 0; i < group.fParticleCount; i++) {
+                    Node child = buildTree(group.fParticles[i]);
+                    if (child != null) {
+                        children.add(child);
+                    }
+                }
+                if (children.isEmpty()) {
+                    return null;
+                }
+                if (children.size() == 1) {
+                    node = (Node) children.get(0);
+                }
+                else {
+                    node = new Node(group.fCompositor == XSModelGroupImpl.MODELGROUP_CHOICE ? CHOICE : SEQUENCE);
+                    node.fChildren = (Node[]) children.toArray(new Node[children.size()]);
+                }
+                // when the group is "choice" and the group has one or more
+                // empty children, the non-empty particles are optional.
+                if (group.fCompositor == XSModelGroupImpl.MODELGROUP_CHOICE && children.size() < group.fParticleCount) {
+                    node = repeat(node, 0, 1);
+                }
+            }
+            else {
+                return null;
+            }
+            if (minOccurs != 1 || maxOccurs != 1) {
+                node = repeat(node, minOccurs, maxOccurs);
+            }
+            return node;
+        } // buildTree(XSParticleDecl):Node
+
+        /**
+         * Computes the transitions of every state. Returns false if some
+         * state has more than one transition to a particle.
+         */
+        boolean buildTransitions(Node root) {
+            initTree(root, null, 0);
+            final int size = fLeaves.size();
+            fTransTarget = new int[size + 1][];
+            fTransExits = new int[size + 1][][];
+            fTransIterate = new int[size + 1][];
+            fTransResets = new int[size + 1][][];
+            fEndExits = new int[size + 1][];
+
+            // the start state
+            addFirst(root, NO_COUNTERS, -1, new ArrayList());
+            if (root.fNullable) {
+                fEndExits[size] = NO_COUNTERS;
+            }
+            if (!storeTransitions(size)) {
+                return false;
+            }
+
+            // the state after each particle
+            for (int position = 0; position < size; position++) {
+                final ArrayList exits = new ArrayList();
+                Node node = (Node) fLeaves.get(position);
+                boolean end = true;
+                for (Node parent = node.fParent; parent != null; node = parent, parent = node.fParent) {
+                    if (parent.fType == SEQUENCE) {
+                        final int[] exited = toArray(exits);
+                        int i = node.fIndex + 1;
+                        for (; i < parent.fChildren.length; i++) {
+                            addFirst(parent.fChildren[i], exited, -1, new ArrayList());
+                            if (!parent.fChildren[i].fNullable) {
+                                break;
+                            }
+                        }
+                        if (i < parent.fChildren.length) {
+                            end = false;
+                            break;
+                        }
+                    }
+                    else if (parent.fType == REPEAT) {
+                        if (parent.fMaxOccurs != 1) {
+                            addFirst(node, toArray(exits), parent.fCounter, new ArrayList());
+                        }
+                        if (parent.fCounter != -1) {
+                            exits.add(new Integer(parent.fCounter));
+                        }
+                    }
+                }
+                if (end) {
+                    fEndExits[position] = toArray(exits);
+                }
+                if (!storeTransitions(position)) {
+                    return false;
+                }
+            }
+            return true;
+        } // buildTransitions(Node):boolean
+
+        /** Wraps a node in a repeated node. */
+        private Node repeat(Node child, int minOccurs, int maxOccurs) {
+            Node node = new Node(REPEAT);
+            node.fChildren = new Node[] { child };
+            node.fMinOccurs = minOccurs;
+            node.fMaxOccurs = maxOccurs;
+            return node;
+        } // repeat(Node,int,int):Node
+
+        /** Sets the parents, nullability and counters of a subtree. */
+        private void initTree(Node node, Node parent, int index) {
+            node.fParent = parent;
+            node.fIndex = index;
+            if (node.fType == LEAF) {
+                node.fNullable = false;
+                return;
+            }
+            for (int i = 0; i < node.fChildren.length; i++) {
+                initTree(node.fChildren[i], node, i);
+            }
+            switch (node.fType) {
+                case SEQUENCE:
+                    node.fNullable = true;
+                    for (int i = 0; i < node.fChildren.length; i++) {
+                        node.fNullable &= node.fChildren[i].fNullable;
+                    }
+                    break;
+                case CHOICE:
+                    node.fNullable = false;
+                    for (int i = 0; i < node.fChildren.length; i++) {
+                        node.fNullable |= node.fChildren[i].fNullable;
+                    }
+                    break;
+                case REPEAT:
+                    // iterations of a nullable particle may be empty, so
+                    // any count of them can reach minOccurs
+                    if (node.fChildren[0].fNullable) {
+                        node.fMinOccurs = 0;
+                    }
+                    node.fNullable = node.fMinOccurs == 0;
+                    if (node.fMinOccurs > 1 || (node.fMaxOccurs != SchemaSymbols.OCCURRENCE_UNBOUNDED && node.fMaxOccurs > 1)) {
+                        node.fCounter = fCounterMin.size();
+                        fCounterMin.add(new Integer(node.fMinOccurs));
+                        fCounterMax.add(new Integer(node.fMaxOccurs));
+                    }
+                    break;
+            }
+        } // initTree(Node,Node,int)
+
+        /**
+         * Adds a transition to each particle which may start a node,
+         * resetting the counters of the repeated nodes entered on the way.
+         */
+        private void addFirst(Node node, int[] exits, int iterate, ArrayList resets) {
+            switch (node.fType) {
+                case LEAF:
+                    fTargets.add(new Integer(node.fPosition));
+                    fExits.add(exits);
+                    fIterates.add(new Integer(iterate));
+                    fResets.add(toArray(resets));
+                    break;
+                case SEQUENCE:
+                    for (int i = 0; i < node.fChildren.length; i++) {
+                        addFirst(node.fChildren[i], exits, iterate, resets);
+                        if (!node.fChildren[i].fNullable) {
+                            break;
+                        }
+                    }
+                    break;
+                case CHOICE:
+                    for (int i = 0; i < node.fChildren.length; i++) {
+                        addFirst(node.fChildren[i], exits, iterate, resets);
+                    }
+                    break;
+                case REPEAT:
+                    if (node.fCounter != -1) {
+                        resets.add(new Integer(node.fCounter));
+                        addFirst(node.fChildren[0], exits, iterate, resets);
+                        resets.remove(resets.size() - 1);
+                    }
+                    else {
+                        addFirst(node.fChildren[0], exits, iterate, resets);
+                    }
+                    break;
+            }
+        } // addFirst(Node,int[],int,ArrayList)
+
+        /**
+         * Stores the transitions added for a state, in the order of their
+         * targets. Returns false if two of them have the same target.
+         */
+        private boolean storeTransitions(int state) {
+            final int count = fTargets.size();
+            int[] order = new int[count];
+            int[] targets = new int[count];
+            for (int i = 0; i < count; i++) {
+                final int target = ((Integer) fTargets.get(i)).intValue();
+                int j = i;
+                for (; j > 0 && targets[j - 1] > target; j--) {
+                    targets[j] = targets[j - 1];
+                    order[j] = order[j - 1];
+                }
+                if (j > 0 && targets[j - 1] == target) {
+                    fTargets.clear();
+                    fExits.clear();
+                    fIterates.clear();
+                    fResets.clear();
+                    return false;
+                }
+                targets[j] = target;
+                order[j] = i;
+            }
+            fTransTarget[state] = targets;
+            fTransExits[state] = new int[count][];
+            fTransIterate[state] = new int[count];
+            fTransResets[state] = new int[count][];
+            for (int i = 0; i < count; i++) {
+                fTransExits[state][i] = (int[]) fExits.get(order[i]);
+                fTransIterate[state][i] = ((Integer) fIterates.get(order[i])).intValue();
+                fTransResets[state][i] = (int[]) fResets.get(order[i]);
+            }
+            fTargets.clear();
+            fExits.clear();
+            fIterates.clear();
+            fResets.clear();
+            return true;
+        } // storeTransitions(int):boolean
+
+        /** Converts a list of counters to an array. */
+        private static int[] toArray(ArrayList counters) {
+            final int size = counters.size();
+            if (size == 0) {
+                return NO_COUNTERS;
+            }
+            int[] array = new int[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = ((Integer) counters.get(i)).intValue();
+            }
+            return array;
+        } // toArray(ArrayList):int[]
+
+    } // class Builder
+
+} // class XSCounterCM
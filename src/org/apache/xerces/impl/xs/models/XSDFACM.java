@@ -31,6 +31,7 @@ import org.apache.xerces.impl.xs.XSModelGroupImpl;
 import org.apache.xerces.impl.xs.XSParticleDecl;
 import org.apache.xerces.impl.xs.XSWildcardDecl;
 import org.apache.xerces.xni.QName;
+import org.apache.xerces.xs.XSConstants;
 
 /**
  * DFAContentModel is the implementation of XSCMValidator that does
@@ -150,6 +151,11 @@ public class XSDFACM
             maxOccurs = leaf.getMaxOccurs();
             this.elemIndex = elemIndex;
         }
+        Occurence (int minOccurs, int maxOccurs, int elemIndex) {
+            this.minOccurs = minOccurs;
+            this.maxOccurs = maxOccurs;
+            this.elemIndex = elemIndex;
+        }
         public String toString() {
             return "minOccurs=" + minOccurs 
                 + ";maxOccurs=" + 
@@ -165,6 +171,32 @@ public class XSDFACM
     private int fTransTableSize = 0;
 
     private boolean fIsCompactedForUPA;
+
+    /**
+     * Element maps of at least this size get a name index, so that
+     * oneTransition need not try every entry for each child element.
+     */
+    private static final int NAME_INDEX_THRESHOLD = 8;
+
+    /**
+     * Open hash table from element name to the ascending list of element
+     * map indices of element declarations with that name. The local parts,
+     * namespaces and index lists are kept in parallel arrays; the table is
+     * null when the element map is too small to benefit from it.
+     */
+    private String[] fNameIndexLocalpart = null;
+    private String[] fNameIndexURI = null;
+    private int[][] fNameIndexElems = null;
+
+    /** Element map indices of wildcards, in ascending order. */
+    private int[] fWildcardIndexes = null;
+
+    /**
+     * Whether the element map contains a global element declaration which
+     * does not block substitution, i.e. whether a child element may match
+     * an entry other than the one with its own name.
+     */
+    private boolean fHasSubstitutableElems = false;
     
     // temp variables
 
@@ -215,6 +247,44 @@ public class XSDFACM
         }
     }
 
+    /**
+     * Constructs a DFA content model from the tables of a content model
+     * built earlier, as returned by {@link #getElemMap()},
+     * {@link #getElemMapTypes()}, {@link #getFinalStateFlags()},
+     * {@link #getTransTable()} and {@link #getCountingStates()}.
+     * This allows a grammar to be restored without building its DFAs
+     * again.
+     *
+     * @param elemMap          The element declarations and wildcards.
+     * @param elemMapType      The particle type of each entry of the element map.
+     * @param finalStateFlags  Whether each state is final.
+     * @param transTable       The transition table, one row per state.
+     * @param countingStates   For each state, its minOccurs, maxOccurs and
+     *                         element map index if it is a counting state, or null.
+     * @param isCompactedForUPA Whether the syntax tree was compacted for UPA.
+     */
+    public XSDFACM(Object[] elemMap, int[] elemMapType, boolean[] finalStateFlags,
+            int[][] transTable, int[][] countingStates, boolean isCompactedForUPA) {
+        fElemMap = elemMap;
+        fElemMapType = elemMapType;
+        fElemMapSize = elemMap.length;
+        fFinalStateFlags = finalStateFlags;
+        fTransTable = transTable;
+        fIsCompactedForUPA = isCompactedForUPA;
+        if (countingStates != null) {
+            fCountingStates = new Occurence[countingStates.length];
+            for (int i = 0; i < countingStates.length; i++) {
+                final int[] o = countingStates[i];
+                if (o != null) {
+                    fCountingStates[i] = new Occurence(o[0], o[1], o[2]);
+                }
+            }
+        }
+        if (fElemMapSize >= NAME_INDEX_THRESHOLD) {
+            buildNameIndex();
+        }
+    }
+
     private static long time = 0;
 
     //
@@ -263,23 +333,74 @@ public class XSDFACM
         int elemIndex = 0;
         Object matchingDecl = null;
 
-        for (; elemIndex < fElemMapSize; elemIndex++) {
-            nextState = fTransTable[curState][elemIndex];
-            if (nextState == -1)
-                continue;
-            int type = fElemMapType[elemIndex] ;
-            if (type == XSParticleDecl.PARTICLE_ELEMENT) {
-                matchingDecl = subGroupHandler.getMatchingElemDecl(curElem, (XSElementDecl)fElemMap[elemIndex]);
-                if (matchingDecl != null) {
-                    break;
+        if (fNameIndexElems != null) {
+            // look up the candidate entries instead of trying each one
+            final int[] transitions = fTransTable[curState];
+            elemIndex = fElemMapSize;
+            final int[] elems = lookupNameIndex(curElem.uri, curElem.localpart);
+            if (elems != null) {
+                for (int i = 0; i < elems.length; i++) {
+                    if (transitions[elems[i]] != -1) {
+                        elemIndex = elems[i];
+                        matchingDecl = fElemMap[elemIndex];
+                        break;
+                    }
                 }
             }
-            else if (type == XSParticleDecl.PARTICLE_WILDCARD) {
-                if (((XSWildcardDecl)fElemMap[elemIndex]).allowNamespace(curElem.uri)) {
-                    matchingDecl = fElemMap[elemIndex];
+            // an earlier entry may still match through the substitution
+            // group of the element's declaration or through a wildcard
+            if (fHasSubstitutableElems) {
+                XSElementDecl eDecl = subGroupHandler.getGlobalElementDecl(curElem);
+                XSElementDecl subGroup = (eDecl != null) ? eDecl.fSubGroup : null;
+                for (; subGroup != null; subGroup = subGroup.fSubGroup) {
+                    final int[] candidates = lookupNameIndex(subGroup.fTargetNamespace, subGroup.fName);
+                    if (candidates == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < candidates.length && candidates[i] < elemIndex; i++) {
+                        if (transitions[candidates[i]] != -1) {
+                            Object decl = subGroupHandler.getMatchingElemDecl(curElem, (XSElementDecl)fElemMap[candidates[i]]);
+                            if (decl != null) {
+                                elemIndex = candidates[i];
+                                matchingDecl = decl;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < fWildcardIndexes.length && fWildcardIndexes[i] < elemIndex; i++) {
+                final int index = fWildcardIndexes[i];
+                if (transitions[index] != -1 &&
+                    ((XSWildcardDecl)fElemMap[index]).allowNamespace(curElem.uri)) {
+                    elemIndex = index;
+                    matchingDecl = fElemMap[index];
                     break;
                 }
             }
+            if (elemIndex < fElemMapSize) {
+                nextState = transitions[elemIndex];
+            }
+        }
+        else {
+            for (; elemIndex < fElemMapSize; elemIndex++) {
+                nextState = fTransTable[curState][elemIndex];
+                if (nextState == -1)
+                    continue;
+                int type = fElemMapType[elemIndex] ;
+                if (type == XSParticleDecl.PARTICLE_ELEMENT) {
+                    matchingDecl = subGroupHandler.getMatchingElemDecl(curElem, (XSElementDecl)fElemMap[elemIndex]);
+                    if (matchingDecl != null) {
+                        break;
+                    }
+                }
+                else if (type == XSParticleDecl.PARTICLE_WILDCARD) {
+                    if (((XSWildcardDecl)fElemMap[elemIndex]).allowNamespace(curElem.uri)) {
+                        matchingDecl = fElemMap[elemIndex];
+                        break;
+                    }
+                }
+            }
         }
 
         // if we still can't find a match, set the state to first_error
@@ -809,6 +930,14 @@ public class XSDFACM
             }
         }
 
+        //
+        // Index the element map by name if it is large enough for
+        // a linear search in oneTransition to be costly.
+        //
+        if (fElemMapSize >= NAME_INDEX_THRESHOLD) {
+            buildNameIndex();
+        }
+
         //
         //  And now we can say bye bye to the temp representation since we've
         //  built the DFA.
@@ -822,6 +951,79 @@ public class XSDFACM
         fElemMapId = null;
     }
 
+    /**
+     * Builds the name index over the element map, along with the list of
+     * wildcard entries.
+     */
+    private void buildNameIndex() {
+        int tableSize = 16;
+        while (tableSize < fElemMapSize * 2) {
+            tableSize <<= 1;
+        }
+        fNameIndexLocalpart = new String[tableSize];
+        fNameIndexURI = new String[tableSize];
+        fNameIndexElems = new int[tableSize][];
+        int wildcardCount = 0;
+        for (int elemIndex = 0; elemIndex < fElemMapSize; elemIndex++) {
+            if (fElemMapType[elemIndex] == XSParticleDecl.PARTICLE_WILDCARD) {
+                wildcardCount++;
+            }
+            else if (fElemMapType[elemIndex] == XSParticleDecl.PARTICLE_ELEMENT) {
+                XSElementDecl decl = (XSElementDecl)fElemMap[elemIndex];
+                if (decl.fScope == XSConstants.SCOPE_GLOBAL &&
+                    (decl.fBlock & XSConstants.DERIVATION_SUBSTITUTION) == 0) {
+                    fHasSubstitutableElems = true;
+                }
+                int slot = decl.fName.hashCode() & (tableSize - 1);
+                while (fNameIndexElems[slot] != null &&
+                       (fNameIndexLocalpart[slot] != decl.fName ||
+                        fNameIndexURI[slot] != decl.fTargetNamespace)) {
+                    slot = (slot + 1) & (tableSize - 1);
+                }
+                int[] elems = fNameIndexElems[slot];
+                if (elems == null) {
+                    fNameIndexLocalpart[slot] = decl.fName;
+                    fNameIndexURI[slot] = decl.fTargetNamespace;
+                    fNameIndexElems[slot] = new int[] {elemIndex};
+                }
+                else {
+                    int[] newElems = new int[elems.length + 1];
+                    System.arraycopy(elems, 0, newElems, 0, elems.length);
+                    newElems[elems.length] = elemIndex;
+                    fNameIndexElems[slot] = newElems;
+                }
+            }
+        }
+        fWildcardIndexes = new int[wildcardCount];
+        wildcardCount = 0;
+        for (int elemIndex = 0; elemIndex < fElemMapSize; elemIndex++) {
+            if (fElemMapType[elemIndex] == XSParticleDecl.PARTICLE_WILDCARD) {
+                fWildcardIndexes[wildcardCount++] = elemIndex;
+            }
+        }
+    }
+
+    /**
+     * Returns the element map indices of the element declarations with
+     * the given name, or null if there are none. Names are symbols, so
+     * they are compared by reference.
+     */
+    private int[] lookupNameIndex(String uri, String localpart) {
+        if (localpart == null) {
+            return null;
+        }
+        final int mask = fNameIndexElems.length - 1;
+        int slot = localpart.hashCode() & mask;
+        int[] elems;
+        while ((elems = fNameIndexElems[slot]) != null) {
+            if (fNameIndexLocalpart[slot] == localpart && fNameIndexURI[slot] == uri) {
+                return elems;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
     /**
      * Calculates the follow list of the current node.
      *
@@ -1170,4 +1372,64 @@ public class XSDFACM
     public boolean isCompactedForUPA() {
         return fIsCompactedForUPA;
     }
+
+    //
+    // Methods for writing the DFA out
+    //
+
+    /** Returns the element declarations and wildcards of the element map. */
+    public Object[] getElemMap() {
+        Object[] elemMap = new Object[fElemMapSize];
+        System.arraycopy(fElemMap, 0, elemMap, 0, fElemMapSize);
+        return elemMap;
+    }
+
+    /** Returns the particle type of each entry of the element map. */
+    public int[] getElemMapTypes() {
+        int[] elemMapType = new int[fElemMapSize];
+        System.arraycopy(fElemMapType, 0, elemMapType, 0, fElemMapSize);
+        return elemMapType;
+    }
+
+    /** Returns, for each state, whether it is a final state. */
+    public boolean[] getFinalStateFlags() {
+        boolean[] finalStateFlags = new boolean[getStateCount()];
+        System.arraycopy(fFinalStateFlags, 0, finalStateFlags, 0, finalStateFlags.length);
+        return finalStateFlags;
+    }
+
+    /** Returns the transition table, one row per state. */
+    public int[][] getTransTable() {
+        int[][] transTable = new int[getStateCount()][];
+        System.arraycopy(fTransTable, 0, transTable, 0, transTable.length);
+        return transTable;
+    }
+
+    /**
+     * Returns, for each state, its minOccurs, maxOccurs and element map
+     * index if it is a counting state and null otherwise, or null if
+     * the content model does not use counters.
+     */
+    public int[][] getCountingStates() {
+        if (fCountingStates == null) {
+            return null;
+        }
+        int[][] countingStates = new int[fCountingStates.length][];
+        for (int i = 0; i < countingStates.length; i++) {
+            final Occurence o = fCountingStates[i];
+            if (o != null) {
+                countingStates[i] = new int[] {o.minOccurs, o.maxOccurs, o.elemIndex};
+            }
+        }
+        return countingStates;
+    }
+
+    /** Returns the number of states of the DFA. */
+    private int getStateCount() {
+        int count = 0;
+        while (count < fTransTable.length && fTransTable[count] != null) {
+            count++;
+        }
+        return count;
+    }
 } // class DFAContentModel
@@ -18,6 +18,7 @@
 package org.apache.xerces.impl.xs.opti;
 
 import java.io.IOException;
+import java.util.Map;
 
 import org.apache.xerces.impl.Constants;
 import org.apache.xerces.impl.XMLErrorReporter;
@@ -509,6 +510,24 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
         return config.getProperty(propertyId);
     }
     
+    /**
+     * Delegates to SchemaParsingConfig.getSettings.
+     * @param features
+     * @param properties
+     */
+    public void getSettings(Map features, Map properties) {
+        ((SchemaParsingConfig)config).getSettings(features, properties);
+    }
+    
+    /**
+     * Delegates to SchemaParsingConfig.setSettings.
+     * @param features
+     * @param properties
+     */
+    public void setSettings(Map features, Map properties) {
+        ((SchemaParsingConfig)config).setSettings(features, properties);
+    }
+    
     /**
      * Delegates to SchemaParsingConfig.setEntityResolver.
      * @param er XMLEntityResolver
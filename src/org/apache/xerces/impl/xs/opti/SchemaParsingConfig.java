@@ -18,7 +18,9 @@
 package org.apache.xerces.impl.xs.opti;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.Locale;
+import java.util.Map;
 
 import org.apache.xerces.impl.Constants;
 import org.apache.xerces.impl.XML11DTDScannerImpl;
@@ -1003,12 +1005,83 @@ public class SchemaParsingConfig extends BasicParserConfiguration
     // other methods
     //
     
+    /**
+     * Copies the features of this configuration, and the properties
+     * which are not its own components or handlers, into the given maps.
+     * They can be set on another configuration with
+     * {@link #setSettings(Map,Map)} so that it parses documents the same
+     * way. Locales are copied with the properties.
+     */
+    public void getSettings(Map features, Map properties) {
+        Iterator entries = fFeatures.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry entry = (Map.Entry) entries.next();
+            if (!PARSER_SETTINGS.equals(entry.getKey())) {
+                features.put(entry.getKey(), entry.getValue());
+            }
+        }
+        entries = fProperties.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry entry = (Map.Entry) entries.next();
+            if (!isComponentProperty((String) entry.getKey())) {
+                properties.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (getLocale() != null) {
+            properties.put(LOCALE, getLocale());
+        }
+    } // getSettings(Map,Map)
+    
+    /**
+     * Sets the features and properties copied from another configuration
+     * by {@link #getSettings(Map,Map)} on this configuration.
+     */
+    public void setSettings(Map features, Map properties) {
+        Iterator entries = features.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry entry = (Map.Entry) entries.next();
+            try {
+                setFeature((String) entry.getKey(), ((Boolean) entry.getValue()).booleanValue());
+            }
+            catch (XMLConfigurationException e) {
+            }
+        }
+        entries = properties.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry entry = (Map.Entry) entries.next();
+            try {
+                setProperty((String) entry.getKey(), entry.getValue());
+            }
+            catch (XMLConfigurationException e) {
+            }
+        }
+    } // setSettings(Map,Map)
+    
     /** */
     public void resetNodePool() {
         // REVISIT: to implement: introduce a node pool to reuse DTM nodes.
         //          reset this pool here.
     }
     
+    /**
+     * Returns true if the property is a component or a handler of this
+     * configuration, which is not shared with other configurations.
+     */
+    private static boolean isComponentProperty(String propertyId) {
+        return ERROR_REPORTER.equals(propertyId) ||
+            ENTITY_MANAGER.equals(propertyId) ||
+            DOCUMENT_SCANNER.equals(propertyId) ||
+            DTD_SCANNER.equals(propertyId) ||
+            DTD_VALIDATOR.equals(propertyId) ||
+            NAMESPACE_BINDER.equals(propertyId) ||
+            DATATYPE_VALIDATOR_FACTORY.equals(propertyId) ||
+            VALIDATION_MANAGER.equals(propertyId) ||
+            XMLGRAMMAR_POOL.equals(propertyId) ||
+            SYMBOL_TABLE.equals(propertyId) ||
+            ERROR_HANDLER.equals(propertyId) ||
+            ENTITY_RESOLVER.equals(propertyId);
+    } // isComponentProperty(String):boolean
+    
     private void initXML11Components() {
         if (!f11Initialized) {
             // create datatype factory
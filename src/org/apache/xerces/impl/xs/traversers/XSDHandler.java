@@ -21,8 +21,10 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Stack;
 import java.util.Vector;
 
@@ -60,15 +62,19 @@ import org.apache.xerces.impl.xs.util.SimpleLocator;
 import org.apache.xerces.impl.xs.util.XSInputSource;
 import org.apache.xerces.parsers.SAXParser;
 import org.apache.xerces.parsers.XML11Configuration;
+import org.apache.xerces.util.DOMEntityResolverWrapper;
 import org.apache.xerces.util.DOMInputSource;
 import org.apache.xerces.util.DOMUtil;
 import org.apache.xerces.util.DefaultErrorHandler;
+import org.apache.xerces.util.EntityResolver2Wrapper;
+import org.apache.xerces.util.EntityResolverWrapper;
 import org.apache.xerces.util.ErrorHandlerWrapper;
 import org.apache.xerces.util.SAXInputSource;
 import org.apache.xerces.util.StAXInputSource;
 import org.apache.xerces.util.StAXLocationWrapper;
 import org.apache.xerces.util.SymbolHash;
 import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.TaskExecutor;
 import org.apache.xerces.util.XMLChar;
 import org.apache.xerces.util.URI.MalformedURIException;
 import org.apache.xerces.util.XMLSymbols;
@@ -214,6 +220,10 @@ public class XSDHandler {
     protected static final String LOCALE =
         Constants.XERCES_PROPERTY_PREFIX + Constants.LOCALE_PROPERTY;
     
+    /** Property identifier: executor for loading schema documents in parallel. */
+    protected static final String SCHEMA_LOADING_EXECUTOR =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_LOADING_EXECUTOR_PROPERTY;
+    
     protected static final boolean DEBUG_NODE_POOL = false;
     
     // Data
@@ -408,6 +418,24 @@ public class XSDHandler {
     
     SchemaDVFactory fDVFactory;
     SchemaDOMParser fSchemaParser;
+    
+    // the executor loading referenced schema documents in parallel, or null
+    private TaskExecutor fExecutor;
+    
+    // the entity resolver set on the loader, which may be a wrapper
+    // whose application resolver is set or removed later
+    private XMLEntityResolver fUserEntityResolver;
+    
+    // schema documents handed to the executor, keyed by their expanded
+    // system id; also holds the system ids of the documents loaded on the
+    // calling thread, so that they are not loaded again
+    private Hashtable fParallelLoads = new Hashtable();
+    
+    // idle parsers for the documents loaded by the executor
+    private final Vector fParallelParsers = new Vector();
+    
+    // describes the imports checked before handing them to the executor
+    private final XSDDescription fParallelLoadDescription = new XSDDescription();
     SchemaContentHandler fXSContentHandler;
     StAXSchemaParser fStAXSchemaParser;
     XML11Configuration fAnnotationValidator;
@@ -619,7 +647,13 @@ public class XSDHandler {
         // all traversers and clear all registries
         prepareForTraverse();
         
-        fRoot = constructTrees(schemaRoot, is.getSystemId(), desc, grammar != null);
+        try {
+            fRoot = constructTrees(schemaRoot, is.getSystemId(), desc, grammar != null);
+        }
+        finally {
+            // all documents have been loaded
+            releaseParallelLoads();
+        }
         if (fRoot == null) {
             return null;
         }
@@ -893,6 +927,14 @@ public class XSDHandler {
         Vector dependencies = new Vector();
         Element rootNode = schemaRoot;
         
+        // start loading the documents this one refers to, so that they
+        // are parsed while the ones before them are being constructed;
+        // not done with an application entity resolver, which is consulted
+        // on the calling thread and may resolve a location to anything
+        if (fExecutor != null && !hasUserEntityResolver(fUserEntityResolver)) {
+            loadReferencedDocuments(schemaRoot, currSchemaInfo);
+        }
+        
         Element newSchemaRoot = null;
         for (Element child = DOMUtil.getFirstChildElement(rootNode);
         child != null;
@@ -2165,8 +2207,16 @@ public class XSDHandler {
                     }
                 }
                 
-                fSchemaParser.parse(schemaSource);
-                Document schemaDocument = fSchemaParser.getDocument();
+                Document schemaDocument = null;
+                if (schemaId != null && fExecutor != null &&
+                        schemaSource.getByteStream() == null &&
+                        schemaSource.getCharacterStream() == null) {
+                    schemaDocument = getParallelLoad(schemaId);
+                }
+                if (schemaDocument == null) {
+                    fSchemaParser.parse(schemaSource);
+                    schemaDocument = fSchemaParser.getDocument();
+                }
                 schemaElement = schemaDocument != null ? DOMUtil.getRoot(schemaDocument) : null;
                 return getSchemaDocument0(key, schemaId, schemaElement);
             }
@@ -3411,6 +3461,7 @@ public class XSDHandler {
     // parsing schemas
     void prepareForParse() {
         fTraversed.clear();
+        fParallelLoads.clear();
         fDoc2SystemId.clear();
         fHiddenNodes.clear();
         fLastSchemaWasDuplicate = false;
@@ -3513,6 +3564,7 @@ public class XSDHandler {
         XMLEntityResolver er = (XMLEntityResolver)componentManager.getProperty(ENTITY_RESOLVER);
         if (er != null)
             fSchemaParser.setEntityResolver(er);
+        fUserEntityResolver = er;
         
         // set error reporter
         fErrorReporter =
@@ -3602,8 +3654,32 @@ public class XSDHandler {
         } catch (XMLConfigurationException e) {
         }
         
+        try {
+            fExecutor = (TaskExecutor) componentManager.getProperty(SCHEMA_LOADING_EXECUTOR);
+        } catch (XMLConfigurationException e) {
+            fExecutor = null;
+        }
+        
     } // reset(XMLComponentManager)
     
+    /**
+     * Returns true if the entity resolver is, or wraps, a resolver set
+     * by the application. The JAXP schema factory and validators always
+     * set a wrapper, which resolves nothing until a resolver is set on it.
+     */
+    private static boolean hasUserEntityResolver(XMLEntityResolver er) {
+        if (er instanceof DOMEntityResolverWrapper) {
+            return ((DOMEntityResolverWrapper) er).getEntityResolver() != null;
+        }
+        if (er instanceof EntityResolverWrapper) {
+            return ((EntityResolverWrapper) er).getEntityResolver() != null;
+        }
+        if (er instanceof EntityResolver2Wrapper) {
+            return ((EntityResolver2Wrapper) er).getEntityResolver() != null;
+        }
+        return er != null;
+    } // hasUserEntityResolver(XMLEntityResolver):boolean
+    
     
     /**
      * Traverse all the deferred local elements. This method should be called
@@ -4320,4 +4396,277 @@ public class XSDHandler {
         fSchemaParser.setFeature(GENERATE_SYNTHETIC_ANNOTATIONS, state);
     }
     
+    /**
+     * Hands the documents referenced by the import, include and redefine
+     * elements of the given schema document to the executor, unless they
+     * have been loaded already or constructTrees() would not load them:
+     * imports of a namespace which is in the grammar bucket or the grammar
+     * pool, or which the document imports once already.
+     */
+    private void loadReferencedDocuments(Element schemaRoot, XSDocumentInfo schemaInfo) {
+        final String baseSystemId = doc2SystemId(schemaRoot);
+        if (baseSystemId != null && !fParallelLoads.containsKey(baseSystemId)) {
+            fParallelLoads.put(baseSystemId, ParallelLoad.LOADED);
+        }
+        HashMap features = null;
+        HashMap properties = null;
+        Vector importedNamespaces = null;
+        for (Element child = DOMUtil.getFirstChildElement(schemaRoot);
+        child != null;
+        child = DOMUtil.getNextSiblingElement(child)) {
+            String localName = DOMUtil.getLocalName(child);
+            if (localName.equals(SchemaSymbols.ELT_ANNOTATION)) {
+                continue;
+            }
+            final boolean isImport = localName.equals(SchemaSymbols.ELT_IMPORT);
+            if (!isImport &&
+                    !localName.equals(SchemaSymbols.ELT_INCLUDE) &&
+                    !localName.equals(SchemaSymbols.ELT_REDEFINE)) {
+                break;
+            }
+            String location = DOMUtil.getAttrValue(child, SchemaSymbols.ATT_SCHEMALOCATION).trim();
+            if (location.length() == 0) {
+                continue;
+            }
+            if (isImport) {
+                String namespace = null;
+                if (DOMUtil.getAttr(child, SchemaSymbols.ATT_NAMESPACE) != null) {
+                    namespace = fSymbolTable.addSymbol(DOMUtil.getAttrValue(child, SchemaSymbols.ATT_NAMESPACE).trim());
+                }
+                // the same checks as constructTrees() makes, in the same order
+                if (namespace == schemaInfo.fTargetNamespace) {
+                    continue;
+                }
+                if (importedNamespaces == null) {
+                    importedNamespaces = new Vector();
+                }
+                if (schemaInfo.isAllowedNS(namespace) || importedNamespaces.contains(namespace)) {
+                    if (!fHonourAllSchemaLocations && !fNamespaceGrowth) {
+                        continue;
+                    }
+                }
+                else {
+                    importedNamespaces.addElement(namespace);
+                }
+                // a location given for the namespace replaces the hint
+                if (fLocationPairs.get(null2EmptyString(namespace)) != null) {
+                    continue;
+                }
+                fParallelLoadDescription.reset();
+                fParallelLoadDescription.setContextType(XSDDescription.CONTEXT_IMPORT);
+                fParallelLoadDescription.setBaseSystemId(baseSystemId);
+                fParallelLoadDescription.setLiteralSystemId(location);
+                fParallelLoadDescription.setLocationHints(new String[]{location});
+                fParallelLoadDescription.setTargetNamespace(namespace);
+                // findGrammar() without moving grammars into the bucket,
+                // which constructTrees() does when it gets to the import
+                if (fGrammarBucket.getGrammar(namespace) != null ||
+                        (fGrammarPool != null &&
+                        fGrammarPool.retrieveGrammar(fParallelLoadDescription) != null)) {
+                    continue;
+                }
+            }
+            String schemaId;
+            try {
+                schemaId = XMLEntityManager.expandSystemId(location, baseSystemId, false);
+            }
+            catch (MalformedURIException e) {
+                continue;
+            }
+            if (schemaId == null || fParallelLoads.containsKey(schemaId)) {
+                continue;
+            }
+            if (!isImport && fNamespaceGrowth) {
+                SchemaGrammar sg = fGrammarBucket.getGrammar(schemaInfo.fTargetNamespace);
+                if (sg != null && sg.getDocumentLocations().contains(schemaId)) {
+                    continue;
+                }
+            }
+            if (features == null) {
+                features = new HashMap();
+                properties = new HashMap();
+                fSchemaParser.getSettings(features, properties);
+            }
+            ParallelLoad load = new ParallelLoad(location, baseSystemId, fParallelParsers, features, properties);
+            fParallelLoads.put(schemaId, load);
+            try {
+                fExecutor.execute(load);
+            }
+            // the document will be loaded on the calling thread instead
+            catch (RuntimeException e) {
+            }
+        }
+    } // loadReferencedDocuments(Element,XSDocumentInfo)
+    
+    /**
+     * Cancels the loads which the executor has not finished, and drops
+     * the documents nobody asked for and the idle parsers, which keep the
+     * last document they parsed.
+     */
+    private void releaseParallelLoads() {
+        if (fParallelLoads.isEmpty()) {
+            return;
+        }
+        Enumeration loads = fParallelLoads.elements();
+        while (loads.hasMoreElements()) {
+            ((ParallelLoad) loads.nextElement()).cancel();
+        }
+        fParallelLoads.clear();
+        fParallelParsers.clear();
+    } // releaseParallelLoads()
+    
+    /**
+     * Returns the document with the given expanded system id if it was
+     * loaded by the executor, waiting for it if the executor is still
+     * loading it. Returns null if the document is to be loaded on the
+     * calling thread.
+     */
+    private Document getParallelLoad(String schemaId) {
+        ParallelLoad load = (ParallelLoad) fParallelLoads.get(schemaId);
+        return (load != null) ? load.getDocument() : null;
+    } // getParallelLoad(String):Document
+    
+    /**
+     * Loads a schema document on the executor. The document is parsed
+     * with a parser of its own, given the features and properties of the
+     * schema parser, and is only used if parsing it reported no errors or
+     * warnings; otherwise
+     * the document is loaded again on the calling thread so that the
+     * errors are reported there in the usual order.
+     */
+    private static final class ParallelLoad implements Runnable, XMLErrorHandler {
+        
+        /** The document has not been loaded yet. */
+        private static final int PENDING = 0;
+        /** The document is being loaded. */
+        private static final int LOADING = 1;
+        /** The document has been loaded. */
+        private static final int DONE = 2;
+        /** The document has been handed out, or is loaded by the calling thread. */
+        private static final int TAKEN = 3;
+        
+        /** Marks a document which is loaded on the calling thread. */
+        static final ParallelLoad LOADED = new ParallelLoad(null, null, null, null, null);
+        
+        private final String fLocation;
+        private final String fBaseSystemId;
+        private final Vector fParsers;
+        private final Map fFeatures;
+        private final Map fProperties;
+        
+        private int fState;
+        private Document fDocument;
+        private boolean fSawError;
+        
+        ParallelLoad(String location, String baseSystemId, Vector parsers,
+                Map features, Map properties) {
+            fLocation = location;
+            fBaseSystemId = baseSystemId;
+            fParsers = parsers;
+            fFeatures = features;
+            fProperties = properties;
+            fState = (location != null) ? PENDING : TAKEN;
+        }
+        
+        public void run() {
+            synchronized (this) {
+                if (fState != PENDING) {
+                    return;
+                }
+                fState = LOADING;
+            }
+            Document document = null;
+            SchemaDOMParser parser = null;
+            try {
+                parser = getParser();
+                parser.parse(new XMLInputSource(null, fLocation, fBaseSystemId));
+                if (!fSawError) {
+                    document = parser.getDocument();
+                }
+            }
+            // the document will be loaded again on the calling thread
+            catch (Exception e) {
+            }
+            finally {
+                synchronized (this) {
+                    // the parser of a cancelled load is dropped, as the
+                    // idle parsers may have been released already
+                    if (fState == LOADING) {
+                        fDocument = document;
+                        fState = DONE;
+                        if (parser != null) {
+                            fParsers.addElement(parser);
+                        }
+                    }
+                    notifyAll();
+                }
+            }
+        } // run()
+        
+        /**
+         * Drops the loaded document, and the document being loaded once
+         * it is loaded. A document whose loading has not been started yet
+         * is not loaded any more.
+         */
+        synchronized void cancel() {
+            fDocument = null;
+            fState = TAKEN;
+        } // cancel()
+        
+        /**
+         * Returns the loaded document once, or null if the calling thread
+         * has to load the document. A document whose loading has not been
+         * started yet is not loaded by the executor any more.
+         */
+        synchronized Document getDocument() {
+            while (fState == LOADING) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    fState = TAKEN;
+                    return null;
+                }
+            }
+            final Document document = fDocument;
+            fDocument = null;
+            fState = TAKEN;
+            return document;
+        } // getDocument():Document
+        
+        /** Returns an idle parser with the settings of the schema parser. */
+        private SchemaDOMParser getParser() {
+            SchemaDOMParser parser = null;
+            synchronized (fParsers) {
+                if (!fParsers.isEmpty()) {
+                    parser = (SchemaDOMParser) fParsers.remove(fParsers.size() - 1);
+                }
+            }
+            if (parser == null) {
+                parser = new SchemaDOMParser(new SchemaParsingConfig());
+            }
+            parser.setSettings(fFeatures, fProperties);
+            parser.setProperty(ERROR_HANDLER, this);
+            return parser;
+        } // getParser():SchemaDOMParser
+        
+        //
+        // XMLErrorHandler methods
+        //
+        
+        public void warning(String domain, String key, XMLParseException exception) {
+            fSawError = true;
+        }
+        
+        public void error(String domain, String key, XMLParseException exception) {
+            fSawError = true;
+        }
+        
+        public void fatalError(String domain, String key, XMLParseException exception) {
+            fSawError = true;
+        }
+        
+    } // class ParallelLoad
+    
 } // XSDHandler
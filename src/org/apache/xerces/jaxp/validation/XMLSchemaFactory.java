@@ -33,6 +33,7 @@ import javax.xml.validation.SchemaFactory;
 
 import org.apache.xerces.impl.Constants;
 import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.util.ConcurrentXMLGrammarPool;
 import org.apache.xerces.util.DOMEntityResolverWrapper;
 import org.apache.xerces.util.DOMInputSource;
 import org.apache.xerces.util.ErrorHandlerWrapper;
@@ -40,7 +41,6 @@ import org.apache.xerces.util.SAXInputSource;
 import org.apache.xerces.util.SAXMessageFormatter;
 import org.apache.xerces.util.SecurityManager;
 import org.apache.xerces.util.StAXInputSource;
-import org.apache.xerces.util.XMLGrammarPoolImpl;
 import org.apache.xerces.xni.XNIException;
 import org.apache.xerces.xni.grammars.Grammar;
 import org.apache.xerces.xni.grammars.XMLGrammarDescription;
@@ -175,7 +175,7 @@ public final class XMLSchemaFactory extends SchemaFactory {
     public Schema newSchema( Source[] schemas ) throws SAXException {
         
         // this will let the loader store parsed Grammars into the pool.
-        XMLGrammarPoolImplExtension pool = new XMLGrammarPoolImplExtension();
+        XMLGrammarPoolExtension pool = new XMLGrammarPoolExtension();
         fXMLGrammarPoolWrapper.setGrammarPool(pool);
         
         XMLInputSource[] xmlInputSources = new XMLInputSource[schemas.length];
@@ -455,18 +455,19 @@ public final class XMLSchemaFactory extends SchemaFactory {
     }
     
     /** 
-     * Extension of XMLGrammarPoolImpl which exposes the number of
-     * grammars stored in the grammar pool.
+     * Extension of ConcurrentXMLGrammarPool which exposes the number of
+     * grammars stored in the grammar pool. Lookups on the grammar pool
+     * do not lock, so a Schema may be shared by many validators.
      */
-    static class XMLGrammarPoolImplExtension extends XMLGrammarPoolImpl {
+    static class XMLGrammarPoolExtension extends ConcurrentXMLGrammarPool {
         
         /** Constructs a grammar pool with a default number of buckets. */
-        public XMLGrammarPoolImplExtension() {
+        public XMLGrammarPoolExtension() {
             super();
         }
 
         /** Constructs a grammar pool with a specified number of buckets. */
-        public XMLGrammarPoolImplExtension(int initialCapacity) {
+        public XMLGrammarPoolExtension(int initialCapacity) {
             super(initialCapacity);
         }
         
@@ -475,7 +476,7 @@ public final class XMLSchemaFactory extends SchemaFactory {
             return fGrammarCount;
         }
         
-    } // XMLSchemaFactory.XMLGrammarPoolImplExtension
+    } // XMLSchemaFactory.XMLGrammarPoolExtension
     
     /**
      * A grammar pool which wraps another.
@@ -17,6 +17,8 @@
 
 package org.apache.xerces.parsers;
 
+import org.apache.xerces.util.ConcurrentSymbolTable;
+import org.apache.xerces.util.ConcurrentXMLGrammarPool;
 import org.apache.xerces.util.ShadowedSymbolTable;
 import org.apache.xerces.util.SymbolTable;
 import org.apache.xerces.util.SynchronizedSymbolTable;
@@ -75,14 +77,18 @@ public class CachingParserPool {
     /** 
      * Symbol table. The symbol table that the caching parser pool is
      * constructed with is automatically wrapped in a synchronized
-     * version for thread-safety.
+     * version for thread-safety, unless it is a
+     * <code>ConcurrentSymbolTable</code> which is already safe
+     * to share.
      */
     protected SymbolTable fSynchronizedSymbolTable;
 
     /** 
      * Grammar pool. The grammar pool that the caching parser pool is
      * constructed with is automatically wrapped in a synchronized
-     * version for thread-safety.
+     * version for thread-safety, unless it is a
+     * <code>ConcurrentXMLGrammarPool</code> which is already safe
+     * to share.
      */
     protected XMLGrammarPool fSynchronizedGrammarPool;
 
@@ -110,7 +116,7 @@ public class CachingParserPool {
 
     /** Default constructor. */
     public CachingParserPool() {
-        this(new SymbolTable(), new XMLGrammarPoolImpl());
+        this(new ConcurrentSymbolTable(), new ConcurrentXMLGrammarPool());
     } // <init>()
 
     /**
@@ -121,8 +127,10 @@ public class CachingParserPool {
      * @param grammarPool The grammar pool.
      */
     public CachingParserPool(SymbolTable symbolTable, XMLGrammarPool grammarPool) {
-        fSynchronizedSymbolTable = new SynchronizedSymbolTable(symbolTable);
-        fSynchronizedGrammarPool = new SynchronizedGrammarPool(grammarPool);
+        fSynchronizedSymbolTable = (symbolTable instanceof ConcurrentSymbolTable)
+                                 ? symbolTable : new SynchronizedSymbolTable(symbolTable);
+        fSynchronizedGrammarPool = (grammarPool instanceof ConcurrentXMLGrammarPool)
+                                 ? grammarPool : new SynchronizedGrammarPool(grammarPool);
     } // <init>(SymbolTable,XMLGrammarPool)
 
     //
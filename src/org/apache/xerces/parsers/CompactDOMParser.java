@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.parsers;
+
+import org.apache.xerces.dom.CompactDocumentBuilder;
+import org.apache.xerces.dom.CompactDocumentImpl;
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.dv.XSSimpleType;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLParserConfiguration;
+import org.apache.xerces.xs.AttributePSVI;
+import org.apache.xerces.xs.XSTypeDefinition;
+
+/**
+ * <p>A DOM parser which builds read-only {@link CompactDocumentImpl}
+ * documents. The whole tree is kept in primitive arrays and two character
+ * buffers, and the nodes are lightweight views made when they are asked
+ * for, so a document takes a small fraction of the memory of a
+ * <code>DocumentImpl</code> and reading it never expands it into node
+ * objects. This suits documents which are parsed once and then queried.</p>
+ *
+ * <p>The parser is configured like {@link DOMParser}. The include
+ * ignorable whitespace, include comments, create CDATA nodes and
+ * namespaces features are honoured. Entity references are always
+ * replaced by their replacement text, the document type declaration is
+ * not represented and the deferred node expansion feature and the
+ * document class name property are ignored. Attributes of type ID, as
+ * declared in the DTD or found by XML Schema validation, are found by
+ * <code>getElementById</code>.</p>
+ *
+ * @version $Id$
+ */
+public class CompactDOMParser
+    extends DOMParser {
+
+    //
+    // Data
+    //
+
+    /** The builder of the current document. */
+    private CompactDocumentBuilder fBuilder;
+
+    /** Attribute name. */
+    private final QName fAttrName = new QName();
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a compact DOM parser using the specified parser
+     * configuration.
+     */
+    public CompactDOMParser(XMLParserConfiguration config) {
+        super(config);
+        init();
+    } // <init>(XMLParserConfiguration)
+
+    /**
+     * Constructs a compact DOM parser using the dtd/xml schema parser
+     * configuration.
+     */
+    public CompactDOMParser() {
+        this(null, null);
+    } // <init>()
+
+    /**
+     * Constructs a compact DOM parser using the specified symbol table and
+     * grammar pool.
+     */
+    public CompactDOMParser(SymbolTable symbolTable, XMLGrammarPool grammarPool) {
+        super(symbolTable, grammarPool);
+        init();
+    } // <init>(SymbolTable,XMLGrammarPool)
+
+    //
+    // XMLDocumentParser methods
+    //
+
+    public void reset() throws XNIException {
+        super.reset();
+        fBuilder = null;
+    } // reset()
+
+    //
+    // XMLDocumentHandler methods
+    //
+
+    public void startDocument(XMLLocator locator, String encoding,
+            NamespaceContext namespaceContext, Augmentations augs)
+        throws XNIException {
+        fBuilder = new CompactDocumentBuilder(fNamespaceAware);
+        fBuilder.setDocumentInfo(locator.getExpandedSystemId(), encoding);
+    } // startDocument(XMLLocator,String,NamespaceContext,Augmentations)
+
+    public void xmlDecl(String version, String encoding, String standalone,
+            Augmentations augs) throws XNIException {
+        fBuilder.setXMLDecl(version, encoding, standalone);
+    } // xmlDecl(String,String,String,Augmentations)
+
+    /** The document type declaration is not represented. */
+    public void doctypeDecl(String rootElement, String publicId,
+            String systemId, Augmentations augs) throws XNIException {
+    } // doctypeDecl(String,String,String,Augmentations)
+
+    public void startElement(QName element, XMLAttributes attributes,
+            Augmentations augs) throws XNIException {
+        fBuilder.startElement(element);
+        final int attrCount = attributes.getLength();
+        for (int i = 0; i < attrCount; ++i) {
+            attributes.getName(i, fAttrName);
+            fBuilder.addAttribute(fAttrName, attributes.getValue(i),
+                    attributes.isSpecified(i), isId(attributes, i));
+        }
+    } // startElement(QName,XMLAttributes,Augmentations)
+
+    public void emptyElement(QName element, XMLAttributes attributes,
+            Augmentations augs) throws XNIException {
+        startElement(element, attributes, augs);
+        fBuilder.endElement();
+    } // emptyElement(QName,XMLAttributes,Augmentations)
+
+    public void endElement(QName element, Augmentations augs) throws XNIException {
+        fBuilder.endElement();
+    } // endElement(QName,Augmentations)
+
+    public void characters(XMLString text, Augmentations augs) throws XNIException {
+        fBuilder.characters(text);
+    } // characters(XMLString,Augmentations)
+
+    public void ignorableWhitespace(XMLString text, Augmentations augs)
+        throws XNIException {
+        if (fIncludeIgnorableWhitespace) {
+            fBuilder.ignorableWhitespace(text);
+        }
+    } // ignorableWhitespace(XMLString,Augmentations)
+
+    public void startCDATA(Augmentations augs) throws XNIException {
+        if (fCreateCDATANodes) {
+            fBuilder.startCDATA();
+        }
+    } // startCDATA(Augmentations)
+
+    public void endCDATA(Augmentations augs) throws XNIException {
+        if (fCreateCDATANodes) {
+            fBuilder.endCDATA();
+        }
+    } // endCDATA(Augmentations)
+
+    public void comment(XMLString text, Augmentations augs) throws XNIException {
+        if (fIncludeComments) {
+            fBuilder.comment(text);
+        }
+    } // comment(XMLString,Augmentations)
+
+    public void processingInstruction(String target, XMLString data,
+            Augmentations augs) throws XNIException {
+        fBuilder.processingInstruction(target, data);
+    } // processingInstruction(String,XMLString,Augmentations)
+
+    /** Entity references are replaced by their replacement text. */
+    public void startGeneralEntity(String name, XMLResourceIdentifier identifier,
+            String encoding, Augmentations augs) throws XNIException {
+    } // startGeneralEntity(String,XMLResourceIdentifier,String,Augmentations)
+
+    public void textDecl(String version, String encoding, Augmentations augs)
+        throws XNIException {
+    } // textDecl(String,String,Augmentations)
+
+    public void endGeneralEntity(String name, Augmentations augs)
+        throws XNIException {
+    } // endGeneralEntity(String,Augmentations)
+
+    public void endDocument(Augmentations augs) throws XNIException {
+        fDocument = fBuilder.getDocument();
+        fBuilder = null;
+    } // endDocument(Augmentations)
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Stops the DTD events, which are only used to build the document
+     * type node of other documents.
+     */
+    private void init() {
+        fConfiguration.setDTDHandler(null);
+        fConfiguration.setDTDContentModelHandler(null);
+    } // init()
+
+    /**
+     * Returns true if an attribute is of type ID, deciding as
+     * {@link AbstractDOMParser} does.
+     */
+    private boolean isId(XMLAttributes attributes, int i) {
+        final Augmentations augs = attributes.getAugmentations(i);
+        final AttributePSVI attrPSVI = (AttributePSVI) augs.getItem(Constants.ATTRIBUTE_PSVI);
+        if (attrPSVI != null && fNamespaceAware) {
+            // XML Schema
+            XSTypeDefinition type = attrPSVI.getMemberTypeDefinition();
+            if (type == null) {
+                type = attrPSVI.getTypeDefinition();
+            }
+            return type != null && ((XSSimpleType) type).isIDType();
+        }
+        // DTD
+        return Boolean.TRUE.equals(augs.getItem(Constants.ATTRIBUTE_DECLARED))
+            && "ID".equals(attributes.getType(i));
+    } // isId(XMLAttributes,int):boolean
+
+} // class CompactDOMParser
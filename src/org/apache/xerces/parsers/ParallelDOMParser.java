@@ -0,0 +1,1033 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.parsers;
+
+import java.io.ByteArrayInputStream;
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Vector;
+
+import org.apache.xerces.dom.CoreDocumentImpl;
+import org.apache.xerces.dom.EntityImpl;
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.XMLEntityManager;
+import org.apache.xerces.util.EncodingMap;
+import org.apache.xerces.util.TaskExecutor;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLConfigurationException;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.Entity;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * <p>A DOM parser which builds documents made of many independent
+ * records in parallel. The content of the root element is split before
+ * the children of the root element with the configured record name, and
+ * the pieces are parsed by worker parsers on a {@link TaskExecutor}. Each
+ * piece is parsed together with the prolog of the document and the start
+ * tag of the root element, so that namespace declarations, entity
+ * declarations and default attributes are the same as in the whole
+ * document. The records are then moved, in document order, into the
+ * document built from the prolog, the root element and the epilog.</p>
+ *
+ * <p>The document built is always fully expanded; the deferred node
+ * expansion feature is ignored. The document is parsed on the calling
+ * thread, exactly like by {@link DOMParser}, if no record element name
+ * or executor has been set, if validation or XInclude processing is
+ * turned on, if an entity resolver has been registered, if the document
+ * cannot be split, or if any part of it reports an error or a warning.
+ * Errors are therefore always reported with their usual locations.</p>
+ *
+ * @version $Id$
+ */
+public class ParallelDOMParser
+    extends DOMParser {
+
+    //
+    // Constants
+    //
+
+    /** Feature identifier: validation. */
+    protected static final String VALIDATION_FEATURE =
+        Constants.SAX_FEATURE_PREFIX + Constants.VALIDATION_FEATURE;
+
+    /** Feature identifier: XML Schema validation. */
+    protected static final String SCHEMA_VALIDATION_FEATURE =
+        Constants.XERCES_FEATURE_PREFIX + Constants.SCHEMA_VALIDATION_FEATURE;
+
+    /** Feature identifier: XInclude processing. */
+    protected static final String XINCLUDE_FEATURE =
+        Constants.XERCES_FEATURE_PREFIX + Constants.XINCLUDE_FEATURE;
+
+    /** Feature identifier: load external DTD. */
+    protected static final String LOAD_EXTERNAL_DTD =
+        Constants.XERCES_FEATURE_PREFIX + Constants.LOAD_EXTERNAL_DTD_FEATURE;
+
+    /** Property identifier: security manager. */
+    protected static final String SECURITY_MANAGER =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SECURITY_MANAGER_PROPERTY;
+
+    /** Features passed on to the worker parsers. */
+    private static final String[] WORKER_FEATURES = {
+        NAMESPACES,
+        CREATE_ENTITY_REF_NODES,
+        INCLUDE_COMMENTS_FEATURE,
+        CREATE_CDATA_NODES_FEATURE,
+        INCLUDE_IGNORABLE_WHITESPACE,
+        LOAD_EXTERNAL_DTD,
+    };
+
+    /** Default minimum number of characters in a piece (256K). */
+    public static final int DEFAULT_SEGMENT_SIZE = 256 * 1024;
+
+    //
+    // Data
+    //
+
+    /** Name of the record elements. */
+    private String fRecordName;
+
+    /** The executor running the worker parsers. */
+    private TaskExecutor fExecutor;
+
+    /** Minimum number of characters in a piece. */
+    private int fSegmentSize = DEFAULT_SEGMENT_SIZE;
+
+    /** Idle worker parsers. */
+    private final Vector fWorkers = new Vector();
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a parallel DOM parser which parses on the calling thread
+     * until a record element name and an executor are set.
+     */
+    public ParallelDOMParser() {
+        super();
+    } // <init>()
+
+    /**
+     * Constructs a parallel DOM parser.
+     *
+     * @param recordName The name of the children of the root element
+     *                   before which the document may be split.
+     * @param executor   The executor running the worker parsers.
+     */
+    public ParallelDOMParser(String recordName, TaskExecutor executor) {
+        super();
+        fRecordName = recordName;
+        fExecutor = executor;
+    } // <init>(String,TaskExecutor)
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Sets the name of the children of the root element before which
+     * the document may be split. A name without a prefix matches
+     * elements with that local name and any prefix; a name with a
+     * prefix matches elements with exactly that qualified name.
+     */
+    public void setRecordElementName(String recordName) {
+        fRecordName = recordName;
+    } // setRecordElementName(String)
+
+    /** Returns the name of the record elements. */
+    public String getRecordElementName() {
+        return fRecordName;
+    } // getRecordElementName():String
+
+    /** Sets the executor running the worker parsers. */
+    public void setExecutor(TaskExecutor executor) {
+        fExecutor = executor;
+    } // setExecutor(TaskExecutor)
+
+    /** Returns the executor running the worker parsers. */
+    public TaskExecutor getExecutor() {
+        return fExecutor;
+    } // getExecutor():TaskExecutor
+
+    /**
+     * Sets the minimum number of characters of the document parsed by
+     * one worker. A piece only ends before a record element, so pieces
+     * may be longer.
+     */
+    public void setSegmentSize(int segmentSize) {
+        fSegmentSize = segmentSize > 0 ? segmentSize : 1;
+    } // setSegmentSize(int)
+
+    /** Returns the minimum number of characters parsed by one worker. */
+    public int getSegmentSize() {
+        return fSegmentSize;
+    } // getSegmentSize():int
+
+    /**
+     * Parses the document, in parallel if possible.
+     *
+     * @param inputSource The input source of the document.
+     *
+     * @exception XNIException
+     * @exception java.io.IOException
+     */
+    public void parse(XMLInputSource inputSource)
+        throws XNIException, IOException {
+
+        if (!canParseInParallel() ||
+            (inputSource.getCharacterStream() == null &&
+             inputSource.getByteStream() == null &&
+             inputSource.getSystemId() == null)) {
+            super.parse(inputSource);
+            return;
+        }
+
+        // read the whole document
+        char[] text = null;
+        int length = 0;
+        String encoding = null;
+        XMLInputSource fallback;
+        if (inputSource.getCharacterStream() != null) {
+            CharArrayBuffer buffer = new CharArrayBuffer();
+            buffer.read(inputSource.getCharacterStream());
+            text = buffer.ch;
+            length = buffer.length;
+            fallback = copy(inputSource);
+            fallback.setCharacterStream(new CharArrayReader(text, 0, length));
+        }
+        else {
+            InputStream stream = inputSource.getByteStream();
+            boolean close = false;
+            if (stream == null) {
+                String expandedSystemId = XMLEntityManager.expandSystemId(
+                        inputSource.getSystemId(), inputSource.getBaseSystemId(), false);
+                stream = new URL(expandedSystemId).openStream();
+                close = true;
+            }
+            ByteArrayBuffer buffer = new ByteArrayBuffer();
+            try {
+                buffer.read(stream);
+            }
+            finally {
+                if (close) {
+                    stream.close();
+                }
+            }
+            fallback = copy(inputSource);
+            fallback.setByteStream(new ByteArrayInputStream(buffer.bytes, 0, buffer.length));
+            fallback.setEncoding(inputSource.getEncoding());
+            String[] names = detectEncoding(buffer.bytes, buffer.length, inputSource.getEncoding());
+            if (names != null) {
+                CharBuffer chars = decode(buffer.bytes, buffer.length, names[1]);
+                if (chars != null) {
+                    text = chars.array();
+                    length = chars.limit();
+                    encoding = names[0];
+                }
+            }
+        }
+        if (text == null) {
+            super.parse(fallback);
+            return;
+        }
+
+        // split the document
+        Vector segments = split(text, length);
+        if (segments == null || segments.size() < 3) {
+            super.parse(fallback);
+            return;
+        }
+
+        // hand all records except the first piece to the executor
+        final int[] layout = (int[]) segments.elementAt(0);
+        final int count = segments.size() - 1;
+        Worker[] workers = new Worker[count];
+        Settings settings = new Settings(this);
+        for (int i = 0; i < count; ++i) {
+            int[] segment = (int[]) segments.elementAt(i + 1);
+            workers[i] = new Worker(settings, copy(inputSource), text, new int[] {
+                0, layout[0], segment[0], segment[1], layout[1], layout[2]
+            });
+        }
+        for (int i = 1; i < count; ++i) {
+            try {
+                fExecutor.execute(workers[i]);
+            }
+            // the piece will be parsed on the calling thread instead
+            catch (RuntimeException e) {
+            }
+        }
+
+        // build the prolog, the root element and the epilog here
+        Worker skeleton = new Worker(settings, copy(inputSource), text, new int[] {
+            0, layout[0], layout[1], length
+        });
+        skeleton.run();
+        Document document = skeleton.getDocument();
+        Element root = (document instanceof CoreDocumentImpl) ? document.getDocumentElement() : null;
+        if (root == null) {
+            cancel(workers);
+            super.parse(fallback);
+            return;
+        }
+        workers[0].run();
+        for (int i = 0; i < count; ++i) {
+            Document piece = workers[i].getDocument();
+            if (piece == null) {
+                cancel(workers);
+                super.parse(fallback);
+                return;
+            }
+            mergeEntities(document, piece);
+            Element pieceRoot = piece.getDocumentElement();
+            Vector identifiers = getIdentifiers(piece, pieceRoot);
+            Node child = pieceRoot.getFirstChild();
+            while (child != null) {
+                Node next = child.getNextSibling();
+                // entity references are read only and cannot be adopted
+                if (child.getNodeType() == Node.ENTITY_REFERENCE_NODE) {
+                    root.appendChild(document.importNode(child, true));
+                }
+                else {
+                    root.appendChild(document.adoptNode(child));
+                }
+                child = next;
+            }
+            if (identifiers != null &&
+                !putIdentifiers((CoreDocumentImpl) document, identifiers)) {
+                cancel(workers);
+                super.parse(fallback);
+                return;
+            }
+        }
+        if (encoding != null) {
+            ((CoreDocumentImpl) document).setInputEncoding(encoding);
+        }
+        reset();
+        fDocument = document;
+
+    } // parse(XMLInputSource)
+
+    //
+    // Private methods
+    //
+
+    /** Returns true if the current settings allow parsing in parallel. */
+    private boolean canParseInParallel() {
+        if (fRecordName == null || fExecutor == null) {
+            return false;
+        }
+        try {
+            if (fConfiguration.getFeature(VALIDATION_FEATURE) ||
+                fConfiguration.getFeature(SCHEMA_VALIDATION_FEATURE) ||
+                fConfiguration.getFeature(XINCLUDE_FEATURE) ||
+                fConfiguration.getProperty(ENTITY_RESOLVER) != null) {
+                return false;
+            }
+        }
+        catch (XMLConfigurationException e) {
+        }
+        return true;
+    } // canParseInParallel():boolean
+
+    /**
+     * Gives the entities of the document the replacement text that was
+     * built for them in a piece, if they do not have one yet. The parser
+     * builds it where an entity is first referenced.
+     */
+    private static void mergeEntities(Document document, Document piece) {
+        DocumentType docType = document.getDoctype();
+        DocumentType pieceDocType = piece.getDoctype();
+        if (docType == null || pieceDocType == null) {
+            return;
+        }
+        NamedNodeMap entities = docType.getEntities();
+        NamedNodeMap pieceEntities = pieceDocType.getEntities();
+        for (int i = 0; i < entities.getLength(); ++i) {
+            EntityImpl entity = (EntityImpl) entities.item(i);
+            if (entity.getFirstChild() != null) {
+                continue;
+            }
+            Entity pieceEntity = (Entity) pieceEntities.getNamedItem(entity.getNodeName());
+            if (pieceEntity == null || pieceEntity.getFirstChild() == null) {
+                continue;
+            }
+            entity.setReadOnly(false, true);
+            for (Node child = pieceEntity.getFirstChild(); child != null;
+                 child = child.getNextSibling()) {
+                entity.appendChild(document.importNode(child, true));
+            }
+            entity.setReadOnly(true, true);
+            if (entity.getInputEncoding() == null) {
+                entity.setInputEncoding(pieceEntity.getInputEncoding());
+            }
+        }
+    } // mergeEntities(Document,Document)
+
+    /**
+     * Returns the identifiers registered in a piece for the elements in
+     * the content of its root element, as pairs of an identifier and an
+     * element, or null if there are none. The identifiers must be read
+     * before the elements are moved out of the piece.
+     */
+    private static Vector getIdentifiers(Document piece, Element pieceRoot) {
+        if (!(piece instanceof CoreDocumentImpl)) {
+            return null;
+        }
+        CoreDocumentImpl pieceImpl = (CoreDocumentImpl) piece;
+        Vector identifiers = null;
+        Enumeration names = pieceImpl.getIdentifiers();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            Element element = pieceImpl.getIdentifier(name);
+            if (element != null && element != pieceRoot) {
+                if (identifiers == null) {
+                    identifiers = new Vector();
+                }
+                identifiers.addElement(name);
+                identifiers.addElement(element);
+            }
+        }
+        return identifiers;
+    } // getIdentifiers(Document,Element):Vector
+
+    /**
+     * Registers in the document the identifiers of the elements moved
+     * into it from a piece. Returns false if one of the elements was
+     * copied rather than moved, because it is in an entity reference.
+     */
+    private static boolean putIdentifiers(CoreDocumentImpl document, Vector identifiers) {
+        for (int i = 0; i < identifiers.size(); i += 2) {
+            Element element = (Element) identifiers.elementAt(i + 1);
+            if (element.getOwnerDocument() != document) {
+                return false;
+            }
+            document.putIdentifier((String) identifiers.elementAt(i), element);
+        }
+        return true;
+    } // putIdentifiers(CoreDocumentImpl,Vector):boolean
+
+    /** Stops the workers which have not started yet. */
+    private static void cancel(Worker[] workers) {
+        for (int i = 0; i < workers.length; ++i) {
+            workers[i].cancel();
+        }
+    } // cancel(Worker[])
+
+    /** Returns a copy of the identifiers of an input source. */
+    private static XMLInputSource copy(XMLInputSource source) {
+        return new XMLInputSource(source.getPublicId(),
+                source.getSystemId(), source.getBaseSystemId());
+    } // copy(XMLInputSource):XMLInputSource
+
+    /**
+     * Splits the document. The first element of the returned vector holds
+     * the end of the root element's start tag and the start and end of
+     * its end tag; each following element holds the start and end of a
+     * piece of the root element's content. Returns null if the document
+     * cannot be split; it may then not be well-formed.
+     */
+    private Vector split(char[] ch, int length) {
+
+        // skip the prolog
+        int offset = 0;
+        int rootStart = -1;
+        while (rootStart == -1) {
+            offset = indexOf(ch, length, '<', offset);
+            if (offset == -1 || offset + 1 >= length) {
+                return null;
+            }
+            if (startsWith(ch, length, offset, "<?")) {
+                offset = indexOf(ch, length, "?>", offset + 2);
+            }
+            else if (startsWith(ch, length, offset, "<!--")) {
+                offset = indexOf(ch, length, "-->", offset + 4);
+            }
+            else if (startsWith(ch, length, offset, "<!DOCTYPE")) {
+                offset = skipDoctype(ch, length, offset + 9);
+            }
+            else if (ch[offset + 1] == '!' || ch[offset + 1] == '/') {
+                return null;
+            }
+            else {
+                rootStart = offset;
+            }
+            if (offset == -1) {
+                return null;
+            }
+        }
+        int prologEnd = skipTag(ch, length, rootStart + 1);
+        if (prologEnd == -1 || ch[prologEnd - 2] == '/') {
+            return null;
+        }
+
+        // find the pieces of the root element's content
+        Vector segments = new Vector();
+        segments.addElement(null);
+        int segmentStart = prologEnd;
+        int depth = 0;
+        offset = prologEnd;
+        while (true) {
+            offset = indexOf(ch, length, '<', offset);
+            if (offset == -1 || offset + 1 >= length) {
+                return null;
+            }
+            char c = ch[offset + 1];
+            if (c == '/') {
+                if (depth == 0) {
+                    int rootEnd = indexOf(ch, length, '>', offset + 2);
+                    if (rootEnd == -1) {
+                        return null;
+                    }
+                    segments.addElement(new int[] { segmentStart, offset });
+                    segments.setElementAt(new int[] { prologEnd, offset, rootEnd + 1 }, 0);
+                    return segments;
+                }
+                --depth;
+                offset = indexOf(ch, length, '>', offset + 2);
+            }
+            else if (c == '?') {
+                offset = indexOf(ch, length, "?>", offset + 2);
+            }
+            else if (c == '!') {
+                if (startsWith(ch, length, offset, "<!--")) {
+                    offset = indexOf(ch, length, "-->", offset + 4);
+                }
+                else if (startsWith(ch, length, offset, "<![CDATA[")) {
+                    offset = indexOf(ch, length, "]]>", offset + 9);
+                }
+                else {
+                    return null;
+                }
+            }
+            else {
+                if (depth == 0 && offset - segmentStart >= fSegmentSize &&
+                    isRecord(ch, length, offset + 1)) {
+                    segments.addElement(new int[] { segmentStart, offset });
+                    segmentStart = offset;
+                }
+                offset = skipTag(ch, length, offset + 1);
+                if (offset == -1) {
+                    return null;
+                }
+                if (ch[offset - 2] != '/') {
+                    ++depth;
+                }
+            }
+            if (offset == -1) {
+                return null;
+            }
+        }
+
+    } // split(char[],int):Vector
+
+    /** Returns true if the element name at the given offset is a record name. */
+    private boolean isRecord(char[] ch, int length, int offset) {
+        int end = offset;
+        int colon = -1;
+        while (end < length) {
+            char c = ch[end];
+            if (c == '>' || c == '/' || c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                break;
+            }
+            if (c == ':' && colon == -1) {
+                colon = end;
+            }
+            ++end;
+        }
+        if (matches(ch, offset, end, fRecordName)) {
+            return true;
+        }
+        return colon != -1 && fRecordName.indexOf(':') == -1 &&
+            matches(ch, colon + 1, end, fRecordName);
+    } // isRecord(char[],int,int):boolean
+
+    /** Returns true if the characters in the given range equal a string. */
+    private static boolean matches(char[] ch, int start, int end, String s) {
+        if (end - start != s.length()) {
+            return false;
+        }
+        for (int i = start; i < end; ++i) {
+            if (ch[i] != s.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    } // matches(char[],int,int,String):boolean
+
+    /**
+     * Skips the rest of a tag, honouring quoted attribute values, and
+     * returns the offset following it, or -1.
+     */
+    private static int skipTag(char[] ch, int length, int offset) {
+        while (offset < length) {
+            char c = ch[offset++];
+            if (c == '>') {
+                return offset;
+            }
+            if (c == '"' || c == '\'') {
+                offset = indexOf(ch, length, c, offset);
+                if (offset == -1) {
+                    return -1;
+                }
+                ++offset;
+            }
+        }
+        return -1;
+    } // skipTag(char[],int,int):int
+
+    /**
+     * Skips the rest of a document type declaration, including its
+     * internal subset, and returns the offset following it, or -1.
+     */
+    private static int skipDoctype(char[] ch, int length, int offset) {
+        boolean inSubset = false;
+        while (offset != -1 && offset < length) {
+            char c = ch[offset];
+            if (c == '"' || c == '\'') {
+                offset = indexOf(ch, length, c, offset + 1);
+                if (offset != -1) {
+                    ++offset;
+                }
+            }
+            else if (inSubset && startsWith(ch, length, offset, "<!--")) {
+                offset = indexOf(ch, length, "-->", offset + 4);
+            }
+            else if (inSubset && startsWith(ch, length, offset, "<?")) {
+                offset = indexOf(ch, length, "?>", offset + 2);
+            }
+            else if (c == '[' && !inSubset) {
+                inSubset = true;
+                ++offset;
+            }
+            else if (c == ']' && inSubset) {
+                inSubset = false;
+                ++offset;
+            }
+            else if (c == '>' && !inSubset) {
+                return offset + 1;
+            }
+            else {
+                ++offset;
+            }
+        }
+        return -1;
+    } // skipDoctype(char[],int,int):int
+
+    /** Returns true if the given string occurs at the given offset. */
+    private static boolean startsWith(char[] ch, int length, int offset, String s) {
+        if (offset + s.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); ++i) {
+            if (ch[offset + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    } // startsWith(char[],int,int,String):boolean
+
+    /** Returns the offset of a character, or -1. */
+    private static int indexOf(char[] ch, int length, char c, int offset) {
+        for (; offset < length; ++offset) {
+            if (ch[offset] == c) {
+                return offset;
+            }
+        }
+        return -1;
+    } // indexOf(char[],int,char,int):int
+
+    /**
+     * Returns the offset following the given delimiter, or -1 if it does
+     * not occur.
+     */
+    private static int indexOf(char[] ch, int length, String s, int offset) {
+        final char first = s.charAt(0);
+        while ((offset = indexOf(ch, length, first, offset)) != -1) {
+            if (startsWith(ch, length, offset, s)) {
+                return offset + s.length();
+            }
+            ++offset;
+        }
+        return -1;
+    } // indexOf(char[],int,String,int):int
+
+    /**
+     * Determines the encoding of a document from the given encoding, its
+     * byte order mark or its XML declaration. Returns the IANA and Java
+     * names of the encoding, or null if the encoding is not supported
+     * here.
+     */
+    private static String[] detectEncoding(byte[] b, int length, String encoding) {
+        if (encoding == null && length >= 2) {
+            int b0 = b[0] & 0xFF;
+            int b1 = b[1] & 0xFF;
+            if ((b0 == 0xFE && b1 == 0xFF) || (b0 == 0xFF && b1 == 0xFE)) {
+                return new String[] { "UTF-16", "UTF-16" };
+            }
+            if (b0 == 0x00 && b1 == 0x3C) {
+                return new String[] { "UTF-16BE", "UTF-16BE" };
+            }
+            if (b0 == 0x3C && b1 == 0x00) {
+                return new String[] { "UTF-16LE", "UTF-16LE" };
+            }
+            if (b0 == 0xEF && b1 == 0xBB) {
+                return new String[] { "UTF-8", "UTF-8" };
+            }
+            if (b0 != '<' && b0 != ' ' && b0 != '\t' && b0 != '\n' && b0 != '\r') {
+                return null;
+            }
+            encoding = "UTF-8";
+            if (length > 5 && b0 == '<' && b1 == '?' && b[2] == 'x' &&
+                b[3] == 'm' && b[4] == 'l') {
+                int end = 5;
+                while (end < length && b[end] != '>') {
+                    ++end;
+                }
+                StringBuffer buffer = new StringBuffer(end);
+                for (int i = 0; i < end; ++i) {
+                    buffer.append((char) (b[i] & 0xFF));
+                }
+                String decl = buffer.toString();
+                int index = decl.indexOf("encoding");
+                if (index != -1) {
+                    index = decl.indexOf('=', index);
+                    int quote = (index != -1) ? index + 1 : -1;
+                    while (quote != -1 && quote < decl.length() &&
+                           decl.charAt(quote) != '"' && decl.charAt(quote) != '\'') {
+                        ++quote;
+                    }
+                    if (quote == -1 || quote >= decl.length()) {
+                        return null;
+                    }
+                    int close = decl.indexOf(decl.charAt(quote), quote + 1);
+                    if (close == -1) {
+                        return null;
+                    }
+                    encoding = decl.substring(quote + 1, close);
+                }
+            }
+        }
+        else if (encoding == null) {
+            return null;
+        }
+        String iana = encoding.toUpperCase(Locale.ENGLISH);
+        String java = EncodingMap.getIANA2JavaMapping(iana);
+        if (java == null) {
+            return null;
+        }
+        // leave the byte order mark and its checks to the scanner
+        if (iana.equals("UTF-16") || iana.equals("ISO-10646-UCS-2")) {
+            java = "UTF-16";
+        }
+        try {
+            return Charset.isSupported(java) ? new String[] { encoding, java } : null;
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+    } // detectEncoding(byte[],int,String):String[]
+
+    /**
+     * Decodes a document, without its byte order mark. Returns null if the
+     * document cannot be decoded.
+     */
+    private static CharBuffer decode(byte[] b, int length, String javaEncoding) {
+        int offset = 0;
+        if (length >= 3 && (b[0] & 0xFF) == 0xEF && (b[1] & 0xFF) == 0xBB &&
+            (b[2] & 0xFF) == 0xBF) {
+            offset = 3;
+        }
+        try {
+            CharsetDecoder decoder = Charset.forName(javaEncoding).newDecoder();
+            decoder.onMalformedInput(CodingErrorAction.REPORT);
+            decoder.onUnmappableCharacter(CodingErrorAction.REPORT);
+            CharBuffer chars = decoder.decode(ByteBuffer.wrap(b, offset, length - offset));
+            return chars.hasArray() && chars.arrayOffset() == 0 && chars.position() == 0 ? chars : null;
+        }
+        catch (CharacterCodingException e) {
+            return null;
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+    } // decode(byte[],int,String):CharBuffer
+
+    //
+    // Classes
+    //
+
+    /** The settings of this parser passed on to the worker parsers. */
+    private static final class Settings {
+
+        final Vector fIdleWorkers;
+        final boolean[] fFeatures;
+        final Object fDocumentClassName;
+        final Object fSecurityManager;
+
+        Settings(ParallelDOMParser parser) {
+            fIdleWorkers = parser.fWorkers;
+            fFeatures = new boolean[WORKER_FEATURES.length];
+            for (int i = 0; i < fFeatures.length; ++i) {
+                try {
+                    fFeatures[i] = parser.fConfiguration.getFeature(WORKER_FEATURES[i]);
+                }
+                catch (XMLConfigurationException e) {
+                }
+            }
+            fDocumentClassName = parser.fConfiguration.getProperty(DOCUMENT_CLASS_NAME);
+            Object securityManager = null;
+            try {
+                securityManager = parser.fConfiguration.getProperty(SECURITY_MANAGER);
+            }
+            catch (XMLConfigurationException e) {
+            }
+            fSecurityManager = securityManager;
+        }
+
+    } // class Settings
+
+    /**
+     * Parses one piece of the document with a parser of its own. The
+     * document built is only used if parsing reported no errors or
+     * warnings.
+     */
+    private static final class Worker implements Runnable, XMLErrorHandler {
+
+        /** The piece has not been parsed yet. */
+        private static final int PENDING = 0;
+        /** The piece is being parsed. */
+        private static final int PARSING = 1;
+        /** The piece has been parsed, or will not be parsed. */
+        private static final int DONE = 2;
+
+        private final Settings fSettings;
+        private final XMLInputSource fSource;
+        private final char[] fText;
+        private final int[] fRanges;
+
+        private int fState;
+        private Document fDocument;
+        private boolean fSawError;
+
+        Worker(Settings settings, XMLInputSource source, char[] text, int[] ranges) {
+            fSettings = settings;
+            fSource = source;
+            fText = text;
+            fRanges = ranges;
+        }
+
+        public void run() {
+            synchronized (this) {
+                if (fState != PENDING) {
+                    return;
+                }
+                fState = PARSING;
+            }
+            Document document = null;
+            DOMParser parser = null;
+            try {
+                parser = getParser();
+                fSource.setCharacterStream(new SegmentReader(fText, fRanges));
+                parser.parse(fSource);
+                if (!fSawError) {
+                    document = parser.getDocument();
+                }
+            }
+            // the document will be parsed again on the calling thread
+            catch (Exception e) {
+            }
+            finally {
+                if (parser != null) {
+                    parser.dropDocumentReferences();
+                    fSettings.fIdleWorkers.addElement(parser);
+                }
+                synchronized (this) {
+                    fDocument = document;
+                    fState = DONE;
+                    notifyAll();
+                }
+            }
+        } // run()
+
+        /** Stops this worker if it has not started yet. */
+        synchronized void cancel() {
+            if (fState == PENDING) {
+                fState = DONE;
+            }
+        } // cancel()
+
+        /**
+         * Returns the document built from the piece, parsing it on the
+         * calling thread if it has not been started yet. Returns null if
+         * the piece could not be parsed without errors.
+         */
+        Document getDocument() {
+            run();
+            synchronized (this) {
+                while (fState == PARSING) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                }
+                final Document document = fDocument;
+                fDocument = null;
+                return document;
+            }
+        } // getDocument():Document
+
+        /** Returns an idle parser configured like the parallel parser. */
+        private DOMParser getParser() {
+            DOMParser parser = null;
+            final Vector idle = fSettings.fIdleWorkers;
+            synchronized (idle) {
+                if (!idle.isEmpty()) {
+                    parser = (DOMParser) idle.remove(idle.size() - 1);
+                }
+            }
+            if (parser == null) {
+                parser = new DOMParser();
+            }
+            for (int i = 0; i < WORKER_FEATURES.length; ++i) {
+                parser.fConfiguration.setFeature(WORKER_FEATURES[i], fSettings.fFeatures[i]);
+            }
+            parser.fConfiguration.setFeature(DEFER_NODE_EXPANSION, false);
+            parser.fConfiguration.setProperty(DOCUMENT_CLASS_NAME, fSettings.fDocumentClassName);
+            if (fSettings.fSecurityManager != null) {
+                parser.fConfiguration.setProperty(SECURITY_MANAGER, fSettings.fSecurityManager);
+            }
+            parser.fConfiguration.setProperty(ERROR_HANDLER, this);
+            return parser;
+        } // getParser():DOMParser
+
+        //
+        // XMLErrorHandler methods
+        //
+
+        public void warning(String domain, String key, XMLParseException exception) {
+            fSawError = true;
+        }
+
+        public void error(String domain, String key, XMLParseException exception) {
+            fSawError = true;
+        }
+
+        public void fatalError(String domain, String key, XMLParseException exception) {
+            fSawError = true;
+        }
+
+    } // class Worker
+
+    /** Reads a sequence of ranges of a character array. */
+    private static final class SegmentReader extends Reader {
+
+        private final char[] fText;
+        private final int[] fRanges;
+        private int fRange;
+        private int fOffset;
+
+        SegmentReader(char[] text, int[] ranges) {
+            fText = text;
+            fRanges = ranges;
+            fOffset = ranges[0];
+        }
+
+        public int read(char[] cbuf, int off, int len) {
+            while (fRange < fRanges.length && fOffset == fRanges[fRange + 1]) {
+                fRange += 2;
+                if (fRange < fRanges.length) {
+                    fOffset = fRanges[fRange];
+                }
+            }
+            if (fRange >= fRanges.length) {
+                return -1;
+            }
+            int count = Math.min(len, fRanges[fRange + 1] - fOffset);
+            System.arraycopy(fText, fOffset, cbuf, off, count);
+            fOffset += count;
+            return count;
+        } // read(char[],int,int):int
+
+        public void close() {
+        } // close()
+
+    } // class SegmentReader
+
+    /** A growable character buffer filled from a reader. */
+    private static final class CharArrayBuffer {
+
+        char[] ch = new char[8192];
+        int length;
+
+        void read(Reader reader) throws IOException {
+            int count;
+            while ((count = reader.read(ch, length, ch.length - length)) != -1) {
+                length += count;
+                if (length == ch.length) {
+                    char[] newch = new char[ch.length << 1];
+                    System.arraycopy(ch, 0, newch, 0, length);
+                    ch = newch;
+                }
+            }
+        } // read(Reader)
+
+    } // class CharArrayBuffer
+
+    /** A growable byte buffer filled from a stream. */
+    private static final class ByteArrayBuffer {
+
+        byte[] bytes = new byte[8192];
+        int length;
+
+        void read(InputStream stream) throws IOException {
+            int count;
+            while ((count = stream.read(bytes, length, bytes.length - length)) != -1) {
+                length += count;
+                if (length == bytes.length) {
+                    byte[] newbytes = new byte[bytes.length << 1];
+                    System.arraycopy(bytes, 0, newbytes, 0, length);
+                    bytes = newbytes;
+                }
+            }
+        } // read(InputStream)
+
+    } // class ByteArrayBuffer
+
+} // class ParallelDOMParser
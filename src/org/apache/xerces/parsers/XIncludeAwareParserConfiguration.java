@@ -62,6 +62,10 @@ public class XIncludeAwareParserConfiguration extends XML11Configuration {
     /** Property identifier: error reporter. */
     protected static final String NAMESPACE_CONTEXT =
         Constants.XERCES_PROPERTY_PREFIX + Constants.NAMESPACE_CONTEXT_PROPERTY;
+
+    /** Property identifier: XInclude cache. */
+    protected static final String XINCLUDE_CACHE =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.XINCLUDE_CACHE_PROPERTY;
     
     //
     // Components
@@ -134,7 +138,7 @@ public class XIncludeAwareParserConfiguration extends XML11Configuration {
         
         // add default recognized properties
         final String[] recognizedProperties =
-        { XINCLUDE_HANDLER, NAMESPACE_CONTEXT };
+        { XINCLUDE_HANDLER, NAMESPACE_CONTEXT, XINCLUDE_CACHE };
         addRecognizedProperties(recognizedProperties);
         
         setFeature(ALLOW_UE_AND_NOTATION_EVENTS, true);
@@ -60,6 +60,10 @@ public class XIncludeParserConfiguration extends XML11Configuration {
     protected static final String NAMESPACE_CONTEXT =
         Constants.XERCES_PROPERTY_PREFIX + Constants.NAMESPACE_CONTEXT_PROPERTY;
 
+    /** Property identifier: XInclude cache. */
+    protected static final String XINCLUDE_CACHE =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.XINCLUDE_CACHE_PROPERTY;
+
     /** Default constructor. */
     public XIncludeParserConfiguration() {
         this(null, null, null);
@@ -115,7 +119,7 @@ public class XIncludeParserConfiguration extends XML11Configuration {
 
         // add default recognized properties
         final String[] recognizedProperties =
-            { XINCLUDE_HANDLER, NAMESPACE_CONTEXT };
+            { XINCLUDE_HANDLER, NAMESPACE_CONTEXT, XINCLUDE_CACHE };
         addRecognizedProperties(recognizedProperties);
         
         setFeature(ALLOW_UE_AND_NOTATION_EVENTS, true);
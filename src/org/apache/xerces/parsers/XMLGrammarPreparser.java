@@ -18,6 +18,8 @@
 package org.apache.xerces.parsers;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Locale;
@@ -25,6 +27,7 @@ import java.util.Locale;
 import org.apache.xerces.impl.Constants;
 import org.apache.xerces.impl.XMLEntityManager;
 import org.apache.xerces.impl.XMLErrorReporter;
+import org.apache.xerces.impl.XMLGrammarSerializer;
 import org.apache.xerces.util.SymbolTable;
 import org.apache.xerces.xni.XNIException;
 import org.apache.xerces.xni.grammars.Grammar;
@@ -189,27 +192,66 @@ public class XMLGrammarPreparser {
     public Grammar preparseGrammar(String type, XMLInputSource
                 is) throws XNIException, IOException {
         if (fLoaders.containsKey(type)) {
-            XMLGrammarLoaderContainer xglc = (XMLGrammarLoaderContainer) fLoaders.get(type);
-            XMLGrammarLoader gl = xglc.loader;
-            if (xglc.modCount != fModCount) {
-                // make sure gl's been set up with all the "basic" properties:
-                gl.setProperty(SYMBOL_TABLE, fSymbolTable);
-                gl.setProperty(ENTITY_RESOLVER, fEntityResolver);
-                gl.setProperty(ERROR_REPORTER, fErrorReporter);
-                // potentially, not all will support this one...
+            XMLGrammarLoader gl = getConfiguredLoader(type);
+            return gl.loadGrammar(is);
+        }
+        return null;
+    } // preparseGrammar(String, XMLInputSource):  Grammar
+
+    /**
+     * Writes the given grammars of the given type to a stream in a
+     * compact binary form, from which they can be restored with
+     * <code>restoreGrammars</code> much faster than they can be
+     * parsed again. The grammars which the given grammars import should
+     * be among them; all the grammars of a type cached in a grammar
+     * pool can be written with
+     * <code>saveGrammars(type, pool.retrieveInitialGrammarSet(type), out)</code>.
+     *
+     * @param type The type of the grammars.
+     * @param grammars The grammars to write.
+     * @param out The stream to write to; it is not closed.
+     * @return true if the grammars were written; false if the loader
+     *       registered for the type cannot write grammars
+     * @exception IOException thrown if an error is encountered
+     * while writing the grammars
+     */
+    public boolean saveGrammars(String type, Grammar[] grammars,
+                OutputStream out) throws IOException {
+        if (fLoaders.containsKey(type)) {
+            XMLGrammarLoader gl = getConfiguredLoader(type);
+            if (gl instanceof XMLGrammarSerializer) {
+                ((XMLGrammarSerializer) gl).writeGrammars(grammars, out);
+                return true;
+            }
+        }
+        return false;
+    } // saveGrammars(String, Grammar[], OutputStream):  boolean
+
+    /**
+     * Reads grammars of the given type written by <code>saveGrammars</code>.
+     * This method also adds the grammars to the XMLGrammarPool.
+     *
+     * @param type The type of the grammars.
+     * @param in The stream to read from; it is not closed.
+     * @return The grammars read; null if the loader registered for
+     *       the type cannot read grammars
+     * @exception IOException thrown if an error is encountered
+     * while reading the grammars or if the stream does not contain
+     * grammars of the given type
+     */
+    public Grammar[] restoreGrammars(String type, InputStream in) throws IOException {
+        if (fLoaders.containsKey(type)) {
+            XMLGrammarLoader gl = getConfiguredLoader(type);
+            if (gl instanceof XMLGrammarSerializer) {
+                Grammar[] grammars = ((XMLGrammarSerializer) gl).readGrammars(in);
                 if (fGrammarPool != null) {
-                    try {
-                        gl.setProperty(GRAMMAR_POOL, fGrammarPool);
-                    } catch(Exception e) {
-                        // too bad...
-                    }
+                    fGrammarPool.cacheGrammars(type, grammars);
                 }
-                xglc.modCount = fModCount;
+                return grammars;
             }
-            return gl.loadGrammar(is);
         }
         return null;
-    } // preparseGrammar(String, XMLInputSource):  Grammar
+    } // restoreGrammars(String, InputStream):  Grammar[]
 
     /**
      * Set the locale to use for messages.
@@ -370,6 +412,30 @@ public class XMLGrammarPreparser {
         }
     }
     
+    /**
+     * Returns the loader registered for the given type, after making
+     * sure it has been set up with all the "basic" properties.
+     */
+    private XMLGrammarLoader getConfiguredLoader(String type) {
+        XMLGrammarLoaderContainer xglc = (XMLGrammarLoaderContainer) fLoaders.get(type);
+        XMLGrammarLoader gl = xglc.loader;
+        if (xglc.modCount != fModCount) {
+            gl.setProperty(SYMBOL_TABLE, fSymbolTable);
+            gl.setProperty(ENTITY_RESOLVER, fEntityResolver);
+            gl.setProperty(ERROR_REPORTER, fErrorReporter);
+            // potentially, not all will support this one...
+            if (fGrammarPool != null) {
+                try {
+                    gl.setProperty(GRAMMAR_POOL, fGrammarPool);
+                } catch(Exception e) {
+                    // too bad...
+                }
+            }
+            xglc.modCount = fModCount;
+        }
+        return gl;
+    }
+    
     private void clearModCounts() {
         Enumeration loaders = fLoaders.elements();
         while (loaders.hasMoreElements()) {
@@ -0,0 +1,395 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.stax;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import org.apache.xerces.util.NamespaceSupport;
+import org.apache.xerces.util.ParserConfigurationSettings;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.XMLAttributesImpl;
+import org.apache.xerces.util.XMLSymbols;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLDTDContentModelHandler;
+import org.apache.xerces.xni.XMLDTDHandler;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLConfigurationException;
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLPullParserConfiguration;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+/**
+ * <p>A pull parser configuration which reports a DOM node to the
+ * document handler, one node per step, so that stream readers can be
+ * created for a <code>DOMSource</code>.</p>
+ *
+ * <p>Namespace declarations are taken from the namespace attributes
+ * and, where the tree lacks them, from the names of elements and
+ * attributes. Attributes are reported as CDATA, or ID if the DOM says so.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class DOMSourceConfiguration extends ParserConfigurationSettings
+    implements XMLPullParserConfiguration {
+
+    //
+    // Data
+    //
+
+    /** The node reported to the document handler. */
+    private final Node fRoot;
+
+    /** The node to enter or leave on the next step. */
+    private Node fCurrent;
+
+    /** True if the current node is entered on the next step. */
+    private boolean fEntering;
+
+    /** True once the start of the document has been reported. */
+    private boolean fStarted;
+
+    /** True once the end of the document has been reported. */
+    private boolean fDone;
+
+    // handlers
+
+    private XMLDocumentHandler fDocumentHandler;
+    private XMLDTDHandler fDTDHandler;
+    private XMLDTDContentModelHandler fDTDContentModelHandler;
+    private XMLErrorHandler fErrorHandler;
+    private XMLEntityResolver fEntityResolver;
+    private Locale fLocale;
+
+    // reusable objects
+
+    private final SymbolTable fSymbolTable = new SymbolTable();
+    private final NamespaceSupport fNamespaceContext = new NamespaceSupport();
+    private final QName fElementQName = new QName();
+    private final QName fAttributeQName = new QName();
+    private final XMLAttributesImpl fAttributes = new XMLAttributesImpl();
+    private final XMLString fTempString = new XMLString();
+    private char[] fCharBuffer = new char[1024];
+
+    //
+    // Constructors
+    //
+
+    DOMSourceConfiguration(Node root) {
+        fRoot = root;
+    }
+
+    //
+    // XMLPullParserConfiguration methods
+    //
+
+    /** The input is the node given to the constructor. */
+    public void setInputSource(XMLInputSource inputSource)
+            throws XMLConfigurationException, IOException {
+    }
+
+    public boolean parse(boolean complete) throws XNIException, IOException {
+        if (fDone) {
+            return false;
+        }
+        do {
+            step();
+        }
+        while (complete && !fDone);
+        return !fDone;
+    }
+
+    public void cleanup() {
+        fDone = true;
+    }
+
+    //
+    // XMLParserConfiguration methods
+    //
+
+    public void parse(XMLInputSource inputSource) throws XNIException, IOException {
+        setInputSource(inputSource);
+        parse(true);
+    }
+
+    public void setErrorHandler(XMLErrorHandler errorHandler) {
+        fErrorHandler = errorHandler;
+    }
+
+    public XMLErrorHandler getErrorHandler() {
+        return fErrorHandler;
+    }
+
+    public void setDocumentHandler(XMLDocumentHandler documentHandler) {
+        fDocumentHandler = documentHandler;
+    }
+
+    public XMLDocumentHandler getDocumentHandler() {
+        return fDocumentHandler;
+    }
+
+    public void setDTDHandler(XMLDTDHandler dtdHandler) {
+        fDTDHandler = dtdHandler;
+    }
+
+    public XMLDTDHandler getDTDHandler() {
+        return fDTDHandler;
+    }
+
+    public void setDTDContentModelHandler(XMLDTDContentModelHandler dtdContentModelHandler) {
+        fDTDContentModelHandler = dtdContentModelHandler;
+    }
+
+    public XMLDTDContentModelHandler getDTDContentModelHandler() {
+        return fDTDContentModelHandler;
+    }
+
+    public void setEntityResolver(XMLEntityResolver entityResolver) {
+        fEntityResolver = entityResolver;
+    }
+
+    public XMLEntityResolver getEntityResolver() {
+        return fEntityResolver;
+    }
+
+    public void setLocale(Locale locale) throws XNIException {
+        fLocale = locale;
+    }
+
+    public Locale getLocale() {
+        return fLocale;
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Reports the start of the document or enters or leaves one node. */
+    private void step() {
+        if (!fStarted) {
+            fStarted = true;
+            startDocument();
+            final short type = fRoot.getNodeType();
+            fCurrent = (type == Node.DOCUMENT_NODE || type == Node.DOCUMENT_FRAGMENT_NODE) ?
+                    fRoot.getFirstChild() : fRoot;
+            fEntering = true;
+            if (fCurrent == null) {
+                endDocument();
+            }
+            return;
+        }
+        final Node node = fCurrent;
+        if (fEntering) {
+            if (beginNode(node)) {
+                fCurrent = node.getFirstChild();
+                return;
+            }
+        }
+        else {
+            finishNode(node);
+        }
+        // move on to the next sibling, or leave the parent
+        if (node == fRoot) {
+            endDocument();
+            return;
+        }
+        Node next = node.getNextSibling();
+        if (next != null) {
+            fCurrent = next;
+            fEntering = true;
+            return;
+        }
+        Node parent = node.getParentNode();
+        if (parent == null || (parent == fRoot && fRoot.getNodeType() != Node.ELEMENT_NODE &&
+                fRoot.getNodeType() != Node.ENTITY_REFERENCE_NODE)) {
+            endDocument();
+            return;
+        }
+        fCurrent = parent;
+        fEntering = false;
+    } // step()
+
+    private void startDocument() {
+        Document document = (fRoot.getNodeType() == Node.DOCUMENT_NODE) ?
+                (Document) fRoot : fRoot.getOwnerDocument();
+        String encoding = (document != null) ? document.getInputEncoding() : null;
+        fNamespaceContext.reset();
+        fDocumentHandler.startDocument(null, encoding, fNamespaceContext, null);
+        if (fRoot == document) {
+            fDocumentHandler.xmlDecl(document.getXmlVersion(), document.getXmlEncoding(),
+                    document.getXmlStandalone() ? "yes" : null, null);
+        }
+    } // startDocument()
+
+    private void endDocument() {
+        fDone = true;
+        fDocumentHandler.endDocument(null);
+    } // endDocument()
+
+    /**
+     * Reports the start of a node. Returns true if the children of the
+     * node are reported next.
+     */
+    private boolean beginNode(Node node) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE: {
+                fNamespaceContext.pushContext();
+                fillQName(fElementQName, node);
+                processAttributes(node.getAttributes());
+                declarePrefix(fElementQName);
+                if (node.hasChildNodes()) {
+                    fDocumentHandler.startElement(fElementQName, fAttributes, null);
+                    return true;
+                }
+                fDocumentHandler.emptyElement(fElementQName, fAttributes, null);
+                fNamespaceContext.popContext();
+                return false;
+            }
+            case Node.TEXT_NODE:
+                fDocumentHandler.characters(toXMLString(node.getNodeValue()), null);
+                return false;
+            case Node.CDATA_SECTION_NODE:
+                fDocumentHandler.startCDATA(null);
+                fDocumentHandler.characters(toXMLString(node.getNodeValue()), null);
+                fDocumentHandler.endCDATA(null);
+                return false;
+            case Node.COMMENT_NODE:
+                fDocumentHandler.comment(toXMLString(node.getNodeValue()), null);
+                return false;
+            case Node.PROCESSING_INSTRUCTION_NODE: {
+                ProcessingInstruction pi = (ProcessingInstruction) node;
+                fDocumentHandler.processingInstruction(fSymbolTable.addSymbol(pi.getTarget()),
+                        toXMLString(pi.getData()), null);
+                return false;
+            }
+            case Node.DOCUMENT_TYPE_NODE: {
+                DocumentType doctype = (DocumentType) node;
+                fDocumentHandler.doctypeDecl(doctype.getName(), doctype.getPublicId(),
+                        doctype.getSystemId(), null);
+                return false;
+            }
+            case Node.ENTITY_REFERENCE_NODE:
+                fDocumentHandler.startGeneralEntity(fSymbolTable.addSymbol(node.getNodeName()),
+                        null, null, null);
+                if (node.hasChildNodes()) {
+                    return true;
+                }
+                fDocumentHandler.endGeneralEntity(fSymbolTable.addSymbol(node.getNodeName()), null);
+                return false;
+        }
+        return false;
+    } // beginNode(Node):boolean
+
+    /** Reports the end of a node whose children have been reported. */
+    private void finishNode(Node node) {
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            fillQName(fElementQName, node);
+            fDocumentHandler.endElement(fElementQName, null);
+            fNamespaceContext.popContext();
+        }
+        else if (node.getNodeType() == Node.ENTITY_REFERENCE_NODE) {
+            fDocumentHandler.endGeneralEntity(fSymbolTable.addSymbol(node.getNodeName()), null);
+        }
+    } // finishNode(Node)
+
+    private void fillQName(QName toFill, Node node) {
+        final String prefix = node.getPrefix();
+        final String localName = node.getLocalName();
+        final String rawName = node.getNodeName();
+        final String namespace = node.getNamespaceURI();
+        toFill.prefix = (prefix != null) ? fSymbolTable.addSymbol(prefix) : XMLSymbols.EMPTY_STRING;
+        toFill.rawname = (rawName != null) ? fSymbolTable.addSymbol(rawName) : XMLSymbols.EMPTY_STRING;
+        toFill.localpart = (localName != null) ? fSymbolTable.addSymbol(localName) : toFill.rawname;
+        toFill.uri = (namespace != null && namespace.length() > 0) ? fSymbolTable.addSymbol(namespace) : null;
+    } // fillQName(QName,Node)
+
+    private void processAttributes(NamedNodeMap attrMap) {
+        fAttributes.removeAllAttributes();
+        if (attrMap == null) {
+            return;
+        }
+        final int attrCount = attrMap.getLength();
+        // declare the namespaces first, so that the prefixes of the
+        // other attributes are checked against them
+        for (int i = 0; i < attrCount; ++i) {
+            Attr attr = (Attr) attrMap.item(i);
+            fillQName(fAttributeQName, attr);
+            if (fAttributeQName.uri == NamespaceContext.XMLNS_URI) {
+                String value = attr.getValue();
+                String uri = (value != null && value.length() != 0) ? fSymbolTable.addSymbol(value) : null;
+                if (fAttributeQName.prefix == XMLSymbols.PREFIX_XMLNS) {
+                    fNamespaceContext.declarePrefix(fAttributeQName.localpart, uri);
+                }
+                else {
+                    fNamespaceContext.declarePrefix(XMLSymbols.EMPTY_STRING, uri);
+                }
+            }
+        }
+        for (int i = 0; i < attrCount; ++i) {
+            Attr attr = (Attr) attrMap.item(i);
+            String value = attr.getValue();
+            if (value == null) {
+                value = XMLSymbols.EMPTY_STRING;
+            }
+            fillQName(fAttributeQName, attr);
+            if (fAttributeQName.uri != NamespaceContext.XMLNS_URI &&
+                    fAttributeQName.prefix != XMLSymbols.EMPTY_STRING) {
+                declarePrefix(fAttributeQName);
+            }
+            fAttributes.addAttributeNS(fAttributeQName,
+                    attr.isId() ? XMLSymbols.fIDSymbol : XMLSymbols.fCDATASymbol, value);
+            fAttributes.setSpecified(fAttributes.getLength() - 1, attr.getSpecified());
+        }
+    } // processAttributes(NamedNodeMap)
+
+    /** Declares the prefix of a name if it is not bound to the name's namespace. */
+    private void declarePrefix(QName name) {
+        if (name.uri == NamespaceContext.XMLNS_URI || name.uri == NamespaceContext.XML_URI) {
+            return;
+        }
+        if (fNamespaceContext.getURI(name.prefix) != name.uri &&
+                (name.uri != null || name.prefix == XMLSymbols.EMPTY_STRING)) {
+            fNamespaceContext.declarePrefix(name.prefix, name.uri);
+        }
+    } // declarePrefix(QName)
+
+    private XMLString toXMLString(String text) {
+        final int length = (text != null) ? text.length() : 0;
+        if (fCharBuffer.length < length) {
+            fCharBuffer = new char[Math.max(length, fCharBuffer.length << 1)];
+        }
+        if (length > 0) {
+            text.getChars(0, length, fCharBuffer, 0);
+        }
+        fTempString.setValues(fCharBuffer, 0, length);
+        return fTempString;
+    } // toXMLString(String):XMLString
+
+} // class DOMSourceConfiguration
@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.stax;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.util.XMLEventAllocator;
+
+import org.apache.xerces.stax.events.AttributeImpl;
+import org.apache.xerces.stax.events.CharactersImpl;
+import org.apache.xerces.stax.events.CommentImpl;
+import org.apache.xerces.stax.events.DTDImpl;
+import org.apache.xerces.stax.events.EndDocumentImpl;
+import org.apache.xerces.stax.events.EndElementImpl;
+import org.apache.xerces.stax.events.EntityReferenceImpl;
+import org.apache.xerces.stax.events.NamespaceImpl;
+import org.apache.xerces.stax.events.ProcessingInstructionImpl;
+import org.apache.xerces.stax.events.StartDocumentImpl;
+import org.apache.xerces.stax.events.StartElementImpl;
+
+/**
+ * <p>An <code>XMLEventReader</code> which makes an event of each state
+ * of an <code>XMLStreamReader</code>.</p>
+ *
+ * <p>Events are allocated by the <code>XMLEventAllocator</code> set on
+ * the factory, if there is one. Otherwise the reader creates them itself
+ * and, since the namespace context of the stream reader changes as it
+ * moves on, gives each start element a snapshot of the bindings in scope.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class XMLEventReaderImpl implements XMLEventReader, XMLStreamConstants {
+
+    /** The stream reader the events are made from. */
+    private final XMLStreamReader fReader;
+
+    /** The allocator which makes the events, or null. */
+    private final XMLEventAllocator fAllocator;
+
+    /** True if the current state of the stream reader has not been reported. */
+    private boolean fPending = true;
+
+    /** The event read ahead by peek(), or null. */
+    private XMLEvent fPeeked;
+
+    /** The last event returned. */
+    private XMLEvent fLast;
+
+    /** Namespace bindings of the open elements. */
+    private final ArrayList fScopes = new ArrayList();
+
+    //
+    // Constructors
+    //
+
+    XMLEventReaderImpl(XMLStreamReader reader, XMLEventAllocator allocator) {
+        fReader = reader;
+        fAllocator = allocator;
+    }
+
+    //
+    // XMLEventReader methods
+    //
+
+    public XMLEvent nextEvent() throws XMLStreamException {
+        XMLEvent event = fPeeked;
+        if (event != null) {
+            fPeeked = null;
+        }
+        else {
+            if (!fPending) {
+                if (!fReader.hasNext()) {
+                    throw new NoSuchElementException("No more events to read.");
+                }
+                fReader.next();
+            }
+            fPending = false;
+            event = allocate();
+        }
+        fLast = event;
+        return event;
+    }
+
+    public boolean hasNext() {
+        try {
+            return fPeeked != null || fPending || fReader.hasNext();
+        }
+        catch (XMLStreamException e) {
+            return false;
+        }
+    }
+
+    public XMLEvent peek() throws XMLStreamException {
+        if (fPeeked == null && hasNext()) {
+            XMLEvent last = fLast;
+            fPeeked = nextEvent();
+            fLast = last;
+        }
+        return fPeeked;
+    }
+
+    public Object next() {
+        try {
+            return nextEvent();
+        }
+        catch (XMLStreamException e) {
+            NoSuchElementException nse = new NoSuchElementException(e.getMessage());
+            nse.initCause(e);
+            throw nse;
+        }
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    public String getElementText() throws XMLStreamException {
+        if (fLast == null || !fLast.isStartElement()) {
+            throw new XMLStreamException("Parser must be on START_ELEMENT to read next text.",
+                    fLast != null ? fLast.getLocation() : null);
+        }
+        return getElementText(this);
+    }
+
+    public XMLEvent nextTag() throws XMLStreamException {
+        return nextTag(this);
+    }
+
+    public Object getProperty(String name) throws IllegalArgumentException {
+        return fReader.getProperty(name);
+    }
+
+    public void close() throws XMLStreamException {
+        fPeeked = null;
+        fReader.close();
+    }
+
+    //
+    // Package methods
+    //
+
+    /**
+     * Reads the text of the element whose start was the last event
+     * returned by the given reader, up to its end.
+     */
+    static String getElementText(XMLEventReader reader) throws XMLStreamException {
+        StringBuffer buffer = new StringBuffer();
+        XMLEvent event = reader.nextEvent();
+        while (!event.isEndElement()) {
+            final int type = event.getEventType();
+            if (type == CHARACTERS || type == CDATA || type == SPACE) {
+                buffer.append(event.asCharacters().getData());
+            }
+            else if (type == END_DOCUMENT) {
+                throw new XMLStreamException("Unexpected end of document when reading element text content.", event.getLocation());
+            }
+            else if (type == START_ELEMENT) {
+                throw new XMLStreamException("Element text content may not contain START_ELEMENT.", event.getLocation());
+            }
+            else if (type != PROCESSING_INSTRUCTION && type != COMMENT && type != ENTITY_REFERENCE) {
+                throw new XMLStreamException("Unexpected event type " + type + ".", event.getLocation());
+            }
+            event = reader.nextEvent();
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Skips white space, comments and processing instructions up to
+     * the next start or end tag of the given reader.
+     */
+    static XMLEvent nextTag(XMLEventReader reader) throws XMLStreamException {
+        XMLEvent event = reader.nextEvent();
+        while ((event.isCharacters() && ((Characters) event).isWhiteSpace()) ||
+                event.isProcessingInstruction() || event.getEventType() == COMMENT) {
+            event = reader.nextEvent();
+        }
+        if (!event.isStartElement() && !event.isEndElement()) {
+            throw new XMLStreamException("Expected start or end tag.", event.getLocation());
+        }
+        return event;
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Makes an event of the current state of the stream reader. */
+    private XMLEvent allocate() throws XMLStreamException {
+        if (fAllocator != null) {
+            return fAllocator.allocate(fReader);
+        }
+        final XMLStreamReader reader = fReader;
+        final Location location = reader.getLocation();
+        switch (reader.getEventType()) {
+            case START_ELEMENT: {
+                final int attributeCount = reader.getAttributeCount();
+                ArrayList attributes = new ArrayList(attributeCount);
+                for (int i = 0; i < attributeCount; ++i) {
+                    attributes.add(new AttributeImpl(reader.getAttributeName(i),
+                            reader.getAttributeValue(i), reader.getAttributeType(i),
+                            reader.isAttributeSpecified(i), location));
+                }
+                ArrayList namespaces = getNamespaces(location);
+                Scope scope = currentScope();
+                if (!namespaces.isEmpty()) {
+                    scope = new Scope(scope, reader);
+                }
+                fScopes.add(scope);
+                return new StartElementImpl(reader.getName(), attributes.iterator(),
+                        namespaces.iterator(), scope, location);
+            }
+            case END_ELEMENT: {
+                if (!fScopes.isEmpty()) {
+                    fScopes.remove(fScopes.size() - 1);
+                }
+                return new EndElementImpl(reader.getName(), getNamespaces(location).iterator(), location);
+            }
+            case CHARACTERS:
+            case CDATA:
+            case SPACE:
+                return new CharactersImpl(reader.getText(), reader.getEventType(), location);
+            case COMMENT:
+                return new CommentImpl(reader.getText(), location);
+            case PROCESSING_INSTRUCTION:
+                return new ProcessingInstructionImpl(reader.getPITarget(), reader.getPIData(), location);
+            case ENTITY_REFERENCE:
+                return new EntityReferenceImpl(reader.getLocalName(), null, location);
+            case DTD:
+                return new DTDImpl(reader.getText(), location);
+            case START_DOCUMENT: {
+                String encoding = reader.getCharacterEncodingScheme();
+                return new StartDocumentImpl(encoding != null ? encoding : "UTF-8",
+                        encoding != null, reader.isStandalone(), reader.standaloneSet(),
+                        reader.getVersion() != null ? reader.getVersion() : "1.0", location);
+            }
+            case END_DOCUMENT:
+                return new EndDocumentImpl(location);
+        }
+        throw new XMLStreamException("Unexpected event type " + reader.getEventType() + ".", location);
+    }
+
+    /** Returns the namespace events of the current element. */
+    private ArrayList getNamespaces(Location location) {
+        final int count = fReader.getNamespaceCount();
+        ArrayList namespaces = new ArrayList(count);
+        for (int i = 0; i < count; ++i) {
+            namespaces.add(new NamespaceImpl(fReader.getNamespacePrefix(i),
+                    fReader.getNamespaceURI(i), location));
+        }
+        return namespaces;
+    }
+
+    private Scope currentScope() {
+        return fScopes.isEmpty() ? null : (Scope) fScopes.get(fScopes.size() - 1);
+    }
+
+    //
+    // Classes
+    //
+
+    /**
+     * The namespace bindings declared on an element, chained to the
+     * bindings of its ancestors. Scopes are never modified once made.
+     */
+    private static final class Scope implements NamespaceContext {
+
+        private final Scope fParent;
+        private final String[] fPrefixes;
+        private final String[] fURIs;
+
+        Scope(Scope parent, XMLStreamReader reader) {
+            fParent = parent;
+            final int count = reader.getNamespaceCount();
+            fPrefixes = new String[count];
+            fURIs = new String[count];
+            for (int i = 0; i < count; ++i) {
+                String prefix = reader.getNamespacePrefix(i);
+                fPrefixes[i] = (prefix != null) ? prefix : XMLConstants.DEFAULT_NS_PREFIX;
+                fURIs[i] = reader.getNamespaceURI(i);
+            }
+        }
+
+        public String getNamespaceURI(String prefix) {
+            if (prefix == null) {
+                throw new IllegalArgumentException("Prefix cannot be null.");
+            }
+            for (Scope scope = this; scope != null; scope = scope.fParent) {
+                for (int i = 0; i < scope.fPrefixes.length; ++i) {
+                    if (prefix.equals(scope.fPrefixes[i])) {
+                        return scope.fURIs[i];
+                    }
+                }
+            }
+            return DefaultNamespaceContext.getInstance().getNamespaceURI(prefix);
+        }
+
+        public String getPrefix(String namespaceURI) {
+            Iterator prefixes = getPrefixes(namespaceURI);
+            return prefixes.hasNext() ? (String) prefixes.next() : null;
+        }
+
+        public Iterator getPrefixes(String namespaceURI) {
+            if (namespaceURI == null) {
+                throw new IllegalArgumentException("Namespace URI cannot be null.");
+            }
+            String prefix = DefaultNamespaceContext.getInstance().getPrefix(namespaceURI);
+            if (prefix != null) {
+                return Collections.singletonList(prefix).iterator();
+            }
+            // a prefix is bound to the URI unless a nearer scope redeclares it
+            HashSet seen = new HashSet();
+            ArrayList prefixes = new ArrayList();
+            for (Scope scope = this; scope != null; scope = scope.fParent) {
+                for (int i = 0; i < scope.fPrefixes.length; ++i) {
+                    if (seen.add(scope.fPrefixes[i]) && namespaceURI.equals(scope.fURIs[i])) {
+                        prefixes.add(scope.fPrefixes[i]);
+                    }
+                }
+            }
+            if (namespaceURI.length() == 0 && !seen.contains(XMLConstants.DEFAULT_NS_PREFIX)) {
+                prefixes.add(XMLConstants.DEFAULT_NS_PREFIX);
+            }
+            return Collections.unmodifiableList(prefixes).iterator();
+        }
+
+    } // class Scope
+
+} // class XMLEventReaderImpl
@@ -0,0 +1,594 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.stax;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.EventFilter;
+import javax.xml.stream.StreamFilter;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLReporter;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.util.EventReaderDelegate;
+import javax.xml.stream.util.StreamReaderDelegate;
+import javax.xml.stream.util.XMLEventAllocator;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.parsers.XML11Configuration;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLConfigurationException;
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.apache.xerces.xni.parser.XMLPullParserConfiguration;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * <p>Implementation of XMLInputFactory which creates stream readers
+ * backed by the Xerces scanner pipeline.</p>
+ *
+ * <p>Besides the standard StAX properties, the factory accepts the
+ * Xerces feature and property identifiers, which are passed on to the
+ * parser configuration. A <code>Boolean</code> value sets a feature; any
+ * other value sets a property. For instance setting the feature
+ * <code>http://apache.org/xml/features/validation/schema</code> to
+ * <code>Boolean.TRUE</code> validates the document against XML Schema
+ * while it is read.</p>
+ *
+ * <p>Event readers make their events from a stream reader. Besides
+ * stream sources, a <code>SAXSource</code> is read from its input source,
+ * ignoring its XMLReader, and a <code>DOMSource</code> is read from the
+ * tree without parsing.</p>
+ *
+ * @version $Id$
+ */
+public final class XMLInputFactoryImpl extends XMLInputFactory {
+
+    //
+    // Constants
+    //
+
+    /** Feature identifier: namespaces. */
+    private static final String NAMESPACES =
+        Constants.SAX_FEATURE_PREFIX + Constants.NAMESPACES_FEATURE;
+
+    /** Feature identifier: validation. */
+    private static final String VALIDATION =
+        Constants.SAX_FEATURE_PREFIX + Constants.VALIDATION_FEATURE;
+
+    /** Feature identifier: external general entities. */
+    private static final String EXTERNAL_GENERAL_ENTITIES =
+        Constants.SAX_FEATURE_PREFIX + Constants.EXTERNAL_GENERAL_ENTITIES_FEATURE;
+
+    /** Feature identifier: external parameter entities. */
+    private static final String EXTERNAL_PARAMETER_ENTITIES =
+        Constants.SAX_FEATURE_PREFIX + Constants.EXTERNAL_PARAMETER_ENTITIES_FEATURE;
+
+    /** Feature identifier: load external DTD. */
+    private static final String LOAD_EXTERNAL_DTD =
+        Constants.XERCES_FEATURE_PREFIX + Constants.LOAD_EXTERNAL_DTD_FEATURE;
+
+    /** Property identifier: error handler. */
+    private static final String ERROR_HANDLER =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.ERROR_HANDLER_PROPERTY;
+
+    /** Property identifier: entity resolver. */
+    private static final String ENTITY_RESOLVER =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.ENTITY_RESOLVER_PROPERTY;
+
+    /** Maximum number of idle configurations kept for reuse. */
+    private static final int MAX_IDLE_CONFIGURATIONS = 4;
+
+    //
+    // Data
+    //
+
+    /** Values of the StAX properties. */
+    private final HashMap fProperties = new HashMap();
+
+    /** Xerces features and properties passed on to the configuration. */
+    private final HashMap fParserSettings = new HashMap();
+
+    /** Configurations released by closed readers. */
+    private final ArrayList fIdleConfigurations = new ArrayList();
+
+    /** Incremented whenever a setting changes. */
+    private int fGeneration;
+
+    public XMLInputFactoryImpl() {
+        fProperties.put(IS_NAMESPACE_AWARE, Boolean.TRUE);
+        fProperties.put(IS_VALIDATING, Boolean.FALSE);
+        fProperties.put(IS_COALESCING, Boolean.FALSE);
+        fProperties.put(IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+        fProperties.put(IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.TRUE);
+        fProperties.put(SUPPORT_DTD, Boolean.TRUE);
+        fProperties.put(REPORTER, null);
+        fProperties.put(RESOLVER, null);
+        fProperties.put(ALLOCATOR, null);
+    }
+
+    //
+    // XMLInputFactory methods
+    //
+
+    public XMLStreamReader createXMLStreamReader(Reader reader)
+            throws XMLStreamException {
+        return createXMLStreamReader(null, reader);
+    }
+
+    public XMLStreamReader createXMLStreamReader(Source source)
+            throws XMLStreamException {
+        if (source instanceof StreamSource) {
+            StreamSource streamSource = (StreamSource) source;
+            XMLInputSource inputSource = new XMLInputSource(streamSource.getPublicId(),
+                    streamSource.getSystemId(), null);
+            inputSource.setByteStream(streamSource.getInputStream());
+            inputSource.setCharacterStream(streamSource.getReader());
+            return createXMLStreamReader(inputSource);
+        }
+        if (source instanceof SAXSource) {
+            InputSource saxInputSource = SAXSource.sourceToInputSource(source);
+            if (saxInputSource != null) {
+                XMLInputSource inputSource = new XMLInputSource(saxInputSource.getPublicId(),
+                        saxInputSource.getSystemId(), null);
+                inputSource.setByteStream(saxInputSource.getByteStream());
+                inputSource.setCharacterStream(saxInputSource.getCharacterStream());
+                inputSource.setEncoding(saxInputSource.getEncoding());
+                return createXMLStreamReader(inputSource);
+            }
+        }
+        else if (source instanceof DOMSource) {
+            Node node = ((DOMSource) source).getNode();
+            if (node != null) {
+                // never pooled, since it is bound to the node
+                return new XMLStreamReaderImpl(this, new DOMSourceConfiguration(node), -1, null);
+            }
+        }
+        else if (source instanceof StAXSource) {
+            XMLStreamReader reader = ((StAXSource) source).getXMLStreamReader();
+            if (reader != null) {
+                return reader;
+            }
+        }
+        throw new UnsupportedOperationException("Source type " +
+                (source != null ? source.getClass().getName() : null) + " is not supported.");
+    }
+
+    public XMLStreamReader createXMLStreamReader(InputStream stream)
+            throws XMLStreamException {
+        return createXMLStreamReader(stream, (String) null);
+    }
+
+    public XMLStreamReader createXMLStreamReader(InputStream stream, String encoding)
+            throws XMLStreamException {
+        XMLInputSource inputSource = new XMLInputSource(null, null, null);
+        inputSource.setByteStream(stream);
+        inputSource.setEncoding(encoding);
+        return createXMLStreamReader(inputSource);
+    }
+
+    public XMLStreamReader createXMLStreamReader(String systemId, InputStream stream)
+            throws XMLStreamException {
+        XMLInputSource inputSource = new XMLInputSource(null, systemId, null);
+        inputSource.setByteStream(stream);
+        return createXMLStreamReader(inputSource);
+    }
+
+    public XMLStreamReader createXMLStreamReader(String systemId, Reader reader)
+            throws XMLStreamException {
+        XMLInputSource inputSource = new XMLInputSource(null, systemId, null);
+        inputSource.setCharacterStream(reader);
+        return createXMLStreamReader(inputSource);
+    }
+
+    public XMLEventReader createXMLEventReader(Reader reader)
+            throws XMLStreamException {
+        return createXMLEventReader(createXMLStreamReader(reader));
+    }
+
+    public XMLEventReader createXMLEventReader(String systemId, Reader reader)
+            throws XMLStreamException {
+        return createXMLEventReader(createXMLStreamReader(systemId, reader));
+    }
+
+    public XMLEventReader createXMLEventReader(XMLStreamReader reader)
+            throws XMLStreamException {
+        XMLEventAllocator allocator = getEventAllocator();
+        return new XMLEventReaderImpl(reader, allocator != null ? allocator.newInstance() : null);
+    }
+
+    public XMLEventReader createXMLEventReader(Source source)
+            throws XMLStreamException {
+        return createXMLEventReader(createXMLStreamReader(source));
+    }
+
+    public XMLEventReader createXMLEventReader(InputStream stream)
+            throws XMLStreamException {
+        return createXMLEventReader(createXMLStreamReader(stream));
+    }
+
+    public XMLEventReader createXMLEventReader(InputStream stream, String encoding)
+            throws XMLStreamException {
+        return createXMLEventReader(createXMLStreamReader(stream, encoding));
+    }
+
+    public XMLEventReader createXMLEventReader(String systemId, InputStream stream)
+            throws XMLStreamException {
+        return createXMLEventReader(createXMLStreamReader(systemId, stream));
+    }
+
+    public XMLStreamReader createFilteredReader(XMLStreamReader reader, final StreamFilter filter)
+            throws XMLStreamException {
+        return new StreamReaderDelegate(reader) {
+            public int next() throws XMLStreamException {
+                int type = super.next();
+                while (!filter.accept(this) && super.hasNext()) {
+                    type = super.next();
+                }
+                return type;
+            }
+            public int nextTag() throws XMLStreamException {
+                int type = next();
+                while (type != START_ELEMENT && type != END_ELEMENT) {
+                    if (!isWhiteSpace() && type != COMMENT && type != PROCESSING_INSTRUCTION) {
+                        throw new XMLStreamException("Expected start or end tag.", getLocation());
+                    }
+                    type = next();
+                }
+                return type;
+            }
+        };
+    }
+
+    public XMLEventReader createFilteredReader(XMLEventReader reader, final EventFilter filter)
+            throws XMLStreamException {
+        return new EventReaderDelegate(reader) {
+            private XMLEvent fLast;
+            public XMLEvent nextEvent() throws XMLStreamException {
+                if (peek() == null) {
+                    throw new NoSuchElementException("No more events to read.");
+                }
+                return fLast = super.nextEvent();
+            }
+            public Object next() {
+                try {
+                    return nextEvent();
+                }
+                catch (XMLStreamException e) {
+                    NoSuchElementException nse = new NoSuchElementException(e.getMessage());
+                    nse.initCause(e);
+                    throw nse;
+                }
+            }
+            public boolean hasNext() {
+                try {
+                    return peek() != null;
+                }
+                catch (XMLStreamException e) {
+                    return false;
+                }
+            }
+            public XMLEvent peek() throws XMLStreamException {
+                // skip the events the filter rejects
+                XMLEvent event = super.peek();
+                while (event != null && !filter.accept(event)) {
+                    super.nextEvent();
+                    event = super.peek();
+                }
+                return event;
+            }
+            public String getElementText() throws XMLStreamException {
+                if (fLast == null || !fLast.isStartElement()) {
+                    throw new XMLStreamException("Parser must be on START_ELEMENT to read next text.",
+                            fLast != null ? fLast.getLocation() : null);
+                }
+                return XMLEventReaderImpl.getElementText(this);
+            }
+            public XMLEvent nextTag() throws XMLStreamException {
+                return XMLEventReaderImpl.nextTag(this);
+            }
+        };
+    }
+
+    public XMLResolver getXMLResolver() {
+        return (XMLResolver) fProperties.get(RESOLVER);
+    }
+
+    public void setXMLResolver(XMLResolver resolver) {
+        setProperty(RESOLVER, resolver);
+    }
+
+    public XMLReporter getXMLReporter() {
+        return (XMLReporter) fProperties.get(REPORTER);
+    }
+
+    public void setXMLReporter(XMLReporter reporter) {
+        setProperty(REPORTER, reporter);
+    }
+
+    public void setProperty(String name, Object value)
+            throws IllegalArgumentException {
+        if (name == null) {
+            throw new IllegalArgumentException("Property name cannot be null.");
+        }
+        if (fProperties.containsKey(name)) {
+            if (name.equals(REPORTER)) {
+                if (value != null && !(value instanceof XMLReporter)) {
+                    throw new IllegalArgumentException("Property " + name + " requires an XMLReporter.");
+                }
+            }
+            else if (name.equals(RESOLVER)) {
+                if (value != null && !(value instanceof XMLResolver)) {
+                    throw new IllegalArgumentException("Property " + name + " requires an XMLResolver.");
+                }
+            }
+            else if (name.equals(ALLOCATOR)) {
+                if (value != null && !(value instanceof XMLEventAllocator)) {
+                    throw new IllegalArgumentException("Property " + name + " requires an XMLEventAllocator.");
+                }
+            }
+            else if (!(value instanceof Boolean)) {
+                throw new IllegalArgumentException("Property " + name + " requires a Boolean.");
+            }
+            fProperties.put(name, value);
+        }
+        else {
+            // check that the parser recognizes it
+            XML11Configuration configuration = new XML11Configuration();
+            try {
+                applySetting(configuration, name, value);
+            }
+            catch (XMLConfigurationException e) {
+                throw new IllegalArgumentException("Property " + name + " is not supported.");
+            }
+            fParserSettings.put(name, value);
+        }
+        synchronized (fIdleConfigurations) {
+            ++fGeneration;
+            fIdleConfigurations.clear();
+        }
+    }
+
+    public Object getProperty(String name) throws IllegalArgumentException {
+        if (name == null) {
+            throw new IllegalArgumentException("Property name cannot be null.");
+        }
+        if (fProperties.containsKey(name)) {
+            return fProperties.get(name);
+        }
+        if (fParserSettings.containsKey(name)) {
+            return fParserSettings.get(name);
+        }
+        throw new IllegalArgumentException("Property " + name + " is not supported.");
+    }
+
+    public boolean isPropertySupported(String name) {
+        if (name == null) {
+            return false;
+        }
+        if (fProperties.containsKey(name) || fParserSettings.containsKey(name)) {
+            return true;
+        }
+        XML11Configuration configuration = new XML11Configuration();
+        try {
+            configuration.getFeature(name);
+            return true;
+        }
+        catch (XMLConfigurationException e) {
+        }
+        try {
+            configuration.getProperty(name);
+            return true;
+        }
+        catch (XMLConfigurationException e) {
+        }
+        return false;
+    }
+
+    public void setEventAllocator(XMLEventAllocator allocator) {
+        setProperty(ALLOCATOR, allocator);
+    }
+
+    public XMLEventAllocator getEventAllocator() {
+        return (XMLEventAllocator) fProperties.get(ALLOCATOR);
+    }
+
+    //
+    // Package methods
+    //
+
+    /** Returns the value of a boolean StAX property. */
+    boolean getBoolean(String name) {
+        return Boolean.TRUE.equals(fProperties.get(name));
+    }
+
+    /**
+     * Takes back the configuration of a closed reader, unless the settings
+     * have changed since it was set up.
+     */
+    void releaseConfiguration(XMLPullParserConfiguration configuration, int generation) {
+        synchronized (fIdleConfigurations) {
+            if (generation == fGeneration &&
+                    fIdleConfigurations.size() < MAX_IDLE_CONFIGURATIONS) {
+                fIdleConfigurations.add(configuration);
+            }
+        }
+    }
+
+    //
+    // Private methods
+    //
+
+    private XMLStreamReader createXMLStreamReader(XMLInputSource inputSource)
+            throws XMLStreamException {
+        XMLPullParserConfiguration configuration = null;
+        int generation;
+        synchronized (fIdleConfigurations) {
+            generation = fGeneration;
+            if (!fIdleConfigurations.isEmpty()) {
+                configuration = (XMLPullParserConfiguration)
+                    fIdleConfigurations.remove(fIdleConfigurations.size() - 1);
+            }
+        }
+        if (configuration == null) {
+            configuration = createConfiguration();
+        }
+        return new XMLStreamReaderImpl(this, configuration, generation, inputSource);
+    }
+
+    /** Creates a configuration set up with the current settings. */
+    private XMLPullParserConfiguration createConfiguration() throws XMLStreamException {
+        XML11Configuration configuration = new XML11Configuration();
+        boolean externalEntities = getBoolean(IS_SUPPORTING_EXTERNAL_ENTITIES);
+        boolean supportDTD = getBoolean(SUPPORT_DTD);
+        configuration.setFeature(NAMESPACES, getBoolean(IS_NAMESPACE_AWARE));
+        configuration.setFeature(VALIDATION, getBoolean(IS_VALIDATING));
+        configuration.setFeature(EXTERNAL_GENERAL_ENTITIES, externalEntities && supportDTD);
+        configuration.setFeature(EXTERNAL_PARAMETER_ENTITIES, externalEntities && supportDTD);
+        configuration.setFeature(LOAD_EXTERNAL_DTD, supportDTD);
+        configuration.setProperty(ERROR_HANDLER, new ReporterErrorHandler(getXMLReporter()));
+        XMLResolver resolver = getXMLResolver();
+        if (resolver != null) {
+            configuration.setProperty(ENTITY_RESOLVER, new ResolverEntityResolver(resolver));
+        }
+        Iterator entries = fParserSettings.entrySet().iterator();
+        try {
+            while (entries.hasNext()) {
+                Map.Entry entry = (Map.Entry) entries.next();
+                applySetting(configuration, (String) entry.getKey(), entry.getValue());
+            }
+        }
+        catch (XMLConfigurationException e) {
+            throw new XMLStreamException(e.getMessage());
+        }
+        return configuration;
+    }
+
+    /** Sets a Xerces feature or property on a configuration. */
+    private static void applySetting(XML11Configuration configuration, String name, Object value)
+            throws XMLConfigurationException {
+        if (value instanceof Boolean) {
+            configuration.setFeature(name, ((Boolean) value).booleanValue());
+        }
+        else {
+            configuration.setProperty(name, value);
+        }
+    }
+
+    //
+    // Classes
+    //
+
+    /**
+     * Reports warnings and errors to an XMLReporter, if there is one.
+     * Fatal errors are thrown from the reader as XMLStreamExceptions.
+     */
+    private static final class ReporterErrorHandler implements XMLErrorHandler {
+
+        private final XMLReporter fReporter;
+
+        ReporterErrorHandler(XMLReporter reporter) {
+            fReporter = reporter;
+        }
+
+        public void warning(String domain, String key, XMLParseException exception)
+                throws XNIException {
+            report(key, exception);
+        }
+
+        public void error(String domain, String key, XMLParseException exception)
+                throws XNIException {
+            report(key, exception);
+        }
+
+        public void fatalError(String domain, String key, XMLParseException exception)
+                throws XNIException {
+            // the error reporter throws the exception
+        }
+
+        private void report(String key, XMLParseException exception) {
+            if (fReporter == null) {
+                return;
+            }
+            try {
+                fReporter.report(exception.getMessage(), key, exception,
+                        new ImmutableLocation(exception.getCharacterOffset(),
+                                exception.getColumnNumber(), exception.getLineNumber(),
+                                exception.getPublicId(), exception.getExpandedSystemId()));
+            }
+            catch (XMLStreamException e) {
+                throw new XNIException(e);
+            }
+        }
+
+    } // class ReporterErrorHandler
+
+    /** Resolves entities through an XMLResolver. */
+    private static final class ResolverEntityResolver implements XMLEntityResolver {
+
+        private final XMLResolver fResolver;
+
+        ResolverEntityResolver(XMLResolver resolver) {
+            fResolver = resolver;
+        }
+
+        public XMLInputSource resolveEntity(XMLResourceIdentifier resourceIdentifier)
+                throws XNIException {
+            Object entity;
+            try {
+                entity = fResolver.resolveEntity(resourceIdentifier.getPublicId(),
+                        resourceIdentifier.getLiteralSystemId(),
+                        resourceIdentifier.getBaseSystemId(),
+                        resourceIdentifier.getNamespace());
+            }
+            catch (XMLStreamException e) {
+                throw new XNIException(e);
+            }
+            if (entity == null) {
+                return null;
+            }
+            if (entity instanceof InputStream) {
+                XMLInputSource inputSource = new XMLInputSource(resourceIdentifier);
+                inputSource.setByteStream((InputStream) entity);
+                return inputSource;
+            }
+            throw new XNIException("Entities resolved to " + entity.getClass().getName() +
+                    " are not supported.");
+        }
+
+    } // class ResolverEntityResolver
+
+} // class XMLInputFactoryImpl
@@ -0,0 +1,962 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.stax;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xerces.util.NamespaceSupport;
+import org.apache.xerces.util.XMLChar;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLDocumentSource;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.apache.xerces.xni.parser.XMLPullParserConfiguration;
+
+/**
+ * <p>An <code>XMLStreamReader</code> which pulls the document through
+ * a Xerces parser configuration, one scanner step at a time.</p>
+ *
+ * <p>The events received from the pipeline are copied into a small
+ * queue of reusable records, since one scanner step may produce more
+ * than one event and the scanner reuses its buffers. Names, attributes
+ * and text are read from these records; no event objects are created.
+ * Namespace bindings are kept by the reader itself, as the scanner's
+ * namespace context may already have moved past the current event.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class XMLStreamReaderImpl implements XMLStreamReader, XMLDocumentHandler {
+
+    /** The factory which created this reader. */
+    private final XMLInputFactoryImpl fFactory;
+
+    /** The configuration the document is pulled through. */
+    private XMLPullParserConfiguration fConfiguration;
+
+    /** Generation of the factory settings the configuration was set up with. */
+    private final int fGeneration;
+
+    /** The document source passed to the pipeline. */
+    private XMLDocumentSource fDocumentSource;
+
+    // settings
+
+    private final boolean fNamespaceAware;
+    private final boolean fCoalescing;
+    private final boolean fReplacingEntityReferences;
+    private final boolean fSupportDTD;
+
+    // document information
+
+    private XMLLocator fLocator;
+    private NamespaceContext fScannerNamespaceContext;
+    private String fInputEncoding;
+    private String fVersion;
+    private String fDeclaredEncoding;
+    private String fStandalone;
+
+    /** True once the configuration has no more events to report. */
+    private boolean fDone;
+
+    // event queue
+
+    /** The current event. */
+    private Event fCurrent = new Event();
+
+    /** Events received from the pipeline but not reported yet. */
+    private Event[] fQueue = new Event[8];
+    private int fQueueHead;
+    private int fQueueSize;
+
+    /** True if the next text may be appended to the last queued event. */
+    private boolean fCanMergeText;
+
+    /** True while inside a CDATA section. */
+    private boolean fInCDATA;
+
+    /** Nesting depth of the unreplaced entity reference being recorded. */
+    private int fEntityDepth;
+
+    /** Namespace bindings of the events reported so far. */
+    private final NamespaceSupport fNamespaces = new NamespaceSupport();
+
+    /** True if the namespace context must be popped on the next event. */
+    private boolean fPopNamespaces;
+
+    /** View of fNamespaces handed to the application. */
+    private NamespaceContextView fNamespaceContextView;
+
+    //
+    // Constructors
+    //
+
+    XMLStreamReaderImpl(XMLInputFactoryImpl factory, XMLPullParserConfiguration configuration,
+            int generation, XMLInputSource inputSource) throws XMLStreamException {
+        fFactory = factory;
+        fConfiguration = configuration;
+        fGeneration = generation;
+        fNamespaceAware = factory.getBoolean(XMLInputFactory.IS_NAMESPACE_AWARE);
+        fCoalescing = factory.getBoolean(XMLInputFactory.IS_COALESCING);
+        fReplacingEntityReferences = factory.getBoolean(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES);
+        fSupportDTD = factory.getBoolean(XMLInputFactory.SUPPORT_DTD);
+        for (int i = 0; i < fQueue.length; ++i) {
+            fQueue[i] = new Event();
+        }
+        fCurrent.type = START_DOCUMENT;
+        configuration.setDocumentHandler(this);
+        try {
+            configuration.setInputSource(inputSource);
+        }
+        catch (IOException e) {
+            throw new XMLStreamException(e);
+        }
+        // read the XML declaration so that it is available at START_DOCUMENT
+        while (!fDone && (fQueueSize == 0 ||
+                (fQueueSize == 1 && fQueue[fQueueHead].type == START_DOCUMENT))) {
+            pump();
+        }
+        if (fQueueSize > 0 && fQueue[fQueueHead].type == START_DOCUMENT) {
+            dequeue();
+        }
+    }
+
+    //
+    // XMLStreamReader methods
+    //
+
+    public Object getProperty(String name) throws IllegalArgumentException {
+        if (name == null) {
+            throw new IllegalArgumentException("Property name cannot be null.");
+        }
+        try {
+            return fFactory.getProperty(name);
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public int next() throws XMLStreamException {
+        if (fCurrent.type == END_DOCUMENT) {
+            throw new NoSuchElementException("No more events to read.");
+        }
+        if (fPopNamespaces) {
+            fNamespaces.popContext();
+            fPopNamespaces = false;
+        }
+        while (fQueueSize == 0) {
+            if (fDone) {
+                throw new XMLStreamException("Unexpected end of document.", getLocation());
+            }
+            pump();
+        }
+        // gather the rest of the text, which the scanner may report in
+        // several steps, and the replacement text of an entity reference
+        while (fQueueSize == 1 && !fDone) {
+            final int type = fQueue[fQueueHead].type;
+            if (!isText(type) && (type != ENTITY_REFERENCE || fEntityDepth == 0)) {
+                break;
+            }
+            pump();
+        }
+        dequeue();
+        final Event event = fCurrent;
+        if (event.type == START_ELEMENT) {
+            fNamespaces.pushContext();
+            for (int i = 0; i < event.namespaceCount; ++i) {
+                fNamespaces.declarePrefix(event.namespacePrefixes[i], event.namespaceURIs[i]);
+            }
+        }
+        else if (event.type == END_ELEMENT) {
+            fPopNamespaces = true;
+        }
+        return event.type;
+    }
+
+    public void require(int type, String namespaceURI, String localName)
+            throws XMLStreamException {
+        if (type != fCurrent.type) {
+            throw new XMLStreamException("Event type " + getEventTypeString(type) +
+                    " specified did not match with current parser event " +
+                    getEventTypeString(fCurrent.type) + ".", getLocation());
+        }
+        if (namespaceURI != null) {
+            String uri = getNamespaceURI();
+            if (!namespaceURI.equals(uri == null ? "" : uri)) {
+                throw new XMLStreamException("Namespace URI " + namespaceURI +
+                        " specified did not match with current namespace URI.", getLocation());
+            }
+        }
+        if (localName != null && !localName.equals(getLocalName())) {
+            throw new XMLStreamException("Local name " + localName +
+                    " specified did not match with current local name.", getLocation());
+        }
+    }
+
+    public String getElementText() throws XMLStreamException {
+        if (fCurrent.type != START_ELEMENT) {
+            throw new XMLStreamException("Parser must be on START_ELEMENT to read next text.", getLocation());
+        }
+        StringBuffer buffer = new StringBuffer();
+        int type = next();
+        while (type != END_ELEMENT) {
+            if (type == CHARACTERS || type == CDATA || type == SPACE || type == ENTITY_REFERENCE) {
+                buffer.append(fCurrent.text, 0, fCurrent.textLength);
+            }
+            else if (type == END_DOCUMENT) {
+                throw new XMLStreamException("Unexpected end of document when reading element text content.", getLocation());
+            }
+            else if (type == START_ELEMENT) {
+                throw new XMLStreamException("Element text content may not contain START_ELEMENT.", getLocation());
+            }
+            else if (type != PROCESSING_INSTRUCTION && type != COMMENT) {
+                throw new XMLStreamException("Unexpected event type " + getEventTypeString(type) + ".", getLocation());
+            }
+            type = next();
+        }
+        return buffer.toString();
+    }
+
+    public int nextTag() throws XMLStreamException {
+        int type = next();
+        while ((type == CHARACTERS && isWhiteSpace()) ||
+                (type == CDATA && isWhiteSpace()) ||
+                type == SPACE || type == PROCESSING_INSTRUCTION || type == COMMENT) {
+            type = next();
+        }
+        if (type != START_ELEMENT && type != END_ELEMENT) {
+            throw new XMLStreamException("Expected start or end tag.", getLocation());
+        }
+        return type;
+    }
+
+    public boolean hasNext() throws XMLStreamException {
+        return fCurrent.type != END_DOCUMENT;
+    }
+
+    public void close() throws XMLStreamException {
+        if (fConfiguration != null) {
+            fConfiguration.cleanup();
+            fConfiguration.setDocumentHandler(null);
+            fFactory.releaseConfiguration(fConfiguration, fGeneration);
+            fConfiguration = null;
+            fDone = true;
+        }
+    }
+
+    public String getNamespaceURI(String prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Prefix cannot be null.");
+        }
+        return fNamespaces.getURI(prefix.intern());
+    }
+
+    public boolean isStartElement() {
+        return fCurrent.type == START_ELEMENT;
+    }
+
+    public boolean isEndElement() {
+        return fCurrent.type == END_ELEMENT;
+    }
+
+    public boolean isCharacters() {
+        return fCurrent.type == CHARACTERS;
+    }
+
+    public boolean isWhiteSpace() {
+        final int type = fCurrent.type;
+        if (type == SPACE) {
+            return true;
+        }
+        if (type != CHARACTERS && type != CDATA) {
+            return false;
+        }
+        final char[] text = fCurrent.text;
+        for (int i = 0; i < fCurrent.textLength; ++i) {
+            if (!XMLChar.isSpace(text[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getAttributeValue(String namespaceURI, String localName) {
+        checkStartElement();
+        final Event event = fCurrent;
+        for (int i = 0; i < event.attributeCount; ++i) {
+            org.apache.xerces.xni.QName name = event.attributeNames[i];
+            if (localName.equals(name.localpart)) {
+                if (namespaceURI == null) {
+                    return event.attributeValues[i];
+                }
+                String uri = (name.uri != null) ? name.uri : "";
+                if (namespaceURI.equals(uri)) {
+                    return event.attributeValues[i];
+                }
+            }
+        }
+        return null;
+    }
+
+    public int getAttributeCount() {
+        checkStartElement();
+        return fCurrent.attributeCount;
+    }
+
+    public QName getAttributeName(int index) {
+        return toQName(getAttribute(index));
+    }
+
+    public String getAttributeNamespace(int index) {
+        return getAttribute(index).uri;
+    }
+
+    public String getAttributeLocalName(int index) {
+        return getAttribute(index).localpart;
+    }
+
+    public String getAttributePrefix(int index) {
+        return getAttribute(index).prefix;
+    }
+
+    public String getAttributeType(int index) {
+        getAttribute(index);
+        return fCurrent.attributeTypes[index];
+    }
+
+    public String getAttributeValue(int index) {
+        getAttribute(index);
+        return fCurrent.attributeValues[index];
+    }
+
+    public boolean isAttributeSpecified(int index) {
+        getAttribute(index);
+        return fCurrent.attributeSpecified[index];
+    }
+
+    public int getNamespaceCount() {
+        checkElement();
+        return fCurrent.namespaceCount;
+    }
+
+    public String getNamespacePrefix(int index) {
+        checkElement();
+        checkIndex(index, fCurrent.namespaceCount);
+        String prefix = fCurrent.namespacePrefixes[index];
+        return (prefix != null && prefix.length() > 0) ? prefix : null;
+    }
+
+    public String getNamespaceURI(int index) {
+        checkElement();
+        checkIndex(index, fCurrent.namespaceCount);
+        String uri = fCurrent.namespaceURIs[index];
+        return (uri != null) ? uri : XMLConstants.NULL_NS_URI;
+    }
+
+    public javax.xml.namespace.NamespaceContext getNamespaceContext() {
+        if (fNamespaceContextView == null) {
+            fNamespaceContextView = new NamespaceContextView();
+        }
+        return fNamespaceContextView;
+    }
+
+    public int getEventType() {
+        return fCurrent.type;
+    }
+
+    public String getText() {
+        checkText();
+        return new String(fCurrent.text, 0, fCurrent.textLength);
+    }
+
+    public char[] getTextCharacters() {
+        checkText();
+        return fCurrent.text;
+    }
+
+    public int getTextCharacters(int sourceStart, char[] target,
+            int targetStart, int length) throws XMLStreamException {
+        checkText();
+        if (target == null) {
+            throw new NullPointerException();
+        }
+        if (targetStart < 0 || length < 0 || sourceStart < 0 ||
+                targetStart > target.length || targetStart + length > target.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        int count = Math.min(length, fCurrent.textLength - sourceStart);
+        if (count <= 0) {
+            return 0;
+        }
+        System.arraycopy(fCurrent.text, sourceStart, target, targetStart, count);
+        return count;
+    }
+
+    public int getTextStart() {
+        checkText();
+        return 0;
+    }
+
+    public int getTextLength() {
+        checkText();
+        return fCurrent.textLength;
+    }
+
+    public String getEncoding() {
+        return fInputEncoding;
+    }
+
+    public boolean hasText() {
+        final int type = fCurrent.type;
+        return type == CHARACTERS || type == CDATA || type == SPACE ||
+            type == COMMENT || type == DTD || type == ENTITY_REFERENCE;
+    }
+
+    public Location getLocation() {
+        final Event event = fCurrent;
+        return new ImmutableLocation(event.characterOffset, event.columnNumber,
+                event.lineNumber, event.publicId, event.systemId);
+    }
+
+    public QName getName() {
+        checkElement();
+        return toQName(fCurrent.name);
+    }
+
+    public String getLocalName() {
+        final int type = fCurrent.type;
+        if (type == START_ELEMENT || type == END_ELEMENT) {
+            return fCurrent.name.localpart;
+        }
+        if (type == ENTITY_REFERENCE) {
+            return fCurrent.target;
+        }
+        throw new IllegalStateException("Current event is not START_ELEMENT, END_ELEMENT or ENTITY_REFERENCE.");
+    }
+
+    public boolean hasName() {
+        final int type = fCurrent.type;
+        return type == START_ELEMENT || type == END_ELEMENT;
+    }
+
+    public String getNamespaceURI() {
+        final int type = fCurrent.type;
+        return (type == START_ELEMENT || type == END_ELEMENT) ? fCurrent.name.uri : null;
+    }
+
+    public String getPrefix() {
+        final int type = fCurrent.type;
+        return (type == START_ELEMENT || type == END_ELEMENT) ? fCurrent.name.prefix : null;
+    }
+
+    public String getVersion() {
+        return fVersion;
+    }
+
+    public boolean isStandalone() {
+        return "yes".equals(fStandalone);
+    }
+
+    public boolean standaloneSet() {
+        return fStandalone != null;
+    }
+
+    public String getCharacterEncodingScheme() {
+        return fDeclaredEncoding;
+    }
+
+    public String getPITarget() {
+        return (fCurrent.type == PROCESSING_INSTRUCTION) ? fCurrent.target : null;
+    }
+
+    public String getPIData() {
+        return (fCurrent.type == PROCESSING_INSTRUCTION) ?
+                new String(fCurrent.text, 0, fCurrent.textLength) : null;
+    }
+
+    //
+    // XMLDocumentHandler methods
+    //
+
+    public void startDocument(XMLLocator locator, String encoding,
+            NamespaceContext namespaceContext, Augmentations augs) throws XNIException {
+        fLocator = locator;
+        fInputEncoding = encoding;
+        fScannerNamespaceContext = namespaceContext;
+        enqueue(START_DOCUMENT);
+    }
+
+    public void xmlDecl(String version, String encoding, String standalone,
+            Augmentations augs) throws XNIException {
+        fVersion = version;
+        fDeclaredEncoding = encoding;
+        fStandalone = standalone;
+    }
+
+    public void doctypeDecl(String rootElement, String publicId, String systemId,
+            Augmentations augs) throws XNIException {
+        if (!fSupportDTD) {
+            return;
+        }
+        Event event = enqueue(DTD);
+        appendText(event, "<!DOCTYPE ");
+        appendText(event, rootElement);
+        if (publicId != null) {
+            appendText(event, " PUBLIC \"");
+            appendText(event, publicId);
+            appendText(event, "\" \"");
+            appendText(event, systemId);
+            appendText(event, "\"");
+        }
+        else if (systemId != null) {
+            appendText(event, " SYSTEM \"");
+            appendText(event, systemId);
+            appendText(event, "\"");
+        }
+        appendText(event, ">");
+    }
+
+    public void comment(XMLString text, Augmentations augs) throws XNIException {
+        if (fEntityDepth > 0) {
+            return;
+        }
+        Event event = enqueue(COMMENT);
+        appendText(event, text);
+    }
+
+    public void processingInstruction(String target, XMLString data,
+            Augmentations augs) throws XNIException {
+        if (fEntityDepth > 0) {
+            return;
+        }
+        Event event = enqueue(PROCESSING_INSTRUCTION);
+        event.target = target;
+        appendText(event, data);
+    }
+
+    public void startElement(org.apache.xerces.xni.QName element, XMLAttributes attributes,
+            Augmentations augs) throws XNIException {
+        if (fEntityDepth > 0) {
+            return;
+        }
+        Event event = enqueue(START_ELEMENT);
+        event.name.setValues(element);
+        copyNamespaces(event);
+        final int length = attributes.getLength();
+        event.ensureAttributeCapacity(length);
+        int count = 0;
+        for (int i = 0; i < length; ++i) {
+            org.apache.xerces.xni.QName name = event.attributeNames[count];
+            attributes.getName(i, name);
+            if (fNamespaceAware && name.uri == NamespaceContext.XMLNS_URI) {
+                continue;
+            }
+            event.attributeTypes[count] = attributes.getType(i);
+            event.attributeValues[count] = attributes.getValue(i);
+            event.attributeSpecified[count] = attributes.isSpecified(i);
+            ++count;
+        }
+        event.attributeCount = count;
+    }
+
+    public void emptyElement(org.apache.xerces.xni.QName element, XMLAttributes attributes,
+            Augmentations augs) throws XNIException {
+        startElement(element, attributes, augs);
+        endElement(element, augs);
+    }
+
+    public void startGeneralEntity(String name, XMLResourceIdentifier identifier,
+            String encoding, Augmentations augs) throws XNIException {
+        if (fReplacingEntityReferences) {
+            return;
+        }
+        if (fEntityDepth++ == 0) {
+            Event event = enqueue(ENTITY_REFERENCE);
+            event.target = name;
+        }
+    }
+
+    public void textDecl(String version, String encoding, Augmentations augs)
+            throws XNIException {
+    }
+
+    public void endGeneralEntity(String name, Augmentations augs)
+            throws XNIException {
+        if (!fReplacingEntityReferences && fEntityDepth > 0) {
+            --fEntityDepth;
+            fCanMergeText = false;
+        }
+    }
+
+    public void characters(XMLString text, Augmentations augs) throws XNIException {
+        addText(fInCDATA ? CDATA : CHARACTERS, text);
+    }
+
+    public void ignorableWhitespace(XMLString text, Augmentations augs)
+            throws XNIException {
+        addText(SPACE, text);
+    }
+
+    public void endElement(org.apache.xerces.xni.QName element, Augmentations augs)
+            throws XNIException {
+        if (fEntityDepth > 0) {
+            return;
+        }
+        Event event = enqueue(END_ELEMENT);
+        event.name.setValues(element);
+        copyNamespaces(event);
+    }
+
+    public void startCDATA(Augmentations augs) throws XNIException {
+        fInCDATA = true;
+        if (!fCoalescing) {
+            fCanMergeText = false;
+        }
+    }
+
+    public void endCDATA(Augmentations augs) throws XNIException {
+        fInCDATA = false;
+        if (!fCoalescing) {
+            fCanMergeText = false;
+        }
+    }
+
+    public void endDocument(Augmentations augs) throws XNIException {
+        enqueue(END_DOCUMENT);
+    }
+
+    public void setDocumentSource(XMLDocumentSource source) {
+        fDocumentSource = source;
+    }
+
+    public XMLDocumentSource getDocumentSource() {
+        return fDocumentSource;
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Runs one step of the scanner. */
+    private void pump() throws XMLStreamException {
+        try {
+            if (!fConfiguration.parse(false)) {
+                fDone = true;
+            }
+        }
+        catch (XMLParseException e) {
+            fDone = true;
+            throw new XMLStreamException(e.getMessage(),
+                    new ImmutableLocation(e.getCharacterOffset(), e.getColumnNumber(),
+                            e.getLineNumber(), e.getPublicId(), e.getExpandedSystemId()),
+                    e.getException() != null ? e.getException() : e);
+        }
+        catch (XNIException e) {
+            fDone = true;
+            throw new XMLStreamException(e.getMessage(),
+                    e.getException() != null ? e.getException() : e);
+        }
+        catch (IOException e) {
+            fDone = true;
+            throw new XMLStreamException(e);
+        }
+    }
+
+    /** Appends a new event to the queue and returns it. */
+    private Event enqueue(int type) {
+        if (fQueueSize == fQueue.length) {
+            Event[] queue = new Event[fQueue.length << 1];
+            for (int i = 0; i < fQueueSize; ++i) {
+                queue[i] = fQueue[(fQueueHead + i) % fQueue.length];
+            }
+            for (int i = fQueueSize; i < queue.length; ++i) {
+                queue[i] = new Event();
+            }
+            fQueue = queue;
+            fQueueHead = 0;
+        }
+        Event event = fQueue[(fQueueHead + fQueueSize) % fQueue.length];
+        ++fQueueSize;
+        event.clear(type);
+        if (fLocator != null) {
+            event.lineNumber = fLocator.getLineNumber();
+            event.columnNumber = fLocator.getColumnNumber();
+            event.characterOffset = fLocator.getCharacterOffset();
+            event.publicId = fLocator.getPublicId();
+            event.systemId = fLocator.getExpandedSystemId();
+        }
+        fCanMergeText = (type == ENTITY_REFERENCE);
+        return event;
+    }
+
+    /** Makes the first queued event the current one. */
+    private void dequeue() {
+        Event event = fQueue[fQueueHead];
+        fQueue[fQueueHead] = fCurrent;
+        fCurrent = event;
+        fQueueHead = (fQueueHead + 1) % fQueue.length;
+        --fQueueSize;
+    }
+
+    /** Adds text to the last queued event, or queues a new text event. */
+    private void addText(int type, XMLString text) {
+        if (fCoalescing) {
+            type = CHARACTERS;
+        }
+        if (fQueueSize > 0 && fCanMergeText) {
+            Event last = fQueue[(fQueueHead + fQueueSize - 1) % fQueue.length];
+            if (last.type == type || last.type == ENTITY_REFERENCE) {
+                appendText(last, text);
+                return;
+            }
+        }
+        if (fEntityDepth > 0) {
+            return;
+        }
+        Event event = enqueue(type);
+        appendText(event, text);
+        fCanMergeText = true;
+    }
+
+    /** Records the namespace declarations of the current element. */
+    private void copyNamespaces(Event event) {
+        final NamespaceContext context = fScannerNamespaceContext;
+        if (!fNamespaceAware || context == null) {
+            return;
+        }
+        final int count = context.getDeclaredPrefixCount();
+        event.ensureNamespaceCapacity(count);
+        for (int i = 0; i < count; ++i) {
+            String prefix = context.getDeclaredPrefixAt(i);
+            String uri = context.getURI(prefix);
+            event.namespacePrefixes[i] = prefix;
+            event.namespaceURIs[i] = uri;
+        }
+        event.namespaceCount = count;
+    }
+
+    private static void appendText(Event event, XMLString text) {
+        event.ensureTextCapacity(event.textLength + text.length);
+        System.arraycopy(text.ch, text.offset, event.text, event.textLength, text.length);
+        event.textLength += text.length;
+    }
+
+    private static void appendText(Event event, String text) {
+        final int length = text.length();
+        event.ensureTextCapacity(event.textLength + length);
+        text.getChars(0, length, event.text, event.textLength);
+        event.textLength += length;
+    }
+
+    private static boolean isText(int type) {
+        return type == CHARACTERS || type == CDATA || type == SPACE;
+    }
+
+    private static QName toQName(org.apache.xerces.xni.QName name) {
+        return new QName(name.uri != null ? name.uri : XMLConstants.NULL_NS_URI,
+                name.localpart,
+                name.prefix != null ? name.prefix : XMLConstants.DEFAULT_NS_PREFIX);
+    }
+
+    private org.apache.xerces.xni.QName getAttribute(int index) {
+        checkStartElement();
+        checkIndex(index, fCurrent.attributeCount);
+        return fCurrent.attributeNames[index];
+    }
+
+    private void checkStartElement() {
+        if (fCurrent.type != START_ELEMENT) {
+            throw new IllegalStateException("Current event is not START_ELEMENT.");
+        }
+    }
+
+    private void checkElement() {
+        if (fCurrent.type != START_ELEMENT && fCurrent.type != END_ELEMENT) {
+            throw new IllegalStateException("Current event is not START_ELEMENT or END_ELEMENT.");
+        }
+    }
+
+    private void checkText() {
+        if (!hasText()) {
+            throw new IllegalStateException("Current event " +
+                    getEventTypeString(fCurrent.type) + " has no text.");
+        }
+    }
+
+    private static void checkIndex(int index, int count) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+    }
+
+    private static String getEventTypeString(int type) {
+        switch (type) {
+            case START_ELEMENT: return "START_ELEMENT";
+            case END_ELEMENT: return "END_ELEMENT";
+            case PROCESSING_INSTRUCTION: return "PROCESSING_INSTRUCTION";
+            case CHARACTERS: return "CHARACTERS";
+            case COMMENT: return "COMMENT";
+            case SPACE: return "SPACE";
+            case START_DOCUMENT: return "START_DOCUMENT";
+            case END_DOCUMENT: return "END_DOCUMENT";
+            case ENTITY_REFERENCE: return "ENTITY_REFERENCE";
+            case ATTRIBUTE: return "ATTRIBUTE";
+            case DTD: return "DTD";
+            case CDATA: return "CDATA";
+            case NAMESPACE: return "NAMESPACE";
+        }
+        return "UNKNOWN_EVENT_TYPE, " + type;
+    }
+
+    //
+    // Classes
+    //
+
+    /** A reusable record of one event. */
+    private static final class Event {
+
+        int type;
+
+        // element name; target of a processing instruction or name of an entity
+        final org.apache.xerces.xni.QName name = new org.apache.xerces.xni.QName();
+        String target;
+
+        // attributes
+        int attributeCount;
+        org.apache.xerces.xni.QName[] attributeNames = new org.apache.xerces.xni.QName[0];
+        String[] attributeTypes = new String[0];
+        String[] attributeValues = new String[0];
+        boolean[] attributeSpecified = new boolean[0];
+
+        // namespace declarations
+        int namespaceCount;
+        String[] namespacePrefixes = new String[0];
+        String[] namespaceURIs = new String[0];
+
+        // text
+        char[] text = new char[64];
+        int textLength;
+
+        // location
+        int lineNumber;
+        int columnNumber;
+        int characterOffset;
+        String publicId;
+        String systemId;
+
+        void clear(int type) {
+            this.type = type;
+            target = null;
+            attributeCount = 0;
+            namespaceCount = 0;
+            textLength = 0;
+            lineNumber = -1;
+            columnNumber = -1;
+            characterOffset = -1;
+            publicId = null;
+            systemId = null;
+        }
+
+        void ensureAttributeCapacity(int capacity) {
+            if (attributeNames.length < capacity) {
+                org.apache.xerces.xni.QName[] names = new org.apache.xerces.xni.QName[capacity];
+                System.arraycopy(attributeNames, 0, names, 0, attributeNames.length);
+                for (int i = attributeNames.length; i < capacity; ++i) {
+                    names[i] = new org.apache.xerces.xni.QName();
+                }
+                attributeNames = names;
+                attributeTypes = new String[capacity];
+                attributeValues = new String[capacity];
+                attributeSpecified = new boolean[capacity];
+            }
+        }
+
+        void ensureNamespaceCapacity(int capacity) {
+            if (namespacePrefixes.length < capacity) {
+                namespacePrefixes = new String[capacity];
+                namespaceURIs = new String[capacity];
+            }
+        }
+
+        void ensureTextCapacity(int capacity) {
+            if (text.length < capacity) {
+                char[] newText = new char[Math.max(capacity, text.length << 1)];
+                System.arraycopy(text, 0, newText, 0, textLength);
+                text = newText;
+            }
+        }
+
+    } // class Event
+
+    /** A read-only view of the namespace bindings of the current event. */
+    private final class NamespaceContextView implements javax.xml.namespace.NamespaceContext {
+
+        public String getNamespaceURI(String prefix) {
+            if (prefix == null) {
+                throw new IllegalArgumentException("Prefix cannot be null.");
+            }
+            String uri = fNamespaces.getURI(prefix.intern());
+            return (uri != null) ? uri : XMLConstants.NULL_NS_URI;
+        }
+
+        public String getPrefix(String namespaceURI) {
+            if (namespaceURI == null) {
+                throw new IllegalArgumentException("Namespace URI cannot be null.");
+            }
+            return fNamespaces.getPrefix(namespaceURI.intern());
+        }
+
+        public Iterator getPrefixes(String namespaceURI) {
+            if (namespaceURI == null) {
+                throw new IllegalArgumentException("Namespace URI cannot be null.");
+            }
+            namespaceURI = namespaceURI.intern();
+            ArrayList prefixes = new ArrayList();
+            Enumeration e = fNamespaces.getAllPrefixes();
+            while (e.hasMoreElements()) {
+                String prefix = (String) e.nextElement();
+                if (namespaceURI == fNamespaces.getURI(prefix)) {
+                    prefixes.add(prefix);
+                }
+            }
+            return prefixes.iterator();
+        }
+
+    } // class NamespaceContextView
+
+} // class XMLStreamReaderImpl
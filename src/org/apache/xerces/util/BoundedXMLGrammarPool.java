@@ -0,0 +1,562 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.util;
+
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+
+/**
+ * <p>A grammar pool with a bounded capacity. When the total weight of
+ * the grammars in the pool exceeds the capacity, the grammars which were
+ * least recently retrieved are evicted. By default every grammar weighs
+ * one, so that the capacity is the maximum number of grammars in the
+ * pool; applications which prefer to bound the pool by an estimate of
+ * the memory used may override {@link #weigh(Grammar)}.</p>
+ *
+ * <p>The pool keeps counts of hits, misses and evictions. The schema and
+ * DTD loaders using the pool report the time they spend loading grammars
+ * through {@link #recordLoad(long)}, whether the grammars are loaded by
+ * the application or by a validator which did not find them in the
+ * pool.</p>
+ *
+ * <p>Like the memory sensitive grammar pool used by JAXP validation, this
+ * pool returns no initial grammars to a validator. Every grammar is looked
+ * up when it is needed, which keeps the recency and the statistics of the
+ * pool accurate.</p>
+ *
+ * @version $Id$
+ */
+public class BoundedXMLGrammarPool implements XMLGrammarPool {
+
+    //
+    // Constants
+    //
+
+    /** Default size. */
+    protected static final int TABLE_SIZE = 11;
+
+    /** Zero length grammar array. */
+    protected static final Grammar [] ZERO_LENGTH_GRAMMAR_ARRAY = new Grammar [0];
+
+    //
+    // Data
+    //
+
+    /** Grammars. */
+    protected Entry [] fGrammars = null;
+
+    /** Flag indicating whether this pool is locked */
+    protected volatile boolean fPoolIsLocked;
+
+    /** The number of grammars in the pool */
+    protected int fGrammarCount = 0;
+
+    /** Maximum total weight of the grammars in the pool. */
+    protected final long fCapacity;
+
+    /** Total weight of the grammars in the pool. */
+    protected long fWeight = 0;
+
+    /**
+     * Head of the list of entries in order of access. The entry
+     * following the head is the least recently used.
+     */
+    protected final Entry fHeader = new Entry(0, 0, null, null, 0, null);
+
+    /** Lock guarding the pool. */
+    private final Object fLock = new Object();
+
+    // statistics
+
+    /** Number of lookups which found a grammar. */
+    protected long fHitCount = 0;
+
+    /** Number of lookups which did not find a grammar. */
+    protected long fMissCount = 0;
+
+    /** Number of grammars evicted from the pool. */
+    protected long fEvictionCount = 0;
+
+    /** Number of grammar loads reported by the loaders. */
+    protected long fLoadCount = 0;
+
+    /** Total time in milliseconds spent by the loaders loading grammars. */
+    protected long fLoadTime = 0;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a grammar pool with the specified capacity.
+     *
+     * @param capacity The maximum total weight of the grammars in the pool,
+     *                 which is the maximum number of grammars unless
+     *                 <code>weigh</code> has been overridden.
+     */
+    public BoundedXMLGrammarPool(long capacity) {
+        this(capacity, TABLE_SIZE);
+    } // <init>(long)
+
+    /**
+     * Constructs a grammar pool with the specified capacity and
+     * number of buckets.
+     *
+     * @param capacity        The maximum total weight of the grammars in the pool.
+     * @param initialCapacity The initial number of buckets.
+     */
+    public BoundedXMLGrammarPool(long capacity, int initialCapacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        fCapacity = capacity;
+        fGrammars = new Entry[initialCapacity > 0 ? initialCapacity : TABLE_SIZE];
+        fHeader.before = fHeader.after = fHeader;
+        fPoolIsLocked = false;
+    } // <init>(long,int)
+
+    //
+    // XMLGrammarPool methods
+    //
+
+    /* <p> Retrieve the initial known set of grammars. This method is
+     * called by a validator before the validation starts. The application
+     * can provide an initial set of grammars available to the current
+     * validation attempt. </p>
+     *
+     * @param grammarType The type of the grammar, from the
+     *                    <code>org.apache.xerces.xni.grammars.XMLGrammarDescription</code>
+     *                    interface.
+     * @return            The set of grammars the validator may put in its "bucket"
+     */
+    public Grammar [] retrieveInitialGrammarSet (String grammarType) {
+        // Return no grammars, so that the validator asks for each
+        // grammar it needs through retrieveGrammar.
+        return ZERO_LENGTH_GRAMMAR_ARRAY;
+    } // retrieveInitialGrammarSet (String): Grammar[]
+
+    /* <p> Return the final set of grammars that the validator ended up
+     * with. This method is called after the validation finishes. The
+     * application may then choose to cache some of the returned grammars.</p>
+     * <p>In this implementation, we make our choice based on whether this object
+     * is "locked"--that is, whether the application has instructed
+     * us not to accept any new grammars.</p>
+     *
+     * @param grammarType The type of the grammars being returned;
+     * @param grammars    An array containing the set of grammars being
+     *                    returned; order is not significant.
+     */
+    public void cacheGrammars(String grammarType, Grammar[] grammars) {
+        if (!fPoolIsLocked) {
+            for (int i = 0; i < grammars.length; ++i) {
+                putGrammar(grammars[i]);
+            }
+        }
+    } // cacheGrammars(String, Grammar[]);
+
+    /* <p> This method requests that the application retrieve a grammar
+     * corresponding to the given GrammarIdentifier from its cache.
+     * If it cannot do so it must return null; the parser will then
+     * call the EntityResolver. </p>
+     * <strong>An application must not call its EntityResolver itself
+     * from this method; this may result in infinite recursions.</strong>
+     *
+     * @param desc The description of the Grammar being requested.
+     * @return     The Grammar corresponding to this description or null if
+     *             no such Grammar is known.
+     */
+    public Grammar retrieveGrammar(XMLGrammarDescription desc) {
+        return getGrammar(desc);
+    } // retrieveGrammar(XMLGrammarDescription):  Grammar
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Puts the specified grammar into the grammar pool and associates it to
+     * its grammar description, evicting the least recently used grammars
+     * if the capacity of the pool is exceeded.
+     *
+     * @param grammar The Grammar.
+     */
+    public void putGrammar(Grammar grammar) {
+        if (!fPoolIsLocked) {
+            final XMLGrammarDescription desc = grammar.getGrammarDescription();
+            final int hash = hashCode(desc);
+            final long weight = weigh(grammar);
+            synchronized (fLock) {
+                int index = (hash & 0x7FFFFFFF) % fGrammars.length;
+                Entry entry;
+                for (entry = fGrammars[index]; entry != null; entry = entry.next) {
+                    if (entry.hash == hash && equals(entry.desc, desc)) {
+                        fWeight += weight - entry.weight;
+                        entry.grammar = grammar;
+                        entry.weight = weight;
+                        entry.moveToEnd(fHeader);
+                        break;
+                    }
+                }
+                if (entry == null) {
+                    if (fGrammarCount >= fGrammars.length) {
+                        rehash();
+                        index = (hash & 0x7FFFFFFF) % fGrammars.length;
+                    }
+                    // create a new entry
+                    entry = new Entry(hash, index, desc, grammar, weight, fGrammars[index]);
+                    fGrammars[index] = entry;
+                    entry.addBefore(fHeader);
+                    fWeight += weight;
+                    fGrammarCount++;
+                }
+                // evict least recently used grammars; the grammar
+                // just added is kept even if it exceeds the capacity
+                while (fWeight > fCapacity && fHeader.after != entry) {
+                    removeEntry(fHeader.after);
+                    fEvictionCount++;
+                }
+            }
+        }
+    } // putGrammar(Grammar)
+
+    /**
+     * Returns the grammar associated to the specified grammar description
+     * and marks it as the most recently used.
+     *
+     * @param desc The Grammar Description.
+     */
+    public Grammar getGrammar(XMLGrammarDescription desc) {
+        final int hash = hashCode(desc);
+        synchronized (fLock) {
+            int index = (hash & 0x7FFFFFFF) % fGrammars.length;
+            for (Entry entry = fGrammars[index]; entry != null; entry = entry.next) {
+                if ((entry.hash == hash) && equals(entry.desc, desc)) {
+                    entry.moveToEnd(fHeader);
+                    fHitCount++;
+                    return entry.grammar;
+                }
+            }
+            fMissCount++;
+        }
+        return null;
+    } // getGrammar(XMLGrammarDescription):Grammar
+
+    /**
+     * Removes the grammar associated to the specified grammar description from the
+     * grammar pool and returns the removed grammar.
+     *
+     * @param desc The Grammar Description.
+     * @return     The removed grammar.
+     */
+    public Grammar removeGrammar(XMLGrammarDescription desc) {
+        final int hash = hashCode(desc);
+        synchronized (fLock) {
+            int index = (hash & 0x7FFFFFFF) % fGrammars.length;
+            for (Entry entry = fGrammars[index]; entry != null; entry = entry.next) {
+                if ((entry.hash == hash) && equals(entry.desc, desc)) {
+                    return removeEntry(entry);
+                }
+            }
+            return null;
+        }
+    } // removeGrammar(XMLGrammarDescription):Grammar
+
+    /**
+     * Returns true if the grammar pool contains a grammar associated
+     * to the specified grammar description. This method neither marks
+     * the grammar as used nor counts as a hit or a miss.
+     *
+     * @param desc The Grammar Description.
+     */
+    public boolean containsGrammar(XMLGrammarDescription desc) {
+        final int hash = hashCode(desc);
+        synchronized (fLock) {
+            int index = (hash & 0x7FFFFFFF) % fGrammars.length;
+            for (Entry entry = fGrammars[index]; entry != null; entry = entry.next) {
+                if ((entry.hash == hash) && equals(entry.desc, desc)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    } // containsGrammar(XMLGrammarDescription):boolean
+
+    /* <p> Sets this grammar pool to a "locked" state--i.e.,
+     * no new grammars will be added until it is "unlocked".
+     */
+    public void lockPool() {
+        fPoolIsLocked = true;
+    } // lockPool()
+
+    /* <p> Sets this grammar pool to an "unlocked" state--i.e.,
+     * new grammars will be added when putGrammar or cacheGrammars
+     * are called.
+     */
+    public void unlockPool() {
+        fPoolIsLocked = false;
+    } // unlockPool()
+
+    /*
+     * <p>This method clears the pool-i.e., removes references
+     * to all the grammars in it. Evictions are not counted.</p>
+     */
+    public void clear() {
+        synchronized (fLock) {
+            for (int i = 0; i < fGrammars.length; i++) {
+                fGrammars[i] = null;
+            }
+            for (Entry entry = fHeader.after; entry != fHeader; ) {
+                Entry next = entry.after;
+                entry.clear();
+                entry = next;
+            }
+            fHeader.before = fHeader.after = fHeader;
+            fGrammarCount = 0;
+            fWeight = 0;
+        }
+    } // clear()
+
+    /**
+     * This method checks whether two grammars are the same. Currently, we compare
+     * the root element names for DTD grammars and the target namespaces for Schema grammars.
+     * The application can override this behaviour and add its own logic.
+     *
+     * @param desc1 The grammar description
+     * @param desc2 The grammar description of the grammar to be compared to
+     * @return      True if the grammars are equal, otherwise false
+     */
+    public boolean equals(XMLGrammarDescription desc1, XMLGrammarDescription desc2) {
+        return desc1.equals(desc2);
+    }
+
+    /**
+     * Returns the hash code value for the given grammar description.
+     *
+     * @param desc The grammar description
+     * @return     The hash code value
+     */
+    public int hashCode(XMLGrammarDescription desc) {
+        return desc.hashCode();
+    }
+
+    /**
+     * Returns the weight of the given grammar, which is counted against
+     * the capacity of the pool. This implementation returns one for every
+     * grammar. Applications may override this method to return an estimate
+     * of the size of the grammar.
+     *
+     * @param grammar The grammar
+     * @return        The weight of the grammar; must not be negative
+     */
+    public long weigh(Grammar grammar) {
+        return 1;
+    }
+
+    // statistics
+
+    /** Returns the maximum total weight of the grammars in the pool. */
+    public long getCapacity() {
+        return fCapacity;
+    } // getCapacity():long
+
+    /** Returns the number of grammars in the pool. */
+    public int getGrammarCount() {
+        synchronized (fLock) {
+            return fGrammarCount;
+        }
+    } // getGrammarCount():int
+
+    /** Returns the total weight of the grammars in the pool. */
+    public long getWeight() {
+        synchronized (fLock) {
+            return fWeight;
+        }
+    } // getWeight():long
+
+    /** Returns the number of lookups which found a grammar. */
+    public long getHitCount() {
+        synchronized (fLock) {
+            return fHitCount;
+        }
+    } // getHitCount():long
+
+    /** Returns the number of lookups which did not find a grammar. */
+    public long getMissCount() {
+        synchronized (fLock) {
+            return fMissCount;
+        }
+    } // getMissCount():long
+
+    /** Returns the number of grammars evicted to stay within the capacity. */
+    public long getEvictionCount() {
+        synchronized (fLock) {
+            return fEvictionCount;
+        }
+    } // getEvictionCount():long
+
+    /**
+     * Returns the number of grammar loads reported by the loaders using
+     * this pool, including loads which failed.
+     */
+    public long getLoadCount() {
+        synchronized (fLock) {
+            return fLoadCount;
+        }
+    } // getLoadCount():long
+
+    /**
+     * Returns the total time in milliseconds spent by the loaders using
+     * this pool loading grammars.
+     */
+    public long getLoadTime() {
+        synchronized (fLock) {
+            return fLoadTime;
+        }
+    } // getLoadTime():long
+
+    /**
+     * Records that a loader using this pool spent the given time loading
+     * a grammar, together with the grammars it imports or includes.
+     *
+     * @param time The time in milliseconds the load took.
+     */
+    public void recordLoad(long time) {
+        synchronized (fLock) {
+            fLoadCount++;
+            fLoadTime += time;
+        }
+    } // recordLoad(long)
+
+    /** Resets the hit, miss, eviction and load statistics to zero. */
+    public void resetStatistics() {
+        synchronized (fLock) {
+            fHitCount = 0;
+            fMissCount = 0;
+            fEvictionCount = 0;
+            fLoadCount = 0;
+            fLoadTime = 0;
+        }
+    } // resetStatistics()
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Removes the given entry from the pool
+     *
+     * @param entry the entry to remove
+     * @return The grammar attached to this entry
+     */
+    private Grammar removeEntry(Entry entry) {
+        Entry prev = null;
+        for (Entry e = fGrammars[entry.bucket]; e != entry; e = e.next) {
+            prev = e;
+        }
+        if (prev != null) {
+            prev.next = entry.next;
+        }
+        else {
+            fGrammars[entry.bucket] = entry.next;
+        }
+        entry.remove();
+        --fGrammarCount;
+        fWeight -= entry.weight;
+        final Grammar grammar = entry.grammar;
+        entry.clear();
+        return grammar;
+    } // removeEntry(Entry):Grammar
+
+    /** Doubles the number of buckets. */
+    private void rehash() {
+        final Entry[] oldGrammars = fGrammars;
+        final Entry[] newGrammars = new Entry[(oldGrammars.length << 1) + 1];
+        for (int i = 0; i < oldGrammars.length; i++) {
+            for (Entry entry = oldGrammars[i]; entry != null; ) {
+                Entry next = entry.next;
+                int index = (entry.hash & 0x7FFFFFFF) % newGrammars.length;
+                entry.bucket = index;
+                entry.next = newGrammars[index];
+                newGrammars[index] = entry;
+                entry = next;
+            }
+        }
+        fGrammars = newGrammars;
+    } // rehash()
+
+    /**
+     * This class is a grammar pool entry. Each entry is a node in
+     * the linked list of its bucket and in the doubly linked list
+     * of all entries in order of access.
+     */
+    protected static final class Entry {
+
+        public int hash;
+        public int bucket;
+        public Entry next;
+        public Entry before;
+        public Entry after;
+        public XMLGrammarDescription desc;
+        public Grammar grammar;
+        public long weight;
+
+        protected Entry(int hash, int bucket, XMLGrammarDescription desc, Grammar grammar, long weight, Entry next) {
+            this.hash = hash;
+            this.bucket = bucket;
+            this.desc = desc;
+            this.grammar = grammar;
+            this.weight = weight;
+            this.next = next;
+        }
+
+        /** Inserts this entry before the given entry in the access order. */
+        void addBefore(Entry entry) {
+            after = entry;
+            before = entry.before;
+            before.after = this;
+            entry.before = this;
+        } // addBefore(Entry)
+
+        /** Removes this entry from the access order. */
+        void remove() {
+            before.after = after;
+            after.before = before;
+        } // remove()
+
+        /** Makes this entry the most recently used. */
+        void moveToEnd(Entry header) {
+            if (header.before != this) {
+                remove();
+                addBefore(header);
+            }
+        } // moveToEnd(Entry)
+
+        // clear this entry; useful to promote garbage collection
+        // since reduces reference count of objects to be destroyed
+        protected void clear () {
+            desc = null;
+            grammar = null;
+            next = null;
+            before = null;
+            after = null;
+        } // clear()
+
+    } // class Entry
+
+} // class BoundedXMLGrammarPool
@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.util;
+
+/**
+ * A symbol table which may be shared by many parsers at the same time.
+ * <p>
+ * Looking up a symbol which is already in the table does not lock: the
+ * entries of the table are immutable, and the buckets and hash function
+ * are published together through a volatile field. Only adding a new
+ * symbol takes a lock, and since the names in the documents a parser
+ * sees repeat quickly this rarely happens once the table is warm.
+ * <p>
+ * Unlike <code>SynchronizedSymbolTable</code> this class does not wrap
+ * another symbol table. To share an instance between parsers, pass it to
+ * <code>CachingParserPool</code> or set it as the value of the
+ * <code>http://apache.org/xml/properties/internal/symbol-table</code>
+ * property, for instance through the attributes of a JAXP factory. Note
+ * that a shared symbol table keeps every name it has seen.
+ *
+ * @version $Id$
+ */
+public final class ConcurrentSymbolTable
+    extends SymbolTable {
+
+    //
+    // Data
+    //
+
+    /** The buckets and hash function of the table. */
+    private volatile Table fTable;
+
+    /** Lock held while adding symbols. */
+    private final Object fLock = new Object();
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a concurrent symbol table of default size. */
+    public ConcurrentSymbolTable() {
+        this(TABLE_SIZE);
+    } // <init>()
+
+    /** Constructs a concurrent symbol table of the given size. */
+    public ConcurrentSymbolTable(int initialCapacity) {
+        super(1, 0.75f);
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+        }
+        fTable = new Table(new Node[initialCapacity > 0 ? initialCapacity : 1], null);
+        fTableSize = fTable.buckets.length;
+        fThreshold = (int) (fTableSize * fLoadFactor);
+    } // <init>(int)
+
+    //
+    // SymbolTable methods
+    //
+
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists,
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     *
+     * @param symbol The new symbol.
+     */
+    public String addSymbol(String symbol) {
+        final Table table = fTable;
+        final Node node = table.find(symbol, table.hash(symbol));
+        if (node != null) {
+            return node.symbol;
+        }
+        final int length = symbol.length();
+        final char[] characters = new char[length];
+        symbol.getChars(0, length, characters, 0);
+        return addSymbol0(characters, 0, length);
+    } // addSymbol(String):String
+
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists,
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     *
+     * @param buffer The buffer containing the new symbol.
+     * @param offset The offset into the buffer of the new symbol.
+     * @param length The length of the new symbol in the buffer.
+     */
+    public String addSymbol(char[] buffer, int offset, int length) {
+        final Table table = fTable;
+        final Node node = table.find(buffer, offset, length, table.hash(buffer, offset, length));
+        if (node != null) {
+            return node.symbol;
+        }
+        return addSymbol0(buffer, offset, length);
+    } // addSymbol(char[],int,int):String
+
+    /**
+     * Returns true if the symbol table already contains the specified
+     * symbol.
+     *
+     * @param symbol The symbol to look for.
+     */
+    public boolean containsSymbol(String symbol) {
+        final Table table = fTable;
+        return table.find(symbol, table.hash(symbol)) != null;
+    } // containsSymbol(String):boolean
+
+    /**
+     * Returns true if the symbol table already contains the specified
+     * symbol.
+     *
+     * @param buffer The buffer containing the symbol to look for.
+     * @param offset The offset into the buffer.
+     * @param length The length of the symbol in the buffer.
+     */
+    public boolean containsSymbol(char[] buffer, int offset, int length) {
+        final Table table = fTable;
+        return table.find(buffer, offset, length, table.hash(buffer, offset, length)) != null;
+    } // containsSymbol(char[],int,int):boolean
+
+    /**
+     * Increases the capacity of the table. Called while holding the lock.
+     */
+    protected void rehash() {
+        fTable = fTable.rehash(fTableSize * 2 + 1, fTable.multipliers);
+        fTableSize = fTable.buckets.length;
+        fThreshold = (int) (fTableSize * fLoadFactor);
+    } // rehash()
+
+    /**
+     * Selects a new hash function and reorganizes the table. Called
+     * while holding the lock.
+     */
+    protected void rebalance() {
+        final int[] multipliers = new int[MULTIPLIERS_SIZE];
+        PrimeNumberSequenceGenerator.generateSequence(multipliers);
+        fTable = fTable.rehash(fTableSize, multipliers);
+    } // rebalance()
+
+    //
+    // Private methods
+    //
+
+    /** Adds a symbol which was not found without locking. */
+    private String addSymbol0(char[] buffer, int offset, int length) {
+        synchronized (fLock) {
+            Table table = fTable;
+            int hash = table.hash(buffer, offset, length);
+            final Node[] buckets = table.buckets;
+            int collisionCount = 0;
+            OUTER: for (Node node = buckets[hash % buckets.length]; node != null; node = node.next) {
+                if (length == node.characters.length) {
+                    for (int i = 0; i < length; i++) {
+                        if (buffer[offset + i] != node.characters[i]) {
+                            ++collisionCount;
+                            continue OUTER;
+                        }
+                    }
+                    // added by another thread in the meantime
+                    return node.symbol;
+                }
+                ++collisionCount;
+            }
+            if (fCount >= fThreshold) {
+                rehash();
+            }
+            else if (collisionCount >= fCollisionThreshold) {
+                rebalance();
+            }
+            if (table != fTable) {
+                table = fTable;
+                hash = table.hash(buffer, offset, length);
+            }
+            final int bucket = hash % table.buckets.length;
+            final Node node = new Node(buffer, offset, length, table.buckets[bucket]);
+            table.buckets[bucket] = node;
+            ++fCount;
+            // publish the new bucket to threads which read the table next
+            fTable = table;
+            return node.symbol;
+        }
+    } // addSymbol0(char[],int,int):String
+
+    //
+    // Classes
+    //
+
+    /**
+     * The buckets of the table together with the hash function used
+     * to distribute symbols over them.
+     */
+    private static final class Table {
+
+        /** Buckets. */
+        final Node[] buckets;
+
+        /** Hash function multipliers, or null for the String hash function. */
+        final int[] multipliers;
+
+        Table(Node[] buckets, int[] multipliers) {
+            this.buckets = buckets;
+            this.multipliers = multipliers;
+        }
+
+        /** Returns the hash code of the given symbol. */
+        int hash(String symbol) {
+            if (multipliers == null) {
+                return symbol.hashCode() & 0x7FFFFFFF;
+            }
+            int code = 0;
+            final int length = symbol.length();
+            for (int i = 0; i < length; ++i) {
+                code = code * multipliers[i & MULTIPLIERS_MASK] + symbol.charAt(i);
+            }
+            return code & 0x7FFFFFFF;
+        } // hash(String):int
+
+        /** Returns the hash code of the given symbol. */
+        int hash(char[] buffer, int offset, int length) {
+            int code = 0;
+            if (multipliers == null) {
+                for (int i = 0; i < length; ++i) {
+                    code = code * 31 + buffer[offset + i];
+                }
+            }
+            else {
+                for (int i = 0; i < length; ++i) {
+                    code = code * multipliers[i & MULTIPLIERS_MASK] + buffer[offset + i];
+                }
+            }
+            return code & 0x7FFFFFFF;
+        } // hash(char[],int,int):int
+
+        /** Returns the node of the given symbol, or null. */
+        Node find(String symbol, int hash) {
+            final int length = symbol.length();
+            OUTER: for (Node node = buckets[hash % buckets.length]; node != null; node = node.next) {
+                if (length == node.characters.length) {
+                    for (int i = 0; i < length; i++) {
+                        if (symbol.charAt(i) != node.characters[i]) {
+                            continue OUTER;
+                        }
+                    }
+                    return node;
+                }
+            }
+            return null;
+        } // find(String,int):Node
+
+        /** Returns the node of the given symbol, or null. */
+        Node find(char[] buffer, int offset, int length, int hash) {
+            OUTER: for (Node node = buckets[hash % buckets.length]; node != null; node = node.next) {
+                if (length == node.characters.length) {
+                    for (int i = 0; i < length; i++) {
+                        if (buffer[offset + i] != node.characters[i]) {
+                            continue OUTER;
+                        }
+                    }
+                    return node;
+                }
+            }
+            return null;
+        } // find(char[],int,int,int):Node
+
+        /** Returns a copy of this table with the given size and hash function. */
+        Table rehash(int capacity, int[] newMultipliers) {
+            final Table table = new Table(new Node[capacity], newMultipliers);
+            for (int i = buckets.length; i-- > 0;) {
+                for (Node node = buckets[i]; node != null; node = node.next) {
+                    final int index = table.hash(node.symbol) % capacity;
+                    table.buckets[index] = new Node(node, table.buckets[index]);
+                }
+            }
+            return table;
+        } // rehash(int,int[]):Table
+
+    } // class Table
+
+    /**
+     * A symbol table entry. Entries are never modified once they have
+     * been created, so that a bucket can be traversed without locking.
+     */
+    private static final class Node {
+
+        /** Symbol. */
+        final String symbol;
+
+        /** Symbol characters. */
+        final char[] characters;
+
+        /** The next entry. */
+        final Node next;
+
+        Node(char[] ch, int offset, int length, Node next) {
+            characters = new char[length];
+            System.arraycopy(ch, offset, characters, 0, length);
+            symbol = new String(characters).intern();
+            this.next = next;
+        }
+
+        Node(Node node, Node next) {
+            symbol = node.symbol;
+            characters = node.characters;
+            this.next = next;
+        }
+
+    } // class Node
+
+} // class ConcurrentSymbolTable
@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.util;
+
+import java.util.Vector;
+
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+
+/**
+ * <p>A thread-safe grammar pool which does not lock on lookups. Like
+ * {@link XMLGrammarPoolImpl} grammars are keyed by their grammar
+ * description, but the entries of the hash table are immutable and
+ * modifications replace the chain of a bucket with a new copy, so
+ * that readers never observe a chain in an intermediate state.
+ * Only modifications of the pool are serialized.</p>
+ *
+ * <p>This pool may be shared between threads as is; it does not need
+ * to be wrapped by a synchronized grammar pool. While the pool is
+ * locked, grammars passed to {@link #putGrammar(Grammar)} and
+ * {@link #cacheGrammars(String, Grammar[])} are ignored, exactly as
+ * they are by <code>XMLGrammarPoolImpl</code>.</p>
+ *
+ * @version $Id$
+ */
+public class ConcurrentXMLGrammarPool implements XMLGrammarPool {
+
+    //
+    // Constants
+    //
+
+    /** Default size. Must be a power of two. */
+    protected static final int TABLE_SIZE = 16;
+
+    //
+    // Data
+    //
+
+    /**
+     * Grammars. Buckets are only ever replaced while holding the
+     * write lock, after which the table is written back to this
+     * field so that the change is published to readers.
+     */
+    protected volatile Entry[] fGrammars;
+
+    /** Whether this pool is locked. */
+    protected volatile boolean fPoolIsLocked;
+
+    /** The number of grammars in the pool. */
+    protected volatile int fGrammarCount = 0;
+
+    /** Lock held while modifying the pool. */
+    private final Object fWriteLock = new Object();
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a grammar pool with a default number of buckets. */
+    public ConcurrentXMLGrammarPool() {
+        this(TABLE_SIZE);
+    } // <init>()
+
+    /** Constructs a grammar pool with a specified number of buckets. */
+    public ConcurrentXMLGrammarPool(int initialCapacity) {
+        int size = 1;
+        while (size < initialCapacity) {
+            size <<= 1;
+        }
+        fGrammars = new Entry[size];
+        fPoolIsLocked = false;
+    } // <init>(int)
+
+    //
+    // XMLGrammarPool methods
+    //
+
+    /* <p> Retrieve the initial known set of grammars. This method is
+     * called by a validator before the validation starts. The application
+     * can provide an initial set of grammars available to the current
+     * validation attempt. </p>
+     *
+     * @param grammarType The type of the grammar, from the
+     *                    <code>org.apache.xerces.xni.grammars.XMLGrammarDescription</code>
+     *                    interface.
+     * @return            The set of grammars the validator may put in its "bucket"
+     */
+    public Grammar [] retrieveInitialGrammarSet (String grammarType) {
+        final Entry[] grammars = fGrammars;
+        final Vector result = new Vector();
+        for (int i = 0; i < grammars.length; i++) {
+            for (Entry e = grammars[i]; e != null; e = e.next) {
+                if (e.desc.getGrammarType().equals(grammarType)) {
+                    result.addElement(e.grammar);
+                }
+            }
+        }
+        Grammar[] toReturn = new Grammar[result.size()];
+        result.copyInto(toReturn);
+        return toReturn;
+    } // retrieveInitialGrammarSet (String): Grammar[]
+
+    /* <p> Return the final set of grammars that the validator ended up
+     * with. This method is called after the validation finishes. The
+     * application may then choose to cache some of the returned grammars.</p>
+     * <p>In this implementation, we make our choice based on whether this object
+     * is "locked"--that is, whether the application has instructed
+     * us not to accept any new grammars.</p>
+     *
+     * @param grammarType The type of the grammars being returned;
+     * @param grammars    An array containing the set of grammars being
+     *                    returned; order is not significant.
+     */
+    public void cacheGrammars(String grammarType, Grammar[] grammars) {
+        if (!fPoolIsLocked) {
+            for (int i = 0; i < grammars.length; i++) {
+                putGrammar(grammars[i]);
+            }
+        }
+    } // cacheGrammars(String, Grammar[]);
+
+    /* <p> This method requests that the application retrieve a grammar
+     * corresponding to the given GrammarIdentifier from its cache.
+     * If it cannot do so it must return null; the parser will then
+     * call the EntityResolver. </p>
+     * <strong>An application must not call its EntityResolver itself
+     * from this method; this may result in infinite recursions.</strong>
+     *
+     * @param desc The description of the Grammar being requested.
+     * @return     The Grammar corresponding to this description or null if
+     *             no such Grammar is known.
+     */
+    public Grammar retrieveGrammar(XMLGrammarDescription desc) {
+        return getGrammar(desc);
+    } // retrieveGrammar(XMLGrammarDescription):  Grammar
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Puts the specified grammar into the grammar pool and associates it to
+     * its grammar description. If the pool is locked the grammar is ignored.
+     *
+     * @param grammar The Grammar.
+     */
+    public void putGrammar(Grammar grammar) {
+        if (!fPoolIsLocked) {
+            final XMLGrammarDescription desc = grammar.getGrammarDescription();
+            final int hash = hashCode(desc);
+            synchronized (fWriteLock) {
+                Entry[] grammars = fGrammars;
+                int index = hash & (grammars.length - 1);
+                final Entry head = grammars[index];
+                for (Entry entry = head; entry != null; entry = entry.next) {
+                    if (entry.hash == hash && equals(entry.desc, desc)) {
+                        grammars[index] = replace(head, entry,
+                                new Entry(hash, desc, grammar, entry.next));
+                        fGrammars = grammars;
+                        return;
+                    }
+                }
+                // create a new entry
+                grammars[index] = new Entry(hash, desc, grammar, head);
+                final int count = fGrammarCount + 1;
+                if (count > grammars.length - (grammars.length >> 2)) {
+                    grammars = rehash(grammars);
+                }
+                fGrammarCount = count;
+                fGrammars = grammars;
+            }
+        }
+    } // putGrammar(Grammar)
+
+    /**
+     * Returns the grammar associated to the specified grammar description.
+     * This method does not block.
+     *
+     * @param desc The Grammar Description.
+     */
+    public Grammar getGrammar(XMLGrammarDescription desc) {
+        final Entry[] grammars = fGrammars;
+        final int hash = hashCode(desc);
+        for (Entry entry = grammars[hash & (grammars.length - 1)]; entry != null; entry = entry.next) {
+            if (entry.hash == hash && equals(entry.desc, desc)) {
+                return entry.grammar;
+            }
+        }
+        return null;
+    } // getGrammar(XMLGrammarDescription):Grammar
+
+    /**
+     * Removes the grammar associated to the specified grammar description from the
+     * grammar pool and returns the removed grammar.
+     *
+     * @param desc The Grammar Description.
+     * @return     The removed grammar.
+     */
+    public Grammar removeGrammar(XMLGrammarDescription desc) {
+        final int hash = hashCode(desc);
+        synchronized (fWriteLock) {
+            final Entry[] grammars = fGrammars;
+            final int index = hash & (grammars.length - 1);
+            final Entry head = grammars[index];
+            for (Entry entry = head; entry != null; entry = entry.next) {
+                if (entry.hash == hash && equals(entry.desc, desc)) {
+                    grammars[index] = replace(head, entry, entry.next);
+                    fGrammarCount = fGrammarCount - 1;
+                    fGrammars = grammars;
+                    return entry.grammar;
+                }
+            }
+            return null;
+        }
+    } // removeGrammar(XMLGrammarDescription):Grammar
+
+    /**
+     * Returns true if the grammar pool contains a grammar associated
+     * to the specified grammar description. This method does not block.
+     *
+     * @param desc The Grammar Description.
+     */
+    public boolean containsGrammar(XMLGrammarDescription desc) {
+        return getGrammar(desc) != null;
+    } // containsGrammar(XMLGrammarDescription):boolean
+
+    /* <p> Sets this grammar pool to a "locked" state--i.e.,
+     * no new grammars will be added until it is "unlocked".
+     */
+    public void lockPool() {
+        fPoolIsLocked = true;
+    } // lockPool()
+
+    /* <p> Sets this grammar pool to an "unlocked" state--i.e.,
+     * new grammars will be added when putGrammar or cacheGrammars
+     * are called.
+     */
+    public void unlockPool() {
+        fPoolIsLocked = false;
+    } // unlockPool()
+
+    /*
+     * <p>This method clears the pool-i.e., removes references
+     * to all the grammars in it.</p>
+     */
+    public void clear() {
+        synchronized (fWriteLock) {
+            fGrammarCount = 0;
+            fGrammars = new Entry[fGrammars.length];
+        }
+    } // clear()
+
+    /**
+     * This method checks whether two grammars are the same. Currently, we compare
+     * the root element names for DTD grammars and the target namespaces for Schema grammars.
+     * The application can override this behaviour and add its own logic.
+     *
+     * @param desc1 The grammar description
+     * @param desc2 The grammar description of the grammar to be compared to
+     * @return      True if the grammars are equal, otherwise false
+     */
+    public boolean equals(XMLGrammarDescription desc1, XMLGrammarDescription desc2) {
+        return desc1.equals(desc2);
+    }
+
+    /**
+     * Returns the hash code value for the given grammar description.
+     *
+     * @param desc The grammar description
+     * @return     The hash code value
+     */
+    public int hashCode(XMLGrammarDescription desc) {
+        return desc.hashCode();
+    }
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Returns a copy of the chain starting at <code>head</code> in which
+     * <code>target</code> and the entries following it are replaced by
+     * <code>tail</code>.
+     */
+    private static Entry replace(Entry head, Entry target, Entry tail) {
+        if (head == target) {
+            return tail;
+        }
+        return new Entry(head.hash, head.desc, head.grammar, replace(head.next, target, tail));
+    } // replace(Entry,Entry,Entry):Entry
+
+    /** Returns a new table twice the size of the given one holding the same entries. */
+    private static Entry[] rehash(Entry[] grammars) {
+        final Entry[] newGrammars = new Entry[grammars.length << 1];
+        final int mask = newGrammars.length - 1;
+        for (int i = 0; i < grammars.length; i++) {
+            for (Entry e = grammars[i]; e != null; e = e.next) {
+                final int index = e.hash & mask;
+                newGrammars[index] = new Entry(e.hash, e.desc, e.grammar, newGrammars[index]);
+            }
+        }
+        return newGrammars;
+    } // rehash(Entry[]):Entry[]
+
+    /**
+     * This class is a grammar pool entry. Each entry acts as a node
+     * in a linked list. Entries are never modified once they have been
+     * created, which makes it safe to traverse a chain without locking.
+     */
+    protected static final class Entry {
+        public final int hash;
+        public final XMLGrammarDescription desc;
+        public final Grammar grammar;
+        public final Entry next;
+
+        protected Entry(int hash, XMLGrammarDescription desc, Grammar grammar, Entry next) {
+            this.hash = hash;
+            this.desc = desc;
+            this.grammar = grammar;
+            this.next = next;
+        }
+    } // class Entry
+
+} // class ConcurrentXMLGrammarPool
@@ -69,7 +69,42 @@ public class NamespaceSupport implements NamespaceContext {
     protected int fCurrentContext;
     
     protected String[] fPrefixes = new String[16];
-    
+
+    //
+    // Prefix index
+    //
+
+    // NOTE: The index is only consulted while it covers exactly the
+    //       bindings in the namespace information array. Subclasses
+    //       which modify fNamespace or fNamespaceSize directly must
+    //       call invalidatePrefixIndex().
+
+    /** 
+     * Number of namespace information array entries in scope above
+     * which prefixes are looked up through the prefix index.
+     */
+    private static final int INDEX_THRESHOLD = 16 * 2;
+
+    /** 
+     * Prefix index buckets. Each bucket holds the binding (the index
+     * of its tuple in the namespace information array) most recently
+     * declared for a prefix hashing to it, or -1. The number of buckets
+     * is a power of 2.
+     */
+    private int[] fIndexBuckets;
+
+    /** 
+     * Prefix index chains. For each binding, the binding declared
+     * before it in the same bucket, or -1.
+     */
+    private int[] fIndexNext;
+
+    /** 
+     * The size of the namespace information array covered by the
+     * prefix index, or -1 if there is no index.
+     */
+    private int fIndexedSize = -1;
+
     //
     // Constructors
     //
@@ -115,6 +150,7 @@ public class NamespaceSupport implements NamespaceContext {
         fNamespace[fNamespaceSize++] = XMLSymbols.PREFIX_XMLNS;
         fNamespace[fNamespaceSize++] = NamespaceContext.XMLNS_URI;
         ++fCurrentContext;
+        fIndexedSize = -1;
 
     } // reset(SymbolTable)
 
@@ -141,7 +177,15 @@ public class NamespaceSupport implements NamespaceContext {
 	 * @see org.apache.xerces.xni.NamespaceContext#popContext()
 	 */
     public void popContext() {
-        fNamespaceSize = fContext[fCurrentContext--];
+        final int size = fContext[fCurrentContext--];
+        if (fIndexedSize == fNamespaceSize) {
+            // unwind the bindings of the context from the index
+            for (int i = fNamespaceSize - 2; i >= size; i -= 2) {
+                fIndexBuckets[hash(fNamespace[i])] = fIndexNext[i >> 1];
+            }
+            fIndexedSize = size;
+        }
+        fNamespaceSize = size;
     } // popContext()
 
 	/**
@@ -154,18 +198,27 @@ public class NamespaceSupport implements NamespaceContext {
         }
 
         // see if prefix already exists in current context
-        for (int i = fNamespaceSize; i > fContext[fCurrentContext]; i -= 2) {
-            if (fNamespace[i - 2] == prefix) {
-                // REVISIT: [Q] Should the new binding override the
-                //          previously declared binding or should it
-                //          it be ignored? -Ac
-                // NOTE:    The SAX2 "NamespaceSupport" helper allows
-                //          re-bindings with the new binding overwriting
-                //          the previous binding. -Ac
-                fNamespace[i - 1] = uri;
+        if (fIndexedSize == fNamespaceSize) {
+            final int i = lookup(prefix);
+            if (i >= fContext[fCurrentContext]) {
+                fNamespace[i + 1] = uri;
                 return true;
             }
         }
+        else {
+            for (int i = fNamespaceSize; i > fContext[fCurrentContext]; i -= 2) {
+                if (fNamespace[i - 2] == prefix) {
+                    // REVISIT: [Q] Should the new binding override the
+                    //          previously declared binding or should it
+                    //          it be ignored? -Ac
+                    // NOTE:    The SAX2 "NamespaceSupport" helper allows
+                    //          re-bindings with the new binding overwriting
+                    //          the previous binding. -Ac
+                    fNamespace[i - 1] = uri;
+                    return true;
+                }
+            }
+        }
 
         // resize array, if needed
         if (fNamespaceSize == fNamespace.length) {
@@ -175,8 +228,13 @@ public class NamespaceSupport implements NamespaceContext {
         }
 
         // bind prefix to uri in current context
-        fNamespace[fNamespaceSize++] = prefix;
-        fNamespace[fNamespaceSize++] = uri;
+        fNamespace[fNamespaceSize] = prefix;
+        fNamespace[fNamespaceSize + 1] = uri;
+        if (fIndexedSize == fNamespaceSize) {
+            addToIndex(fNamespaceSize);
+            fIndexedSize += 2;
+        }
+        fNamespaceSize += 2;
 
         return true;
 
@@ -186,6 +244,12 @@ public class NamespaceSupport implements NamespaceContext {
 	 * @see org.apache.xerces.xni.NamespaceContext#getURI(String)
 	 */
     public String getURI(String prefix) {
+
+        // look up prefix in the index
+        if (fIndexedSize == fNamespaceSize || buildIndex()) {
+            final int i = lookup(prefix);
+            return i != -1 ? fNamespace[i + 1] : null;
+        }
         
         // find prefix in current context
         for (int i = fNamespaceSize; i > 0; i -= 2) {
@@ -275,6 +339,11 @@ public class NamespaceSupport implements NamespaceContext {
      */
     public boolean containsPrefix(String prefix) {
 
+        // look up prefix in the index
+        if (fIndexedSize == fNamespaceSize || buildIndex()) {
+            return lookup(prefix) != -1;
+        }
+
         // find prefix in current context
         for (int i = fNamespaceSize; i > 0; i -= 2) {
             if (fNamespace[i - 2] == prefix) {
@@ -285,6 +354,94 @@ public class NamespaceSupport implements NamespaceContext {
         // prefix not found
         return false;
     }
+
+    //
+    // Protected methods
+    //
+
+    /**
+     * Discards the prefix index. It is rebuilt from the namespace
+     * information array when it is needed again. This must be called
+     * after modifying the namespace information array or its size
+     * other than through the methods of this class.
+     */
+    protected void invalidatePrefixIndex() {
+        fIndexedSize = -1;
+    } // invalidatePrefixIndex()
+
+    //
+    // Private methods
+    //
+
+    /** Returns the bucket of a prefix in the index. */
+    private int hash(String prefix) {
+        return (prefix != null ? prefix.hashCode() : 0) & (fIndexBuckets.length - 1);
+    } // hash(String):int
+
+    /** 
+     * Returns the index of the binding in scope for a prefix in the
+     * namespace information array, or -1 if the prefix is not bound.
+     */
+    private int lookup(String prefix) {
+        for (int b = fIndexBuckets[hash(prefix)]; b != -1; b = fIndexNext[b >> 1]) {
+            if (fNamespace[b] == prefix) {
+                return b;
+            }
+        }
+        return -1;
+    } // lookup(String):int
+
+    /** Adds the binding at the given index to the prefix index. */
+    private void addToIndex(int i) {
+        if (fIndexNext.length <= (i >> 1)) {
+            int[] nextarray = new int[fNamespace.length >> 1];
+            System.arraycopy(fIndexNext, 0, nextarray, 0, fIndexNext.length);
+            fIndexNext = nextarray;
+        }
+        if ((i >> 1) >= fIndexBuckets.length) {
+            // rehash everything into twice as many buckets
+            fIndexBuckets = new int[fIndexBuckets.length * 2];
+            indexBindings(i);
+        }
+        final int bucket = hash(fNamespace[i]);
+        fIndexNext[i >> 1] = fIndexBuckets[bucket];
+        fIndexBuckets[bucket] = i;
+    } // addToIndex(int)
+
+    /** Indexes the bindings of the namespace information array up to the given index. */
+    private void indexBindings(int end) {
+        for (int b = 0; b < fIndexBuckets.length; ++b) {
+            fIndexBuckets[b] = -1;
+        }
+        for (int i = 0; i < end; i += 2) {
+            final int bucket = hash(fNamespace[i]);
+            fIndexNext[i >> 1] = fIndexBuckets[bucket];
+            fIndexBuckets[bucket] = i;
+        }
+    } // indexBindings(int)
+
+    /** 
+     * Builds the prefix index if there are enough bindings in scope.
+     * Returns true if the index can be used.
+     */
+    private boolean buildIndex() {
+        if (fNamespaceSize <= INDEX_THRESHOLD) {
+            return false;
+        }
+        int buckets = fIndexBuckets != null ? fIndexBuckets.length : INDEX_THRESHOLD;
+        while (buckets <= (fNamespaceSize >> 1)) {
+            buckets *= 2;
+        }
+        if (fIndexBuckets == null || fIndexBuckets.length != buckets) {
+            fIndexBuckets = new int[buckets];
+        }
+        if (fIndexNext == null || fIndexNext.length < (fNamespace.length >> 1)) {
+            fIndexNext = new int[fNamespace.length >> 1];
+        }
+        indexBindings(fNamespaceSize);
+        fIndexedSize = fNamespaceSize;
+        return true;
+    } // buildIndex():boolean
     
     protected final class Prefixes implements Enumeration {
         private String[] prefixes;
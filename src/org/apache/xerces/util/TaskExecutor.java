@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.util;
+
+/**
+ * <p>Runs tasks the parser hands off so that they may proceed
+ * concurrently with the work of the calling thread, for instance
+ * loading the documents of a schema in parallel.</p>
+ *
+ * <p>Implementations decide on which thread a task runs; running it
+ * immediately on the calling thread is allowed. The parser never
+ * depends on a task being run: a task which has not started by the
+ * time its result is needed is done by the calling thread instead.
+ * On Java 5 and above an existing <code>java.util.concurrent.Executor</code>
+ * can be adapted by delegating this method to its <code>execute</code>
+ * method.</p>
+ *
+ * @version $Id$
+ */
+public interface TaskExecutor {
+
+    /**
+     * Arranges for the given task to be run, now or at some later time.
+     *
+     * @param task The task to run.
+     */
+    public void execute(Runnable task);
+
+} // interface TaskExecutor
@@ -168,6 +168,7 @@ public class MultipleScopeNamespaceSupport extends NamespaceSupport {
     public void reset() {
         fCurrentContext = fScope[fCurrentScope];
         fNamespaceSize = fContext[fCurrentContext];
+        invalidatePrefixIndex();
     }
 
     /**
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.xinclude;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>A cache of the results of XInclude processing. Once the target of an
+ * include element with parse="xml" has been parsed, the document events
+ * it produced are kept, keyed by the resolved system identifier of the
+ * target, its xpointer, accept and accept-language attributes and the
+ * context of the include which affects the result (the [base URI] and
+ * [language] used for fixup). When the same target is included again,
+ * the recorded events are sent down the pipeline instead of parsing the
+ * target again.</p>
+ *
+ * <p>A cache is set on a parser with the
+ * <code>http://apache.org/xml/properties/xinclude-cache</code> property.
+ * It is thread safe and may be shared by any number of parsers and kept
+ * for the lifetime of an application. Parsers sharing a cache should be
+ * configured alike, since features of the parser which change the events
+ * reported for a document are not part of the key. The cache holds at
+ * most a fixed number of targets and evicts the least recently used one
+ * when it is full. Targets whose recording is longer than a given number
+ * of characters are not cached.</p>
+ *
+ * <p>Note that the cache assumes that resources do not change. Call
+ * {@link #clear()} to drop the cached targets when they may have.</p>
+ *
+ * @version $Id$
+ */
+public final class XIncludeCache {
+
+    //
+    // Constants
+    //
+
+    /** Default maximum length of a recording, in characters. */
+    public static final int DEFAULT_MAX_ENTRY_LENGTH = 256 * 1024;
+
+    //
+    // Data
+    //
+
+    /** Maximum number of cached targets. */
+    private final int fMaxEntries;
+
+    /** Maximum length of a cached recording, in characters. */
+    private final int fMaxEntryLength;
+
+    /** Cached recordings, in access order. */
+    private final LinkedHashMap fEntries;
+
+    // statistics
+
+    /** Number of lookups which found a recording. */
+    private long fHitCount = 0;
+
+    /** Number of lookups which did not find a recording. */
+    private long fMissCount = 0;
+
+    /** Number of recordings evicted from the cache. */
+    private long fEvictionCount = 0;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a cache which holds at most the given number of targets,
+     * each recorded in at most {@link #DEFAULT_MAX_ENTRY_LENGTH} characters.
+     *
+     * @param maxEntries The maximum number of cached targets.
+     */
+    public XIncludeCache(int maxEntries) {
+        this(maxEntries, DEFAULT_MAX_ENTRY_LENGTH);
+    } // <init>(int)
+
+    /**
+     * Constructs a cache which holds at most the given number of targets.
+     *
+     * @param maxEntries     The maximum number of cached targets.
+     * @param maxEntryLength The maximum number of characters of character
+     *                       data, comments, processing instructions and
+     *                       attribute values recorded for a target. Larger
+     *                       targets are parsed every time.
+     */
+    public XIncludeCache(int maxEntries, int maxEntryLength) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries: " + maxEntries);
+        }
+        if (maxEntryLength <= 0) {
+            throw new IllegalArgumentException("maxEntryLength: " + maxEntryLength);
+        }
+        fMaxEntries = maxEntries;
+        fMaxEntryLength = maxEntryLength;
+        fEntries = new LinkedHashMap(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                if (size() > fMaxEntries) {
+                    ++fEvictionCount;
+                    return true;
+                }
+                return false;
+            }
+        };
+    } // <init>(int,int)
+
+    //
+    // Public methods
+    //
+
+    /** Returns the maximum number of cached targets. */
+    public int getMaxEntries() {
+        return fMaxEntries;
+    } // getMaxEntries():int
+
+    /** Returns the maximum length of a cached recording, in characters. */
+    public int getMaxEntryLength() {
+        return fMaxEntryLength;
+    } // getMaxEntryLength():int
+
+    /** Returns the number of cached targets. */
+    public synchronized int size() {
+        return fEntries.size();
+    } // size():int
+
+    /** Removes all cached targets. The statistics are kept. */
+    public synchronized void clear() {
+        fEntries.clear();
+    } // clear()
+
+    /** Returns the number of includes which were replayed from the cache. */
+    public synchronized long getHitCount() {
+        return fHitCount;
+    } // getHitCount():long
+
+    /** Returns the number of includes which were not found in the cache. */
+    public synchronized long getMissCount() {
+        return fMissCount;
+    } // getMissCount():long
+
+    /** Returns the number of targets evicted to make room for others. */
+    public synchronized long getEvictionCount() {
+        return fEvictionCount;
+    } // getEvictionCount():long
+
+    //
+    // Package visible methods
+    //
+
+    /** Returns the recording for the given key, or null. */
+    synchronized XIncludeEvents get(String key) {
+        XIncludeEvents events = (XIncludeEvents) fEntries.get(key);
+        if (events != null) {
+            ++fHitCount;
+        }
+        else {
+            ++fMissCount;
+        }
+        return events;
+    } // get(String):XIncludeEvents
+
+    /** Adds a recording, evicting the least recently used one if needed. */
+    synchronized void put(String key, XIncludeEvents events) {
+        fEntries.put(key, events);
+    } // put(String,XIncludeEvents)
+
+} // class XIncludeCache
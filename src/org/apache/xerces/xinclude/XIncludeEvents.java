@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.xinclude;
+
+import org.apache.xerces.util.AugmentationsImpl;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.XMLAttributesImpl;
+import org.apache.xerces.util.XMLResourceIdentifierImpl;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+
+/**
+ * The document events reported for the target of an include, as recorded
+ * by an {@link XIncludeRecorder}. A recording is immutable and may be
+ * replayed by several threads at once.
+ * <p>
+ * Events are stored in three parallel sequences which are read in step:
+ * integer codes (the event type followed by counts, flags and offsets),
+ * objects (names, values, comments and augmentations) and the characters
+ * of the other text events.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class XIncludeEvents {
+
+    //
+    // Constants
+    //
+
+    // event types
+
+    static final int START_ELEMENT = 1;
+    static final int EMPTY_ELEMENT = 2;
+    static final int END_ELEMENT = 3;
+    static final int CHARACTERS = 4;
+    static final int IGNORABLE_WHITESPACE = 5;
+    static final int COMMENT = 6;
+    static final int PROCESSING_INSTRUCTION = 7;
+    static final int START_CDATA = 8;
+    static final int END_CDATA = 9;
+    static final int START_GENERAL_ENTITY = 10;
+    static final int END_GENERAL_ENTITY = 11;
+    static final int TEXT_DECL = 12;
+
+    //
+    // Data
+    //
+
+    /** Event types, counts, flags and text offsets. */
+    private final int[] fCodes;
+
+    /** Number of codes. */
+    private final int fCodeCount;
+
+    /** Names, values and augmentations. */
+    private final Object[] fObjects;
+
+    /** Characters of the text events. */
+    private final char[] fText;
+
+    /** Expanded system identifiers of the documents read for the recording. */
+    private final String[] fSystemIds;
+
+    //
+    // Constructors
+    //
+
+    XIncludeEvents(int[] codes, int codeCount, Object[] objects,
+            char[] text, String[] systemIds) {
+        fCodes = codes;
+        fCodeCount = codeCount;
+        fObjects = objects;
+        fText = text;
+        fSystemIds = systemIds;
+    } // <init>(int[],int,Object[],char[],String[])
+
+    //
+    // Methods
+    //
+
+    /**
+     * Returns the expanded system identifiers of the target and of the
+     * documents it included in turn.
+     */
+    String[] getSystemIds() {
+        return fSystemIds;
+    } // getSystemIds():String[]
+
+    /**
+     * Sends the recorded events to a document handler. Namespace
+     * declarations are made in the given namespace context around the
+     * elements which declared them, as the scanner would have done.
+     *
+     * @param handler          The document handler.
+     * @param namespaceContext The namespace context of the pipeline.
+     * @param symbolTable      The symbol table of the pipeline, or null.
+     */
+    void replay(XMLDocumentHandler handler, NamespaceContext namespaceContext,
+            SymbolTable symbolTable) throws XNIException {
+        final int[] codes = fCodes;
+        final Object[] objects = fObjects;
+        final QName element = new QName();
+        final QName name = new QName();
+        final XMLAttributesImpl attributes = new XMLAttributesImpl();
+        final XMLString text = new XMLString();
+        int c = 0;
+        int o = 0;
+        while (c < fCodeCount) {
+            switch (codes[c++]) {
+                case START_ELEMENT:
+                case EMPTY_ELEMENT: {
+                    boolean empty = codes[c - 1] == EMPTY_ELEMENT;
+                    int namespaceCount = codes[c++];
+                    int attributeCount = codes[c++];
+                    o = setName(element, objects, o, symbolTable);
+                    Augmentations augs = augmentations(objects[o++]);
+                    namespaceContext.pushContext();
+                    for (int i = 0; i < namespaceCount; ++i) {
+                        namespaceContext.declarePrefix(
+                            symbol((String) objects[o], symbolTable),
+                            symbol((String) objects[o + 1], symbolTable));
+                        o += 2;
+                    }
+                    attributes.removeAllAttributes();
+                    for (int i = 0; i < attributeCount; ++i) {
+                        o = setName(name, objects, o, symbolTable);
+                        String type = (String) objects[o++];
+                        String value = (String) objects[o++];
+                        String nonNormalizedValue = (String) objects[o++];
+                        Object[] items = (Object[]) objects[o++];
+                        attributes.addAttributeNS(name, type, value);
+                        attributes.setNonNormalizedValue(i, nonNormalizedValue);
+                        attributes.setSpecified(i, codes[c++] != 0);
+                        if (items != null) {
+                            Augmentations attrAugs = attributes.getAugmentations(i);
+                            for (int j = 0; j < items.length; j += 2) {
+                                attrAugs.putItem((String) items[j], items[j + 1]);
+                            }
+                        }
+                    }
+                    if (empty) {
+                        handler.emptyElement(element, attributes, augs);
+                        namespaceContext.popContext();
+                    }
+                    else {
+                        handler.startElement(element, attributes, augs);
+                    }
+                    break;
+                }
+                case END_ELEMENT: {
+                    o = setName(element, objects, o, symbolTable);
+                    handler.endElement(element, augmentations(objects[o++]));
+                    namespaceContext.popContext();
+                    break;
+                }
+                case CHARACTERS: {
+                    text.setValues(fText, codes[c], codes[c + 1]);
+                    c += 2;
+                    handler.characters(text, augmentations(objects[o++]));
+                    break;
+                }
+                case IGNORABLE_WHITESPACE: {
+                    text.setValues(fText, codes[c], codes[c + 1]);
+                    c += 2;
+                    handler.ignorableWhitespace(text, augmentations(objects[o++]));
+                    break;
+                }
+                case COMMENT: {
+                    char[] chars = (char[]) objects[o++];
+                    text.setValues(chars, 0, chars.length);
+                    handler.comment(text, augmentations(objects[o++]));
+                    break;
+                }
+                case PROCESSING_INSTRUCTION: {
+                    text.setValues(fText, codes[c], codes[c + 1]);
+                    c += 2;
+                    String target = symbol((String) objects[o++], symbolTable);
+                    handler.processingInstruction(target, text, augmentations(objects[o++]));
+                    break;
+                }
+                case START_CDATA: {
+                    handler.startCDATA(augmentations(objects[o++]));
+                    break;
+                }
+                case END_CDATA: {
+                    handler.endCDATA(augmentations(objects[o++]));
+                    break;
+                }
+                case START_GENERAL_ENTITY: {
+                    boolean hasIdentifier = codes[c++] != 0;
+                    String entityName = symbol((String) objects[o++], symbolTable);
+                    XMLResourceIdentifierImpl identifier = null;
+                    if (hasIdentifier) {
+                        identifier = new XMLResourceIdentifierImpl(
+                            (String) objects[o], (String) objects[o + 1],
+                            (String) objects[o + 2], (String) objects[o + 3]);
+                        o += 4;
+                    }
+                    String encoding = (String) objects[o++];
+                    handler.startGeneralEntity(entityName, identifier, encoding,
+                        augmentations(objects[o++]));
+                    break;
+                }
+                case END_GENERAL_ENTITY: {
+                    String entityName = symbol((String) objects[o++], symbolTable);
+                    handler.endGeneralEntity(entityName, augmentations(objects[o++]));
+                    break;
+                }
+                case TEXT_DECL: {
+                    String version = (String) objects[o++];
+                    String encoding = (String) objects[o++];
+                    handler.textDecl(version, encoding, augmentations(objects[o++]));
+                    break;
+                }
+            }
+        }
+    } // replay(XMLDocumentHandler,NamespaceContext,SymbolTable)
+
+    //
+    // Private methods
+    //
+
+    /** Sets a name from the four objects at the given index. */
+    private static int setName(QName name, Object[] objects, int o,
+            SymbolTable symbolTable) {
+        name.setValues(symbol((String) objects[o], symbolTable),
+                symbol((String) objects[o + 1], symbolTable),
+                symbol((String) objects[o + 2], symbolTable),
+                symbol((String) objects[o + 3], symbolTable));
+        return o + 4;
+    } // setName(QName,Object[],int,SymbolTable):int
+
+    /**
+     * Returns the symbol of the pipeline for a recorded name, so that the
+     * names replayed compare by reference as scanned names do.
+     */
+    private static String symbol(String s, SymbolTable symbolTable) {
+        return (s != null && symbolTable != null) ? symbolTable.addSymbol(s) : s;
+    } // symbol(String,SymbolTable):String
+
+    /** Creates augmentations holding the recorded items, if any. */
+    private static Augmentations augmentations(Object object) {
+        if (object == null) {
+            return null;
+        }
+        Object[] items = (Object[]) object;
+        Augmentations augs = new AugmentationsImpl();
+        for (int i = 0; i < items.length; i += 2) {
+            augs.putItem((String) items[i], items[i + 1]);
+        }
+        return augs;
+    } // augmentations(Object):Augmentations
+
+} // class XIncludeEvents
@@ -31,6 +31,7 @@ import org.apache.xerces.impl.XMLErrorReporter;
 import org.apache.xerces.impl.io.MalformedByteSequenceException;
 import org.apache.xerces.impl.msg.XMLMessageFormatter;
 import org.apache.xerces.util.AugmentationsImpl;
+import org.apache.xerces.util.DefaultErrorHandler;
 import org.apache.xerces.util.HTTPInputSource;
 import org.apache.xerces.util.IntStack;
 import org.apache.xerces.util.ParserConfigurationSettings;
@@ -61,7 +62,9 @@ import org.apache.xerces.xni.parser.XMLDTDSource;
 import org.apache.xerces.xni.parser.XMLDocumentFilter;
 import org.apache.xerces.xni.parser.XMLDocumentSource;
 import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
 import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
 import org.apache.xerces.xni.parser.XMLParserConfiguration;
 import org.apache.xerces.xpointer.XPointerHandler;
 import org.apache.xerces.xpointer.XPointerProcessor;
@@ -228,6 +231,14 @@ public class XIncludeHandler
     protected static final String BUFFER_SIZE =
         Constants.XERCES_PROPERTY_PREFIX + Constants.BUFFER_SIZE_PROPERTY;
     
+    /** property identifier: XInclude cache. */
+    protected static final String XINCLUDE_CACHE =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.XINCLUDE_CACHE_PROPERTY;
+    
+    /** property identifier: error handler. */
+    protected static final String ERROR_HANDLER =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.ERROR_HANDLER_PROPERTY;
+    
     protected static final String PARSER_SETTINGS = 
         Constants.XERCES_FEATURE_PREFIX + Constants.PARSER_SETTINGS;
 
@@ -240,10 +251,10 @@ public class XIncludeHandler
 
     /** Recognized properties. */
     private static final String[] RECOGNIZED_PROPERTIES =
-        { ERROR_REPORTER, ENTITY_RESOLVER, SECURITY_MANAGER, BUFFER_SIZE };
+        { ERROR_REPORTER, ENTITY_RESOLVER, SECURITY_MANAGER, BUFFER_SIZE, XINCLUDE_CACHE };
 
     /** Property defaults. */
-    private static final Object[] PROPERTY_DEFAULTS = { null, null, null, new Integer(XMLEntityManager.DEFAULT_BUFFER_SIZE) };
+    private static final Object[] PROPERTY_DEFAULTS = { null, null, null, new Integer(XMLEntityManager.DEFAULT_BUFFER_SIZE), null };
 
     // instance variables
 
@@ -287,6 +298,13 @@ public class XIncludeHandler
     protected XMLEntityResolver fEntityResolver;
     protected SecurityManager fSecurityManager;
     
+    // these are needed for replaying included documents from a cache
+    protected XIncludeCache fIncludeCache;
+    private boolean fUseIncludeCache;
+    private XIncludeRecorder fRecorder;
+    private ErrorCounter fErrorCounter;
+    private boolean fInstalledErrorCounter;
+    
     // these are needed for text include processing
     protected XIncludeTextReader fXInclude10TextReader;
     protected XIncludeTextReader fXInclude11TextReader;
@@ -531,6 +549,17 @@ public class XIncludeHandler
             fSecurityManager = null;
         }
         
+        // Get XInclude cache.
+        try {
+            fIncludeCache =
+                (XIncludeCache)componentManager.getProperty(
+                    XINCLUDE_CACHE);
+            setChildIncludeCache();
+        }
+        catch (XMLConfigurationException e) {
+            fIncludeCache = null;
+        }
+        
         // Get buffer size.
         try {
             Integer value =
@@ -563,6 +592,22 @@ public class XIncludeHandler
         fSettings = new ParserConfigurationSettings();
         copyFeatures(componentManager, fSettings);
         
+        // Included documents which are validated are not replayed from the
+        // cache, since their validation errors would not be reported again.
+        fUseIncludeCache = (fIncludeCache != null);
+        try {
+            if (componentManager.getFeature(VALIDATION)) {
+                fUseIncludeCache = false;
+            }
+        }
+        catch (XMLConfigurationException e) {}
+        try {
+            if (componentManager.getFeature(SCHEMA_VALIDATION)) {
+                fUseIncludeCache = false;
+            }
+        }
+        catch (XMLConfigurationException e) {}
+        
         // We don't want a schema validator on the new pipeline,
         // so if it was enabled, we set the feature to false. 
         try {
@@ -678,6 +723,11 @@ public class XIncludeHandler
             }
             return;
         }
+        if (propertyId.equals(XINCLUDE_CACHE)) {
+            fIncludeCache = (XIncludeCache)value;
+            setChildIncludeCache();
+            return;
+        }
         if (propertyId.equals(BUFFER_SIZE)) {
             Integer bufferSize = (Integer) value;
             if (fChildConfig != null) {
@@ -796,6 +846,8 @@ public class XIncludeHandler
                         "RecursiveInclude",
                         new Object[] { fCurrentBaseURI.getExpandedSystemId()});
             }
+            fParentXIncludeHandler.addIncludedSystemId(
+                fCurrentBaseURI.getExpandedSystemId());
         }
 
         // initialize the current language
@@ -1597,12 +1649,13 @@ public class XIncludeHandler
                         ObjectFactory.findClassLoader(),
                         true);
 
-                // use the same symbol table, error reporter, entity resolver, security manager and buffer size.
+                // use the same symbol table, error reporter, entity resolver, security manager, buffer size and cache.
                 if (fSymbolTable != null) fChildConfig.setProperty(SYMBOL_TABLE, fSymbolTable);
                 if (fErrorReporter != null) fChildConfig.setProperty(ERROR_REPORTER, fErrorReporter);
                 if (fEntityResolver != null) fChildConfig.setProperty(ENTITY_RESOLVER, fEntityResolver);
                 fChildConfig.setProperty(SECURITY_MANAGER, fSecurityManager);
                 fChildConfig.setProperty(BUFFER_SIZE, new Integer(fBufferSize));
+                fChildConfig.setProperty(XINCLUDE_CACHE, fIncludeCache);
                 
                 // features must be copied to child configuration
                 fNeedCopyFeatures = true;
@@ -1692,6 +1745,38 @@ public class XIncludeHandler
                 copyFeatures(fSettings, fChildConfig);
             }
             fNeedCopyFeatures = false;
+            
+            // If the target has been included before in the same context
+            // replay the events recorded then, otherwise record them.
+            String cacheKey = null;
+            if (fUseIncludeCache && fResultDepth != 0 && fDocumentHandler != null) {
+                cacheKey = getIncludeCacheKey(includedSource, xpointer, accept, acceptLanguage);
+                if (cacheKey != null) {
+                    XIncludeEvents events = fIncludeCache.get(cacheKey);
+                    if (events != null && replayInclude(events)) {
+                        closeInputSource(includedSource);
+                        return true;
+                    }
+                }
+            }
+            XIncludeHandler childHandler = null;
+            XMLDocumentSource documentSource = null;
+            int errorCount = 0;
+            if (cacheKey != null) {
+                childHandler = (XIncludeHandler)fChildConfig.getProperty(
+                    Constants.XERCES_PROPERTY_PREFIX
+                        + (xpointer != null ? Constants.XPOINTER_HANDLER_PROPERTY
+                                : Constants.XINCLUDE_HANDLER_PROPERTY));
+                documentSource = fDocumentHandler.getDocumentSource();
+                fRecorder = new XIncludeRecorder(fDocumentHandler,
+                    fNamespaceContext, fIncludeCache.getMaxEntryLength());
+                // The child configuration sets its document handler on the
+                // last component of its pipeline whenever a parse starts,
+                // so the recorder must be set on it as well as on the handler.
+                fChildConfig.setDocumentHandler(fRecorder);
+                childHandler.setDocumentHandler(fRecorder);
+                errorCount = startErrorCount();
+            }
 
             try {
                 fHasIncludeReportedContent = false;
@@ -1715,6 +1800,16 @@ public class XIncludeHandler
                 		return false;
                 	}
                 }
+                
+                // Cache the events if no error or warning was reported
+                // while parsing the target.
+                if (fRecorder != null && fErrorCounter != null
+                    && fErrorCounter.fCount == errorCount) {
+                    XIncludeEvents events = fRecorder.getEvents();
+                    if (events != null) {
+                        fIncludeCache.put(cacheKey, events);
+                    }
+                }
             }
             catch (XNIException e) {
                 // necessary to make sure proper location is reported to the application and in errors
@@ -1747,6 +1842,14 @@ public class XIncludeHandler
             }
             finally {
                 fNamespaceContext.popScope();
+                if (fRecorder != null) {
+                    fRecorder.discard();
+                    fRecorder = null;
+                    fChildConfig.setDocumentHandler(fDocumentHandler);
+                    childHandler.setDocumentHandler(fDocumentHandler);
+                    fDocumentHandler.setDocumentSource(documentSource);
+                    endErrorCount();
+                }
             }
         }
         else if (parse.equals(XINCLUDE_PARSE_TEXT)) {
@@ -1948,6 +2051,150 @@ public class XIncludeHandler
         }
     }
 
+    /**
+     * Notes that a document has been read for the includes of this handler
+     * and of its ancestors which are being recorded.
+     * @param includedSysId the expanded system id of the document
+     */
+    private void addIncludedSystemId(String includedSysId) {
+        for (XIncludeHandler handler = this; handler != null;
+            handler = handler.fParentXIncludeHandler) {
+            if (handler.fRecorder != null) {
+                handler.fRecorder.addSystemId(includedSysId);
+            }
+        }
+    }
+    
+    /**
+     * Passes the XInclude cache on to both child configurations, so that
+     * nested includes share it.
+     */
+    private void setChildIncludeCache() {
+        if (fXIncludeChildConfig != null) {
+            fXIncludeChildConfig.setProperty(XINCLUDE_CACHE, fIncludeCache);
+        }
+        if (fXPointerChildConfig != null) {
+            fXPointerChildConfig.setProperty(XINCLUDE_CACHE, fIncludeCache);
+        }
+    }
+    
+    /**
+     * Returns the key of an include in the XInclude cache, made of the
+     * resolved target and of everything in the context of the include
+     * element which affects the events reported for it.  Returns null if
+     * the include cannot be cached.
+     */
+    private String getIncludeCacheKey(XMLInputSource includedSource,
+        String xpointer, String accept, String acceptLanguage) {
+        if (includedSource.getSystemId() == null || fErrorReporter == null) {
+            return null;
+        }
+        StringBuffer key = new StringBuffer();
+        try {
+            key.append(XMLEntityManager.expandSystemId(
+                includedSource.getSystemId(),
+                includedSource.getBaseSystemId(),
+                false));
+            appendKeyPart(key, xpointer);
+            appendKeyPart(key, accept);
+            appendKeyPart(key, acceptLanguage);
+            if (fFixupBaseURIs) {
+                appendKeyPart(key, includedSource.getSystemId());
+                appendKeyPart(key, getIncludeParentBaseURI());
+                appendKeyPart(key, getRelativeBaseURI());
+            }
+            if (fFixupLanguage) {
+                appendKeyPart(key, getIncludeParentLanguage());
+            }
+        }
+        catch (MalformedURIException e) {
+            return null;
+        }
+        return key.toString();
+    }
+    
+    private static void appendKeyPart(StringBuffer key, String part) {
+        // NUL cannot appear in a URI or in an attribute value
+        if (part != null) {
+            key.append('\0').append('+').append(part);
+        }
+        else {
+            key.append('\0').append('-');
+        }
+    }
+    
+    /**
+     * Sends the recorded events of a cached include to the document handler.
+     * @param events the recorded events
+     * @return false, without reporting anything, if replaying the events
+     * would include a document recursively
+     */
+    private boolean replayInclude(XIncludeEvents events) {
+        String[] systemIds = events.getSystemIds();
+        for (int i = 0; i < systemIds.length; ++i) {
+            if (searchForRecursiveIncludes(systemIds[i])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < systemIds.length; ++i) {
+            addIncludedSystemId(systemIds[i]);
+        }
+        fHasIncludeReportedContent = true;
+        fNamespaceContext.pushScope();
+        try {
+            events.replay(fDocumentHandler, fNamespaceContext, fSymbolTable);
+        }
+        finally {
+            fNamespaceContext.popScope();
+        }
+        return true;
+    }
+    
+    /**
+     * Closes the streams of an input source which is not going to be read.
+     */
+    private static void closeInputSource(XMLInputSource source) {
+        try {
+            if (source.getByteStream() != null) {
+                source.getByteStream().close();
+            }
+            if (source.getCharacterStream() != null) {
+                source.getCharacterStream().close();
+            }
+        }
+        catch (IOException e) {}
+    }
+    
+    /**
+     * Starts counting the errors and warnings reported, installing an
+     * error handler which counts them if an enclosing include has not.
+     * @return the number of errors and warnings counted so far
+     */
+    private int startErrorCount() {
+        XMLErrorHandler errorHandler = fErrorReporter.getErrorHandler();
+        if (errorHandler instanceof ErrorCounter) {
+            fErrorCounter = (ErrorCounter)errorHandler;
+            fInstalledErrorCounter = false;
+        }
+        else {
+            fErrorCounter = new ErrorCounter(errorHandler);
+            fErrorReporter.setProperty(ERROR_HANDLER, fErrorCounter);
+            fInstalledErrorCounter = true;
+        }
+        return fErrorCounter.fCount;
+    }
+    
+    /**
+     * Stops counting errors and warnings, restoring the error handler.
+     */
+    private void endErrorCount() {
+        if (fInstalledErrorCounter) {
+            fErrorReporter.setProperty(ERROR_HANDLER, fErrorCounter.fErrorHandler);
+            fInstalledErrorCounter = false;
+        }
+        fErrorCounter = null;
+    }
+
     /**
      * Returns true if the current element is a top level included item.  This means
      * it's either the child of a fallback element, or the top level item in an
@@ -2512,6 +2759,10 @@ public class XIncludeHandler
      * @param ent the UnparsedEntity to check for conflicts
      */
     protected void checkAndSendUnparsedEntity(UnparsedEntity ent) {
+        // the declaration would not be sent again when replaying the include
+        if (fRecorder != null) {
+            fRecorder.discard();
+        }
         if (isRootDocument()) {
             int index = fUnparsedEntities.indexOf(ent);
             if (index == -1) {
@@ -2560,6 +2811,10 @@ public class XIncludeHandler
      * @param not the Notation to check for conflicts
      */
     protected void checkAndSendNotation(Notation not) {
+        // the declaration would not be sent again when replaying the include
+        if (fRecorder != null) {
+            fRecorder.discard();
+        }
         if (isRootDocument()) {
             int index = fNotations.indexOf(not);
             if (index == -1) {
@@ -2783,6 +3038,40 @@ public class XIncludeHandler
         }
     }
 
+    // This error handler counts the errors and warnings reported while
+    // recording an include, so that includes which reported any are not cached.
+    private static final class ErrorCounter implements XMLErrorHandler {
+        final XMLErrorHandler fErrorHandler;
+        int fCount;
+        
+        ErrorCounter(XMLErrorHandler errorHandler) {
+            fErrorHandler = errorHandler;
+        }
+        
+        public void warning(String domain, String key, XMLParseException exception)
+            throws XNIException {
+            ++fCount;
+            getErrorHandler().warning(domain, key, exception);
+        }
+        
+        public void error(String domain, String key, XMLParseException exception)
+            throws XNIException {
+            ++fCount;
+            getErrorHandler().error(domain, key, exception);
+        }
+        
+        public void fatalError(String domain, String key, XMLParseException exception)
+            throws XNIException {
+            ++fCount;
+            getErrorHandler().fatalError(domain, key, exception);
+        }
+        
+        // Without an error handler the error reporter prints the messages.
+        private XMLErrorHandler getErrorHandler() {
+            return (fErrorHandler != null) ? fErrorHandler : new DefaultErrorHandler();
+        }
+    }
+
     // The following methods are used for XML Base processing
 
     /**
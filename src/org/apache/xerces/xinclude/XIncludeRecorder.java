@@ -0,0 +1,426 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.xinclude;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLDocumentSource;
+
+/**
+ * A document handler which passes the events reported for the target of
+ * an include on to the next handler in the pipeline, recording them for
+ * an {@link XIncludeCache} as it goes. The recording is given up, while
+ * events continue to be passed on, once it grows beyond the maximum
+ * length of the cache or when an event carries augmentations which cannot
+ * be copied safely.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class XIncludeRecorder implements XMLDocumentHandler {
+
+    //
+    // Constants
+    //
+
+    /** Initial size of the code and object arrays. */
+    private static final int INITIAL_SIZE = 64;
+
+    //
+    // Data
+    //
+
+    /** The next handler in the pipeline. */
+    private final XMLDocumentHandler fDocumentHandler;
+
+    /** The namespace context of the pipeline. */
+    private final NamespaceContext fNamespaceContext;
+
+    /** Maximum length of the recording, in characters. */
+    private final int fMaxLength;
+
+    /** Document source. */
+    private XMLDocumentSource fDocumentSource;
+
+    /** Whether the events are still being recorded. */
+    private boolean fRecording = true;
+
+    /** Number of characters recorded. */
+    private int fLength = 0;
+
+    private int[] fCodes = new int[INITIAL_SIZE];
+    private int fCodeCount = 0;
+
+    private Object[] fObjects = new Object[INITIAL_SIZE];
+    private int fObjectCount = 0;
+
+    private char[] fText = new char[INITIAL_SIZE];
+    private int fTextLength = 0;
+
+    /** Expanded system identifiers of the documents read. */
+    private final ArrayList fSystemIds = new ArrayList();
+
+    //
+    // Constructors
+    //
+
+    XIncludeRecorder(XMLDocumentHandler handler,
+            NamespaceContext namespaceContext, int maxLength) {
+        fDocumentHandler = handler;
+        fNamespaceContext = namespaceContext;
+        fMaxLength = maxLength;
+    } // <init>(XMLDocumentHandler,NamespaceContext,int)
+
+    //
+    // Methods
+    //
+
+    /** Gives up the recording; events are still passed on. */
+    void discard() {
+        fRecording = false;
+        fCodes = null;
+        fObjects = null;
+        fText = null;
+    } // discard()
+
+    /** Notes that a document has been read for the recording. */
+    void addSystemId(String systemId) {
+        if (fRecording && !fSystemIds.contains(systemId)) {
+            fSystemIds.add(systemId);
+        }
+    } // addSystemId(String)
+
+    /** Returns the recorded events, or null if the recording was given up. */
+    XIncludeEvents getEvents() {
+        if (!fRecording) {
+            return null;
+        }
+        Object[] objects = new Object[fObjectCount];
+        System.arraycopy(fObjects, 0, objects, 0, fObjectCount);
+        char[] text = new char[fTextLength];
+        System.arraycopy(fText, 0, text, 0, fTextLength);
+        int[] codes = new int[fCodeCount];
+        System.arraycopy(fCodes, 0, codes, 0, fCodeCount);
+        return new XIncludeEvents(codes, fCodeCount, objects, text,
+                (String[]) fSystemIds.toArray(new String[fSystemIds.size()]));
+    } // getEvents():XIncludeEvents
+
+    //
+    // XMLDocumentHandler methods
+    //
+
+    public void startDocument(XMLLocator locator, String encoding,
+            NamespaceContext namespaceContext, Augmentations augs)
+            throws XNIException {
+        // not reported for included documents
+        discard();
+        fDocumentHandler.startDocument(locator, encoding, namespaceContext, augs);
+    } // startDocument(XMLLocator,String,NamespaceContext,Augmentations)
+
+    public void xmlDecl(String version, String encoding, String standalone,
+            Augmentations augs) throws XNIException {
+        discard();
+        fDocumentHandler.xmlDecl(version, encoding, standalone, augs);
+    } // xmlDecl(String,String,String,Augmentations)
+
+    public void doctypeDecl(String rootElement, String publicId,
+            String systemId, Augmentations augs) throws XNIException {
+        discard();
+        fDocumentHandler.doctypeDecl(rootElement, publicId, systemId, augs);
+    } // doctypeDecl(String,String,String,Augmentations)
+
+    public void comment(XMLString text, Augmentations augs)
+            throws XNIException {
+        if (fRecording) {
+            // kept apart, since some handlers expect comments at offset 0
+            char[] chars = new char[text.length];
+            System.arraycopy(text.ch, text.offset, chars, 0, text.length);
+            addCode(XIncludeEvents.COMMENT);
+            addObject(chars);
+            addAugmentations(augs);
+            addLength(text.length);
+        }
+        fDocumentHandler.comment(text, augs);
+    } // comment(XMLString,Augmentations)
+
+    public void processingInstruction(String target, XMLString data,
+            Augmentations augs) throws XNIException {
+        if (fRecording) {
+            addText(XIncludeEvents.PROCESSING_INSTRUCTION, data);
+            addObject(target);
+            addAugmentations(augs);
+        }
+        fDocumentHandler.processingInstruction(target, data, augs);
+    } // processingInstruction(String,XMLString,Augmentations)
+
+    public void startElement(QName element, XMLAttributes attributes,
+            Augmentations augs) throws XNIException {
+        if (fRecording) {
+            addElement(XIncludeEvents.START_ELEMENT, element, attributes, augs);
+        }
+        fDocumentHandler.startElement(element, attributes, augs);
+    } // startElement(QName,XMLAttributes,Augmentations)
+
+    public void emptyElement(QName element, XMLAttributes attributes,
+            Augmentations augs) throws XNIException {
+        if (fRecording) {
+            addElement(XIncludeEvents.EMPTY_ELEMENT, element, attributes, augs);
+        }
+        fDocumentHandler.emptyElement(element, attributes, augs);
+    } // emptyElement(QName,XMLAttributes,Augmentations)
+
+    public void startGeneralEntity(String name,
+            XMLResourceIdentifier identifier, String encoding,
+            Augmentations augs) throws XNIException {
+        if (fRecording) {
+            addCode(XIncludeEvents.START_GENERAL_ENTITY);
+            addCode(identifier != null ? 1 : 0);
+            addObject(name);
+            if (identifier != null) {
+                addObject(identifier.getPublicId());
+                addObject(identifier.getLiteralSystemId());
+                addObject(identifier.getBaseSystemId());
+                addObject(identifier.getExpandedSystemId());
+            }
+            addObject(encoding);
+            addAugmentations(augs);
+        }
+        fDocumentHandler.startGeneralEntity(name, identifier, encoding, augs);
+    } // startGeneralEntity(String,XMLResourceIdentifier,String,Augmentations)
+
+    public void textDecl(String version, String encoding, Augmentations augs)
+            throws XNIException {
+        if (fRecording) {
+            addCode(XIncludeEvents.TEXT_DECL);
+            addObject(version);
+            addObject(encoding);
+            addAugmentations(augs);
+        }
+        fDocumentHandler.textDecl(version, encoding, augs);
+    } // textDecl(String,String,Augmentations)
+
+    public void endGeneralEntity(String name, Augmentations augs)
+            throws XNIException {
+        if (fRecording) {
+            addCode(XIncludeEvents.END_GENERAL_ENTITY);
+            addObject(name);
+            addAugmentations(augs);
+        }
+        fDocumentHandler.endGeneralEntity(name, augs);
+    } // endGeneralEntity(String,Augmentations)
+
+    public void characters(XMLString text, Augmentations augs)
+            throws XNIException {
+        if (fRecording) {
+            addText(XIncludeEvents.CHARACTERS, text);
+            addAugmentations(augs);
+        }
+        fDocumentHandler.characters(text, augs);
+    } // characters(XMLString,Augmentations)
+
+    public void ignorableWhitespace(XMLString text, Augmentations augs)
+            throws XNIException {
+        if (fRecording) {
+            addText(XIncludeEvents.IGNORABLE_WHITESPACE, text);
+            addAugmentations(augs);
+        }
+        fDocumentHandler.ignorableWhitespace(text, augs);
+    } // ignorableWhitespace(XMLString,Augmentations)
+
+    public void endElement(QName element, Augmentations augs)
+            throws XNIException {
+        if (fRecording) {
+            addCode(XIncludeEvents.END_ELEMENT);
+            addName(element);
+            addAugmentations(augs);
+        }
+        fDocumentHandler.endElement(element, augs);
+    } // endElement(QName,Augmentations)
+
+    public void startCDATA(Augmentations augs) throws XNIException {
+        if (fRecording) {
+            addCode(XIncludeEvents.START_CDATA);
+            addAugmentations(augs);
+        }
+        fDocumentHandler.startCDATA(augs);
+    } // startCDATA(Augmentations)
+
+    public void endCDATA(Augmentations augs) throws XNIException {
+        if (fRecording) {
+            addCode(XIncludeEvents.END_CDATA);
+            addAugmentations(augs);
+        }
+        fDocumentHandler.endCDATA(augs);
+    } // endCDATA(Augmentations)
+
+    public void endDocument(Augmentations augs) throws XNIException {
+        discard();
+        fDocumentHandler.endDocument(augs);
+    } // endDocument(Augmentations)
+
+    public void setDocumentSource(XMLDocumentSource source) {
+        fDocumentSource = source;
+    } // setDocumentSource(XMLDocumentSource)
+
+    public XMLDocumentSource getDocumentSource() {
+        return fDocumentSource;
+    } // getDocumentSource():XMLDocumentSource
+
+    //
+    // Private methods
+    //
+
+    /** Records a start or empty element with its namespace declarations. */
+    private void addElement(int type, QName element, XMLAttributes attributes,
+            Augmentations augs) {
+        int namespaceCount = fNamespaceContext.getDeclaredPrefixCount();
+        int attributeCount = attributes != null ? attributes.getLength() : 0;
+        addCode(type);
+        addCode(namespaceCount);
+        addCode(attributeCount);
+        addName(element);
+        addAugmentations(augs);
+        for (int i = 0; i < namespaceCount; ++i) {
+            String prefix = fNamespaceContext.getDeclaredPrefixAt(i);
+            addObject(prefix);
+            addObject(fNamespaceContext.getURI(prefix));
+        }
+        for (int i = 0; i < attributeCount && fRecording; ++i) {
+            addObject(attributes.getPrefix(i));
+            addObject(attributes.getLocalName(i));
+            addObject(attributes.getQName(i));
+            addObject(attributes.getURI(i));
+            addObject(attributes.getType(i));
+            String value = attributes.getValue(i);
+            String nonNormalizedValue = attributes.getNonNormalizedValue(i);
+            addObject(value);
+            addObject(nonNormalizedValue);
+            addAugmentations(attributes.getAugmentations(i));
+            addCode(attributes.isSpecified(i) ? 1 : 0);
+            addLength(value.length());
+        }
+    } // addElement(int,QName,XMLAttributes,Augmentations)
+
+    /** Records the four parts of a name. */
+    private void addName(QName name) {
+        addObject(name.prefix);
+        addObject(name.localpart);
+        addObject(name.rawname);
+        addObject(name.uri);
+    } // addName(QName)
+
+    /**
+     * Records a copy of the items of augmentations. The recording is given
+     * up if an item is not a string or a boolean, since other items, such as
+     * post-schema-validation infoset, may be modified by later components.
+     */
+    private void addAugmentations(Augmentations augs) {
+        Object[] items = null;
+        if (augs != null) {
+            Enumeration keys = augs.keys();
+            int count = 0;
+            while (keys.hasMoreElements()) {
+                String key = (String) keys.nextElement();
+                Object item = augs.getItem(key);
+                if (!(item instanceof Boolean || item instanceof String)) {
+                    discard();
+                    return;
+                }
+                if (items == null) {
+                    items = new Object[4];
+                }
+                else if (count == items.length) {
+                    Object[] newItems = new Object[count << 1];
+                    System.arraycopy(items, 0, newItems, 0, count);
+                    items = newItems;
+                }
+                items[count++] = key;
+                items[count++] = item;
+            }
+            if (items != null && count < items.length) {
+                Object[] newItems = new Object[count];
+                System.arraycopy(items, 0, newItems, 0, count);
+                items = newItems;
+            }
+        }
+        addObject(items);
+    } // addAugmentations(Augmentations)
+
+    /** Records a text event, its offset and its length. */
+    private void addText(int type, XMLString text) {
+        addCode(type);
+        addCode(fTextLength);
+        addCode(text.length);
+        addLength(text.length);
+        if (!fRecording) {
+            return;
+        }
+        if (fTextLength + text.length > fText.length) {
+            int newLength = Math.max(fText.length << 1, fTextLength + text.length);
+            char[] newText = new char[newLength];
+            System.arraycopy(fText, 0, newText, 0, fTextLength);
+            fText = newText;
+        }
+        System.arraycopy(text.ch, text.offset, fText, fTextLength, text.length);
+        fTextLength += text.length;
+    } // addText(int,XMLString)
+
+    private void addCode(int code) {
+        if (!fRecording) {
+            return;
+        }
+        if (fCodeCount == fCodes.length) {
+            int[] newCodes = new int[fCodeCount << 1];
+            System.arraycopy(fCodes, 0, newCodes, 0, fCodeCount);
+            fCodes = newCodes;
+        }
+        fCodes[fCodeCount++] = code;
+    } // addCode(int)
+
+    private void addObject(Object object) {
+        if (!fRecording) {
+            return;
+        }
+        if (fObjectCount == fObjects.length) {
+            Object[] newObjects = new Object[fObjectCount << 1];
+            System.arraycopy(fObjects, 0, newObjects, 0, fObjectCount);
+            fObjects = newObjects;
+        }
+        fObjects[fObjectCount++] = object;
+    } // addObject(Object)
+
+    /** Counts recorded characters, giving up past the maximum length. */
+    private void addLength(int length) {
+        fLength += length;
+        if (fLength > fMaxLength) {
+            discard();
+        }
+    } // addLength(int)
+
+} // class XIncludeRecorder
@@ -44,6 +44,7 @@ package org.apache.xml.serialize;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Hashtable;
 import java.util.Vector;
 
@@ -228,6 +229,12 @@ public abstract class BaseMarkupSerializer
      */
     private OutputStream    _output;
 
+
+    /**
+     * The output channel.
+     */
+    private WritableByteChannel _channel;
+
     /** Current node that is being processed  */
     protected Node fCurrentNode = null;
 
@@ -287,6 +294,28 @@ public abstract class BaseMarkupSerializer
             throw new NullPointerException(msg);
         }
         _output = output;
+        _channel = null;
+        _writer = null;
+        reset();
+    }
+
+
+    /**
+     * Specifies a channel to which the document should be serialized.
+     * The characters are encoded into a byte buffer which is written
+     * to the channel whenever it fills up.
+     *
+     * @param channel The output channel
+     */
+    public void setOutputByteChannel( WritableByteChannel channel )
+    {
+        if ( channel == null ) {
+            String msg = DOMMessageFormatter.formatMessage(DOMMessageFormatter.SERIALIZER_DOMAIN,
+                                                           "ArgumentIsNull", new Object[]{"channel"});
+            throw new NullPointerException(msg);
+        }
+        _channel = channel;
+        _output = null;
         _writer = null;
         reset();
     }
@@ -301,6 +330,7 @@ public abstract class BaseMarkupSerializer
         }
         _writer = writer;
         _output = null;
+        _channel = null;
         reset();
     }
 
@@ -340,7 +370,7 @@ public abstract class BaseMarkupSerializer
         if ( _prepared )
             return;
 
-        if ( _writer == null && _output == null ) {
+        if ( _writer == null && _output == null && _channel == null ) {
             String msg = DOMMessageFormatter.formatMessage(DOMMessageFormatter.SERIALIZER_DOMAIN,
                                                            "NoWriterSupplied", null);
             throw new IOException(msg);
@@ -354,6 +384,9 @@ public abstract class BaseMarkupSerializer
         if ( _output != null ) {
             _writer = _encodingInfo.getWriter(_output);
         }
+        else if ( _channel != null ) {
+            _writer = _encodingInfo.getWriter(_channel);
+        }
 
         if ( _format.getIndenting() ) {
             _indenting = true;
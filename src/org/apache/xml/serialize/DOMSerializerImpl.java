@@ -916,7 +916,7 @@ public class DOMSerializerImpl implements LSSerializer, DOMConfiguration {
                       next = node.getNextSibling();
                       if (next == null) {
                           node = node.getParentNode();
-                          if (root == node){
+                          if (root.isSameNode(node)){
                               next = null;
                               break;                   
                           }
@@ -21,6 +21,8 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.xerces.util.EncodingMap;
 
@@ -58,6 +60,14 @@ public class EncodingInfo {
     // Is the charset encoder usable or available.
     boolean fHaveTriedCharsetEncoder = false;
 
+    // Whether the characters above lastPrintable are printable, by
+    // blocks of 256 characters filled in as they are asked for:
+    // PRINTABLE, NOT_PRINTABLE or 0 if not known yet.
+    private final byte[][] fPrintable = new byte[256][];
+
+    private static final byte PRINTABLE = 1;
+    private static final byte NOT_PRINTABLE = 2;
+
     /**
      * Creates new <code>EncodingInfo</code> instance.
      */
@@ -85,8 +95,13 @@ public class EncodingInfo {
     public Writer getWriter(OutputStream output)
         throws UnsupportedEncodingException {
         // this should always be true!
-        if (javaName != null) 
+        if (javaName != null) {
+            // encode the most common encodings ourselves
+            final int encoding = EncodingWriter.getEncoding(javaName);
+            if (encoding != -1)
+                return new EncodingWriter(output, encoding);
             return new OutputStreamWriter(output, javaName);
+        }
         javaName = EncodingMap.getIANA2JavaMapping(ianaName);
         if(javaName == null) 
             // use UTF-8 as preferred encoding
@@ -94,6 +109,22 @@ public class EncodingInfo {
         return new OutputStreamWriter(output, javaName);
     }
     
+    /**
+     * Returns a writer for this encoding based on
+     * a channel.
+     *
+     * @return A suitable writer
+     * @exception UnsupportedEncodingException There is no convertor
+     *  to support this encoding
+     */
+    public Writer getWriter(WritableByteChannel channel)
+        throws UnsupportedEncodingException {
+        final int encoding = EncodingWriter.getEncoding(javaName != null ? javaName : "UTF8");
+        if (encoding != -1)
+            return new EncodingWriter(channel, encoding);
+        return getWriter(Channels.newOutputStream(channel));
+    }
+    
     /**
      * Checks whether the specified character is printable or not in this encoding.
      *
@@ -103,7 +134,22 @@ public class EncodingInfo {
         if (ch <= this.lastPrintable) {
             return true;
         }
-        return isPrintable0(ch);
+        // look the answer up before asking the encoder
+        byte[] block = fPrintable[ch >> 8];
+        if (block == null) {
+            block = new byte[256];
+            fPrintable[ch >> 8] = block;
+        }
+        final byte printable = block[ch & 0xFF];
+        if (printable == 0) {
+            final boolean result = isPrintable0(ch);
+            // only remember what a working CharsetEncoder said
+            if (fCharsetEncoder != null) {
+                block[ch & 0xFF] = result ? PRINTABLE : NOT_PRINTABLE;
+            }
+            return result;
+        }
+        return printable == PRINTABLE;
     }
     
     /**
@@ -0,0 +1,458 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xml.serialize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A writer which encodes characters in UTF-8, UTF-16, ISO-8859-1 or
+ * US-ASCII itself into a byte buffer, and writes the buffer to an output
+ * stream or a channel when it is full or flushed. The bytes written are
+ * the same as those of an <code>OutputStreamWriter</code> for the same
+ * encoding, including the byte order mark of UTF-16 and the replacement
+ * of characters which cannot be encoded.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class EncodingWriter
+    extends Writer {
+
+    //
+    // Constants
+    //
+
+    /** UTF-8. */
+    static final int UTF8 = 0;
+
+    /** UTF-16 big endian, with a byte order mark. */
+    static final int UTF16BE = 1;
+
+    /** UTF-16 little endian, with a byte order mark. */
+    static final int UTF16LE = 2;
+
+    /** ISO-8859-1. */
+    static final int LATIN1 = 3;
+
+    /** US-ASCII. */
+    static final int ASCII = 4;
+
+    /** Default byte buffer size (16384). */
+    static final int DEFAULT_BUFFER_SIZE = 16384;
+
+    /** The most bytes encoded for one character. */
+    private static final int MAX_BYTES_PER_CHAR = 4;
+
+    /** Number of characters of a string copied out at a time. */
+    private static final int CHUNK_SIZE = 1024;
+
+    //
+    // Data
+    //
+
+    /** The encoding, one of the constants above. */
+    private final int fEncoding;
+
+    /** The output stream, or null when writing to a channel. */
+    private final OutputStream fOutputStream;
+
+    /** The channel, or null when writing to an output stream. */
+    private final WritableByteChannel fChannel;
+
+    /** Byte buffer. */
+    private final byte[] fBuffer;
+
+    /** The byte buffer wrapped for the channel. */
+    private final ByteBuffer fByteBuffer;
+
+    /** Characters copied out of strings, or null until needed. */
+    private char[] fChars;
+
+    /** Number of bytes in the buffer. */
+    private int fPosition;
+
+    /** A high surrogate waiting for the character which follows it, or 0. */
+    private char fHighSurrogate;
+
+    /** True until the byte order mark has been written. */
+    private boolean fNeedsByteOrderMark;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a writer which encodes to an output stream.
+     *
+     * @param outputStream The output stream.
+     * @param encoding     The encoding, one of the constants of this class.
+     */
+    EncodingWriter(OutputStream outputStream, int encoding) {
+        this(outputStream, null, encoding);
+    } // <init>(OutputStream,int)
+
+    /**
+     * Constructs a writer which encodes to a channel.
+     *
+     * @param channel  The channel.
+     * @param encoding The encoding, one of the constants of this class.
+     */
+    EncodingWriter(WritableByteChannel channel, int encoding) {
+        this(null, channel, encoding);
+    } // <init>(WritableByteChannel,int)
+
+    private EncodingWriter(OutputStream outputStream, WritableByteChannel channel, int encoding) {
+        fOutputStream = outputStream;
+        fChannel = channel;
+        fEncoding = encoding;
+        fBuffer = new byte[DEFAULT_BUFFER_SIZE];
+        fByteBuffer = channel != null ? ByteBuffer.wrap(fBuffer) : null;
+        fNeedsByteOrderMark = (encoding == UTF16BE || encoding == UTF16LE);
+    } // <init>(OutputStream,WritableByteChannel,int)
+
+    //
+    // Public static methods
+    //
+
+    /**
+     * Returns the constant of this class for a Java encoding name, or -1
+     * if this writer does not support the encoding.
+     */
+    static int getEncoding(String javaName) {
+        if (javaName == null) {
+            return -1;
+        }
+        if (javaName.equalsIgnoreCase("UTF8") || javaName.equalsIgnoreCase("UTF-8")) {
+            return UTF8;
+        }
+        if (javaName.equalsIgnoreCase("UTF-16") || javaName.equalsIgnoreCase("UnicodeBig")) {
+            return UTF16BE;
+        }
+        if (javaName.equalsIgnoreCase("UnicodeLittle")) {
+            return UTF16LE;
+        }
+        if (javaName.equalsIgnoreCase("ISO8859_1") || javaName.equalsIgnoreCase("ISO-8859-1")) {
+            return LATIN1;
+        }
+        if (javaName.equalsIgnoreCase("ASCII") || javaName.equalsIgnoreCase("US-ASCII")) {
+            return ASCII;
+        }
+        return -1;
+    } // getEncoding(String):int
+
+    //
+    // Writer methods
+    //
+
+    public void write(int c) throws IOException {
+        if (fPosition > fBuffer.length - 2 * MAX_BYTES_PER_CHAR) {
+            flushBuffer();
+        }
+        if (fNeedsByteOrderMark) {
+            writeByteOrderMark();
+        }
+        encode((char) c);
+    } // write(int)
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (fNeedsByteOrderMark) {
+            if (fPosition > fBuffer.length - MAX_BYTES_PER_CHAR) {
+                flushBuffer();
+            }
+            writeByteOrderMark();
+        }
+        final int end = off + len;
+        while (off < end) {
+            // encode as many characters as surely fit in the buffer
+            int count = (fBuffer.length - fPosition) / MAX_BYTES_PER_CHAR;
+            if (count == 0) {
+                flushBuffer();
+                continue;
+            }
+            if (count > end - off) {
+                count = end - off;
+            }
+            final int stop = off + count;
+            if (fHighSurrogate == 0) {
+                switch (fEncoding) {
+                    case UTF8:
+                        off = encodeUTF8(cbuf, off, stop);
+                        break;
+                    case UTF16BE:
+                    case UTF16LE:
+                        off = encodeUTF16(cbuf, off, stop);
+                        break;
+                    case LATIN1:
+                        off = encodeSingleByte(cbuf, off, stop, 0xFF);
+                        break;
+                    default:
+                        off = encodeSingleByte(cbuf, off, stop, 0x7F);
+                }
+            }
+            // the loops above stop at surrogates
+            if (off < stop) {
+                encode(cbuf[off++]);
+            }
+        }
+    } // write(char[],int,int)
+
+    public void write(String str, int off, int len) throws IOException {
+        char[] chars = fChars;
+        if (chars == null) {
+            chars = fChars = new char[CHUNK_SIZE];
+        }
+        while (len > 0) {
+            final int count = len < CHUNK_SIZE ? len : CHUNK_SIZE;
+            str.getChars(off, off + count, chars, 0);
+            write(chars, 0, count);
+            off += count;
+            len -= count;
+        }
+    } // write(String,int,int)
+
+    public void flush() throws IOException {
+        flushBuffer();
+        if (fOutputStream != null) {
+            fOutputStream.flush();
+        }
+    } // flush()
+
+    public void close() throws IOException {
+        if (fHighSurrogate != 0) {
+            // the surrogate pair was never completed
+            fHighSurrogate = 0;
+            if (fPosition > fBuffer.length - MAX_BYTES_PER_CHAR) {
+                flushBuffer();
+            }
+            replace();
+        }
+        flushBuffer();
+        if (fOutputStream != null) {
+            fOutputStream.close();
+        }
+        else {
+            fChannel.close();
+        }
+    } // close()
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Encodes one character into the buffer, which must have room for
+     * at least {@link #MAX_BYTES_PER_CHAR} bytes.
+     */
+    private void encode(char c) {
+        if (fHighSurrogate != 0) {
+            final char high = fHighSurrogate;
+            fHighSurrogate = 0;
+            if (c >= 0xDC00 && c <= 0xDFFF) {
+                encodeSupplementary(high, c);
+                return;
+            }
+            // the high surrogate is alone
+            replace();
+        }
+        if (c >= 0xD800 && c <= 0xDFFF) {
+            if (c <= 0xDBFF) {
+                fHighSurrogate = c;
+            }
+            else {
+                // a low surrogate is alone
+                replace();
+            }
+            return;
+        }
+        final byte[] buffer = fBuffer;
+        switch (fEncoding) {
+            case UTF8:
+                if (c < 0x80) {
+                    buffer[fPosition++] = (byte) c;
+                }
+                else if (c < 0x800) {
+                    buffer[fPosition++] = (byte) (0xC0 | (c >> 6));
+                    buffer[fPosition++] = (byte) (0x80 | (c & 0x3F));
+                }
+                else {
+                    buffer[fPosition++] = (byte) (0xE0 | (c >> 12));
+                    buffer[fPosition++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[fPosition++] = (byte) (0x80 | (c & 0x3F));
+                }
+                break;
+            case UTF16BE:
+            case UTF16LE:
+                put16(c);
+                break;
+            case LATIN1:
+                buffer[fPosition++] = (byte) (c <= 0xFF ? c : '?');
+                break;
+            default:
+                buffer[fPosition++] = (byte) (c < 0x80 ? c : '?');
+        }
+    } // encode(char)
+
+    /**
+     * Encodes characters into the buffer in UTF-8 up to the first
+     * surrogate, and returns the offset of the first character which
+     * was not encoded.
+     */
+    private int encodeUTF8(char[] cbuf, int off, int stop) {
+        final byte[] buffer = fBuffer;
+        int pos = fPosition;
+        for (; off < stop; ++off) {
+            final char c = cbuf[off];
+            if (c < 0x80) {
+                buffer[pos++] = (byte) c;
+            }
+            else if (c < 0x800) {
+                buffer[pos++] = (byte) (0xC0 | (c >> 6));
+                buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (c < 0xD800 || c > 0xDFFF) {
+                buffer[pos++] = (byte) (0xE0 | (c >> 12));
+                buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else {
+                break;
+            }
+        }
+        fPosition = pos;
+        return off;
+    } // encodeUTF8(char[],int,int):int
+
+    /**
+     * Encodes characters into the buffer in UTF-16 up to the first
+     * surrogate, and returns the offset of the first character which
+     * was not encoded.
+     */
+    private int encodeUTF16(char[] cbuf, int off, int stop) {
+        final byte[] buffer = fBuffer;
+        final int first = fEncoding == UTF16LE ? 0 : 8;
+        final int second = 8 - first;
+        int pos = fPosition;
+        for (; off < stop; ++off) {
+            final char c = cbuf[off];
+            if (c >= 0xD800 && c <= 0xDFFF) {
+                break;
+            }
+            buffer[pos++] = (byte) (c >> first);
+            buffer[pos++] = (byte) (c >> second);
+        }
+        fPosition = pos;
+        return off;
+    } // encodeUTF16(char[],int,int):int
+
+    /**
+     * Encodes characters into the buffer one byte each up to the first
+     * surrogate, replacing those above <code>max</code>, and returns the
+     * offset of the first character which was not encoded.
+     */
+    private int encodeSingleByte(char[] cbuf, int off, int stop, int max) {
+        final byte[] buffer = fBuffer;
+        int pos = fPosition;
+        for (; off < stop; ++off) {
+            final char c = cbuf[off];
+            if (c <= max) {
+                buffer[pos++] = (byte) c;
+            }
+            else if (c < 0xD800 || c > 0xDFFF) {
+                buffer[pos++] = (byte) '?';
+            }
+            else {
+                break;
+            }
+        }
+        fPosition = pos;
+        return off;
+    } // encodeSingleByte(char[],int,int,int):int
+
+    /** Encodes a surrogate pair. */
+    private void encodeSupplementary(char high, char low) {
+        switch (fEncoding) {
+            case UTF8:
+                final int c = ((high - 0xD800) << 10) + (low - 0xDC00) + 0x10000;
+                fBuffer[fPosition++] = (byte) (0xF0 | (c >> 18));
+                fBuffer[fPosition++] = (byte) (0x80 | ((c >> 12) & 0x3F));
+                fBuffer[fPosition++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                fBuffer[fPosition++] = (byte) (0x80 | (c & 0x3F));
+                break;
+            case UTF16BE:
+            case UTF16LE:
+                put16(high);
+                put16(low);
+                break;
+            default:
+                // one replacement for the whole character
+                fBuffer[fPosition++] = (byte) '?';
+        }
+    } // encodeSupplementary(char,char)
+
+    /** Encodes the replacement of a surrogate which is not part of a pair. */
+    private void replace() {
+        if (fEncoding == UTF16BE || fEncoding == UTF16LE) {
+            put16(0xFFFD);
+        }
+        else {
+            fBuffer[fPosition++] = (byte) '?';
+        }
+    } // replace()
+
+    /** Puts the byte order mark of UTF-16 at the start of the output. */
+    private void writeByteOrderMark() {
+        fNeedsByteOrderMark = false;
+        put16(0xFEFF);
+    } // writeByteOrderMark()
+
+    /** Puts a UTF-16 code unit in the byte order of the encoding. */
+    private void put16(int c) {
+        if (fEncoding == UTF16LE) {
+            fBuffer[fPosition++] = (byte) c;
+            fBuffer[fPosition++] = (byte) (c >> 8);
+        }
+        else {
+            fBuffer[fPosition++] = (byte) (c >> 8);
+            fBuffer[fPosition++] = (byte) c;
+        }
+    } // put16(int)
+
+    /** Writes the bytes of the buffer to the output. */
+    private void flushBuffer() throws IOException {
+        if (fPosition == 0) {
+            return;
+        }
+        if (fOutputStream != null) {
+            fOutputStream.write(fBuffer, 0, fPosition);
+        }
+        else {
+            fByteBuffer.clear();
+            fByteBuffer.limit(fPosition);
+            while (fByteBuffer.hasRemaining()) {
+                fChannel.write(fByteBuffer);
+            }
+        }
+        fPosition = 0;
+    } // flushBuffer()
+
+} // class EncodingWriter
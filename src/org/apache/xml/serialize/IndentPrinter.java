@@ -145,6 +145,12 @@ public class IndentPrinter
     }
     
     
+    public void printText( String text, int start, int length )
+    {
+        _text.append( text, start, start + length );
+    }
+    
+    
     public void printText( StringBuffer text )
     {
         _text.append( text.toString() );
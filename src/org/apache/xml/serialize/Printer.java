@@ -164,16 +164,26 @@ public class Printer
 
     public void printText( String text )
         throws IOException
+    {
+        printText( text, 0, text.length() );
+    }
+
+
+    public void printText( String text, int start, int length )
+        throws IOException
     {
         try {
-            int length = text.length();
-            for ( int i = 0 ; i < length ; ++i ) {
+            // copy as much as fits in the buffer at a time
+            while ( length > 0 ) {
                 if ( _pos == BufferSize ) {
                     _writer.write( _buffer );
                     _pos = 0;
                 }
-                _buffer[ _pos ] = text.charAt( i );
-                ++_pos;
+                int count = Math.min( length, BufferSize - _pos );
+                text.getChars( start, start + count, _buffer, _pos );
+                _pos += count;
+                start += count;
+                length -= count;
             }
         } catch ( IOException except ) {
             // We don't throw an exception, but hold it
@@ -190,13 +200,17 @@ public class Printer
     {
         try {
             int length = text.length();
-            for ( int i = 0 ; i < length ; ++i ) {
+            int start = 0;
+            while ( length > 0 ) {
                 if ( _pos == BufferSize ) {
                     _writer.write( _buffer );
                     _pos = 0;
                 }
-                _buffer[ _pos ] = text.charAt( i );
-                ++_pos;
+                int count = Math.min( length, BufferSize - _pos );
+                text.getChars( start, start + count, _buffer, _pos );
+                _pos += count;
+                start += count;
+                length -= count;
             }
         } catch ( IOException except ) {
             // We don't throw an exception, but hold it
@@ -212,14 +226,16 @@ public class Printer
         throws IOException
     {
         try {
-            while ( length-- > 0 ) {
+            while ( length > 0 ) {
                 if ( _pos == BufferSize ) {
                     _writer.write( _buffer );
                     _pos = 0;
                 }
-                _buffer[ _pos ] = chars[ start ];
-                ++start;
-                ++_pos;
+                int count = Math.min( length, BufferSize - _pos );
+                System.arraycopy( chars, start, _buffer, _pos, count );
+                _pos += count;
+                start += count;
+                length -= count;
             }
         } catch ( IOException except ) {
             // We don't throw an exception, but hold it
@@ -100,6 +100,27 @@ extends BaseMarkupSerializer {
 
     protected static final boolean DEBUG = false;
 
+    /** ASCII characters which are printed as they are in text content. */
+    private static final boolean[] CONTENT_CHARS = new boolean[0x80];
+
+    /** ASCII characters which are printed as they are in attribute values. */
+    private static final boolean[] ATTRIBUTE_CHARS = new boolean[0x80];
+
+    static {
+        for (int ch = ' '; ch < 0x80; ++ch) {
+            CONTENT_CHARS[ch] = true;
+            ATTRIBUTE_CHARS[ch] = true;
+        }
+        CONTENT_CHARS['\n'] = true;
+        CONTENT_CHARS['\t'] = true;
+        CONTENT_CHARS['<'] = false;
+        CONTENT_CHARS['&'] = false;
+        CONTENT_CHARS['>'] = false;
+        ATTRIBUTE_CHARS['<'] = false;
+        ATTRIBUTE_CHARS['&'] = false;
+        ATTRIBUTE_CHARS['"'] = false;
+    }
+
     // 
     // data
     //
@@ -1226,18 +1247,26 @@ extends BaseMarkupSerializer {
     //
     protected void printEscaped(String source) throws IOException {
         int length = source.length();
+        int start = 0;
         for (int i = 0; i < length; ++i) {
             int ch = source.charAt(i);
+            // characters which need no escaping are printed in runs
+            if (ch < 0x80 ? ATTRIBUTE_CHARS[ch] :
+                (XMLChar.isValid(ch) && _encodingInfo.isPrintable((char) ch))) {
+                continue;
+            }
+            if (start < i) {
+                _printer.printText(source, start, i - start);
+            }
             if (!XMLChar.isValid(ch)) {
                 if (++i < length) {
                     surrogates(ch, source.charAt(i), false);
                 } else {
                     fatalError("The character '" + (char) ch + "' is an invalid XML character");
                 }
-                continue;
             }
             // escape NL, CR, TAB
-            if (ch == '\n' || ch == '\r' || ch == '\t') {
+            else if (ch == '\n' || ch == '\r' || ch == '\t') {
                 printHex(ch);
             } else if (ch == '<') {
                 _printer.printText("&lt;");
@@ -1245,11 +1274,13 @@ extends BaseMarkupSerializer {
                 _printer.printText("&amp;");
             } else if (ch == '"') {
                 _printer.printText("&quot;");
-            } else if ((ch >= ' ' && _encodingInfo.isPrintable((char) ch))) {
-                _printer.printText((char) ch);
             } else {
                 printHex(ch);
             }
+            start = i + 1;
+        }
+        if (start < length) {
+            _printer.printText(source, start, length - start);
         }
     }
 
@@ -1275,53 +1306,38 @@ extends BaseMarkupSerializer {
 
     protected void printText( String text, boolean preserveSpace, boolean unescaped )
     throws IOException {
-        int index;
-        char ch;
+        // Whether spaces are preserved or not, the text is printed the
+        // same way: spaces at beginning of line are stripped by the
+        // printing mechanism when not preserving them. Characters which
+        // need no escaping are printed in runs.
         int length = text.length();
-        if ( preserveSpace ) {
-            // Preserving spaces: the text must print exactly as it is,
-            // without breaking when spaces appear in the text and without
-            // consolidating spaces. If a line terminator is used, a line
-            // break will occur.
-            for ( index = 0 ; index < length ; ++index ) {
-                ch = text.charAt( index );
-                if (!XMLChar.isValid(ch)) {
-                    // check if it is surrogate
-                    if (++index <length) {
-                        surrogates(ch, text.charAt(index), true);
-                    } else {
-                        fatalError("The character '"+ch+"' is an invalid XML character"); 
-                    }
-                    continue;
-                }
-                if ( unescaped ) {
-                    _printer.printText( ch );
-                } else
-                    printXMLChar( ch );
+        int start = 0;
+        for ( int index = 0 ; index < length ; ++index ) {
+            char ch = text.charAt( index );
+            if ( isPrintedAsIs( ch, unescaped ) ) {
+                continue;
             }
-        } else {
-            // Not preserving spaces: print one part at a time, and
-            // use spaces between parts to break them into different
-            // lines. Spaces at beginning of line will be stripped
-            // by printing mechanism. Line terminator is treated
-            // no different than other text part.
-            for ( index = 0 ; index < length ; ++index ) {
-                ch = text.charAt( index );
-                if (!XMLChar.isValid(ch)) {
-                    // check if it is surrogate
-                    if (++index <length) {
-                        surrogates(ch, text.charAt(index), true);
-                    } else {
-                        fatalError("The character '"+ch+"' is an invalid XML character"); 
-                    }
-                    continue;
+            if ( start < index ) {
+                _printer.printText( text, start, index - start );
+            }
+            if (!XMLChar.isValid(ch)) {
+                // check if it is surrogate
+                if (++index <length) {
+                    surrogates(ch, text.charAt(index), true);
+                } else {
+                    fatalError("The character '"+ch+"' is an invalid XML character"); 
                 }
-
-				if ( unescaped )
-                    _printer.printText( ch );
-                else
-                    printXMLChar( ch);
             }
+            else if ( unescaped ) {
+                _printer.printText( ch );
+            }
+            else {
+                printXMLChar( ch );
+            }
+            start = index + 1;
+        }
+        if ( start < length ) {
+            _printer.printText( text, start, length - start );
         }
     }
 
@@ -1329,57 +1345,50 @@ extends BaseMarkupSerializer {
 
     protected void printText( char[] chars, int start, int length,
                               boolean preserveSpace, boolean unescaped ) throws IOException {
-
-        if ( preserveSpace ) {
-            // Preserving spaces: the text must print exactly as it is,
-            // without breaking when spaces appear in the text and without
-            // consolidating spaces. If a line terminator is used, a line
-            // break will occur.
-            while ( length-- > 0 ) {
-                char ch = chars[start++];
-                if (!XMLChar.isValid(ch)) {
-                    // check if it is surrogate
-                    if ( length-- > 0 ) {
-                        surrogates(ch, chars[start++], true);
-                    } 
-                    else {
-                        fatalError("The character '"+ch+"' is an invalid XML character"); 
-                    }
-                    continue;
-                }
-                if ( unescaped ) {
-                    _printer.printText( ch );
-                } 
-                else {
-                    printXMLChar( ch );
-                }
+        // Whether spaces are preserved or not, the text is printed the
+        // same way. Characters which need no escaping are printed in runs.
+        int end = start + length;
+        int runStart = start;
+        for ( int index = start ; index < end ; ++index ) {
+            char ch = chars[index];
+            if ( isPrintedAsIs( ch, unescaped ) ) {
+                continue;
             }
-        } else {
-            // Not preserving spaces: print one part at a time, and
-            // use spaces between parts to break them into different
-            // lines. Spaces at beginning of line will be stripped
-            // by printing mechanism. Line terminator is treated
-            // no different than other text part.
-            while ( length-- > 0 ) {
-                char ch = chars[start++];
-                if (!XMLChar.isValid(ch)) {
-                    // check if it is surrogate
-                    if ( length-- > 0 ) {
-                        surrogates(ch, chars[start++], true);
-                    } 
-                    else {
-                        fatalError("The character '"+ch+"' is an invalid XML character"); 
-                    }
-                    continue;
-                }
-                if ( unescaped ) {
-                    _printer.printText( ch );
+            if ( runStart < index ) {
+                _printer.printText( chars, runStart, index - runStart );
+            }
+            if (!XMLChar.isValid(ch)) {
+                // check if it is surrogate
+                if ( ++index < end ) {
+                    surrogates(ch, chars[index], true);
                 } 
                 else {
-                    printXMLChar( ch );
+                    fatalError("The character '"+ch+"' is an invalid XML character"); 
                 }
             }
+            else if ( unescaped ) {
+                _printer.printText( ch );
+            } 
+            else {
+                printXMLChar( ch );
+            }
+            runStart = index + 1;
+        }
+        if ( runStart < end ) {
+            _printer.printText( chars, runStart, end - runStart );
+        }
+    }
+
+    /**
+     * Returns true if a character of text content is printed as it
+     * is, which is what {@link #printXMLChar} does for the characters
+     * which need no escaping in the output encoding.
+     */
+    private boolean isPrintedAsIs( char ch, boolean unescaped ) {
+        if ( ch < 0x80 ) {
+            return unescaped ? XMLChar.isValid( ch ) : CONTENT_CHARS[ ch ];
         }
+        return XMLChar.isValid( ch ) && ( unescaped || _encodingInfo.isPrintable( ch ) );
     }
 
 
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dom.compact;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+
+import org.apache.xerces.dom.CompactDocumentImpl;
+import org.apache.xerces.parsers.CompactDOMParser;
+import org.apache.xerces.parsers.DOMParser;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests that documents built by the compact DOM parser read the same
+ * as the documents built by the DOM parser, and cannot be modified.
+ *
+ * @version $Id$
+ */
+public class BasicTest extends TestCase {
+
+    private static final String DOCUMENT =
+        "<?xml version='1.0'?>\n" +
+        "<!DOCTYPE r:records [\n" +
+        "<!ATTLIST record id ID #IMPLIED>\n" +
+        "<!ENTITY e 'entity <b>text</b>'>\n" +
+        "]>\n" +
+        "<?first pi?>\n" +
+        "<r:records xmlns:r='urn:records' xmlns='urn:default' r:version='2'>\n" +
+        "  <!-- comment -->\n" +
+        "  <record id='a' kind='x'>one &amp; <b>two</b> &#x263A;<![CDATA[<three>]]></record>\n" +
+        "  <record id='b' xmlns=''><empty/>&e;<?inner data?></record>\n" +
+        "  <r:record id='c' xml:lang='en'>  mixed <i>in</i> line  </r:record>\n" +
+        "</r:records>\n" +
+        "<!-- trailing -->";
+
+    public static void main(String[] args) {
+        TestRunner.run(BasicTest.class);
+    }
+
+    public BasicTest(String name) {
+        super(name);
+    }
+
+    public void testSameTree() throws Exception {
+        Document expected = parse(new DOMParser());
+        Document actual = parse(new CompactDOMParser());
+        assertTrue(actual instanceof CompactDocumentImpl);
+        compare(expected, actual);
+        assertEquals(serialize(expected.getDocumentElement()),
+                serialize(actual.getDocumentElement()));
+    }
+
+    public void testQueries() throws Exception {
+        Document expected = parse(new DOMParser());
+        Document actual = parse(new CompactDOMParser());
+        String[][] names = {
+            {"*", "*"}, {"urn:default", "record"}, {"urn:records", "record"},
+            {"", "record"}, {"*", "b"}, {"urn:default", "*"},
+        };
+        for (int i = 0; i < names.length; ++i) {
+            NodeList list1 = expected.getElementsByTagNameNS(names[i][0], names[i][1]);
+            NodeList list2 = actual.getElementsByTagNameNS(names[i][0], names[i][1]);
+            assertEquals(names[i][0] + " " + names[i][1], list1.getLength(), list2.getLength());
+            for (int j = 0; j < list1.getLength(); ++j) {
+                assertEquals(list1.item(j).getNodeName(), list2.item(j).getNodeName());
+                assertEquals(list1.item(j).getTextContent(), list2.item(j).getTextContent());
+            }
+        }
+        assertEquals(expected.getElementsByTagName("record").getLength(),
+                actual.getElementsByTagName("record").getLength());
+        Element record = actual.getElementById("b");
+        assertNotNull(record);
+        assertTrue(record.isSameNode(actual.getElementsByTagName("record").item(1)));
+        assertTrue(record.getAttributeNode("id").isId());
+        assertNull(actual.getElementById("c0"));
+        assertEquals("urn:records", record.lookupNamespaceURI("r"));
+        assertEquals("en", ((Element) actual.getElementsByTagNameNS("urn:records", "record").item(0))
+                .getAttributeNS("http://www.w3.org/XML/1998/namespace", "lang"));
+    }
+
+    public void testReadOnly() throws Exception {
+        Document document = parse(new CompactDOMParser());
+        Element root = document.getDocumentElement();
+        try {
+            root.setAttribute("a", "b");
+            fail("attribute set");
+        }
+        catch (DOMException e) {
+            assertEquals(DOMException.NO_MODIFICATION_ALLOWED_ERR, e.code);
+        }
+        try {
+            root.appendChild(root.getFirstChild());
+            fail("child appended");
+        }
+        catch (DOMException e) {
+            assertEquals(DOMException.NO_MODIFICATION_ALLOWED_ERR, e.code);
+        }
+        try {
+            root.getFirstChild().setNodeValue("text");
+            fail("value set");
+        }
+        catch (DOMException e) {
+            assertEquals(DOMException.NO_MODIFICATION_ALLOWED_ERR, e.code);
+        }
+    }
+
+    //
+    // Private methods
+    //
+
+    private Document parse(DOMParser parser) throws Exception {
+        // the compact DOM always replaces entity references
+        parser.setFeature("http://apache.org/xml/features/dom/create-entity-ref-nodes", false);
+        parser.parse(new InputSource(new StringReader(DOCUMENT)));
+        return parser.getDocument();
+    }
+
+    private String serialize(Node node) {
+        DOMImplementationLS impl = (DOMImplementationLS) node.getOwnerDocument().getImplementation();
+        return impl.createLSSerializer().writeToString(node);
+    }
+
+    /** Compares two subtrees, skipping the document type. */
+    private void compare(Node expected, Node actual) {
+        String path = expected.getNodeName();
+        assertEquals(path, expected.getNodeType(), actual.getNodeType());
+        assertEquals(path, expected.getNodeName(), actual.getNodeName());
+        assertEquals(path, expected.getNamespaceURI(), actual.getNamespaceURI());
+        assertEquals(path, expected.getLocalName(), actual.getLocalName());
+        assertEquals(path, expected.getPrefix(), actual.getPrefix());
+        assertEquals(path, expected.getNodeValue(), actual.getNodeValue());
+        if (expected.getNodeType() != Node.DOCUMENT_NODE) {
+            assertEquals(path, expected.getTextContent(), actual.getTextContent());
+        }
+        NamedNodeMap attributes1 = expected.getAttributes();
+        NamedNodeMap attributes2 = actual.getAttributes();
+        if (attributes1 != null) {
+            assertEquals(path, attributes1.getLength(), attributes2.getLength());
+            for (int i = 0; i < attributes1.getLength(); ++i) {
+                Attr attr1 = (Attr) attributes1.item(i);
+                Attr attr2 = (Attr) attributes2.getNamedItemNS(attr1.getNamespaceURI(), attr1.getLocalName());
+                assertNotNull(path + " " + attr1.getName(), attr2);
+                assertEquals(path, attr1.getName(), attr2.getName());
+                assertEquals(path, attr1.getValue(), attr2.getValue());
+                assertEquals(path, attr1.isId(), attr2.isId());
+                assertTrue(path, attr2.getOwnerElement().isSameNode(actual));
+            }
+        }
+        Node child1 = expected.getFirstChild();
+        Node child2 = actual.getFirstChild();
+        if (child1 != null && child1.getNodeType() == Node.DOCUMENT_TYPE_NODE) {
+            child1 = child1.getNextSibling();
+        }
+        Node last = null;
+        while (child1 != null) {
+            assertNotNull(path + " " + child1.getNodeName(), child2);
+            assertTrue(path, child2.getParentNode().isSameNode(actual));
+            if (last != null) {
+                assertTrue(path, child2.getPreviousSibling().isSameNode(last));
+            }
+            compare(child1, child2);
+            last = child2;
+            child1 = child1.getNextSibling();
+            child2 = child2.getNextSibling();
+        }
+        assertNull(path, child2);
+        if (last != null) {
+            assertTrue(path, actual.getLastChild().isSameNode(last));
+        }
+    }
+}
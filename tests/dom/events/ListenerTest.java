@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+
+import org.apache.xerces.dom.DocumentImpl;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+
+/**
+ * Tests that listeners added or removed while a mutation event is
+ * dispatched to a subtree are taken into account for the nodes which
+ * have not been reached yet.
+ *
+ * @version $Id$
+ */
+public class ListenerTest extends TestCase {
+
+    private static final String REMOVED = "DOMNodeRemovedFromDocument";
+    private static final String INSERTED = "DOMNodeInsertedIntoDocument";
+
+    private Document fDocument;
+    private Element fRoot;
+    private Element fX;
+    private Element fB;
+    private Element fC;
+    private List fCalls;
+
+    public static void main(String[] args) {
+        TestRunner.run(ListenerTest.class);
+    }
+
+    public ListenerTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        fDocument = new DocumentImpl();
+        fRoot = fDocument.createElement("root");
+        fDocument.appendChild(fRoot);
+        fX = fDocument.createElement("x");
+        fB = fDocument.createElement("b");
+        fC = fDocument.createElement("c");
+        fX.appendChild(fB);
+        fX.appendChild(fC);
+        fRoot.appendChild(fX);
+        fCalls = new ArrayList();
+    }
+
+    public void testCapturingListenerAddedDuringDispatch() {
+        final EventListener capture = new Recorder("capture at root");
+        ((EventTarget) fB).addEventListener(REMOVED, new EventListener() {
+            public void handleEvent(Event evt) {
+                ((EventTarget) fRoot).addEventListener(REMOVED, capture, true);
+            }
+        }, false);
+        fRoot.removeChild(fX);
+        assertEquals(1, fCalls.size());
+        assertEquals("capture at root for c", fCalls.get(0));
+    }
+
+    public void testCapturingListenerRemovedDuringDispatch() {
+        final EventListener capture = new Recorder("capture at root");
+        ((EventTarget) fRoot).addEventListener(REMOVED, capture, true);
+        ((EventTarget) fB).addEventListener(REMOVED, new EventListener() {
+            public void handleEvent(Event evt) {
+                ((EventTarget) fRoot).removeEventListener(REMOVED, capture, true);
+            }
+        }, false);
+        fRoot.removeChild(fX);
+        assertEquals(2, fCalls.size());
+        assertEquals("capture at root for x", fCalls.get(0));
+        assertEquals("capture at root for b", fCalls.get(1));
+    }
+
+    public void testTargetListenersChangedDuringDispatch() {
+        final EventListener atC = new Recorder("at c");
+        ((EventTarget) fB).addEventListener(INSERTED, new EventListener() {
+            public void handleEvent(Event evt) {
+                ((EventTarget) fC).addEventListener(INSERTED, atC, false);
+            }
+        }, false);
+        fRoot.removeChild(fX);
+        fRoot.appendChild(fX);
+        assertEquals(1, fCalls.size());
+        assertEquals("at c for c", fCalls.get(0));
+
+        fCalls.clear();
+        final EventListener removedAtC = new Recorder("removed at c");
+        ((EventTarget) fC).addEventListener(REMOVED, removedAtC, false);
+        ((EventTarget) fB).addEventListener(REMOVED, new EventListener() {
+            public void handleEvent(Event evt) {
+                ((EventTarget) fC).removeEventListener(REMOVED, removedAtC, false);
+            }
+        }, false);
+        fRoot.removeChild(fX);
+        assertEquals(0, fCalls.size());
+    }
+
+    /** Records the nodes it is called for. */
+    private final class Recorder implements EventListener {
+        private final String fName;
+        Recorder(String name) {
+            fName = name;
+        }
+        public void handleEvent(Event evt) {
+            fCalls.add(fName + " for " + ((Node) evt.getTarget()).getNodeName());
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.html;
+
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+import org.apache.html.dom.*;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Tests that an HTML document creates elements of the class of their
+ * element type, whatever the case of the tag name, and renames elements
+ * in place only when they keep their class.
+ *
+ * @version $Id$
+ */
+public class CreateElementTest extends TestCase {
+
+    /** Tag names and the classes of their elements. */
+    private static final Object[][] ELEMENTS = {
+        {"A", HTMLAnchorElementImpl.class},
+        {"APPLET", HTMLAppletElementImpl.class},
+        {"AREA", HTMLAreaElementImpl.class},
+        {"BASE", HTMLBaseElementImpl.class},
+        {"BASEFONT", HTMLBaseFontElementImpl.class},
+        {"BLOCKQUOTE", HTMLQuoteElementImpl.class},
+        {"BODY", HTMLBodyElementImpl.class},
+        {"BR", HTMLBRElementImpl.class},
+        {"BUTTON", HTMLButtonElementImpl.class},
+        {"CAPTION", HTMLTableCaptionElementImpl.class},
+        {"COL", HTMLTableColElementImpl.class},
+        {"COLGROUP", HTMLTableColElementImpl.class},
+        {"DEL", HTMLModElementImpl.class},
+        {"DIR", HTMLDirectoryElementImpl.class},
+        {"DIV", HTMLDivElementImpl.class},
+        {"DL", HTMLDListElementImpl.class},
+        {"FIELDSET", HTMLFieldSetElementImpl.class},
+        {"FONT", HTMLFontElementImpl.class},
+        {"FORM", HTMLFormElementImpl.class},
+        {"FRAME", HTMLFrameElementImpl.class},
+        {"FRAMESET", HTMLFrameSetElementImpl.class},
+        {"H1", HTMLHeadingElementImpl.class},
+        {"H2", HTMLHeadingElementImpl.class},
+        {"H3", HTMLHeadingElementImpl.class},
+        {"H4", HTMLHeadingElementImpl.class},
+        {"H5", HTMLHeadingElementImpl.class},
+        {"H6", HTMLHeadingElementImpl.class},
+        {"HEAD", HTMLHeadElementImpl.class},
+        {"HR", HTMLHRElementImpl.class},
+        {"HTML", HTMLHtmlElementImpl.class},
+        {"IFRAME", HTMLIFrameElementImpl.class},
+        {"IMG", HTMLImageElementImpl.class},
+        {"INPUT", HTMLInputElementImpl.class},
+        {"INS", HTMLModElementImpl.class},
+        {"ISINDEX", HTMLIsIndexElementImpl.class},
+        {"LABEL", HTMLLabelElementImpl.class},
+        {"LEGEND", HTMLLegendElementImpl.class},
+        {"LI", HTMLLIElementImpl.class},
+        {"LINK", HTMLLinkElementImpl.class},
+        {"MAP", HTMLMapElementImpl.class},
+        {"MENU", HTMLMenuElementImpl.class},
+        {"META", HTMLMetaElementImpl.class},
+        {"OBJECT", HTMLObjectElementImpl.class},
+        {"OL", HTMLOListElementImpl.class},
+        {"OPTGROUP", HTMLOptGroupElementImpl.class},
+        {"OPTION", HTMLOptionElementImpl.class},
+        {"P", HTMLParagraphElementImpl.class},
+        {"PARAM", HTMLParamElementImpl.class},
+        {"PRE", HTMLPreElementImpl.class},
+        {"Q", HTMLQuoteElementImpl.class},
+        {"SCRIPT", HTMLScriptElementImpl.class},
+        {"SELECT", HTMLSelectElementImpl.class},
+        {"STYLE", HTMLStyleElementImpl.class},
+        {"TABLE", HTMLTableElementImpl.class},
+        {"TBODY", HTMLTableSectionElementImpl.class},
+        {"TD", HTMLTableCellElementImpl.class},
+        {"TEXTAREA", HTMLTextAreaElementImpl.class},
+        {"TFOOT", HTMLTableSectionElementImpl.class},
+        {"TH", HTMLTableCellElementImpl.class},
+        {"THEAD", HTMLTableSectionElementImpl.class},
+        {"TITLE", HTMLTitleElementImpl.class},
+        {"TR", HTMLTableRowElementImpl.class},
+        {"UL", HTMLUListElementImpl.class},
+    };
+
+    /** Tag names without an element class of their own. */
+    private static final String[] UNKNOWN = {
+        "B", "SPAN", "Tab", "tables", "h7", "H", "AA", "LINKS", "bodyx", "xbody",
+        "ABBR", "\u00e9", "caf\u00e9", "T\u00c4BLE", "x-custom", "TBODYTBODY",
+    };
+
+    private HTMLDocumentImpl fDocument;
+
+    public CreateElementTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(CreateElementTest.class);
+    }
+
+    protected void setUp() {
+        fDocument = new HTMLDocumentImpl();
+    }
+
+    public void testElementClasses() {
+        for (int i = 0; i < ELEMENTS.length; ++i) {
+            String name = (String) ELEMENTS[i][0];
+            String[] names = {name, name.toLowerCase(), mixedCase(name, 0), mixedCase(name, 1)};
+            for (int j = 0; j < names.length; ++j) {
+                Element element = fDocument.createElement(names[j]);
+                assertSame(names[j], ELEMENTS[i][1], element.getClass());
+                assertEquals(names[j], name, element.getTagName());
+                
+                // the same without a namespace
+                element = fDocument.createElementNS(null, names[j]);
+                assertSame(names[j], ELEMENTS[i][1], element.getClass());
+            }
+        }
+    }
+
+    public void testUpperCaseAsString() {
+        // names which are upper case only as String.toUpperCase makes them
+        Element element = fDocument.createElement("l\u0131nk");
+        assertSame(HTMLLinkElementImpl.class, element.getClass());
+        assertEquals("LINK", element.getTagName());
+        element = fDocument.createElement("\u017fcript");
+        assertSame(HTMLScriptElementImpl.class, element.getClass());
+        assertEquals("SCRIPT", element.getTagName());
+    }
+
+    public void testUnknownElements() {
+        for (int i = 0; i < UNKNOWN.length; ++i) {
+            Element element = fDocument.createElement(UNKNOWN[i]);
+            assertSame(UNKNOWN[i], HTMLElementImpl.class, element.getClass());
+            assertEquals(UNKNOWN[i], UNKNOWN[i].toUpperCase(Locale.ENGLISH), element.getTagName());
+        }
+        
+        // nor do the first letters of the names which have one
+        for (int i = 0; i < ELEMENTS.length; ++i) {
+            String name = (String) ELEMENTS[i][0];
+            for (int j = 1; j < name.length(); ++j) {
+                String prefix = name.substring(0, j).toLowerCase();
+                if (!isElementName(prefix)) {
+                    assertSame(prefix, HTMLElementImpl.class, fDocument.createElement(prefix).getClass());
+                }
+            }
+        }
+    }
+
+    public void testNamespacedElements() {
+        Element element = fDocument.createElementNS("http://www.w3.org/1999/xhtml", "p");
+        assertFalse(element instanceof HTMLElementImpl);
+        assertEquals("p", element.getTagName());
+    }
+
+    public void testRename() {
+        // elements are renamed in place when they keep their class
+        checkRename("td", "TH", true);
+        checkRename("h1", "h6", true);
+        checkRename("TBODY", "tfoot", true);
+        checkRename("del", "INS", true);
+        checkRename("p", "P", true);
+        checkRename("b", "span", true);
+        checkRename("b", "tables", true);
+        
+        // and replaced by an element of the class of their new name otherwise
+        checkRename("td", "tr", false);
+        checkRename("p", "pre", false);
+        checkRename("b", "p", false);
+        checkRename("p", "b", false);
+        checkRename("h1", "hr", false);
+        
+        // elements in a namespace are renamed in place unless they lose it
+        Element element = fDocument.createElementNS("http://www.w3.org/1999/xhtml", "p");
+        fDocument.appendChild(element);
+        assertSame(element, fDocument.renameNode(element, "http://www.w3.org/1999/xhtml", "td"));
+        Node renamed = fDocument.renameNode(element, null, "td");
+        assertNotSame(element, renamed);
+        assertSame(HTMLTableCellElementImpl.class, renamed.getClass());
+        fDocument.removeChild(renamed);
+    }
+
+    //
+    // Private methods
+    //
+
+    // renames an element, checking whether it was renamed in place
+    private void checkRename(String name, String newName, boolean inPlace) {
+        String message = name + " " + newName;
+        Element element = fDocument.createElement(name);
+        fDocument.appendChild(element);
+        Node renamed = fDocument.renameNode(element, null, newName);
+        assertEquals(message, inPlace, renamed == element);
+        assertSame(message, fDocument.createElement(newName).getClass(), renamed.getClass());
+        assertSame(message, renamed, fDocument.getFirstChild());
+        fDocument.removeChild(renamed);
+    }
+
+    // whether the name has an element class of its own
+    private static boolean isElementName(String name) {
+        for (int i = 0; i < ELEMENTS.length; ++i) {
+            if (name.equalsIgnoreCase((String) ELEMENTS[i][0])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the name with every other letter in lower case
+    private static String mixedCase(String name, int start) {
+        StringBuffer buffer = new StringBuffer(name);
+        for (int i = start; i < buffer.length(); i += 2) {
+            buffer.setCharAt(i, Character.toLowerCase(buffer.charAt(i)));
+        }
+        return buffer.toString();
+    }
+}
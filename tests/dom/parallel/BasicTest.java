@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.parallel;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+
+import org.apache.xerces.parsers.DOMParser;
+import org.apache.xerces.parsers.ParallelDOMParser;
+import org.apache.xerces.util.TaskExecutor;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests that documents built by the parallel DOM parser are the same
+ * as the documents built by the DOM parser.
+ *
+ * @version $Id$
+ */
+public class BasicTest extends TestCase {
+
+    /** Runs each task on a new thread. */
+    private static final TaskExecutor EXECUTOR = new TaskExecutor() {
+        public void execute(Runnable task) {
+            new Thread(task).start();
+        }
+    };
+
+    private static final int RECORDS = 200;
+
+    public static void main(String[] args) {
+        TestRunner.run(BasicTest.class);
+    }
+
+    public BasicTest(String name) {
+        super(name);
+    }
+
+    public void testSameDocument() throws Exception {
+        String input = makeDocument(false);
+        assertEquals(serialize(parse(new DOMParser(), input)),
+                serialize(parse(newParser(), input)));
+    }
+
+    public void testElementsById() throws Exception {
+        String input = makeDocument(true);
+        Document document = parse(newParser(), input);
+        assertSame(document.getDocumentElement(), document.getElementById("root"));
+        for (int i = 0; i < RECORDS; ++i) {
+            Element record = document.getElementById("r" + i);
+            assertNotNull("r" + i, record);
+            assertEquals("record", record.getNodeName());
+            assertSame(document, record.getOwnerDocument());
+            Attr id = record.getAttributeNode("id");
+            assertTrue(id.isId());
+            Element item = document.getElementById("i" + i);
+            assertNotNull("i" + i, item);
+            assertSame(record, item.getParentNode());
+        }
+        assertNull(document.getElementById("r" + RECORDS));
+    }
+
+    public void testElementsByIdInEntityReferences() throws Exception {
+        String input = makeDocument(true).replaceFirst("<!ATTLIST",
+                "<!ENTITY e '<item id=\"e\"/>'><!ATTLIST")
+                .replaceFirst("<item id=\"i150\"/>", "<item id=\"i150\"/>&e;");
+        DOMParser parser = newParser();
+        parser.setFeature("http://apache.org/xml/features/dom/create-entity-ref-nodes", true);
+        Document document = parse(parser, input);
+        assertNotNull(document.getElementById("e"));
+        assertNotNull(document.getElementById("i150"));
+        assertEquals(serialize(parse(new DOMParser(), input)), serialize(document));
+    }
+
+    private DOMParser newParser() throws Exception {
+        ParallelDOMParser parser = new ParallelDOMParser("record", EXECUTOR);
+        parser.setSegmentSize(512);
+        return parser;
+    }
+
+    private Document parse(DOMParser parser, String input) throws Exception {
+        parser.parse(new InputSource(new StringReader(input)));
+        return parser.getDocument();
+    }
+
+    private String serialize(Document document) {
+        DOMImplementationLS impl = (DOMImplementationLS) document.getImplementation();
+        return impl.createLSSerializer().writeToString(document);
+    }
+
+    private String makeDocument(boolean ids) {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("<?xml version='1.0'?>\n");
+        if (ids) {
+            buffer.append("<!DOCTYPE records [\n");
+            buffer.append("<!ATTLIST records id ID #IMPLIED>\n");
+            buffer.append("<!ATTLIST record id ID #IMPLIED>\n");
+            buffer.append("<!ATTLIST item id ID #IMPLIED>\n");
+            buffer.append("]>\n");
+            buffer.append("<records id='root'>\n");
+        }
+        else {
+            buffer.append("<records>\n");
+        }
+        for (int i = 0; i < RECORDS; ++i) {
+            buffer.append("<record id=\"r").append(i).append("\">");
+            buffer.append("<item id=\"i").append(i).append("\"/>");
+            buffer.append("text ").append(i).append("</record>\n");
+        }
+        buffer.append("</records>\n");
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.serialize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.dom.DocumentImpl;
+import org.apache.xerces.parsers.DOMParser;
+import org.apache.xml.serialize.BaseMarkupSerializer;
+import org.apache.xml.serialize.OutputFormat;
+import org.apache.xml.serialize.TextSerializer;
+import org.apache.xml.serialize.XMLSerializer;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests that the serializer writes the same bytes to an output stream or
+ * channel, where it encodes the characters itself for some encodings, as
+ * through an <code>OutputStreamWriter</code>, also for text with
+ * surrogates which are not part of a pair, and that the characters
+ * which cannot be encoded are read back from their references.
+ *
+ * @version $Id$
+ */
+public class EncodingTest extends TestCase {
+
+    /** IANA and Java names of the encodings encoded by the serializer. */
+    private static final String[][] ENCODINGS = {
+        {"UTF-8", "UTF8"}, {"UTF-16", "UTF-16"}, {"UTF-16LE", "UnicodeLittle"},
+        {"ISO-8859-1", "ISO8859_1"}, {"US-ASCII", "ASCII"},
+    };
+
+    /** Text with markup, Latin-1, BMP and supplementary characters. */
+    private static final String TEXT =
+        "plain <&> \"quoted\" 'single' caf\u00E9 \u00FF \u0100 \u4E00\u4E8C " +
+        "\uD840\uDC00 \uD834\uDD1E \u20AC\t\n";
+
+    public EncodingTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(EncodingTest.class);
+    }
+
+    public void testSameAsWriter() throws Exception {
+        checkSameAsWriter(createDocument(true), "xml");
+    }
+
+    public void testTextSameAsWriter() throws Exception {
+        // the text serializer writes the characters as they are, so
+        // pairs of surrogates are split across the chunks of the encoder
+        // and lone surrogates are replaced
+        Document document = new DocumentImpl();
+        Element root = document.createElement("root");
+        document.appendChild(root);
+        StringBuffer text = new StringBuffer();
+        for (int i = 0; text.length() < 40000; ++i) {
+            text.append(TEXT);
+            text.append(i % 3 == 0 ? "\uD800" : "\uDFFF");
+            for (int j = i % 7; j > 0; --j) {
+                text.append('y');
+            }
+        }
+        root.appendChild(document.createTextNode(text.toString()));
+        checkSameAsWriter(document, "text");
+    }
+
+    public void testRoundTrip() throws Exception {
+        Document document = createDocument(false);
+        String text = document.getDocumentElement().getTextContent();
+        String attribute = document.getDocumentElement().getAttribute("a");
+        for (int i = 0; i < ENCODINGS.length; ++i) {
+            byte[] bytes = serializeToStream(document, "xml", ENCODINGS[i][0], false);
+            DOMParser parser = new DOMParser();
+            parser.parse(new InputSource(new ByteArrayInputStream(bytes)));
+            Element root = parser.getDocument().getDocumentElement();
+            assertEquals(ENCODINGS[i][0], text, root.getTextContent());
+            assertEquals(ENCODINGS[i][0], attribute, root.getAttribute("a"));
+        }
+    }
+
+    //
+    // Private methods
+    //
+
+    private static void checkSameAsWriter(Document document, String method) throws Exception {
+        for (int i = 0; i < ENCODINGS.length; ++i) {
+            byte[] expected = serializeToWriter(document, method, ENCODINGS[i][0], ENCODINGS[i][1]);
+            assertTrue(ENCODINGS[i][0], Arrays.equals(expected,
+                    serializeToStream(document, method, ENCODINGS[i][0], false)));
+            assertTrue(ENCODINGS[i][0], Arrays.equals(expected,
+                    serializeToStream(document, method, ENCODINGS[i][0], true)));
+        }
+    }
+
+    /**
+     * Creates a document larger than the buffer of the encoder, whose
+     * characters of several bytes fall at different offsets. Comments
+     * and processing instructions, in which the characters which cannot
+     * be encoded are replaced, are only added if asked.
+     */
+    private static Document createDocument(boolean comments) {
+        Document document = new DocumentImpl();
+        Element root = document.createElement("root");
+        root.setAttribute("a", TEXT);
+        document.appendChild(root);
+        StringBuffer padding = new StringBuffer();
+        for (int i = 0; i < 800; ++i) {
+            Element child = document.createElement("e");
+            child.setAttribute("a", padding + TEXT);
+            child.appendChild(document.createTextNode(TEXT + padding));
+            if (i % 10 == 0) {
+                child.appendChild(document.createCDATASection(TEXT + "]]>" + TEXT));
+            }
+            if (comments && i % 10 == 5) {
+                child.appendChild(document.createComment(TEXT));
+                child.appendChild(document.createProcessingInstruction("pi", TEXT));
+            }
+            root.appendChild(child);
+            padding.append('x');
+            if (padding.length() > 13) {
+                padding.setLength(0);
+            }
+        }
+        return document;
+    }
+
+    private static byte[] serializeToWriter(Document document, String method,
+            String encoding, String javaEncoding) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStreamWriter writer = new OutputStreamWriter(out, javaEncoding);
+        BaseMarkupSerializer serializer = createSerializer(method, encoding);
+        serializer.setOutputCharStream(writer);
+        serializer.serialize(document);
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] serializeToStream(Document document, String method,
+            String encoding, boolean channel) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BaseMarkupSerializer serializer = createSerializer(method, encoding);
+        if (channel) {
+            serializer.setOutputByteChannel(Channels.newChannel(out));
+        }
+        else {
+            serializer.setOutputByteStream(out);
+        }
+        serializer.serialize(document);
+        return out.toByteArray();
+    }
+
+    private static BaseMarkupSerializer createSerializer(String method, String encoding) {
+        BaseMarkupSerializer serializer = method.equals("text") ?
+                (BaseMarkupSerializer) new TextSerializer() : new XMLSerializer();
+        serializer.setOutputFormat(new OutputFormat(method, encoding, false));
+        return serializer;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.parsers.SAXParser;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Tests that documents larger than the input buffer are parsed to the
+ * same content whether or not the buffers of the entity grow while it is
+ * read, in each encoding with a reader of its own and whether the input
+ * stream returns all or only some of the bytes asked for.
+ *
+ * @version $Id$
+ */
+public class BufferGrowthTest extends TestCase {
+
+    /** Property identifier: input buffer size. */
+    private static final String BUFFER_SIZE =
+        "http://apache.org/xml/properties/input-buffer-size";
+
+    /** Property identifier: maximum input buffer size. */
+    private static final String MAX_BUFFER_SIZE =
+        "http://apache.org/xml/properties/input-buffer-max-size";
+
+    /** Encodings and the characters they can encode beyond ASCII. */
+    private static final String[][] ENCODINGS = {
+        {"UTF-8", "\u00e9\u00df\u0416\u4e2d\u6587\ud800\udf48\ud834\udd1e"},
+        {"UTF-16BE", "\u00e9\u00df\u0416\u4e2d\u6587\ud800\udf48\ud834\udd1e"},
+        {"UTF-16LE", "\u00e9\u00df\u0416\u4e2d\u6587\ud800\udf48\ud834\udd1e"},
+        {"ISO-8859-1", "\u00e9\u00df\u00fc\u00c5\u00f8"},
+        {"US-ASCII", ""},
+    };
+
+    /** Input buffer sizes and caps: small buffers and caps, and large caps. */
+    private static final int[][] SETTINGS = {
+        {128, 512}, {128, 1 << 20}, {2048, 1 << 16}, {256, 256 + 100},
+    };
+
+    public BufferGrowthTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(BufferGrowthTest.class);
+    }
+
+    public void testSameContent() throws Exception {
+        for (int e = 0; e < ENCODINGS.length; ++e) {
+            String encoding = ENCODINGS[e][0];
+            byte[] document = document(encoding, ENCODINGS[e][1]).getBytes(encoding);
+            String expected = parse(document, 0, 0, false);
+            assertTrue(encoding, expected.length() > 100000);
+            for (int s = 0; s < SETTINGS.length; ++s) {
+                String message = encoding + " " + SETTINGS[s][0] + "/" + SETTINGS[s][1];
+                assertEquals(message, expected, parse(document, SETTINGS[s][0], SETTINGS[s][1], false));
+                assertEquals(message + " trickled", expected, parse(document, SETTINGS[s][0], SETTINGS[s][1], true));
+            }
+        }
+    }
+
+    public void testSameError() throws Exception {
+        // an invalid UTF-8 sequence is reported on the read after the characters
+        // before it, which may be the first read into a grown buffer
+        StringBuffer buffer = new StringBuffer("<root>");
+        for (int i = 0; i < 600; ++i) {
+            buffer.append("\u00e9t\u00e9 ");
+        }
+        byte[] text = buffer.append("</root>").toString().getBytes("UTF-8");
+        for (int i = 300; i < 2400; ++i) {
+            if ((text[i] & 0xC0) == 0x80) {
+                continue;
+            }
+            byte[] document = (byte[]) text.clone();
+            document[i] = (byte) 0xC3;
+            document[i + 1] = (byte) 'x';
+            String expected = parse(document, 0, 0, false);
+            assertEquals(String.valueOf(i), expected, parse(document, 128, 512, false));
+            assertEquals(String.valueOf(i), expected, parse(document, 128, 1 << 20, false));
+        }
+    }
+
+    //
+    // Private methods
+    //
+
+    // a document of about 200000 characters
+    private static String document(String encoding, String extraChars) {
+        Random random = new Random(encoding.hashCode());
+        String chars = "abcdefghijklmnopqrstuvwxyz ABC0123456789\n\t" + extraChars;
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("<?xml version='1.0' encoding='").append(encoding).append("'?>\n");
+        buffer.append("<!DOCTYPE root [<!ENTITY e 'replacement").append(extraChars).append("'>]>\n");
+        buffer.append("<root>");
+        while (buffer.length() < 200000) {
+            switch (random.nextInt(6)) {
+                case 0:
+                    buffer.append("<item n='").append(random.nextInt(1000))
+                        .append("' text='").append(text(random, chars, 40)).append("'/>");
+                    break;
+                case 1:
+                    buffer.append("<!--").append(text(random, chars, 200)).append("-->");
+                    break;
+                case 2:
+                    buffer.append("<![CDATA[").append(text(random, chars, 3000)).append("]]>");
+                    break;
+                case 3:
+                    buffer.append("&e;&amp;&#x4e2d;&#x1d11e;");
+                    break;
+                case 4:
+                    buffer.append("<?pi ").append(text(random, chars, 100)).append("?>");
+                    break;
+                default:
+                    buffer.append("<text>").append(text(random, chars, 5000)).append("</text>");
+            }
+        }
+        return buffer.append("</root>").toString();
+    }
+
+    // random characters, keeping surrogate pairs together
+    private static String text(Random random, String chars, int maxLength) {
+        StringBuffer buffer = new StringBuffer();
+        int length = random.nextInt(maxLength);
+        while (buffer.length() < length) {
+            int i = random.nextInt(chars.length());
+            char ch = chars.charAt(i);
+            if (Character.isHighSurrogate(ch)) {
+                buffer.append(ch).append(chars.charAt(i + 1));
+            }
+            else if (!Character.isLowSurrogate(ch)) {
+                buffer.append(ch);
+            }
+        }
+        return buffer.toString();
+    }
+
+    // the content of the document, as reported by the parser
+    private static String parse(byte[] document, int bufferSize, int maxBufferSize, boolean trickle) throws Exception {
+        SAXParser parser = new SAXParser();
+        if (bufferSize > 0) {
+            parser.setProperty(BUFFER_SIZE, new Integer(bufferSize));
+            parser.setProperty(MAX_BUFFER_SIZE, new Integer(maxBufferSize));
+        }
+        RecordingHandler handler = new RecordingHandler();
+        parser.setContentHandler(handler);
+        parser.setErrorHandler(handler);
+        InputStream stream = new ByteArrayInputStream(document);
+        if (trickle) {
+            stream = new TricklingInputStream(stream);
+        }
+        try {
+            parser.parse(new InputSource(stream));
+        }
+        catch (SAXParseException e) {
+            handler.fContent.append("[").append(e.getLineNumber()).append(':')
+                .append(e.getColumnNumber()).append("] ").append(e.getMessage());
+        }
+        return handler.fContent.toString();
+    }
+
+    //
+    // Classes
+    //
+
+    /** Records the content of the document. */
+    private static final class RecordingHandler extends DefaultHandler {
+        final StringBuffer fContent = new StringBuffer();
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            fContent.append('<').append(qName);
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                fContent.append(' ').append(attributes.getQName(i)).append('=').append(attributes.getValue(i));
+            }
+            fContent.append('>');
+        }
+        public void endElement(String uri, String localName, String qName) {
+            fContent.append("</").append(qName).append('>');
+        }
+        public void characters(char[] ch, int start, int length) {
+            fContent.append(ch, start, length);
+        }
+        public void processingInstruction(String target, String data) {
+            fContent.append("<?").append(target).append(' ').append(data).append("?>");
+        }
+    }
+
+    /** Returns at most a few bytes from each read, as a slow stream would. */
+    private static final class TricklingInputStream extends InputStream {
+        private final InputStream fStream;
+        private final Random fRandom = new Random(5);
+        TricklingInputStream(InputStream stream) {
+            fStream = stream;
+        }
+        public int read() throws IOException {
+            return fStream.read();
+        }
+        public int read(byte[] b, int off, int len) throws IOException {
+            // mostly short reads, with now and then a full one
+            if (len > 1 && fRandom.nextInt(4) != 0) {
+                len = 1 + fRandom.nextInt(Math.min(len, 97));
+            }
+            return fStream.read(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.io.ASCIIReader;
+import org.apache.xerces.impl.io.Latin1Reader;
+import org.apache.xerces.impl.io.MalformedByteSequenceException;
+import org.apache.xerces.impl.io.MappedFileInputStream;
+import org.apache.xerces.impl.io.UTF8Reader;
+import org.apache.xerces.impl.msg.XMLMessageFormatter;
+import org.apache.xerces.parsers.SAXParser;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Tests that the UTF-8, US-ASCII and ISO-8859-1 readers decode memory
+ * mapped files, also across the boundaries of the mapped regions, to the
+ * same characters and errors as other input streams.
+ *
+ * @version $Id$
+ */
+public class MappedInputTest extends TestCase {
+
+    /** Region size which splits characters of several bytes. */
+    private static final int SMALL_WINDOW = 4093;
+
+    private File fFile;
+
+    public MappedInputTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(MappedInputTest.class);
+    }
+
+    protected void setUp() throws Exception {
+        fFile = File.createTempFile("mapped", ".xml");
+        fFile.deleteOnExit();
+    }
+
+    protected void tearDown() throws Exception {
+        fFile.delete();
+    }
+
+    public void testUTF8() throws Exception {
+        // every character, including supplementary ones
+        StringBuffer text = new StringBuffer();
+        for (int c = 0; c < 0x110000; ++c) {
+            if (c < 0xD800 || c > 0xDFFF) {
+                appendCodePoint(text, c);
+            }
+        }
+        String expected = text.toString();
+        write(expected.getBytes("UTF-8"));
+        int[] windows = { SMALL_WINDOW, MappedFileInputStream.MAX_WINDOW_SIZE };
+        int[] blocks = { 2048, 1001 };
+        for (int i = 0; i < windows.length; ++i) {
+            for (int j = 0; j < blocks.length; ++j) {
+                Reader reader = new UTF8Reader(new MappedFileInputStream(fFile, windows[i]));
+                assertEquals("window " + windows[i] + ", block " + blocks[j],
+                        expected, readAll(reader, blocks[j]));
+                reader.close();
+            }
+        }
+    }
+
+    public void testMalformedUTF8() throws Exception {
+        byte[] bytes = new byte[SMALL_WINDOW + 10];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) 'a';
+        }
+        // a two byte sequence whose second byte is not a continuation
+        bytes[100] = (byte) 0xC3;
+        bytes[101] = (byte) '(';
+        write(bytes);
+        String streamed = readUntilError(new UTF8Reader(new ByteArrayInputStream(bytes)));
+        String mapped = readUntilError(new UTF8Reader(new MappedFileInputStream(fFile, SMALL_WINDOW)));
+        assertEquals(100, streamed.length());
+        assertEquals(streamed, mapped);
+        // and a sequence split by the end of the region
+        bytes[100] = (byte) 'a';
+        bytes[101] = (byte) 'a';
+        bytes[SMALL_WINDOW - 1] = (byte) 0xE2;
+        bytes[SMALL_WINDOW] = (byte) 0x82;
+        bytes[SMALL_WINDOW + 1] = (byte) 0xAC;
+        write(bytes);
+        assertEquals(new String(bytes, "UTF-8"),
+                readAll(new UTF8Reader(new MappedFileInputStream(fFile, SMALL_WINDOW)), 1000));
+    }
+
+    public void testASCIIAndLatin1() throws Exception {
+        byte[] bytes = new byte[3 * SMALL_WINDOW];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) (i % 0x80);
+        }
+        write(bytes);
+        assertEquals(new String(bytes, "US-ASCII"), readAll(new ASCIIReader(
+                new MappedFileInputStream(fFile, SMALL_WINDOW), new XMLMessageFormatter(), Locale.getDefault()), 2048));
+        bytes[SMALL_WINDOW + 5] = (byte) 0x80;
+        write(bytes);
+        String mapped = readUntilError(new ASCIIReader(new MappedFileInputStream(fFile, SMALL_WINDOW),
+                new XMLMessageFormatter(), Locale.getDefault()));
+        assertEquals(new String(bytes, 0, SMALL_WINDOW + 5, "US-ASCII"), mapped);
+
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) i;
+        }
+        write(bytes);
+        assertEquals(new String(bytes, "ISO-8859-1"),
+                readAll(new Latin1Reader(new MappedFileInputStream(fFile, SMALL_WINDOW)), 2048));
+    }
+
+    public void testParser() throws Exception {
+        // large enough to be mapped by the entity manager
+        StringBuffer document = new StringBuffer("<?xml version='1.0' encoding='UTF-8'?>\n<doc>");
+        while (document.length() < (1 << 21)) {
+            document.append("<p>Gr\u00F6\u00DFe \u65E5\u672C\u8A9E \uD83D\uDE00 &amp; text</p>\n");
+        }
+        document.append("</doc>");
+        write(document.toString().getBytes("UTF-8"));
+        String streamed = parse(false);
+        assertEquals(streamed, parse(true));
+        assertTrue(streamed.length() > (1 << 20));
+    }
+
+    //
+    // Private methods
+    //
+
+    private void write(byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(fFile);
+        out.write(bytes);
+        out.close();
+    }
+
+    private String parse(boolean mapped) throws Exception {
+        SAXParser parser = new SAXParser();
+        parser.setFeature("http://apache.org/xml/features/memory-mapped-input", mapped);
+        final StringBuffer text = new StringBuffer();
+        parser.setContentHandler(new DefaultHandler() {
+            public void characters(char[] ch, int start, int length) {
+                text.append(ch, start, length);
+            }
+        });
+        parser.parse(new InputSource(fFile.toURI().toString()));
+        return text.toString();
+    }
+
+    private static String readAll(Reader reader, int size) throws IOException {
+        StringBuffer text = new StringBuffer();
+        char[] ch = new char[size];
+        int count;
+        while ((count = reader.read(ch, 0, size)) != -1) {
+            text.append(ch, 0, count);
+        }
+        return text.toString();
+    }
+
+    private static String readUntilError(Reader reader) throws IOException {
+        StringBuffer text = new StringBuffer();
+        char[] ch = new char[2048];
+        try {
+            int count;
+            while ((count = reader.read(ch, 0, ch.length)) != -1) {
+                text.append(ch, 0, count);
+            }
+        }
+        catch (MalformedByteSequenceException e) {
+            return text.toString();
+        }
+        fail("no error");
+        return null;
+    }
+
+    private static void appendCodePoint(StringBuffer text, int c) {
+        if (c < 0x10000) {
+            text.append((char) c);
+        }
+        else {
+            c -= 0x10000;
+            text.append((char) (0xD800 | (c >> 10)));
+            text.append((char) (0xDC00 | (c & 0x3FF)));
+        }
+    }
+}
@@ -17,6 +17,7 @@
 
 package io;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -31,6 +32,10 @@ import org.apache.xerces.impl.io.UTF8Reader;
  * reads), the Java reader silently skips surrogate characters
  * on the input! I've seen this behavior in 1.1.8, 1.2, and 1.3
  * under the Windows platform.
+ * <p>
+ * Both decoders are also timed on text in several scripts, from pure
+ * ASCII to a mix of markup, CJK and supplementary characters, and the
+ * throughput is reported in MB of UTF-8 input per second.
  *
  * @author Andy Clark, IBM
  *
@@ -38,6 +43,37 @@ import org.apache.xerces.impl.io.UTF8Reader;
  */
 public class UTF8 {
 
+    //
+    // Constants
+    //
+
+    /** 
+     * Sample text for the throughput tests. Each sample is repeated to
+     * produce the input for its test.
+     */
+    private static final String[][] SAMPLES = {
+        { "ASCII", 
+          "<item id='1042' type=\"text\">Plain ASCII markup &amp; text.</item>\n" },
+        { "ASCII-dominant", 
+          "<record id='1042' status=\"active\"><name>Jos\u00E9 Garc\u00EDa</name>" +
+          "<city>Z\u00FCrich</city><amount currency='EUR'>1250.00</amount></record>\n" },
+        { "Latin-1", 
+          "<p>Gr\u00F6\u00DFe, d\u00E9j\u00E0 vu, \u00F1and\u00FA, sm\u00F8rrebr\u00F8d.</p>\n" },
+        { "Greek/Cyrillic", 
+          "<p>\u0395\u03BB\u03BB\u03B7\u03BD\u03B9\u03BA\u03AC \u0420\u0443\u0441\u0441\u043A\u0438\u0439 \u044F\u0437\u044B\u043A</p>\n" },
+        { "CJK", 
+          "\u6F22\u5B57\u304B\u306A\u30AB\u30CA\u4E2D\u6587\uD55C\uAD6D\uC5B4\u3002" },
+        { "Mixed", 
+          "<msg lang='ja'>\u65E5\u672C\u8A9E</msg><msg lang='en'>English text</msg>" +
+          "<emoji>\uD83D\uDE00\uD83D\uDE80</emoji><n>caf\u00E9 12345</n>\n" },
+    };
+
+    /** Number of characters of input for each throughput test. */
+    private static final int THROUGHPUT_CHARS = 1 << 24;
+
+    /** Number of timed runs of each throughput test; the best one is reported. */
+    private static final int THROUGHPUT_RUNS = 20;
+
     //
     // MAIN
     //
@@ -111,6 +147,23 @@ public class UTF8 {
             System.err.println("FAIL: "+e.getMessage());
         }
         
+        //
+        // Compare throughput of both decoders
+        //
+
+        System.err.println("#");
+        System.err.println("# Testing throughput");
+        System.err.println("#");
+
+        for (int i = 0; i < SAMPLES.length; i++) {
+            try {
+                testThroughput(SAMPLES[i][0], SAMPLES[i][1], BLOCK_READ_SIZE);
+            }
+            catch (IOException e) {
+                System.err.println("FAIL: "+e.getMessage());
+            }
+        }
+        
     } // main(String[])
 
     //
@@ -283,10 +336,85 @@ public class UTF8 {
 
     } // testCharArray(Reader):long
 
+    /**
+     * This function decodes the given sample, repeated to a few million
+     * characters, with the Java and the custom UTF-8 decoder, checks the
+     * output of both and reports their throughput.
+     */
+    public static void testThroughput(String name, String sample, int size) 
+        throws Exception {
+
+        StringBuffer str = new StringBuffer(THROUGHPUT_CHARS + sample.length());
+        while (str.length() < THROUGHPUT_CHARS) {
+            str.append(sample);
+        }
+        char[] expected = str.toString().toCharArray();
+        byte[] bytes = str.toString().getBytes("UTF8");
+        double mb = (double)bytes.length / (1 << 20);
+
+        System.err.println("# Testing "+name+" ("+bytes.length+" bytes, "+
+                           expected.length+" chars)");
+        
+        for (int decoder = 0; decoder < 2; decoder++) {
+            // check the output once, which also warms up the decoder
+            decode(createReader(decoder, bytes), expected, size);
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < THROUGHPUT_RUNS; run++) {
+                long before = System.currentTimeMillis();
+                decode(createReader(decoder, bytes), null, size);
+                long time = System.currentTimeMillis() - before;
+                if (time < best) {
+                    best = time;
+                }
+            }
+            long rate = best > 0 ? Math.round(mb * 1000 / best) : -1;
+            System.err.println((decoder == 0 ? "Java" : "custom")+
+                               " decoder: PASS (best "+best+" ms, "+rate+" MB/s)");
+        }
+
+    } // testThroughput(String,String,int)
+
     //
     // Package private static methods
     //
 
+    /** Creates the Java (0) or the custom (1) decoder over the given bytes. */
+    static Reader createReader(int decoder, byte[] bytes) throws IOException {
+        InputStream stream = new ByteArrayInputStream(bytes);
+        return decoder == 0 
+             ? (Reader)new InputStreamReader(stream, "UTF8") 
+             : (Reader)new UTF8Reader(stream);
+    } // createReader(int,byte[]):Reader
+
+    /** 
+     * Decodes the reader in blocks of the specified size, checking 
+     * the characters against the expected ones unless these are null.
+     */
+    static void decode(Reader reader, char[] expected, int size) throws IOException {
+        char[] ch = new char[size];
+        int position = 0;
+        int count;
+        while ((count = load(reader, ch)) != -1) {
+            if (expected == null) {
+                continue;
+            }
+            if (position + count > expected.length) {
+                extraChar(ch[expected.length - position]);
+            }
+            for (int i = 0; i < count; i++) {
+                if (ch[i] != expected[position + i]) {
+                    expectedChar(null, expected[position + i], ch[i]);
+                }
+            }
+            position += count;
+        }
+        if (expected != null && position != expected.length) {
+            expectedChar(null, expected[position], -1);
+        }
+        reader.close();
+    } // decode(Reader,char[],int)
+
+
     /** Loads another block of characters from the reader. */
     static int load(Reader reader, char[] ch) throws IOException {
         int count = reader.read(ch, 0, ch.length);
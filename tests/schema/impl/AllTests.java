@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.impl;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests of the schema loader and validator internals.
+ *
+ * @version $Id$
+ */
+public class AllTests {
+    
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(AllTests.suite());
+    }
+    
+    public static Test suite() {
+        TestSuite suite = new TestSuite("Tests of the schema loader and validator internals.");
+        suite.addTestSuite(ParallelLoadingTest.class);
+        suite.addTestSuite(GrammarSerializerTest.class);
+        suite.addTestSuite(BoundedGrammarPoolTest.class);
+        suite.addTestSuite(PatternMatcherTest.class);
+        suite.addTestSuite(IdentityConstraintTest.class);
+        suite.addTestSuite(CounterContentModelTest.class);
+        suite.addTestSuite(ElementIndexTest.class);
+        suite.addTestSuite(EnumerationTest.class);
+        suite.addTestSuite(SelectorAutomatonTest.class);
+        suite.addTestSuite(SimpleContentTest.class);
+        suite.addTestSuite(ConcurrentGrammarPoolTest.class);
+        suite.addTestSuite(RegularExpressionTest.class);
+        suite.addTestSuite(DecimalValueTest.class);
+        return suite;
+    }
+}
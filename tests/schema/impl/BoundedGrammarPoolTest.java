@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.impl;
+
+import java.io.StringReader;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.XSDDescription;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.parsers.XMLGrammarPreparser;
+import org.apache.xerces.util.BoundedXMLGrammarPool;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests that the bounded grammar pool evicts the least recently used
+ * grammars once its capacity is exceeded.
+ *
+ * @version $Id$
+ */
+public class BoundedGrammarPoolTest extends TestCase {
+
+    /** Property identifier: grammar pool. */
+    protected static final String GRAMMAR_POOL =
+        "http://apache.org/xml/properties/internal/grammar-pool";
+
+    /** Feature identifier: validation. */
+    protected static final String VALIDATION =
+        "http://xml.org/sax/features/validation";
+
+    /** Feature identifier: schema validation. */
+    protected static final String SCHEMA_VALIDATION =
+        "http://apache.org/xml/features/validation/schema";
+
+    public BoundedGrammarPoolTest(String name) {
+        super(name);
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        BoundedXMLGrammarPool pool = new BoundedXMLGrammarPool(3);
+        pool.putGrammar(grammar("urn:a", 1));
+        pool.putGrammar(grammar("urn:b", 1));
+        pool.putGrammar(grammar("urn:c", 1));
+        // a becomes the most recently used, so b is evicted next
+        assertNotNull(pool.retrieveGrammar(description("urn:a")));
+        pool.putGrammar(grammar("urn:d", 1));
+        assertTrue(pool.containsGrammar(description("urn:a")));
+        assertFalse(pool.containsGrammar(description("urn:b")));
+        assertTrue(pool.containsGrammar(description("urn:c")));
+        assertTrue(pool.containsGrammar(description("urn:d")));
+        assertEquals(3, pool.getGrammarCount());
+        assertEquals(1, pool.getEvictionCount());
+        pool.putGrammar(grammar("urn:e", 1));
+        assertFalse(pool.containsGrammar(description("urn:c")));
+        assertEquals(2, pool.getEvictionCount());
+    }
+
+    public void testReplacingKeepsOneEntry() {
+        BoundedXMLGrammarPool pool = new BoundedXMLGrammarPool(2);
+        TestGrammar first = grammar("urn:a", 1);
+        TestGrammar second = grammar("urn:a", 1);
+        pool.putGrammar(first);
+        pool.putGrammar(grammar("urn:b", 1));
+        pool.putGrammar(second);
+        assertEquals(2, pool.getGrammarCount());
+        assertEquals(0, pool.getEvictionCount());
+        assertSame(second, pool.retrieveGrammar(description("urn:a")));
+        // replacing made a the most recently used
+        pool.putGrammar(grammar("urn:c", 1));
+        assertFalse(pool.containsGrammar(description("urn:b")));
+        assertTrue(pool.containsGrammar(description("urn:a")));
+    }
+
+    public void testWeights() {
+        BoundedXMLGrammarPool pool = new BoundedXMLGrammarPool(10) {
+            public long weigh(Grammar grammar) {
+                return ((TestGrammar) grammar).fWeight;
+            }
+        };
+        pool.putGrammar(grammar("urn:a", 4));
+        pool.putGrammar(grammar("urn:b", 4));
+        assertEquals(8, pool.getWeight());
+        pool.putGrammar(grammar("urn:c", 4));
+        assertFalse(pool.containsGrammar(description("urn:a")));
+        assertEquals(8, pool.getWeight());
+        // a grammar heavier than the capacity is kept on its own
+        pool.putGrammar(grammar("urn:d", 20));
+        assertEquals(1, pool.getGrammarCount());
+        assertEquals(20, pool.getWeight());
+        assertTrue(pool.containsGrammar(description("urn:d")));
+        assertEquals(3, pool.getEvictionCount());
+    }
+
+    public void testRehashKeepsOrder() {
+        BoundedXMLGrammarPool pool = new BoundedXMLGrammarPool(50, 1);
+        for (int i = 0; i < 60; ++i) {
+            pool.putGrammar(grammar("urn:" + i, 1));
+        }
+        assertEquals(50, pool.getGrammarCount());
+        assertEquals(10, pool.getEvictionCount());
+        for (int i = 0; i < 60; ++i) {
+            assertEquals("urn:" + i, i >= 10, pool.containsGrammar(description("urn:" + i)));
+        }
+        pool.clear();
+        assertEquals(0, pool.getGrammarCount());
+        assertEquals(0, pool.getWeight());
+        assertNull(pool.retrieveGrammar(description("urn:59")));
+    }
+
+    public void testStatisticsAndLocking() {
+        BoundedXMLGrammarPool pool = new BoundedXMLGrammarPool(5);
+        pool.putGrammar(grammar("urn:a", 1));
+        assertNotNull(pool.retrieveGrammar(description("urn:a")));
+        assertNull(pool.retrieveGrammar(description("urn:b")));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+        pool.lockPool();
+        pool.putGrammar(grammar("urn:b", 1));
+        pool.cacheGrammars(XMLGrammarDescription.XML_SCHEMA,
+                new Grammar[] {grammar("urn:c", 1)});
+        assertEquals(1, pool.getGrammarCount());
+        pool.unlockPool();
+        pool.putGrammar(grammar("urn:b", 1));
+        assertEquals(2, pool.getGrammarCount());
+        pool.resetStatistics();
+        assertEquals(0, pool.getHitCount());
+        assertEquals(0, pool.getMissCount());
+    }
+
+    public void testSchemaLoader() throws Exception {
+        URL url = ClassLoader.getSystemResource("schema/impl/loading.xsd");
+        assertNotNull(url);
+        BoundedXMLGrammarPool pool = new BoundedXMLGrammarPool(1);
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(GRAMMAR_POOL, pool);
+        loader.loadURI(url.toExternalForm());
+        // the schema and its import make two grammars, of which one fits
+        assertEquals(1, pool.getGrammarCount());
+        assertEquals(1, pool.getEvictionCount());
+        assertTrue(pool.getMissCount() > 0);
+    }
+
+    public void testLoadStatistics() throws Exception {
+        BoundedXMLGrammarPool pool = new BoundedXMLGrammarPool(10);
+        pool.recordLoad(5);
+        pool.recordLoad(7);
+        assertEquals(2, pool.getLoadCount());
+        assertEquals(12, pool.getLoadTime());
+        pool.resetStatistics();
+        assertEquals(0, pool.getLoadCount());
+        assertEquals(0, pool.getLoadTime());
+        
+        // a schema with its import, and a DTD, are two loads
+        XMLGrammarPreparser preparser = new XMLGrammarPreparser();
+        preparser.registerPreparser(XMLGrammarDescription.XML_SCHEMA, null);
+        preparser.registerPreparser(XMLGrammarDescription.XML_DTD, null);
+        preparser.setGrammarPool(pool);
+        preparser.preparseGrammar(XMLGrammarDescription.XML_SCHEMA, source("schema/impl/loading.xsd"));
+        assertEquals(1, pool.getLoadCount());
+        preparser.preparseGrammar(XMLGrammarDescription.XML_DTD, source("dom/ids/input.dtd"));
+        assertEquals(2, pool.getLoadCount());
+        assertEquals(3, pool.getGrammarCount());
+        assertTrue(pool.getLoadTime() >= 0);
+    }
+
+    public void testValidatorLoadStatistics() throws Exception {
+        String document = "<root xmlns:o='urn:other' xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'"
+            + " xsi:noNamespaceSchemaLocation='"
+            + ClassLoader.getSystemResource("schema/impl/loading.xsd").toExternalForm()
+            + "'><included/><o:imported>1</o:imported></root>";
+        BoundedXMLGrammarPool pool = new BoundedXMLGrammarPool(10);
+        SAXParser parser = new SAXParser();
+        parser.setFeature(VALIDATION, true);
+        parser.setFeature(SCHEMA_VALIDATION, true);
+        parser.setProperty(GRAMMAR_POOL, pool);
+        parser.parse(new InputSource(new StringReader(document)));
+        assertEquals(1, pool.getLoadCount());
+        
+        // the second document finds the grammars in the pool
+        long hits = pool.getHitCount();
+        parser.parse(new InputSource(new StringReader(document)));
+        assertEquals(1, pool.getLoadCount());
+        assertTrue(pool.getHitCount() > hits);
+    }
+
+    //
+    // Private methods
+    //
+
+    private static XMLInputSource source(String resource) {
+        URL url = ClassLoader.getSystemResource(resource);
+        assertNotNull(resource, url);
+        return new XMLInputSource(null, url.toExternalForm(), null);
+    }
+
+    private static XSDDescription description(String namespace) {
+        XSDDescription desc = new XSDDescription();
+        desc.setNamespace(namespace.intern());
+        return desc;
+    }
+
+    private static TestGrammar grammar(String namespace, long weight) {
+        return new TestGrammar(description(namespace), weight);
+    }
+
+    /** A grammar which only has a description and a weight. */
+    private static final class TestGrammar implements Grammar {
+        private final XMLGrammarDescription fDescription;
+        final long fWeight;
+        TestGrammar(XMLGrammarDescription description, long weight) {
+            fDescription = description;
+            fWeight = weight;
+        }
+        public XMLGrammarDescription getGrammarDescription() {
+            return fDescription;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.impl;
+
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xs.XSDDescription;
+import org.apache.xerces.util.ConcurrentXMLGrammarPool;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+
+/**
+ * Tests that the concurrent grammar pool keeps one entry per grammar
+ * description through replacements, removals and rehashing, and that
+ * grammars are found while other threads put grammars into the pool.
+ *
+ * @version $Id$
+ */
+public class ConcurrentGrammarPoolTest extends TestCase {
+
+    private static final int GRAMMARS = 2000;
+
+    private static final int READERS = 4;
+
+    public ConcurrentGrammarPoolTest(String name) {
+        super(name);
+    }
+
+    public void testPutReplaceRemove() {
+        InspectablePool pool = new InspectablePool(4);
+        Grammar a = grammar("urn:a");
+        Grammar b = grammar("urn:b");
+        Grammar c = grammar("urn:c");
+        pool.putGrammar(a);
+        pool.putGrammar(b);
+        pool.putGrammar(c);
+        assertSame(a, pool.retrieveGrammar(description("urn:a")));
+        assertSame(b, pool.retrieveGrammar(description("urn:b")));
+        assertNull(pool.retrieveGrammar(description("urn:d")));
+        
+        // replacing keeps one entry for the description
+        Grammar b2 = grammar("urn:b");
+        pool.putGrammar(b2);
+        assertSame(b2, pool.retrieveGrammar(description("urn:b")));
+        assertEquals(3, schemaGrammars(pool).length);
+        assertEquals(3, pool.getCount());
+        
+        assertSame(b2, pool.removeGrammar(description("urn:b")));
+        assertNull(pool.removeGrammar(description("urn:b")));
+        assertFalse(pool.containsGrammar(description("urn:b")));
+        assertTrue(pool.containsGrammar(description("urn:a")));
+        assertTrue(pool.containsGrammar(description("urn:c")));
+        assertEquals(2, schemaGrammars(pool).length);
+        assertEquals(2, pool.getCount());
+        
+        pool.clear();
+        assertEquals(0, schemaGrammars(pool).length);
+        assertEquals(0, pool.getCount());
+        assertNull(pool.retrieveGrammar(description("urn:a")));
+    }
+
+    public void testCollisions() {
+        // all descriptions in one bucket, so that entries are replaced
+        // and removed in the middle of the chain
+        ConcurrentXMLGrammarPool pool = new ConcurrentXMLGrammarPool(4) {
+            public int hashCode(XMLGrammarDescription desc) {
+                return 0;
+            }
+        };
+        Grammar[] grammars = new Grammar[10];
+        for (int i = 0; i < grammars.length; ++i) {
+            grammars[i] = grammar("urn:" + i);
+            pool.putGrammar(grammars[i]);
+        }
+        Grammar replacement = grammar("urn:5");
+        pool.putGrammar(replacement);
+        assertSame(grammars[3], pool.removeGrammar(description("urn:3")));
+        assertEquals(9, schemaGrammars(pool).length);
+        for (int i = 0; i < grammars.length; ++i) {
+            Grammar expected = (i == 3) ? null : (i == 5) ? replacement : grammars[i];
+            assertSame("urn:" + i, expected, pool.retrieveGrammar(description("urn:" + i)));
+        }
+    }
+
+    public void testRehash() {
+        InspectablePool pool = new InspectablePool(1);
+        Grammar[] grammars = new Grammar[GRAMMARS];
+        for (int i = 0; i < GRAMMARS; ++i) {
+            grammars[i] = grammar("urn:" + i);
+            pool.putGrammar(grammars[i]);
+            // the table grows in powers of two, staying under 3/4 full
+            int size = pool.getTableSize();
+            assertEquals(0, size & (size - 1));
+            assertTrue(i + 1 <= size - (size >> 2));
+        }
+        assertEquals(GRAMMARS, schemaGrammars(pool).length);
+        assertEquals(GRAMMARS, pool.getCount());
+        for (int i = 0; i < GRAMMARS; ++i) {
+            assertSame("urn:" + i, grammars[i], pool.retrieveGrammar(description("urn:" + i)));
+        }
+        assertEquals(0, pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_DTD).length);
+    }
+
+    public void testLocking() {
+        ConcurrentXMLGrammarPool pool = new ConcurrentXMLGrammarPool();
+        pool.putGrammar(grammar("urn:a"));
+        pool.lockPool();
+        pool.putGrammar(grammar("urn:b"));
+        pool.cacheGrammars(XMLGrammarDescription.XML_SCHEMA, new Grammar[] {grammar("urn:c")});
+        assertFalse(pool.containsGrammar(description("urn:b")));
+        assertFalse(pool.containsGrammar(description("urn:c")));
+        // a locked pool still hands out and removes its grammars
+        assertNotNull(pool.retrieveGrammar(description("urn:a")));
+        assertNotNull(pool.removeGrammar(description("urn:a")));
+        pool.unlockPool();
+        pool.cacheGrammars(XMLGrammarDescription.XML_SCHEMA, new Grammar[] {grammar("urn:b"), grammar("urn:c")});
+        assertTrue(pool.containsGrammar(description("urn:b")));
+        assertTrue(pool.containsGrammar(description("urn:c")));
+        assertEquals(2, schemaGrammars(pool).length);
+    }
+
+    public void testConcurrentRetrieve() throws Exception {
+        final ConcurrentXMLGrammarPool pool = new ConcurrentXMLGrammarPool(1);
+        final Grammar[] first = new Grammar[GRAMMARS];
+        final Grammar[] second = new Grammar[GRAMMARS];
+        final XMLGrammarDescription[] descriptions = new XMLGrammarDescription[GRAMMARS];
+        for (int i = 0; i < GRAMMARS; ++i) {
+            descriptions[i] = description("urn:" + i);
+            first[i] = grammar("urn:" + i);
+            second[i] = grammar("urn:" + i);
+        }
+        // number of grammars put, and then replaced, by the writer
+        final int[] progress = new int[2];
+        final Throwable[] errors = new Throwable[READERS + 1];
+        Thread[] threads = new Thread[READERS + 1];
+        threads[0] = new Thread() {
+            public void run() {
+                try {
+                    for (int i = 0; i < GRAMMARS; ++i) {
+                        pool.putGrammar(first[i]);
+                        synchronized (progress) {
+                            progress[0] = i + 1;
+                        }
+                    }
+                    for (int i = 0; i < GRAMMARS; ++i) {
+                        pool.putGrammar(second[i]);
+                        synchronized (progress) {
+                            progress[1] = i + 1;
+                        }
+                    }
+                }
+                catch (Throwable e) {
+                    errors[0] = e;
+                }
+            }
+        };
+        for (int t = 1; t <= READERS; ++t) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        int replaced = 0;
+                        while (replaced < GRAMMARS) {
+                            int put;
+                            synchronized (progress) {
+                                put = progress[0];
+                                replaced = progress[1];
+                            }
+                            for (int i = 0; i < GRAMMARS; ++i) {
+                                Grammar grammar = pool.retrieveGrammar(descriptions[i]);
+                                // the writer may have gone on since the
+                                // progress was read, but never back
+                                if (i < replaced) {
+                                    assertSame(second[i], grammar);
+                                }
+                                else if (i < put || grammar != null) {
+                                    assertTrue(grammar == first[i] || grammar == second[i]);
+                                }
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        errors[thread] = e;
+                    }
+                }
+            };
+        }
+        for (int t = 0; t <= READERS; ++t) {
+            threads[t].start();
+        }
+        for (int t = 0; t <= READERS; ++t) {
+            threads[t].join();
+            if (errors[t] != null) {
+                throw new RuntimeException("thread " + t, errors[t]);
+            }
+        }
+        // no entry was lost or duplicated
+        Grammar[] grammars = schemaGrammars(pool);
+        assertEquals(GRAMMARS, grammars.length);
+        HashSet distinct = new HashSet();
+        for (int i = 0; i < grammars.length; ++i) {
+            distinct.add(grammars[i]);
+        }
+        for (int i = 0; i < GRAMMARS; ++i) {
+            assertTrue("urn:" + i, distinct.contains(second[i]));
+        }
+    }
+
+    //
+    // Private methods
+    //
+
+    private static Grammar[] schemaGrammars(ConcurrentXMLGrammarPool pool) {
+        return pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA);
+    }
+
+    private static XSDDescription description(String namespace) {
+        XSDDescription desc = new XSDDescription();
+        desc.setNamespace(namespace.intern());
+        return desc;
+    }
+
+    private static Grammar grammar(String namespace) {
+        return new TestGrammar(description(namespace));
+    }
+
+    /** A pool which tells the size of its table and its grammar count. */
+    private static final class InspectablePool extends ConcurrentXMLGrammarPool {
+        InspectablePool(int initialCapacity) {
+            super(initialCapacity);
+        }
+        int getTableSize() {
+            return fGrammars.length;
+        }
+        int getCount() {
+            return fGrammarCount;
+        }
+    }
+
+    /** A grammar which only has a description. */
+    private static final class TestGrammar implements Grammar {
+        private final XMLGrammarDescription fDescription;
+        TestGrammar(XMLGrammarDescription description) {
+            fDescription = description;
+        }
+        public XMLGrammarDescription getGrammarDescription() {
+            return fDescription;
+        }
+    }
+}
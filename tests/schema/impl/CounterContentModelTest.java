@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package schema.impl;
+
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Validator;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.SubstitutionGroupHandler;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.XSComplexTypeDecl;
+import org.apache.xerces.impl.xs.models.CMBuilder;
+import org.apache.xerces.impl.xs.models.CMNodeFactory;
+import org.apache.xerces.impl.xs.models.XSCMValidator;
+import org.apache.xerces.impl.xs.models.XSCounterCM;
+import org.apache.xerces.impl.xs.models.XSDFACM;
+import org.apache.xerces.jaxp.validation.XMLSchemaFactory;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Tests that content models with counted occurrence values accept the
+ * same sequences as their expansion, and that occurrence specific errors
+ * name the particle which was counted.
+ *
+ * @version $Id$
+ */
+public class CounterContentModelTest extends TestCase {
+
+    private URL fSchemaURL;
+    private SchemaGrammar fGrammar;
+
+    public CounterContentModelTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        fSchemaURL = ClassLoader.getSystemResource("schema/impl/counter.xsd");
+        assertNotNull(fSchemaURL);
+        fGrammar = (SchemaGrammar) new XMLSchemaLoader().loadGrammar(
+                new XMLInputSource(null, fSchemaURL.toExternalForm(), null));
+    }
+
+    public void testContentModelTypes() {
+        assertTrue(contentModel("choice") instanceof XSCounterCM);
+        assertTrue(contentModel("nested") instanceof XSCounterCM);
+        // two transitions to the same particle need the expanded DFA
+        assertTrue(contentModel("fallback") instanceof XSDFACM);
+    }
+
+    public void testSameAsExpansion() {
+        check("choice", "abc", "b{0,3}|(ab{3}c){2}", 10);
+        check("nested", "abcd", "a{2,4}(bc{0,2}){2,3}d?", 8);
+        check("fallback", "ab", "(aa){1,3}b", 9);
+    }
+
+    public void testOtherElementAfterCountedParticle() throws Exception {
+        // the b's are complete, so the a is not one b too many
+        List errors = validate("choice", "abbba");
+        assertEquals(errors.toString(), 1, errors.size());
+        assertEquals("cvc-complex-type.2.4.a: Invalid content was found starting with element 'a'. One of '{c}' is expected.",
+                errors.get(0));
+    }
+
+    public void testCountedParticleExceeded() throws Exception {
+        List errors = validate("choice", "abbbb");
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue((String) errors.get(0), ((String) errors.get(0)).startsWith("cvc-complex-type.2.4.e: 'b' can occur a maximum of '3' times"));
+        errors = validate("nested", "aaaaa");
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue((String) errors.get(0), ((String) errors.get(0)).startsWith("cvc-complex-type.2.4.e: 'a' can occur a maximum of '4' times"));
+    }
+
+    public void testCountedParticleMissing() throws Exception {
+        List errors = validate("choice", "abc");
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue((String) errors.get(0), ((String) errors.get(0)).startsWith("cvc-complex-type.2.4.h: Invalid content was found starting with element 'c'. 'b' is expected to occur a minimum of '3' times"));
+        errors = validate("nested", "a");
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue((String) errors.get(0), ((String) errors.get(0)).startsWith("cvc-complex-type.2.4.i:"));
+    }
+
+    //
+    // Private methods
+    //
+
+    private XSCMValidator contentModel(String name) {
+        XSComplexTypeDecl type = (XSComplexTypeDecl) fGrammar.getGlobalElementDecl(name).getTypeDefinition();
+        return type.getContentModel(new CMBuilder(new CMNodeFactory()));
+    }
+
+    /**
+     * Runs every sequence of the given letters up to a length through the
+     * content model of an element and compares the result with a pattern.
+     */
+    private void check(String name, String letters, String regex, int maxLength) {
+        XSCMValidator cm = contentModel(name);
+        Pattern pattern = Pattern.compile(regex);
+        SubstitutionGroupHandler handler = new SubstitutionGroupHandler(null);
+        QName[] elements = new QName[letters.length()];
+        for (int i = 0; i < elements.length; ++i) {
+            String localpart = letters.substring(i, i + 1).intern();
+            elements[i] = new QName(null, localpart, localpart, null);
+        }
+        int[] digits = new int[maxLength];
+        StringBuffer buffer = new StringBuffer();
+        for (int length = 0; length <= maxLength; ++length) {
+            for (int i = 0; i < length; ++i) {
+                digits[i] = 0;
+            }
+            do {
+                buffer.setLength(0);
+                int[] state = cm.startContentModel();
+                for (int i = 0; i < length; ++i) {
+                    buffer.append(letters.charAt(digits[i]));
+                    cm.oneTransition(elements[digits[i]], state, handler);
+                }
+                boolean valid = state[0] >= 0 && cm.endContentModel(state);
+                assertEquals(name + " " + buffer, pattern.matcher(buffer).matches(), valid);
+            }
+            while (increment(digits, length, letters.length()));
+        }
+    }
+
+    /** Moves to the next sequence of the given length; false after the last. */
+    private static boolean increment(int[] digits, int length, int base) {
+        for (int i = length - 1; i >= 0; --i) {
+            if (++digits[i] < base) {
+                return true;
+            }
+            digits[i] = 0;
+        }
+        return false;
+    }
+
+    private List validate(String name, String children) throws Exception {
+        StringBuffer document = new StringBuffer();
+        document.append('<').append(name).append('>');
+        for (int i = 0; i < children.length(); ++i) {
+            document.append('<').append(children.charAt(i)).append("/>");
+        }
+        document.append("</").append(name).append('>');
+        Validator validator = new XMLSchemaFactory().newSchema(fSchemaURL).newValidator();
+        final List errors = new ArrayList();
+        validator.setErrorHandler(new ErrorHandler() {
+            public void warning(SAXParseException e) {}
+            public void error(SAXParseException e) {
+                errors.add(e.getMessage());
+            }
+            public void fatalError(SAXParseException e) throws SAXParseException {
+                throw e;
+            }
+        });
+        validator.validate(new StreamSource(new StringReader(document.toString())));
+        return errors;
+    }
+}
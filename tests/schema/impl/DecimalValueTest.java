@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.dv.xs.DecimalDV;
+import org.apache.xerces.impl.dv.xs.IntegerDV;
+import org.apache.xerces.xs.datatypes.XSDecimal;
+
+/**
+ * Tests that decimal values, whether their digits are held in a long
+ * or in strings, compare, are equal and have hash codes as the numbers
+ * they stand for do.
+ *
+ * @version $Id$
+ */
+public class DecimalValueTest extends TestCase {
+
+    /** Lexical forms at and across the most digits held in a long. */
+    private static final String[] BOUNDARY = {
+        "0", "-0.000", "1", "-1", "0.1", "-0.1", "1.5", "1.50", "-1.5", "-001.500",
+        "999999999999999999", "+999999999999999999.000", "-999999999999999999",
+        "1000000000000000000", "-1000000000000000000", "1000000000000000000.0",
+        "999999999999999999.9", "-999999999999999999.9", "999999999999999999.1",
+        "99999999999999999.9", "9999999999999999999", "-9999999999999999999",
+        "123456789012345678", "123456789012345678.5", "123456789012345678.05",
+        "123456789012345678.50", "12345678901234567.8", "12345678901234567.89",
+        "1234567890123456789", "0.123456789012345678", "0.1234567890123456789",
+        "0.123456789012345679", "0.12345678901234567", "0.000000000000000001",
+        "0.0000000000000000001", "-0.0000000000000000001", "0.0000000000000000010",
+        "0.999999999999999999", "0.9999999999999999999", "1.000000000000000001",
+        "1.0000000000000000001", "9223372036854775807", "9223372036854775808",
+        "-9223372036854775808", "922337203685477580.7", "0.9223372036854775807",
+    };
+
+    private final DecimalDV fDecimalDV = new DecimalDV();
+    private final DecimalDV fIntegerDV = new IntegerDV();
+
+    public DecimalValueTest(String name) {
+        super(name);
+    }
+
+    public void testBoundary() throws Exception {
+        checkValues(BOUNDARY);
+    }
+
+    public void testRandom() throws Exception {
+        Random random = new Random(12);
+        ArrayList lexicals = new ArrayList();
+        for (int i = 0; i < 200; ++i) {
+            // 16 to 20 digits, or a few, with any number of them after the point
+            int digits = random.nextInt(3) == 0 ? 1 + random.nextInt(4) : 16 + random.nextInt(5);
+            int scale = random.nextInt(digits + 1);
+            String value = randomDigits(random, digits, scale);
+            if (random.nextBoolean()) {
+                value = "-" + value;
+            }
+            lexicals.add(value);
+            
+            // the same value written differently
+            lexicals.add(decorate(random, value));
+            
+            // and a value next to it with a digit more or less
+            BigDecimal unit = BigDecimal.valueOf(1, scale);
+            BigDecimal d = new BigDecimal(value);
+            lexicals.add(random.nextBoolean() ? d.add(unit).toPlainString() : d.subtract(unit).toPlainString());
+            lexicals.add(d.movePointRight(random.nextBoolean() ? 1 : -1).toPlainString());
+        }
+        checkValues((String[]) lexicals.toArray(new String[lexicals.size()]));
+    }
+
+    //
+    // Private methods
+    //
+
+    // compares each value with each other as decimals, and as integers where they are
+    private void checkValues(String[] lexicals) throws Exception {
+        ArrayList values = new ArrayList();
+        ArrayList expected = new ArrayList();
+        for (int i = 0; i < lexicals.length; ++i) {
+            BigDecimal d = new BigDecimal(lexicals[i]);
+            values.add(fDecimalDV.getActualValue(lexicals[i], null));
+            expected.add(d);
+            if (lexicals[i].indexOf('.') == -1) {
+                values.add(fIntegerDV.getActualValue(lexicals[i], null));
+                expected.add(d);
+            }
+        }
+        for (int i = 0; i < values.size(); ++i) {
+            XSDecimal value = (XSDecimal) values.get(i);
+            BigDecimal d = (BigDecimal) expected.get(i);
+            assertEquals(d.toString(), 0, d.compareTo(value.getBigDecimal()));
+            for (int j = 0; j < values.size(); ++j) {
+                XSDecimal other = (XSDecimal) values.get(j);
+                BigDecimal o = (BigDecimal) expected.get(j);
+                String message = d + " " + o;
+                int comparison = d.compareTo(o);
+                assertEquals(message, comparison, fDecimalDV.compare(value, other));
+                assertEquals(message, comparison == 0, value.equals(other));
+                if (comparison == 0) {
+                    assertEquals(message, value.hashCode(), other.hashCode());
+                }
+            }
+        }
+    }
+
+    // digits, the last scale of them after the point
+    private static String randomDigits(Random random, int digits, int scale) {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < digits; ++i) {
+            if (i == digits - scale) {
+                buffer.append('.');
+            }
+            // mostly nines and zeroes, which make for carries and trailing zeroes
+            int digit = random.nextInt(4);
+            buffer.append(digit == 0 ? '0' : digit == 1 ? '9' : (char) ('0' + random.nextInt(10)));
+        }
+        return buffer.toString();
+    }
+
+    // the value with a plus sign, leading zeroes and trailing zeroes
+    private static String decorate(Random random, String value) {
+        if (value.charAt(0) != '-' && random.nextBoolean()) {
+            value = "+" + value;
+        }
+        int start = value.charAt(0) == '-' || value.charAt(0) == '+' ? 1 : 0;
+        value = value.substring(0, start) + "00".substring(random.nextInt(3)) + value.substring(start);
+        if (value.indexOf('.') == -1) {
+            value += ".";
+        }
+        return value + "000".substring(random.nextInt(4));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package schema.impl;
+
+import java.net.URL;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.SubstitutionGroupHandler;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.XSComplexTypeDecl;
+import org.apache.xerces.impl.xs.XSElementDecl;
+import org.apache.xerces.impl.xs.XSElementDeclHelper;
+import org.apache.xerces.impl.xs.XSWildcardDecl;
+import org.apache.xerces.impl.xs.models.CMBuilder;
+import org.apache.xerces.impl.xs.models.CMNodeFactory;
+import org.apache.xerces.impl.xs.models.XSCMValidator;
+import org.apache.xerces.impl.xs.models.XSDFACM;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * Tests that a content model which looks up child elements by name
+ * matches the same declarations as trying each allowed particle in turn,
+ * also through substitution groups and wildcards.
+ *
+ * @version $Id$
+ */
+public class ElementIndexTest extends TestCase {
+
+    private static final String NS = "urn:index";
+
+    private SchemaGrammar fGrammar;
+    private SubstitutionGroupHandler fHandler;
+
+    public ElementIndexTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        URL url = ClassLoader.getSystemResource("schema/impl/index.xsd");
+        assertNotNull(url);
+        fGrammar = (SchemaGrammar) new XMLSchemaLoader().loadGrammar(
+                new XMLInputSource(null, url.toExternalForm(), null));
+        fHandler = new SubstitutionGroupHandler(new XSElementDeclHelper() {
+            public XSElementDecl getGlobalElementDecl(QName element) {
+                return element.uri == fGrammar.getTargetNamespace()
+                    ? fGrammar.getGlobalElementDecl(element.localpart) : null;
+            }
+        });
+    }
+
+    public void testSameAsLinearSearch() {
+        XSComplexTypeDecl type = (XSComplexTypeDecl) fGrammar.getGlobalElementDecl("root").getTypeDefinition();
+        XSCMValidator cm = type.getContentModel(new CMBuilder(new CMNodeFactory()));
+        assertTrue(cm instanceof XSDFACM);
+        QName[] children = {
+            qname(NS, "first"), qname(NS, "e0"), qname(NS, "e7"), qname(NS, "head"),
+            qname(NS, "member"), qname(NS, "nested"), qname(NS, "blocked"),
+            qname(NS, "excluded"), qname(NS, "other"), qname(NS, "unknown"),
+            qname("urn:foreign", "e0"), qname(null, "e0"),
+        };
+        // from the start, after the optional first element, inside the
+        // choice and after a wildcard
+        QName[][] prefixes = {
+            {}, {children[0]}, {children[0], children[2]}, {children[4]},
+            {qname("urn:foreign", "x")},
+        };
+        for (int i = 0; i < prefixes.length; ++i) {
+            for (int j = 0; j < children.length; ++j) {
+                int[] state = cm.startContentModel();
+                for (int k = 0; k < prefixes[i].length; ++k) {
+                    assertNotNull(cm.oneTransition(prefixes[i][k], state, fHandler));
+                }
+                Object expected = linearSearch(cm.whatCanGoHere(state), children[j]);
+                Object actual = cm.oneTransition(children[j], state, fHandler);
+                String message = i + " " + children[j];
+                assertEquals(message, expected != null, state[0] >= 0);
+                if (expected != null) {
+                    assertSame(message, expected, actual);
+                }
+            }
+        }
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Returns the first of the allowed particles which matches an element. */
+    private Object linearSearch(Vector allowed, QName element) {
+        for (int i = 0; i < allowed.size(); ++i) {
+            Object particle = allowed.elementAt(i);
+            if (particle instanceof XSElementDecl) {
+                Object decl = fHandler.getMatchingElemDecl(element, (XSElementDecl) particle);
+                if (decl != null) {
+                    return decl;
+                }
+            }
+            else if (((XSWildcardDecl) particle).allowNamespace(element.uri)) {
+                return particle;
+            }
+        }
+        return null;
+    }
+
+    private static QName qname(String uri, String localpart) {
+        localpart = localpart.intern();
+        return new QName(null, localpart, localpart, uri != null ? uri.intern() : null);
+    }
+}
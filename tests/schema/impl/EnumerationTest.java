@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package schema.impl;
+
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
+import org.apache.xerces.impl.dv.ValidatedInfo;
+import org.apache.xerces.impl.dv.XSSimpleType;
+import org.apache.xerces.impl.validation.ValidationState;
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * Tests that enumerations large enough to be looked up through a hash
+ * index accept the same values as small ones checked value by value,
+ * including other lexical forms of the same value and values of other
+ * member types of a union.
+ *
+ * @version $Id$
+ */
+public class EnumerationTest extends TestCase {
+
+    /** For each type, lexical forms of values in and out of its enumeration. */
+    private static final String[][] CANDIDATES = {
+        {"decimal", "1", "1.0", "01.000", "+1", "2.50", "-.125", "1E3", "1000.0", "3", "100.5"},
+        {"double", "0", "-0", "0.0E5", "150", "1.5e2", "INF", "-INF", "NaN", "1.5"},
+        {"dateTime", "2000-01-01T12:00:00Z", "2000-01-01T13:00:00+01:00", "2000-01-01T12:00:00",
+            "2000-01-01T12:00:00.000Z", "2000-01-01T00:30:00Z", "2000-01-01T12:00:00-00:00",
+            "2000-01-01T12:00:01Z", "2000-01-01T11:00:00Z"},
+        {"list", "1 2", " 1  2 ", "01 +2", "2 1", "1", "3", "4 5 6", "4 5"},
+        {"union", "1", "01", "+1", "one", "2", "0002", "ONE"},
+        {"string", "a", "b c", "", "A", "b  c", "p"},
+    };
+
+    private SchemaGrammar fGrammar;
+
+    public EnumerationTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        URL url = ClassLoader.getSystemResource("schema/impl/enumeration.xsd");
+        assertNotNull(url);
+        fGrammar = (SchemaGrammar) new XMLSchemaLoader().loadGrammar(
+                new XMLInputSource(null, url.toExternalForm(), null));
+    }
+
+    public void testSameAsSmallEnumeration() throws Exception {
+        for (int i = 0; i < CANDIDATES.length; ++i) {
+            XSSimpleType small = type("small-" + CANDIDATES[i][0]);
+            XSSimpleType large = type("large-" + CANDIDATES[i][0]);
+            int accepted = 0;
+            for (int j = 1; j < CANDIDATES[i].length; ++j) {
+                boolean valid = isValid(small, CANDIDATES[i][j]);
+                assertEquals(CANDIDATES[i][0] + " '" + CANDIDATES[i][j] + "'", valid, isValid(large, CANDIDATES[i][j]));
+                if (valid) {
+                    ++accepted;
+                }
+            }
+            // some but not all candidates are in the enumeration
+            assertTrue(CANDIDATES[i][0], accepted > 0 && accepted < CANDIDATES[i].length - 1);
+        }
+    }
+
+    public void testValueSpaceEquality() throws Exception {
+        XSSimpleType decimal = type("large-decimal");
+        assertTrue(isValid(decimal, "1.0"));
+        assertTrue(isValid(decimal, "105.00"));
+        assertFalse(isValid(decimal, "110"));
+        XSSimpleType derived = type("derived-decimal");
+        assertTrue(isValid(derived, "001.0"));
+        assertFalse(isValid(derived, "3"));
+        XSSimpleType dateTime = type("large-dateTime");
+        assertTrue(isValid(dateTime, "2000-01-01T13:00:00+01:00"));
+        assertTrue(isValid(dateTime, "2100-01-01T01:00:00+01:00"));
+        XSSimpleType union = type("large-union");
+        // an int, equal to the enumerated int 1
+        assertTrue(isValid(union, "+1"));
+        assertTrue(isValid(union, "p9"));
+        assertFalse(isValid(union, "p10"));
+    }
+
+    //
+    // Private methods
+    //
+
+    private XSSimpleType type(String name) {
+        XSSimpleType type = (XSSimpleType) fGrammar.getGlobalTypeDecl(name);
+        assertNotNull(name, type);
+        return type;
+    }
+
+    private static boolean isValid(XSSimpleType type, String content) {
+        try {
+            ValidationState context = new ValidationState();
+            context.setExtraChecking(false);
+            type.validate(content, context, new ValidatedInfo());
+            return true;
+        }
+        catch (InvalidDatatypeValueException e) {
+            return false;
+        }
+    }
+}
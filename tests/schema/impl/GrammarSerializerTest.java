@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Tests that schema grammars written and read back by the schema
+ * loader validate documents with the same diagnostics as the grammars
+ * they were written from.
+ *
+ * @version $Id$
+ */
+public class GrammarSerializerTest extends TestCase {
+
+    private String fSchemaURL;
+    private String fDocumentURL;
+
+    public GrammarSerializerTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        URL url = ClassLoader.getSystemResource("schema/impl/serializer.xsd");
+        assertNotNull(url);
+        fSchemaURL = url.toExternalForm();
+        url = ClassLoader.getSystemResource("schema/impl/serializer.xml");
+        assertNotNull(url);
+        fDocumentURL = url.toExternalForm();
+    }
+
+    public void testSameDiagnostics() throws Exception {
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        Grammar[] grammars = new Grammar[] {
+            loader.loadGrammar(new XMLInputSource(null, fSchemaURL, null))
+        };
+        List expected = validate(grammars);
+        assertEquals(expected.toString(), 14, expected.size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        loader.writeGrammars(grammars, out);
+        Grammar[] restored = new XMLSchemaLoader().readGrammars(
+                new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(1, restored.length);
+        assertEquals(expected, validate(restored));
+    }
+
+    public void testAnonymousTypeNames() throws Exception {
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        Grammar[] grammars = new Grammar[] {
+            loader.loadGrammar(new XMLInputSource(null, fSchemaURL, null))
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        loader.writeGrammars(grammars, out);
+        List messages = validate(new XMLSchemaLoader().readGrammars(
+                new ByteArrayInputStream(out.toByteArray())));
+        boolean anonymous = false;
+        for (int i = 0; i < messages.size(); ++i) {
+            String message = (String) messages.get(i);
+            assertTrue(message, message.indexOf("'null'") == -1);
+            anonymous |= message.indexOf("#AnonType_") != -1;
+        }
+        assertTrue(anonymous);
+    }
+
+    private List validate(Grammar[] grammars) throws Exception {
+        XMLGrammarPoolImpl pool = new XMLGrammarPoolImpl();
+        pool.cacheGrammars(XMLGrammarDescription.XML_SCHEMA, grammars);
+        pool.lockPool();
+        SAXParser parser = new SAXParser();
+        parser.setFeature("http://xml.org/sax/features/validation", true);
+        parser.setFeature("http://apache.org/xml/features/validation/schema", true);
+        parser.setFeature("http://apache.org/xml/features/internal/validation/schema/use-grammar-pool-only", true);
+        parser.setProperty("http://apache.org/xml/properties/internal/grammar-pool", pool);
+        final List messages = new ArrayList();
+        parser.setErrorHandler(new ErrorHandler() {
+            public void warning(SAXParseException e) {
+                messages.add("warning " + e.getLineNumber() + ": " + e.getMessage());
+            }
+            public void error(SAXParseException e) {
+                messages.add("error " + e.getLineNumber() + ": " + e.getMessage());
+            }
+            public void fatalError(SAXParseException e) throws SAXParseException {
+                throw e;
+            }
+        });
+        parser.parse(fDocumentURL);
+        return messages;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package schema.impl;
+
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.dv.SchemaDVFactory;
+import org.apache.xerces.impl.dv.ValidatedInfo;
+import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
+import org.apache.xerces.impl.validation.ValidationState;
+import org.apache.xerces.jaxp.validation.XMLSchemaFactory;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Tests that key references match keys by value and type, also when
+ * the keys are gathered from scopes at different depths, and that
+ * equal values have equal hash codes.
+ *
+ * @version $Id$
+ */
+public class IdentityConstraintTest extends TestCase {
+
+    private static final String DOCUMENT_START =
+        "<root xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'" +
+        " xmlns:xs='http://www.w3.org/2001/XMLSchema'>" +
+        "<group><item xsi:type='xs:int'>3</item></group>" +
+        "<wrap><group><item xsi:type='xs:string'>x</item></group></wrap>";
+
+    private Schema fSchema;
+
+    public IdentityConstraintTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        URL url = ClassLoader.getSystemResource("schema/impl/keyref.xsd");
+        assertNotNull(url);
+        fSchema = new XMLSchemaFactory().newSchema(url);
+    }
+
+    public void testKeysFromNestedScopes() throws Exception {
+        // the keys of both groups are in scope of the root, each with its type
+        List errors = validate("<ref xsi:type='xs:int'>3</ref>" +
+                "<ref xsi:type='xs:string'>x</ref>");
+        assertEquals(errors.toString(), 0, errors.size());
+    }
+
+    public void testMissingKey() throws Exception {
+        List errors = validate("<ref xsi:type='xs:int'>4</ref>");
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue((String) errors.get(0), ((String) errors.get(0)).startsWith("cvc-identity-constraint.4.3"));
+    }
+
+    public void testKeyOfOtherType() throws Exception {
+        // the same lexical value of another type is not the same key
+        List errors = validate("<ref xsi:type='xs:string'>3</ref>");
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue((String) errors.get(0), ((String) errors.get(0)).startsWith("cvc-identity-constraint.4.3"));
+    }
+
+    public void testPrecisionDecimalEquality() throws Exception {
+        String[][] equal = {
+            {"1.5", "1.50"}, {"1.5", "15E-1"}, {"1.5", "0.15E1"}, {"100", "1E2"},
+            {"-0.015", "-1.5E-2"}, {"0", "-0"}, {"0.0", "0E5"}, {"INF", "+INF"},
+        };
+        for (int i = 0; i < equal.length; ++i) {
+            Object value1 = precisionDecimal(equal[i][0]);
+            Object value2 = precisionDecimal(equal[i][1]);
+            assertEquals(equal[i][0] + " " + equal[i][1], value1, value2);
+            assertEquals(equal[i][0] + " " + equal[i][1], value1.hashCode(), value2.hashCode());
+        }
+        String[][] unequal = {
+            {"1.5", "1.6"}, {"1.5", "-1.5"}, {"100", "1E3"}, {"0.1", "0"}, {"INF", "-INF"},
+        };
+        for (int i = 0; i < unequal.length; ++i) {
+            assertFalse(unequal[i][0] + " " + unequal[i][1],
+                    precisionDecimal(unequal[i][0]).equals(precisionDecimal(unequal[i][1])));
+        }
+    }
+
+    //
+    // Private methods
+    //
+
+    private List validate(String refs) throws Exception {
+        Validator validator = fSchema.newValidator();
+        final List errors = new ArrayList();
+        validator.setErrorHandler(new ErrorHandler() {
+            public void warning(SAXParseException e) {}
+            public void error(SAXParseException e) {
+                errors.add(e.getMessage());
+            }
+            public void fatalError(SAXParseException e) throws SAXParseException {
+                throw e;
+            }
+        });
+        validator.validate(new StreamSource(new StringReader(DOCUMENT_START + refs + "</root>")));
+        return errors;
+    }
+
+    private static Object precisionDecimal(String content) throws Exception {
+        return PrecisionDecimalType.INSTANCE.validate(content, new ValidationState(), new ValidatedInfo());
+    }
+
+    /** The precisionDecimal type, which XML Schema 1.0 grammars do not have. */
+    private static final class PrecisionDecimalType extends XSSimpleTypeDecl {
+        static final PrecisionDecimalType INSTANCE = new PrecisionDecimalType();
+        private PrecisionDecimalType() {
+            super((XSSimpleTypeDecl) SchemaDVFactory.getInstance().getBuiltInType("anySimpleType"),
+                    "precisionDecimal", DV_PRECISIONDECIMAL, ORDERED_PARTIAL, false, false,
+                    true, true, PRECISIONDECIMAL_DT);
+        }
+    }
+}
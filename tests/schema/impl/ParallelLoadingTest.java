@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.impl;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.validation.Schema;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.opti.SchemaParsingConfig;
+import org.apache.xerces.jaxp.validation.XMLSchemaFactory;
+import org.apache.xerces.util.TaskExecutor;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.apache.xerces.xs.XSModel;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+
+/**
+ * Tests that referenced schema documents are handed to the loading
+ * executor unless the application has set an entity resolver, or the
+ * schema loader would not read them.
+ *
+ * @version $Id$
+ */
+public class ParallelLoadingTest extends TestCase {
+
+    /** Property identifier: schema loading executor. */
+    protected static final String LOADING_EXECUTOR =
+        "http://apache.org/xml/properties/validation/schema/loading-executor";
+
+    /** Property identifier: grammar pool. */
+    protected static final String GRAMMAR_POOL =
+        "http://apache.org/xml/properties/internal/grammar-pool";
+
+    /** Property identifier: error reporter. */
+    protected static final String ERROR_REPORTER =
+        "http://apache.org/xml/properties/internal/error-reporter";
+
+    /** Property identifier: symbol table. */
+    protected static final String SYMBOL_TABLE =
+        "http://apache.org/xml/properties/internal/symbol-table";
+
+    /** Feature identifier: honour all schema locations. */
+    protected static final String HONOUR_ALL_SCHEMALOCATIONS =
+        "http://apache.org/xml/features/honour-all-schemaLocations";
+
+    /** Feature identifier: disallow DOCTYPE. */
+    protected static final String DISALLOW_DOCTYPE =
+        "http://apache.org/xml/features/disallow-doctype-decl";
+
+    /** Feature identifier: continue after fatal error. */
+    protected static final String CONTINUE_AFTER_FATAL_ERROR =
+        "http://apache.org/xml/features/continue-after-fatal-error";
+
+    private CountingExecutor fExecutor;
+    private String fSchemaURL;
+
+    public ParallelLoadingTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        fExecutor = new CountingExecutor();
+        URL url = ClassLoader.getSystemResource("schema/impl/loading.xsd");
+        assertNotNull(url);
+        fSchemaURL = url.toExternalForm();
+    }
+
+    public void testSchemaFactory() throws Exception {
+        XMLSchemaFactory factory = new XMLSchemaFactory();
+        factory.setProperty(LOADING_EXECUTOR, fExecutor);
+        Schema schema = factory.newSchema(new URL(fSchemaURL));
+        assertNotNull(schema.newValidator());
+        assertEquals(2, fExecutor.getCount());
+    }
+
+    public void testSchemaFactoryWithResourceResolver() throws Exception {
+        XMLSchemaFactory factory = new XMLSchemaFactory();
+        factory.setProperty(LOADING_EXECUTOR, fExecutor);
+        factory.setResourceResolver(new LSResourceResolver() {
+            public LSInput resolveResource(String type, String namespaceURI,
+                    String publicId, String systemId, String baseURI) {
+                return null;
+            }
+        });
+        factory.newSchema(new URL(fSchemaURL));
+        assertEquals(0, fExecutor.getCount());
+
+        // removing the resolver allows parallel loading again
+        factory.setResourceResolver(null);
+        factory.newSchema(new URL(fSchemaURL));
+        assertEquals(2, fExecutor.getCount());
+    }
+
+    public void testSchemaFactoryWithoutResourceResolver() throws Exception {
+        XMLSchemaFactory factory = new XMLSchemaFactory();
+        factory.setProperty(LOADING_EXECUTOR, fExecutor);
+        factory.setResourceResolver(null);
+        factory.newSchema(new URL(fSchemaURL));
+        assertEquals(2, fExecutor.getCount());
+    }
+
+    public void testSchemaLoader() throws Exception {
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(LOADING_EXECUTOR, fExecutor);
+        XSModel model = loader.loadURI(fSchemaURL);
+        assertNotNull(model.getElementDeclaration("imported", "urn:other"));
+        assertNotNull(model.getElementDeclaration("included", null));
+        assertEquals(2, fExecutor.getCount());
+    }
+
+    public void testSchemaLoaderWithEntityResolver() throws Exception {
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(LOADING_EXECUTOR, fExecutor);
+        loader.setEntityResolver(new XMLEntityResolver() {
+            public XMLInputSource resolveEntity(XMLResourceIdentifier id) {
+                return null;
+            }
+        });
+        XSModel model = loader.loadURI(fSchemaURL);
+        assertNotNull(model.getElementDeclaration("imported", "urn:other"));
+        assertEquals(0, fExecutor.getCount());
+    }
+
+    public void testPooledImport() throws Exception {
+        XMLGrammarPoolImpl pool = new XMLGrammarPoolImpl();
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(GRAMMAR_POOL, pool);
+        loader.loadURI(ClassLoader.getSystemResource("schema/impl/loading-import.xsd").toExternalForm());
+        
+        // the grammar of the imported namespace is taken from the pool
+        loader = new XMLSchemaLoader();
+        loader.setProperty(GRAMMAR_POOL, pool);
+        loader.setProperty(LOADING_EXECUTOR, fExecutor);
+        XSModel model = loader.loadURI(fSchemaURL);
+        assertNotNull(model.getElementDeclaration("imported", "urn:other"));
+        assertNotNull(model.getElementDeclaration("included", null));
+        assertEquals(1, fExecutor.getCount());
+    }
+
+    public void testRepeatedImport() throws Exception {
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(LOADING_EXECUTOR, fExecutor);
+        XSModel model = loader.loadURI(ClassLoader.getSystemResource("schema/impl/loading-repeat.xsd").toExternalForm());
+        assertNotNull(model.getElementDeclaration("imported", "urn:other"));
+        assertEquals(1, fExecutor.getCount());
+        
+        // all locations are read if the loader honours them
+        fExecutor = new CountingExecutor();
+        loader = new XMLSchemaLoader();
+        loader.setProperty(LOADING_EXECUTOR, fExecutor);
+        loader.setFeature(HONOUR_ALL_SCHEMALOCATIONS, true);
+        loader.setErrorHandler(new IgnoringErrorHandler());
+        loader.loadURI(ClassLoader.getSystemResource("schema/impl/loading-repeat.xsd").toExternalForm());
+        assertEquals(2, fExecutor.getCount());
+    }
+
+    public void testSettings() throws Exception {
+        SchemaParsingConfig config = new SchemaParsingConfig();
+        config.setFeature(DISALLOW_DOCTYPE, true);
+        config.setFeature(CONTINUE_AFTER_FATAL_ERROR, true);
+        config.setLocale(Locale.FRENCH);
+        Map features = new HashMap();
+        Map properties = new HashMap();
+        config.getSettings(features, properties);
+        assertFalse(properties.containsKey(ERROR_REPORTER));
+        assertFalse(properties.containsKey(SYMBOL_TABLE));
+        
+        SchemaParsingConfig copy = new SchemaParsingConfig();
+        copy.setSettings(features, properties);
+        assertTrue(copy.getFeature(DISALLOW_DOCTYPE));
+        assertTrue(copy.getFeature(CONTINUE_AFTER_FATAL_ERROR));
+        assertEquals(Locale.FRENCH, copy.getLocale());
+        assertNotSame(config.getProperty(ERROR_REPORTER), copy.getProperty(ERROR_REPORTER));
+    }
+
+    /** Ignores all errors. */
+    private static final class IgnoringErrorHandler implements XMLErrorHandler {
+        public void warning(String domain, String key, XMLParseException exception) {}
+        public void error(String domain, String key, XMLParseException exception) {}
+        public void fatalError(String domain, String key, XMLParseException exception) {}
+    }
+
+    /** Runs each task on a new thread and counts them. */
+    private static final class CountingExecutor implements TaskExecutor {
+        private int fCount;
+        public synchronized void execute(Runnable task) {
+            ++fCount;
+            new Thread(task).start();
+        }
+        public synchronized int getCount() {
+            return fCount;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.impl;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xpath.regex.Match;
+import org.apache.xerces.impl.xpath.regex.RegularExpression;
+
+/**
+ * Tests that patterns matched by the automaton give the same results as
+ * the backtracking matcher, also from several threads at once and once
+ * the cache of automaton states is full.
+ *
+ * @version $Id$
+ */
+public class PatternMatcherTest extends TestCase {
+
+    /** Length of the tail after the 'a' the pattern looks for. */
+    private static final int TAIL = 15;
+
+    private static final int THREADS = 4;
+
+    public PatternMatcherTest(String name) {
+        super(name);
+    }
+
+    public void testSameAsBacktracking() {
+        String[] patterns = {
+            "[a-z]{2,5}[0-9]*", "(ab|cd)+e?", ".{3}x", "\\d{3}-\\d{4}",
+            "[\\p{L}-[aeiou]]+", "(a|b)*a(a|b){3}",
+        };
+        String[] inputs = {
+            "", "ab", "abc12", "abcdef1", "ababcde", "cde", "yyyx", "y\nyx",
+            "555-1234", "55-12345", "bcd", "bca", "abab", "aaaab", "bbbb",
+        };
+        for (int i = 0; i < patterns.length; ++i) {
+            RegularExpression re = new RegularExpression(patterns[i], "X");
+            for (int j = 0; j < inputs.length; ++j) {
+                assertEquals(patterns[i] + " " + inputs[j],
+                        re.matches(inputs[j], new Match()), re.matches(inputs[j]));
+            }
+        }
+    }
+
+    public void testFullStateCacheFromThreads() throws Exception {
+        // a deterministic automaton for this pattern needs 2^16 states,
+        // more than the cache holds
+        final RegularExpression re = new RegularExpression("(a|b)*a(a|b){" + TAIL + "}", "X");
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; ++t) {
+            final long seed = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        check(re, new Random(seed), 400);
+                    }
+                    catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < THREADS; ++t) {
+            threads[t].join();
+        }
+        if (failure[0] instanceof Error) {
+            throw (Error) failure[0];
+        }
+        if (failure[0] != null) {
+            throw new RuntimeException(failure[0]);
+        }
+        // once the cache is full the results are still right
+        check(re, new Random(THREADS), 200);
+    }
+
+    private static void check(RegularExpression re, Random random, int count) {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < count; ++i) {
+            buffer.setLength(0);
+            int length = random.nextInt(300);
+            for (int j = 0; j < length; ++j) {
+                buffer.append(random.nextBoolean() ? 'a' : 'b');
+            }
+            String input = buffer.toString();
+            boolean expected = length > TAIL && input.charAt(length - TAIL - 1) == 'a';
+            assertEquals(input, expected, re.matches(input));
+            if (i % 20 == 0) {
+                assertEquals(input, expected, re.matches(input, new Match()));
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.impl;
+
+import java.lang.ref.WeakReference;
+import java.text.CharacterIterator;
+import java.text.StringCharacterIterator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xpath.regex.Match;
+import org.apache.xerces.impl.xpath.regex.RegularExpression;
+
+/**
+ * Tests that one regular expression can be matched from several threads
+ * at once, and that a match, including one which fails with an exception,
+ * does not keep the text it was given.
+ *
+ * @version $Id$
+ */
+public class RegularExpressionTest extends TestCase {
+
+    /** Patterns for the backtracking matcher, with groups and back references. */
+    private static final String[] PATTERNS = {
+        "(\\w+)@(\\w+)\\.com", "(a+)b\\1", "^(x|y)*z$", "(?:ab|a)(c*)\\1d",
+    };
+
+    private static final int THREADS = 6;
+
+    private static final int INPUTS = 300;
+
+    public RegularExpressionTest(String name) {
+        super(name);
+    }
+
+    public void testSharedFromThreads() throws Exception {
+        final Random random = new Random(3);
+        final String[] inputs = new String[INPUTS];
+        for (int i = 0; i < INPUTS; ++i) {
+            StringBuffer buffer = new StringBuffer();
+            int length = random.nextInt(24);
+            for (int j = 0; j < length; ++j) {
+                buffer.append("abcdxyz@.m o".charAt(random.nextInt(12)));
+            }
+            inputs[i] = buffer.toString();
+        }
+        final RegularExpression[] expressions = new RegularExpression[PATTERNS.length];
+        final String[][] expected = new String[PATTERNS.length][INPUTS];
+        for (int p = 0; p < PATTERNS.length; ++p) {
+            // matched on one thread before the expressions are shared
+            RegularExpression re = new RegularExpression(PATTERNS[p]);
+            for (int i = 0; i < INPUTS; ++i) {
+                expected[p][i] = result(re, inputs[i], 0);
+            }
+            expressions[p] = new RegularExpression(PATTERNS[p]);
+        }
+        final Throwable[] errors = new Throwable[THREADS];
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; ++t) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int n = 0; n < 20; ++n) {
+                            for (int p = 0; p < PATTERNS.length; ++p) {
+                                for (int i = 0; i < INPUTS; ++i) {
+                                    int k = (i * (thread + 1) + n) % INPUTS;
+                                    assertEquals(PATTERNS[p] + " " + inputs[k],
+                                            expected[p][k], result(expressions[p], inputs[k], (n + i) % 3));
+                                }
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        errors[thread] = e;
+                    }
+                }
+            };
+        }
+        for (int t = 0; t < THREADS; ++t) {
+            threads[t].start();
+        }
+        for (int t = 0; t < THREADS; ++t) {
+            threads[t].join();
+            if (errors[t] != null) {
+                throw new RuntimeException("thread " + t, errors[t]);
+            }
+        }
+    }
+
+    public void testTextReleased() throws Exception {
+        RegularExpression re = new RegularExpression(PATTERNS[0]);
+        char[] text = "mail me at someone@example.com".toCharArray();
+        Match match = new Match();
+        assertTrue(re.matches(text, 0, text.length, match));
+        assertEquals("someone", match.getCapturedText(1));
+        WeakReference textReference = new WeakReference(text);
+        WeakReference matchReference = new WeakReference(match);
+        text = null;
+        match = null;
+        assertCollected(textReference);
+        assertCollected(matchReference);
+    }
+
+    public void testTextReleasedAfterException() throws Exception {
+        RegularExpression re = new RegularExpression(PATTERNS[0]);
+        CharacterIterator text = new FailingIterator("someone@example.com", 10);
+        try {
+            re.matches(text, new Match());
+            fail();
+        }
+        catch (IllegalStateException e) {
+        }
+        WeakReference textReference = new WeakReference(text);
+        text = null;
+        assertCollected(textReference);
+        // the expression still matches on this thread
+        assertTrue(re.matches("someone@example.com"));
+        assertEquals("someone", result(re, "someone@example.com", 0).substring(0, 7));
+    }
+
+    //
+    // Private methods
+    //
+
+    // the groups matched in the input, through one of the kinds of text
+    private static String result(RegularExpression re, String input, int kind) {
+        Match match = new Match();
+        boolean matched;
+        if (kind == 0) {
+            matched = re.matches(input, match);
+        }
+        else if (kind == 1) {
+            matched = re.matches(input.toCharArray(), match);
+        }
+        else {
+            matched = re.matches(new StringCharacterIterator(input), match);
+        }
+        if (!matched) {
+            return null;
+        }
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 1; i < match.getNumberOfGroups(); ++i) {
+            buffer.append(match.getCapturedText(i)).append('|');
+        }
+        return buffer.append(match.getBeginning(0)).append('-').append(match.getEnd(0)).toString();
+    }
+
+    private static void assertCollected(WeakReference reference) throws InterruptedException {
+        for (int i = 0; i < 50 && reference.get() != null; ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+    }
+
+    //
+    // Classes
+    //
+
+    /** A text which fails once it has been read a number of times. */
+    private static final class FailingIterator implements CharacterIterator {
+        private final StringCharacterIterator fText;
+        private int fReads;
+        FailingIterator(String text, int reads) {
+            fText = new StringCharacterIterator(text);
+            fReads = reads;
+        }
+        public char setIndex(int position) {
+            if (--fReads < 0) {
+                throw new IllegalStateException();
+            }
+            return fText.setIndex(position);
+        }
+        public char first() {
+            return fText.first();
+        }
+        public char last() {
+            return fText.last();
+        }
+        public char current() {
+            return fText.current();
+        }
+        public char next() {
+            return fText.next();
+        }
+        public char previous() {
+            return fText.previous();
+        }
+        public int getBeginIndex() {
+            return fText.getBeginIndex();
+        }
+        public int getEndIndex() {
+            return fText.getEndIndex();
+        }
+        public int getIndex() {
+            return fText.getIndex();
+        }
+        public Object clone() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.impl;
+
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Validator;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.identity.Field;
+import org.apache.xerces.impl.xs.identity.FieldActivator;
+import org.apache.xerces.impl.xs.identity.IdentityConstraint;
+import org.apache.xerces.impl.xs.identity.SelectorAutomaton;
+import org.apache.xerces.impl.xs.identity.XPathMatcher;
+import org.apache.xerces.jaxp.validation.XMLSchemaFactory;
+import org.apache.xerces.util.XMLAttributesImpl;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Tests that the automaton matching all selectors of an element at once
+ * starts and ends the same value scopes and activates the same fields
+ * as a matcher per selector.
+ *
+ * @version $Id$
+ */
+public class SelectorAutomatonTest extends TestCase {
+
+    private static final String NS = "urn:sel";
+
+    /** The element names the documents are made of. */
+    private static final QName[] NAMES = {
+        new QName("s", "a", "s:a", NS), new QName("s", "b", "s:b", NS),
+        new QName("s", "c", "s:c", NS), new QName("s", "d", "s:d", NS),
+        new QName("o", "a", "o:a", "urn:other"), new QName(null, "b", "b", null),
+    };
+
+    private static final QName ROOT = new QName("s", "root", "s:root", NS);
+
+    private IdentityConstraint[] fConstraints;
+
+    public SelectorAutomatonTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        URL url = ClassLoader.getSystemResource("schema/impl/selectors.xsd");
+        assertNotNull(url);
+        SchemaGrammar grammar = (SchemaGrammar) new XMLSchemaLoader().loadGrammar(
+                new XMLInputSource(null, url.toExternalForm(), null));
+        fConstraints = grammar.getGlobalElementDecl("root").getIDConstraints();
+        assertEquals(13, fConstraints.length);
+    }
+
+    public void testSameAsSelectorMatchers() {
+        Random random = new Random(0);
+        for (int i = 0; i < 300; ++i) {
+            List events = new ArrayList();
+            events.add(ROOT);
+            addChildren(events, random, 1 + random.nextInt(7));
+            events.add(null);
+            assertEquals("document " + i, match(events, false), match(events, true));
+        }
+    }
+
+    public void testInitialDepth() {
+        List events = new ArrayList();
+        events.add(ROOT);
+        events.add(NAMES[0]);
+        events.add(null);
+        events.add(null);
+        List log = match(events, true, 5);
+        assertTrue(log.toString(), log.contains("1: start child at 5"));
+        assertEquals(log, match(events, false, 5));
+    }
+
+    public void testUnionValidation() throws Exception {
+        // the same value selected through both branches of a union
+        List errors = validate("<s:a><s:b id='1'/></s:a><s:c id='1'/>");
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue((String) errors.get(0), ((String) errors.get(0)).startsWith("cvc-identity-constraint.4.1"));
+        // and values selected in different scopes of a descendant path
+        errors = validate("<s:c><s:a><s:b id='2'/></s:a></s:c><s:a><s:b id='3'/></s:a>");
+        assertEquals(errors.toString(), 0, errors.size());
+        errors = validate("<s:c><s:a><s:b id='2'/></s:a></s:c><s:a><s:b id='2'/></s:a>");
+        // by both the descendant selector and the descendant path
+        assertEquals(errors.toString(), 2, errors.size());
+        for (int i = 0; i < errors.size(); ++i) {
+            assertTrue((String) errors.get(i), ((String) errors.get(i)).startsWith("cvc-identity-constraint.4.1"));
+        }
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Adds the events of random elements, a null standing for an end tag. */
+    private static void addChildren(List events, Random random, int depth) {
+        int count = random.nextInt(4);
+        for (int i = 0; i < count; ++i) {
+            events.add(NAMES[random.nextInt(NAMES.length)]);
+            if (depth > 1) {
+                addChildren(events, random, depth - 1);
+            }
+            events.add(null);
+        }
+    }
+
+    private List match(List events, boolean automaton) {
+        return match(events, automaton, 0);
+    }
+
+    /**
+     * Feeds the events to the selector matchers, returning what they
+     * asked of the field activator, sorted for each event.
+     */
+    private List match(List events, boolean automaton, int initialDepth) {
+        Activator activator = new Activator();
+        XPathMatcher[] matchers;
+        if (automaton) {
+            matchers = new XPathMatcher[] {
+                new SelectorAutomaton(fConstraints, fConstraints.length).createMatcher(activator, initialDepth)
+            };
+        }
+        else {
+            matchers = new XPathMatcher[fConstraints.length];
+            for (int i = 0; i < matchers.length; ++i) {
+                matchers[i] = fConstraints[i].getSelector().createMatcher(activator, initialDepth);
+            }
+        }
+        XMLAttributes attributes = new XMLAttributesImpl();
+        List log = new ArrayList();
+        QName[] stack = new QName[events.size()];
+        int depth = 0;
+        for (int i = 0; i < matchers.length; ++i) {
+            matchers[i].startDocumentFragment();
+        }
+        for (int e = 0; e < events.size(); ++e) {
+            QName element = (QName) events.get(e);
+            if (element != null) {
+                stack[depth++] = element;
+            }
+            else {
+                element = stack[--depth];
+            }
+            activator.fEvent = e;
+            for (int i = 0; i < matchers.length; ++i) {
+                if (events.get(e) != null) {
+                    matchers[i].startElement(element, attributes);
+                }
+                else {
+                    matchers[i].endElement(element, null, false, null, (short) 0, null);
+                }
+            }
+            Collections.sort(activator.fLog);
+            log.addAll(activator.fLog);
+            activator.fLog.clear();
+        }
+        return log;
+    }
+
+    private List validate(String content) throws Exception {
+        URL url = ClassLoader.getSystemResource("schema/impl/selectors.xsd");
+        Validator validator = new XMLSchemaFactory().newSchema(url).newValidator();
+        final List errors = new ArrayList();
+        validator.setErrorHandler(new ErrorHandler() {
+            public void warning(SAXParseException e) {}
+            public void error(SAXParseException e) {
+                errors.add(e.getMessage());
+            }
+            public void fatalError(SAXParseException e) {
+                errors.add(e.getMessage());
+            }
+        });
+        validator.validate(new StreamSource(new StringReader(
+                "<s:root xmlns:s='" + NS + "'>" + content + "</s:root>")));
+        return errors;
+    }
+
+    /** A field activator which records what it is asked. */
+    private static final class Activator implements FieldActivator {
+        final List fLog = new ArrayList();
+        int fEvent;
+        public void startValueScopeFor(IdentityConstraint identityConstraint, int initialDepth) {
+            fLog.add(fEvent + ": start " + identityConstraint.getIdentityConstraintName() + " at " + initialDepth);
+        }
+        public XPathMatcher activateField(Field field, int initialDepth) {
+            fLog.add(fEvent + ": field " + field + " of " +
+                    field.getIdentityConstraint().getIdentityConstraintName() + " at " + initialDepth);
+            return new XPathMatcher(field.getXPath()) {
+                public void startElement(QName element, XMLAttributes attributes) {}
+            };
+        }
+        public void endValueScopeFor(IdentityConstraint identityConstraint, int initialDepth) {
+            fLog.add(fEvent + ": end " + identityConstraint.getIdentityConstraintName() + " at " + initialDepth);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.impl;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
+import org.apache.xerces.impl.dv.SchemaDVFactory;
+import org.apache.xerces.impl.dv.ValidatedInfo;
+import org.apache.xerces.impl.dv.XSSimpleType;
+import org.apache.xerces.impl.validation.ValidationState;
+import org.apache.xerces.xs.datatypes.XSDouble;
+import org.apache.xerces.xs.datatypes.XSFloat;
+
+/**
+ * Tests that element content validated from its characters gets the same
+ * actual and normalized values, and the same errors, as content validated
+ * from a String.
+ *
+ * @version $Id$
+ */
+public class SimpleContentTest extends TestCase {
+
+    /** For each type, valid and invalid lexical forms. */
+    private static final String[][] CANDIDATES = {
+        {"double", "0", "1", "-12.50", "+5", ".5", "5.", "0.1", "3.14159", "-0", "-0.0", "+0.00",
+            "123456789012345", "1234567890123456", "-999999999999999.9", "0.0000000000000000000001",
+            "1.0000000000000000000000", "9007199254740993", "1e3", "1.5E-2", "INF", "-INF", "NaN",
+            "", "+", "-", ".", "1.2.3", "--1", "1 2", "abc", "1e", "inf", "0x10", "1,5"},
+        {"float", "0", "1", "-12.50", "+5", ".5", "0.1", "3.4028235", "1234567", "12345678",
+            "-0", "0.0000000001", "16777217", "1e3", "INF", "NaN",
+            "", "-", ".", "1.2.3", "1 2", "abc", "1.5f"},
+        {"boolean", "true", "false", "1", "0",
+            "", "TRUE", "False", "yes", "tru", "truee", "trux", "falsy", "2", "01", "t"},
+        {"decimal", "0", "-1.50", "+.5", "123456789012345678", "1234567890123456789.25",
+            "", "1e3", "1.2.3", "-"},
+        {"int", "0", "-2147483648", "2147483647", "+17",
+            "2147483648", "1.0", "", "a"},
+        {"string", "a", "a  b", "\tc\n"},
+        {"token", "a", "a b", "", "Z"},
+    };
+
+    /** Whitespace put around the candidates. */
+    private static final String[][] WHITESPACE = {
+        {"", ""}, {" ", ""}, {"", "\n"}, {"\t \r\n", " \t"},
+    };
+
+    private final ValidationState fContext = new ValidationState();
+    private SchemaDVFactory fFactory;
+
+    public SimpleContentTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        fFactory = SchemaDVFactory.getInstance();
+    }
+
+    public void testSameAsString() throws Exception {
+        for (int i = 0; i < CANDIDATES.length; ++i) {
+            XSSimpleType type = fFactory.getBuiltInType(CANDIDATES[i][0]);
+            for (int j = 1; j < CANDIDATES[i].length; ++j) {
+                for (int k = 0; k < WHITESPACE.length; ++k) {
+                    checkSameAsString(type, WHITESPACE[k][0] + CANDIDATES[i][j] + WHITESPACE[k][1]);
+                }
+            }
+        }
+    }
+
+    public void testPlainDecimals() throws Exception {
+        XSSimpleType doubleType = fFactory.getBuiltInType("double");
+        XSSimpleType floatType = fFactory.getBuiltInType("float");
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; ++i) {
+            // up to 17 digits with up to 24 of them after the point
+            StringBuffer buffer = new StringBuffer();
+            if (random.nextInt(3) == 0) {
+                buffer.append(random.nextBoolean() ? '-' : '+');
+            }
+            int digits = 1 + random.nextInt(17);
+            int point = random.nextInt(digits + 8);
+            for (int j = 0; j < digits; ++j) {
+                if (j == point) {
+                    buffer.append('.');
+                }
+                buffer.append((char) ('0' + random.nextInt(10)));
+            }
+            String lexical = buffer.toString();
+            if (lexical.startsWith("-") && Double.parseDouble(lexical) == 0) {
+                continue;
+            }
+            double d = ((XSDouble) doubleType.validate(buffer, fContext, null)).getValue();
+            assertEquals(lexical, Double.doubleToLongBits(Double.parseDouble(lexical)), Double.doubleToLongBits(d));
+            float f = ((XSFloat) floatType.validate(buffer, fContext, null)).getValue();
+            assertEquals(lexical, Float.floatToIntBits(Float.parseFloat(lexical)), Float.floatToIntBits(f));
+        }
+    }
+
+    public void testReusedBuffer() throws Exception {
+        XSSimpleType type = fFactory.getBuiltInType("double");
+        ValidatedInfo info = new ValidatedInfo();
+        StringBuffer buffer = new StringBuffer(" 1.25 ");
+        type.validate(buffer, fContext, info);
+        
+        // the value doesn't change with the buffer it was validated from
+        buffer.setLength(0);
+        buffer.append("99");
+        assertEquals("1.25", info.getNormalizedValue());
+        
+        type.validate(buffer, fContext, info);
+        ValidatedInfo copy = new ValidatedInfo();
+        copy.copyFrom(info);
+        ValidatedInfo copyOfCopy = new ValidatedInfo();
+        copyOfCopy.copyFrom(copy);
+        
+        // copies don't create the String of the normalized value
+        assertNull(info.normalizedValue);
+        assertNull(copy.normalizedValue);
+        
+        // nor change with the next value validated into the same object
+        buffer.setLength(0);
+        buffer.append("-7");
+        type.validate(buffer, fContext, info);
+        type.validate(new StringBuffer("5"), fContext, copy);
+        assertEquals("-7", info.getNormalizedValue());
+        assertEquals("5", copy.getNormalizedValue());
+        assertEquals("99", copyOfCopy.getNormalizedValue());
+    }
+
+    //
+    // Private methods
+    //
+
+    private void checkSameAsString(XSSimpleType type, String lexical) {
+        String message = type.getName() + " '" + lexical + "'";
+        ValidatedInfo fromString = new ValidatedInfo();
+        String error = validate(type, lexical, fromString);
+        ValidatedInfo fromChars = new ValidatedInfo();
+        assertEquals(message, error, validate(type, new StringBuffer(lexical), fromChars));
+        if (error != null) {
+            return;
+        }
+        assertEquals(message, fromString.getNormalizedValue(), fromChars.getNormalizedValue());
+        assertEquals(message, fromString.actualValueType, fromChars.actualValueType);
+        Object expected = fromString.actualValue;
+        Object actual = fromChars.actualValue;
+        if (expected instanceof XSDouble) {
+            assertEquals(message, Double.doubleToLongBits(((XSDouble) expected).getValue()),
+                    Double.doubleToLongBits(((XSDouble) actual).getValue()));
+        }
+        else if (expected instanceof XSFloat) {
+            assertEquals(message, Float.floatToIntBits(((XSFloat) expected).getValue()),
+                    Float.floatToIntBits(((XSFloat) actual).getValue()));
+        }
+        else {
+            assertTrue(message, type.isEqual(expected, actual));
+        }
+    }
+
+    // validates the content, returning the error key and arguments, or null
+    private String validate(XSSimpleType type, Object content, ValidatedInfo info) {
+        try {
+            type.validate(content, fContext, info);
+            return null;
+        }
+        catch (InvalidDatatypeValueException e) {
+            StringBuffer buffer = new StringBuffer(e.getKey());
+            Object[] args = e.getArgs();
+            for (int i = 0; args != null && i < args.length; ++i) {
+                buffer.append(' ').append(args[i]);
+            }
+            return buffer.toString();
+        }
+    }
+}
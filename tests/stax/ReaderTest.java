@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stax;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.EventFilter;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.EndElement;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.ProcessingInstruction;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+
+import org.apache.xerces.stax.XMLInputFactoryImpl;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests that event readers and readers of DOM and SAX sources report
+ * the same events as stream readers of the same document.
+ *
+ * @version $Id$
+ */
+public class ReaderTest extends TestCase {
+
+    private static final String DOCUMENT =
+        "<?xml version='1.0' encoding='UTF-8'?>\n" +
+        "<!DOCTYPE root [<!ATTLIST p:item id ID #IMPLIED>]>\n" +
+        "<!-- before -->\n" +
+        "<root xmlns='urn:a' xmlns:p='urn:p' p:x='1' y='2'>\n" +
+        "  <?pi some data?>\n" +
+        "  <p:item id='i1'>text<![CDATA[<cdata>]]>more</p:item>\n" +
+        "  <inner xmlns='urn:b'><p:leaf/><!-- inside --></inner>\n" +
+        "  <last>value</last>\n" +
+        "</root>";
+
+    public static void main(String[] args) {
+        TestRunner.run(ReaderTest.class);
+    }
+
+    public ReaderTest(String name) {
+        super(name);
+    }
+
+    public void testEventReader() throws Exception {
+        XMLInputFactory factory = new XMLInputFactoryImpl();
+        List expected = describe(factory.createXMLStreamReader(new StringReader(DOCUMENT)));
+        assertTrue(expected.size() > 20);
+        assertEquals(expected, describe(factory.createXMLEventReader(new StringReader(DOCUMENT))));
+    }
+
+    public void testNamespaceContextOfEvents() throws Exception {
+        XMLInputFactory factory = new XMLInputFactoryImpl();
+        XMLEventReader reader = factory.createXMLEventReader(new StringReader(DOCUMENT));
+        ArrayList starts = new ArrayList();
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                starts.add(event);
+            }
+        }
+        reader.close();
+        // the contexts are read after the reader has moved past them
+        NamespaceContext root = ((StartElement) starts.get(0)).getNamespaceContext();
+        NamespaceContext inner = ((StartElement) starts.get(2)).getNamespaceContext();
+        NamespaceContext leaf = ((StartElement) starts.get(3)).getNamespaceContext();
+        assertEquals("urn:a", root.getNamespaceURI(""));
+        assertEquals("urn:p", root.getNamespaceURI("p"));
+        assertEquals("urn:b", inner.getNamespaceURI(""));
+        assertEquals("urn:p", leaf.getNamespaceURI("p"));
+        assertEquals("urn:b", leaf.getNamespaceURI(""));
+        assertEquals("p", leaf.getPrefix("urn:p"));
+        assertNull(leaf.getPrefix("urn:a"));
+        assertEquals("", root.getPrefix("urn:a"));
+        assertEquals("urn:a", ((StartElement) starts.get(4)).getNamespaceContext().getNamespaceURI(""));
+    }
+
+    public void testPeekAndElementText() throws Exception {
+        XMLInputFactory factory = new XMLInputFactoryImpl();
+        XMLEventReader reader = factory.createXMLEventReader(new StringReader(DOCUMENT));
+        assertTrue(reader.peek().isStartDocument());
+        assertSame(reader.peek(), reader.nextEvent());
+        assertEquals(XMLStreamConstants.DTD, reader.nextEvent().getEventType());
+        StartElement root = reader.nextTag().asStartElement();
+        assertEquals(new QName("urn:a", "root"), root.getName());
+        XMLEvent event = reader.nextTag();
+        assertEquals("item", event.asStartElement().getName().getLocalPart());
+        assertEquals("text<cdata>more", reader.getElementText());
+        assertEquals("inner", reader.nextTag().asStartElement().getName().getLocalPart());
+        assertEquals("leaf", reader.nextTag().asStartElement().getName().getLocalPart());
+        assertTrue(reader.nextTag().isEndElement());
+        assertTrue(reader.nextTag().isEndElement());
+        assertEquals("last", reader.nextTag().asStartElement().getName().getLocalPart());
+        assertEquals("value", reader.getElementText());
+        assertTrue(reader.nextTag().isEndElement());
+        assertTrue(reader.nextEvent().isEndDocument());
+        assertFalse(reader.hasNext());
+        assertNull(reader.peek());
+        reader.close();
+    }
+
+    public void testFilteredEventReader() throws Exception {
+        XMLInputFactory factory = new XMLInputFactoryImpl();
+        XMLEventReader reader = factory.createFilteredReader(
+                factory.createXMLEventReader(new StringReader(DOCUMENT)),
+                new EventFilter() {
+                    public boolean accept(XMLEvent event) {
+                        return event.isStartElement() || event.isEndElement();
+                    }
+                });
+        ArrayList names = new ArrayList();
+        while (reader.hasNext()) {
+            XMLEvent event = reader.peek();
+            assertSame(event, reader.nextEvent());
+            QName name = event.isStartElement() ?
+                    event.asStartElement().getName() : event.asEndElement().getName();
+            names.add((event.isStartElement() ? "<" : "</") + name.getLocalPart());
+        }
+        assertEquals("[<root, <item, </item, <inner, <leaf, </leaf, </inner, <last, </last, </root]",
+                names.toString());
+        assertNull(reader.peek());
+    }
+
+    public void testDOMSource() throws Exception {
+        XMLInputFactory factory = new XMLInputFactoryImpl();
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        Document document = dbf.newDocumentBuilder().parse(new InputSource(new StringReader(DOCUMENT)));
+        List expected = describe(factory.createXMLStreamReader(new StringReader(DOCUMENT)));
+        assertEquals(expected, describe(factory.createXMLStreamReader(new DOMSource(document))));
+        assertEquals(expected, describe(factory.createXMLEventReader(new DOMSource(document))));
+    }
+
+    public void testDOMSourceWithoutNamespaceAttributes() throws Exception {
+        XMLInputFactory factory = new XMLInputFactoryImpl();
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        Document document = dbf.newDocumentBuilder().newDocument();
+        Element root = document.createElementNS("urn:a", "a:root");
+        Element child = document.createElementNS("urn:b", "child");
+        child.setAttributeNS("urn:c", "c:att", "v");
+        root.appendChild(child);
+        document.appendChild(root);
+        XMLStreamReader reader = factory.createXMLStreamReader(new DOMSource(root));
+        assertEquals(XMLStreamConstants.START_ELEMENT, reader.nextTag());
+        assertEquals(new QName("urn:a", "root", "a"), reader.getName());
+        assertEquals("urn:a", reader.getNamespaceURI("a"));
+        assertEquals(XMLStreamConstants.START_ELEMENT, reader.nextTag());
+        assertEquals(new QName("urn:b", "child"), reader.getName());
+        assertEquals("urn:b", reader.getNamespaceURI(""));
+        assertEquals("urn:c", reader.getNamespaceURI("c"));
+        assertEquals("v", reader.getAttributeValue("urn:c", "att"));
+        assertEquals(XMLStreamConstants.END_ELEMENT, reader.nextTag());
+        assertEquals(XMLStreamConstants.END_ELEMENT, reader.nextTag());
+        assertEquals(XMLStreamConstants.END_DOCUMENT, reader.next());
+        reader.close();
+    }
+
+    public void testSAXSource() throws Exception {
+        XMLInputFactory factory = new XMLInputFactoryImpl();
+        List expected = describe(factory.createXMLStreamReader(new StreamSource(new StringReader(DOCUMENT))));
+        SAXSource source = new SAXSource(new InputSource(new StringReader(DOCUMENT)));
+        assertEquals(expected, describe(factory.createXMLStreamReader(source)));
+        source = new SAXSource(new InputSource(new StringReader(DOCUMENT)));
+        assertEquals(expected, describe(factory.createXMLEventReader(source)));
+    }
+
+    //
+    // Private methods
+    //
+
+    private static List describe(XMLStreamReader reader) throws Exception {
+        ArrayList events = new ArrayList();
+        int type = reader.getEventType();
+        while (true) {
+            switch (type) {
+                case XMLStreamConstants.START_DOCUMENT:
+                    events.add("start-document " + reader.getVersion() + " " +
+                            reader.getCharacterEncodingScheme());
+                    break;
+                case XMLStreamConstants.START_ELEMENT: {
+                    ArrayList items = new ArrayList();
+                    for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+                        items.add("xmlns:" + reader.getNamespacePrefix(i) + "=" + reader.getNamespaceURI(i));
+                    }
+                    for (int i = 0; i < reader.getAttributeCount(); ++i) {
+                        items.add(reader.getAttributeName(i) + ":" + reader.getAttributeType(i) +
+                                "=" + reader.getAttributeValue(i));
+                    }
+                    Collections.sort(items);
+                    events.add("start " + reader.getName() + " " + items);
+                    break;
+                }
+                case XMLStreamConstants.END_ELEMENT:
+                    events.add("end " + reader.getName());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    events.add("pi " + reader.getPITarget() + " " + reader.getPIData());
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    events.add("end-document");
+                    reader.close();
+                    return events;
+                default:
+                    events.add(type + " " + reader.getText());
+                    break;
+            }
+            type = reader.next();
+        }
+    }
+
+    private static List describe(XMLEventReader reader) throws Exception {
+        ArrayList events = new ArrayList();
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            switch (event.getEventType()) {
+                case XMLStreamConstants.START_DOCUMENT: {
+                    StartDocument start = (StartDocument) event;
+                    events.add("start-document " + start.getVersion() + " " +
+                            (start.encodingSet() ? start.getCharacterEncodingScheme() : null));
+                    break;
+                }
+                case XMLStreamConstants.START_ELEMENT: {
+                    StartElement start = event.asStartElement();
+                    ArrayList items = new ArrayList();
+                    for (Iterator i = start.getNamespaces(); i.hasNext();) {
+                        Namespace namespace = (Namespace) i.next();
+                        items.add("xmlns:" + (namespace.getPrefix().length() > 0 ? namespace.getPrefix() : null) +
+                                "=" + namespace.getNamespaceURI());
+                    }
+                    for (Iterator i = start.getAttributes(); i.hasNext();) {
+                        Attribute attribute = (Attribute) i.next();
+                        items.add(attribute.getName() + ":" + attribute.getDTDType() +
+                                "=" + attribute.getValue());
+                    }
+                    Collections.sort(items);
+                    events.add("start " + start.getName() + " " + items);
+                    break;
+                }
+                case XMLStreamConstants.END_ELEMENT:
+                    events.add("end " + ((EndElement) event).getName());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION: {
+                    ProcessingInstruction pi = (ProcessingInstruction) event;
+                    events.add("pi " + pi.getTarget() + " " + pi.getData());
+                    break;
+                }
+                case XMLStreamConstants.END_DOCUMENT:
+                    events.add("end-document");
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    events.add(event.getEventType() + " " + ((javax.xml.stream.events.Comment) event).getText());
+                    break;
+                case XMLStreamConstants.DTD:
+                    events.add(event.getEventType() + " " + ((javax.xml.stream.events.DTD) event).getDocumentTypeDeclaration());
+                    break;
+                default:
+                    events.add(event.getEventType() + " " + ((Characters) event).getData());
+                    break;
+            }
+        }
+        reader.close();
+        return events;
+    }
+}
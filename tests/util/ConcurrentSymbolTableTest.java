@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.jaxp.DocumentBuilderFactoryImpl;
+import org.apache.xerces.util.ConcurrentSymbolTable;
+import org.w3c.dom.Document;
+
+/**
+ * Tests that symbols added to a concurrent symbol table by several
+ * threads at the same time come back unique and identical to the
+ * interned strings, also while the table grows, and that parsers created
+ * by a JAXP factory share a table set as a factory attribute.
+ *
+ * @version $Id$
+ */
+public class ConcurrentSymbolTableTest extends TestCase {
+
+    /** Property identifier: symbol table. */
+    private static final String SYMBOL_TABLE =
+        "http://apache.org/xml/properties/internal/symbol-table";
+
+    private static final int THREADS = 8;
+
+    // prime, so that every stride visits all symbols
+    private static final int SYMBOLS = 4999;
+
+    public ConcurrentSymbolTableTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ConcurrentSymbolTableTest.class);
+    }
+
+    public void testConcurrentAdd() throws Exception {
+        // new String objects, so that only the table can make them identical
+        final String[] names = new String[SYMBOLS];
+        for (int i = 0; i < SYMBOLS; ++i) {
+            names[i] = new String("name" + Integer.toString(i * 7919, 36));
+        }
+        final ConcurrentSymbolTable table = new ConcurrentSymbolTable(1);
+        final String[][] results = new String[THREADS][SYMBOLS];
+        final Throwable[] errors = new Throwable[THREADS];
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; ++t) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        Random random = new Random(thread);
+                        char[] buffer = new char[64];
+                        for (int n = 0; n < SYMBOLS; ++n) {
+                            // each thread adds the symbols in its own order
+                            int i = (n * (2 * thread + 1) + thread * 613) % SYMBOLS;
+                            // and symbols which no other thread adds
+                            table.addSymbol(own(thread, n));
+                            if (random.nextBoolean()) {
+                                results[thread][i] = table.addSymbol(names[i]);
+                            }
+                            else {
+                                int offset = random.nextInt(8);
+                                names[i].getChars(0, names[i].length(), buffer, offset);
+                                results[thread][i] = table.addSymbol(buffer, offset, names[i].length());
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        errors[thread] = e;
+                    }
+                }
+            };
+        }
+        for (int t = 0; t < THREADS; ++t) {
+            threads[t].start();
+        }
+        for (int t = 0; t < THREADS; ++t) {
+            threads[t].join();
+            if (errors[t] != null) {
+                throw new RuntimeException("thread " + t, errors[t]);
+            }
+        }
+        for (int i = 0; i < SYMBOLS; ++i) {
+            String interned = names[i].intern();
+            for (int t = 0; t < THREADS; ++t) {
+                assertSame(names[i], interned, results[t][i]);
+            }
+            assertTrue(names[i], table.containsSymbol(names[i]));
+            assertTrue(names[i], table.containsSymbol(names[i].toCharArray(), 0, names[i].length()));
+            assertSame(interned, table.addSymbol(new String(names[i])));
+        }
+        for (int t = 0; t < THREADS; ++t) {
+            for (int n = 0; n < SYMBOLS; ++n) {
+                assertTrue(own(t, n), table.containsSymbol(own(t, n)));
+            }
+        }
+        assertFalse(table.containsSymbol("name"));
+        assertFalse(table.containsSymbol(names[0] + "x"));
+        assertFalse(table.containsSymbol("x".toCharArray(), 0, 1));
+    }
+
+    public void testFactoryAttribute() throws Exception {
+        ConcurrentSymbolTable table = new ConcurrentSymbolTable();
+        final DocumentBuilderFactory factory = new DocumentBuilderFactoryImpl();
+        factory.setNamespaceAware(true);
+        factory.setAttribute(SYMBOL_TABLE, table);
+        final String[] names = new String[THREADS];
+        final Throwable[] errors = new Throwable[THREADS];
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; ++t) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        DocumentBuilder builder = factory.newDocumentBuilder();
+                        for (int n = 0; n < 50; ++n) {
+                            String document = "<shared><thread" + thread + " a='1'/></shared>";
+                            Document doc = builder.parse(new ByteArrayInputStream(document.getBytes("UTF-8")));
+                            names[thread] = doc.getDocumentElement().getFirstChild().getNodeName();
+                        }
+                    }
+                    catch (Throwable e) {
+                        errors[thread] = e;
+                    }
+                }
+            };
+        }
+        for (int t = 0; t < THREADS; ++t) {
+            threads[t].start();
+        }
+        for (int t = 0; t < THREADS; ++t) {
+            threads[t].join();
+            if (errors[t] != null) {
+                throw new RuntimeException("thread " + t, errors[t]);
+            }
+        }
+        assertTrue(table.containsSymbol("shared"));
+        for (int t = 0; t < THREADS; ++t) {
+            assertEquals("thread" + t, names[t]);
+            assertTrue(names[t], table.containsSymbol(names[t]));
+        }
+    }
+
+    //
+    // Private methods
+    //
+
+    // the n-th symbol added by the given thread only
+    private static String own(int thread, int n) {
+        return "own" + thread + "." + n;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xs.SchemaNamespaceSupport;
+import org.apache.xerces.util.NamespaceSupport;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.XMLSymbols;
+import org.apache.xerces.xinclude.MultipleScopeNamespaceSupport;
+
+/**
+ * Tests that prefixes are bound to the same URIs whether or not there
+ * are enough bindings in scope for them to be looked up through the
+ * prefix index, also after contexts are popped, prefixes are rebound and
+ * subclasses change the bindings directly.
+ *
+ * @version $Id$
+ */
+public class NamespaceSupportTest extends TestCase {
+
+    private static final int PREFIXES = 100;
+
+    private final SymbolTable fSymbolTable = new SymbolTable();
+
+    private final String[] fPrefixes = new String[PREFIXES];
+
+    private final String[] fURIs = new String[PREFIXES];
+
+    public NamespaceSupportTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(NamespaceSupportTest.class);
+    }
+
+    protected void setUp() {
+        fPrefixes[0] = XMLSymbols.EMPTY_STRING;
+        fURIs[0] = fSymbolTable.addSymbol("urn:0");
+        for (int i = 1; i < PREFIXES; ++i) {
+            fPrefixes[i] = fSymbolTable.addSymbol("p" + i);
+            fURIs[i] = fSymbolTable.addSymbol("urn:" + i);
+        }
+    }
+
+    public void testSameAsLinearSearch() {
+        Random random = new Random(0);
+        NamespaceSupport support = new NamespaceSupport();
+        Bindings expected = new Bindings();
+        int max = 0;
+        support.reset();
+        for (int n = 0; n < 20000; ++n) {
+            int op = random.nextInt(10);
+            if (op == 0) {
+                support.pushContext();
+                expected.pushContext();
+            }
+            else if (op == 1 && expected.fContexts.size() > 1) {
+                support.popContext();
+                expected.popContext();
+            }
+            else if (op < 5) {
+                int p = random.nextInt(PREFIXES);
+                String uri = random.nextInt(8) == 0 ? null : fURIs[random.nextInt(PREFIXES)];
+                assertTrue(support.declarePrefix(fPrefixes[p], uri));
+                expected.declarePrefix(fPrefixes[p], uri);
+            }
+            else if (op < 9) {
+                String prefix = fPrefixes[random.nextInt(PREFIXES)];
+                assertEquals("step " + n, expected.getURI(prefix), support.getURI(prefix));
+                assertEquals("step " + n, expected.containsPrefix(prefix), support.containsPrefix(prefix));
+            }
+            else {
+                // a context with many declarations at once
+                support.pushContext();
+                expected.pushContext();
+                for (int i = 0; i < 40; ++i) {
+                    int p = random.nextInt(PREFIXES);
+                    support.declarePrefix(fPrefixes[p], fURIs[i]);
+                    expected.declarePrefix(fPrefixes[p], fURIs[i]);
+                }
+            }
+            max = Math.max(max, expected.fBindings.size());
+        }
+        assertTrue(String.valueOf(max), max > 100);
+        assertSame(NamespaceSupport.XML_URI, support.getURI(XMLSymbols.PREFIX_XML));
+        assertFalse(support.declarePrefix(XMLSymbols.PREFIX_XMLNS, fURIs[1]));
+        assertSame(NamespaceSupport.XMLNS_URI, support.getURI(XMLSymbols.PREFIX_XMLNS));
+        assertNull(support.getURI(fSymbolTable.addSymbol("unbound")));
+    }
+
+    public void testRebindingInContext() {
+        NamespaceSupport support = new NamespaceSupport();
+        support.reset();
+        for (int i = 1; i < 50; ++i) {
+            support.declarePrefix(fPrefixes[i], fURIs[i]);
+        }
+        support.pushContext();
+        support.declarePrefix(fPrefixes[1], fURIs[2]);
+        // the index is in use and the rebinding replaces the new binding
+        assertSame(fURIs[2], support.getURI(fPrefixes[1]));
+        support.declarePrefix(fPrefixes[1], fURIs[3]);
+        assertSame(fURIs[3], support.getURI(fPrefixes[1]));
+        assertEquals(1, support.getDeclaredPrefixCount());
+        support.popContext();
+        assertSame(fURIs[1], support.getURI(fPrefixes[1]));
+        support.declarePrefix(fPrefixes[1], fURIs[4]);
+        assertSame(fURIs[4], support.getURI(fPrefixes[1]));
+        support.reset();
+        assertNull(support.getURI(fPrefixes[1]));
+        assertFalse(support.containsPrefix(fPrefixes[1]));
+    }
+
+    public void testEffectiveContext() {
+        SchemaNamespaceSupport support = new SchemaNamespaceSupport(null, fSymbolTable);
+        support.reset();
+        support.pushContext();
+        for (int i = 1; i < 30; ++i) {
+            support.declarePrefix(fPrefixes[i], fURIs[i]);
+        }
+        support.pushContext();
+        assertSame(fURIs[1], support.getURI(fPrefixes[1]));
+        String[] local = new String[40];
+        for (int i = 0; i < 20; ++i) {
+            local[2 * i] = fPrefixes[i + 20];
+            local[2 * i + 1] = fURIs[i + 60];
+        }
+        // the declarations go directly into the namespace information array
+        support.setEffectiveContext(local);
+        assertSame(fURIs[1], support.getURI(fPrefixes[1]));
+        assertSame(fURIs[60], support.getURI(fPrefixes[20]));
+        assertSame(fURIs[79], support.getURI(fPrefixes[39]));
+        assertTrue(support.containsPrefix(fPrefixes[35]));
+        support.makeGlobal();
+        // as many other bindings as before, declared after dropping them
+        support.pushContext();
+        for (int i = 60; i < 80; ++i) {
+            support.declarePrefix(fPrefixes[i], fURIs[i]);
+        }
+        for (int i = 60; i < 80; ++i) {
+            assertSame(fURIs[i], support.getURI(fPrefixes[i]));
+        }
+        assertSame(fURIs[20], support.getURI(fPrefixes[20]));
+        assertNull(support.getURI(fPrefixes[35]));
+        assertFalse(support.containsPrefix(fPrefixes[35]));
+        SchemaNamespaceSupport copy = new SchemaNamespaceSupport(support);
+        assertSame(fURIs[29], copy.getURI(fPrefixes[29]));
+        assertSame(fURIs[79], copy.getURI(fPrefixes[79]));
+    }
+
+    public void testScopes() {
+        MultipleScopeNamespaceSupport support = new MultipleScopeNamespaceSupport();
+        support.reset();
+        for (int i = 1; i < 40; ++i) {
+            support.declarePrefix(fPrefixes[i], fURIs[i]);
+        }
+        support.pushScope();
+        for (int i = 40; i < 80; ++i) {
+            support.declarePrefix(fPrefixes[i], fURIs[i]);
+        }
+        // the bindings of outer scopes are hidden
+        assertNull(support.getURI(fPrefixes[1]));
+        assertSame(fURIs[50], support.getURI(fPrefixes[50]));
+        assertTrue(support.containsPrefix(fPrefixes[50]));
+        support.reset();
+        assertNull(support.getURI(fPrefixes[50]));
+        // as many other bindings as before, declared after dropping them
+        for (int i = 80; i < 100; ++i) {
+            support.declarePrefix(fPrefixes[i], fURIs[i]);
+        }
+        for (int i = 1; i < 20; ++i) {
+            support.declarePrefix(fPrefixes[i], fURIs[i]);
+        }
+        support.declarePrefix(fPrefixes[40], fURIs[1]);
+        for (int i = 80; i < 100; ++i) {
+            assertTrue(support.containsPrefix(fPrefixes[i]));
+        }
+        assertFalse(support.containsPrefix(fPrefixes[50]));
+        assertSame(fURIs[1], support.getURI(fPrefixes[40]));
+        support.popScope();
+        assertSame(fURIs[1], support.getURI(fPrefixes[1]));
+        assertNull(support.getURI(fPrefixes[50]));
+        assertFalse(support.containsPrefix(fPrefixes[50]));
+    }
+
+    //
+    // Classes
+    //
+
+    /** Bindings in scope, searched one after the other. */
+    private static final class Bindings {
+
+        /** Prefix and URI pairs, the last declared last. */
+        final ArrayList fBindings = new ArrayList();
+
+        /** Count of bindings at the start of each context. */
+        final ArrayList fContexts = new ArrayList();
+
+        Bindings() {
+            fContexts.add(new Integer(0));
+        }
+
+        void pushContext() {
+            fContexts.add(new Integer(fBindings.size()));
+        }
+
+        void popContext() {
+            int size = ((Integer) fContexts.remove(fContexts.size() - 1)).intValue();
+            while (fBindings.size() > size) {
+                fBindings.remove(fBindings.size() - 1);
+            }
+        }
+
+        void declarePrefix(String prefix, String uri) {
+            int start = ((Integer) fContexts.get(fContexts.size() - 1)).intValue();
+            for (int i = start; i < fBindings.size(); ++i) {
+                String[] binding = (String[]) fBindings.get(i);
+                if (binding[0] == prefix) {
+                    binding[1] = uri;
+                    return;
+                }
+            }
+            fBindings.add(new String[] {prefix, uri});
+        }
+
+        String getURI(String prefix) {
+            for (int i = fBindings.size() - 1; i >= 0; --i) {
+                String[] binding = (String[]) fBindings.get(i);
+                if (binding[0] == prefix) {
+                    return binding[1];
+                }
+            }
+            return null;
+        }
+
+        boolean containsPrefix(String prefix) {
+            for (int i = fBindings.size() - 1; i >= 0; --i) {
+                if (((String[]) fBindings.get(i))[0] == prefix) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xinclude;
+
+import java.io.File;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+
+import org.apache.xerces.parsers.DOMParser;
+import org.apache.xerces.xinclude.XIncludeCache;
+import org.w3c.dom.Document;
+import org.w3c.dom.ls.DOMImplementationLS;
+
+/**
+ * Tests that including documents through an XInclude cache gives the
+ * same results as parsing them, for nested includes and with or without
+ * the fixup of base URIs and languages.
+ *
+ * @version $Id$
+ */
+public class CacheTest extends TestCase {
+
+    /** Property identifier: XInclude cache. */
+    protected static final String XINCLUDE_CACHE_PROPERTY_ID =
+        "http://apache.org/xml/properties/xinclude-cache";
+
+    /** Fixup base URIs feature id. */
+    protected static final String FIXUP_BASE_URIS_FEATURE_ID =
+        "http://apache.org/xml/features/xinclude/fixup-base-uris";
+
+    /** Fixup language feature id. */
+    protected static final String FIXUP_LANGUAGE_FEATURE_ID =
+        "http://apache.org/xml/features/xinclude/fixup-language";
+
+    // documents parsed in turn by the same parser
+    private static final String[] DOCUMENTS = {
+        "tests/xinclude/cache/main.xml",
+        "tests/xinclude/cache/sub/main.xml",
+        "tests/xinclude/cache/main.xml",
+        "tests/xinclude/cache/sub/main.xml",
+    };
+
+    public static void main(String[] args) {
+        TestRunner.run(CacheTest.class);
+    }
+
+    public CacheTest(String name) {
+        super(name);
+    }
+
+    public void testNestedIncludesWithFixup() throws Exception {
+        compareWithoutCache(true);
+    }
+
+    public void testNestedIncludesWithoutFixup() throws Exception {
+        compareWithoutCache(false);
+    }
+
+    public void testCacheSharedByParsers() throws Exception {
+        XIncludeCache cache = new XIncludeCache(100);
+        for (int i = 0; i < DOCUMENTS.length; ++i) {
+            assertEquals(DOCUMENTS[i], parse(DOCUMENTS[i], true, null),
+                    parse(DOCUMENTS[i], true, cache));
+        }
+        assertTrue(cache.getHitCount() > 0);
+    }
+
+    public void testPropertyRecognizedBeforeParse() throws Exception {
+        SAXParserFactory spf = SAXParserFactory.newInstance();
+        spf.setNamespaceAware(true);
+        spf.setXIncludeAware(true);
+        SAXParser parser = spf.newSAXParser();
+        XIncludeCache cache = new XIncludeCache(100);
+        parser.setProperty(XINCLUDE_CACHE_PROPERTY_ID, cache);
+        assertSame(cache, parser.getProperty(XINCLUDE_CACHE_PROPERTY_ID));
+    }
+
+    private void compareWithoutCache(boolean fixup) throws Exception {
+        DOMParser parser = newParser(fixup);
+        DOMParser cachingParser = newParser(fixup);
+        XIncludeCache cache = new XIncludeCache(100);
+        cachingParser.setProperty(XINCLUDE_CACHE_PROPERTY_ID, cache);
+        for (int i = 0; i < DOCUMENTS.length; ++i) {
+            String expected = parse(parser, DOCUMENTS[i]);
+            assertTrue(expected.indexOf("<inner/>") != -1);
+            assertEquals(DOCUMENTS[i], expected, parse(cachingParser, DOCUMENTS[i]));
+        }
+        assertTrue(cache.getHitCount() > 0);
+    }
+
+    private String parse(String document, boolean fixup, XIncludeCache cache) throws Exception {
+        DOMParser parser = newParser(fixup);
+        if (cache != null) {
+            parser.setProperty(XINCLUDE_CACHE_PROPERTY_ID, cache);
+        }
+        return parse(parser, document);
+    }
+
+    private String parse(DOMParser parser, String document) throws Exception {
+        parser.parse(new File(document).toURI().toString());
+        Document doc = parser.getDocument();
+        DOMImplementationLS impl = (DOMImplementationLS) doc.getImplementation();
+        return impl.createLSSerializer().writeToString(doc);
+    }
+
+    private DOMParser newParser(boolean fixup) throws Exception {
+        DOMParser parser = new DOMParser();
+        parser.setFeature("http://apache.org/xml/features/xinclude", true);
+        parser.setFeature(FIXUP_BASE_URIS_FEATURE_ID, fixup);
+        parser.setFeature(FIXUP_LANGUAGE_FEATURE_ID, fixup);
+        return parser;
+    }
+}